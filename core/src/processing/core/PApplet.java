@@ -5293,6 +5293,34 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Reads the elements of an XML file that match a path, one at a time,
+   * for files that are too large to load with <b>loadXML()</b>, like map
+   * extracts from OpenStreetMap. Elements that don't match are passed over,
+   * so only one is in memory at a time:
+   * <pre>
+   * for (XML node : streamXML("extract.osm", "osm/node")) {
+   *   point(node.getFloat("lon"), node.getFloat("lat"));
+   * }
+   * </pre>
+   * The path starts with the name of the root element. Use "*" to match
+   * elements with any name. The same <b>XML</b> object is used for each
+   * match, so don't hold on to it after moving to the next one.
+   *
+   * @param filename name of a file in the data folder or a URL
+   * @param path element names separated by slashes, starting at the root
+   * @see XMLStream
+   * @see PApplet#loadXML(String)
+   */
+  public XMLStream streamXML(String filename, String path) {
+    InputStream input = createInput(filename);
+    if (input == null) {
+      return null;
+    }
+    return new XMLStream(input, path);
+  }
+
+
   /**
    * Writes the contents of an XML object to a file. By default, this file is
    * saved to the sketch's folder. This folder is opened by selecting "Show
@@ -5557,6 +5585,64 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Reads a JSON file one piece at a time, for files that are too large to
+   * load with <b>loadJSONObject()</b> or <b>loadJSONArray()</b>. Looping
+   * over the reader returns each object in an array (or each line of a
+   * JSON Lines file) as its own <b>JSONObject</b>, so only one is in
+   * memory at a time:
+   * <pre>
+   * for (JSONObject record : streamJSON("telemetry.json")) {
+   *   total += record.getFloat("speed");
+   * }
+   * </pre>
+   * Use <b>beginObject()</b>, <b>nextName()</b>, <b>skipValue()</b>, and
+   * the other methods of <b>JSONReader</b> to get to the part of the file
+   * that's needed, without reading the rest.
+   *
+   * @param filename name of a file in the data folder or a URL
+   * @see JSONReader
+   * @see PApplet#createJSONWriter(String)
+   */
+  public JSONReader streamJSON(String filename) {
+    BufferedReader reader = createReader(filename);
+    if (reader == null) {
+      return null;
+    }
+    return new JSONReader(reader);
+  }
+
+
+  /**
+   * @nowebref
+   */
+  static public JSONReader streamJSON(File file) {
+    return new JSONReader(createReader(file));
+  }
+
+
+  /**
+   * Writes JSON to a file one value at a time, instead of building a
+   * <b>JSONObject</b> or <b>JSONArray</b> in memory first. Call
+   * <b>close()</b> on the writer when finished.
+   *
+   * @param filename name of the file to write to
+   * @see JSONWriter
+   * @see PApplet#streamJSON(String)
+   */
+  public JSONWriter createJSONWriter(String filename) {
+    return createJSONWriter(filename, null);
+  }
+
+
+  /**
+   * @param options "compact" and "indent=N", replace N with the number of spaces
+   */
+  public JSONWriter createJSONWriter(String filename, String options) {
+    return new JSONWriter(createWriter(saveFile(filename)), options);
+  }
+
+
   /**
    * Reads the contents of a file or URL and creates a Table object with its
    * values. If a file is specified, it must be located in the sketch's "data"
@@ -5605,6 +5691,25 @@ public class PApplet implements PConstants {
    * (in terms of speed and memory usage) for loading and parsing tables. The
    * dictionary file can only be tab-separated values (.tsv) and its extension
    * will be ignored. This option was added in Processing 2.0.2.
+   * <p/>
+   * For large CSV or TSV files, adding "parallel" splits the file into
+   * chunks that are parsed on all available cores.
+   * <p/>
+   * Tables saved with the "mapped" option are memory-mapped when loaded
+   * with "mapped", and each column is only read once it's used.
+   * <p/>
+   * Use "infer" to have the type of each column (int, long, float, double,
+   * or category) picked from its first 1000 rows, or "infer=100" to look at
+   * a different number of rows. Columns are changed to a wider type if a
+   * later entry doesn't fit, so nothing is lost when the guess was wrong.
+   * <p/>
+   * For a log file that's still being written, use "follow", then call
+   * <b>refresh()</b> on the table (for instance in <b>draw()</b>) to add
+   * the rows that have been written since. Only the new part of the file
+   * is read each time.
+   * <p/>
+   * Files in the Arrow IPC format (.arrow, or .arrows for the stream
+   * format) from pyarrow, pandas, or R are memory-mapped when possible.
    *
    * @param options may contain "header", "tsv", "csv", or "bin" separated by commas
    */
@@ -5617,6 +5722,21 @@ public class PApplet implements PConstants {
         if (opt.startsWith("dictionary=")) {
           Table dictionary = loadTable(opt.substring(opt.indexOf('=') + 1), "tsv");
           return dictionary.typedParse(createInput(filename), optionStr);
+        } else if (opt.equals("mapped") || opt.equals("follow") ||
+                   ((opt.equals("arrow") || opt.equals("arrows")) &&
+                    !filename.toLowerCase().endsWith(".gz") &&
+                    (dataFile(filename).exists() || sketchFile(filename).exists()))) {
+          // needs an actual file (not a stream) to map it into memory,
+          // or to read only what's been added to it
+          File file = dataFile(filename);
+          if (!file.exists()) {
+            file = sketchFile(filename);
+          }
+          if (!file.exists()) {
+            System.err.println(filename + " does not exist or could not be read");
+            return null;
+          }
+          return new Table(file, optionStr);
         }
       }
       InputStream input = createInput(filename);
@@ -5633,6 +5753,58 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Reads the rows of a CSV, TSV, or binary table one at a time, for files
+   * that are too large to load with <b>loadTable()</b>. Only a small batch
+   * of rows is kept in memory, so a file of any size can be read:
+   * <pre>
+   * for (TableRow row : streamTable("log.csv", "header,infer")) {
+   *   total += row.getFloat("bytes");
+   * }
+   * </pre>
+   * The same <b>TableRow</b> is used for each row, and the rows can only be
+   * read once. Options are the same as <b>loadTable()</b>, except that
+   * "parallel", "mapped", and "ods" files are not available.
+   *
+   * @param filename name of a file in the data folder or a URL
+   * @see PApplet#loadTable(String, String)
+   */
+  public TableStream streamTable(String filename) {
+    return streamTable(filename, null);
+  }
+
+
+  /**
+   * @param options may contain "header", "tsv", "csv", "bin", or "infer"
+   */
+  public TableStream streamTable(String filename, String options) {
+    try {
+      String optionStr = Table.extensionOptions(true, filename, options);
+      String[] optionList = trim(split(optionStr, ','));
+
+      Table dictionary = null;
+      for (String opt : optionList) {
+        if (opt.startsWith("dictionary=")) {
+          dictionary = loadTable(opt.substring(opt.indexOf('=') + 1), "tsv");
+        }
+      }
+      InputStream input = createInput(filename);
+      if (input == null) {
+        System.err.println(filename + " does not exist or could not be read");
+        return null;
+      }
+      if (dictionary != null) {
+        return dictionary.typedStream(input, optionStr);
+      }
+      return Table.stream(input, optionStr);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
   /**
    * Writes the contents of a Table object to a file. By default, this file is
    * saved to the sketch's folder. This folder is opened by selecting "Show
@@ -5659,7 +5831,7 @@ public class PApplet implements PConstants {
 
 
   /**
-   * @param options can be one of "tsv", "csv", "bin", or "html"
+   * @param options can be one of "tsv", "csv", "bin", "mapped", "arrow", "arrows", or "html"
    */
   public boolean saveTable(Table table, String filename, String options) {
 //    String ext = checkExtension(filename);
@@ -5686,6 +5858,280 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Write a table to a file one row at a time, instead of keeping all of
+   * it in a Table and saving it at the end. The columns (and titles) come
+   * from a Table that doesn't need to have any rows. Use writeInt(),
+   * writeFloat(), and so on for each entry, endRow() after each row, and
+   * close() when finished. A file name that ends with .gz is compressed.
+   *
+   * @param columns a Table with the columns that will be written
+   * @see TableWriter
+   */
+  public TableWriter createTableWriter(String filename, Table columns) {
+    return createTableWriter(filename, columns, null);
+  }
+
+
+  /**
+   * @param options "csv", "tsv", or "bin", if not the extension of the file
+   */
+  public TableWriter createTableWriter(String filename, Table columns, String options) {
+    try {
+      return new TableWriter(saveFile(filename), columns, options);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
+  /**
+   * Loads an IntList that was saved with its <b>saveBinary()</b> method,
+   * for instance <b>list.saveBinary(dataFile("counts.bin"))</b>. The file
+   * is memory-mapped and the values copied straight out of it, which is
+   * much faster than parsing text. The other List and Dict classes have
+   * the same kind of method, like <b>loadFloatList()</b> and
+   * <b>loadIntDict()</b>. The file has to be in the data folder or the
+   * sketch folder (or be an absolute path), since a URL can't be mapped.
+   *
+   * @see IntList#saveBinary(File)
+   */
+  public IntList loadIntList(String filename) {
+    try {
+      File file = binaryFile(filename);
+      return (file == null) ? null : IntList.loadBinary(file);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * @see PApplet#loadIntList(String)
+   */
+  public LongList loadLongList(String filename) {
+    try {
+      File file = binaryFile(filename);
+      return (file == null) ? null : LongList.loadBinary(file);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * @see PApplet#loadIntList(String)
+   */
+  public FloatList loadFloatList(String filename) {
+    try {
+      File file = binaryFile(filename);
+      return (file == null) ? null : FloatList.loadBinary(file);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * @see PApplet#loadIntList(String)
+   */
+  public DoubleList loadDoubleList(String filename) {
+    try {
+      File file = binaryFile(filename);
+      return (file == null) ? null : DoubleList.loadBinary(file);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * @see PApplet#loadIntList(String)
+   */
+  public StringList loadStringList(String filename) {
+    try {
+      File file = binaryFile(filename);
+      return (file == null) ? null : StringList.loadBinary(file);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * @see PApplet#loadIntList(String)
+   */
+  public IntDict loadIntDict(String filename) {
+    try {
+      File file = binaryFile(filename);
+      return (file == null) ? null : IntDict.loadBinary(file);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * @see PApplet#loadIntList(String)
+   */
+  public LongDict loadLongDict(String filename) {
+    try {
+      File file = binaryFile(filename);
+      return (file == null) ? null : LongDict.loadBinary(file);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * @see PApplet#loadIntList(String)
+   */
+  public FloatDict loadFloatDict(String filename) {
+    try {
+      File file = binaryFile(filename);
+      return (file == null) ? null : FloatDict.loadBinary(file);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * @see PApplet#loadIntList(String)
+   */
+  public DoubleDict loadDoubleDict(String filename) {
+    try {
+      File file = binaryFile(filename);
+      return (file == null) ? null : DoubleDict.loadBinary(file);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * @see PApplet#loadIntList(String)
+   */
+  public StringDict loadStringDict(String filename) {
+    try {
+      File file = binaryFile(filename);
+      return (file == null) ? null : StringDict.loadBinary(file);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * @see PApplet#loadIntList(String)
+   */
+  public IntIntDict loadIntIntDict(String filename) {
+    try {
+      File file = binaryFile(filename);
+      return (file == null) ? null : IntIntDict.loadBinary(file);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * @see PApplet#loadIntList(String)
+   */
+  public IntFloatDict loadIntFloatDict(String filename) {
+    try {
+      File file = binaryFile(filename);
+      return (file == null) ? null : IntFloatDict.loadBinary(file);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * @see PApplet#loadIntList(String)
+   */
+  public LongIntDict loadLongIntDict(String filename) {
+    try {
+      File file = binaryFile(filename);
+      return (file == null) ? null : LongIntDict.loadBinary(file);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * @see PApplet#loadIntList(String)
+   */
+  public LongDoubleDict loadLongDoubleDict(String filename) {
+    try {
+      File file = binaryFile(filename);
+      return (file == null) ? null : LongDoubleDict.loadBinary(file);
+
+    } catch (IOException e) {
+      printStackTrace(e);
+      return null;
+    }
+  }
+
+
+  /** The file to map for loadIntList() and the others, or null if missing. */
+  private File binaryFile(String filename) {
+    File file = dataFile(filename);
+    if (!file.exists()) {
+      file = sketchFile(filename);
+    }
+    if (!file.exists()) {
+      System.err.println(filename + " does not exist or could not be read");
+      return null;
+    }
+    return file;
+  }
+
+
 
   //////////////////////////////////////////////////////////////
 
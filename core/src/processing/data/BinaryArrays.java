@@ -0,0 +1,311 @@
+package processing.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import processing.core.PApplet;
+
+
+/**
+ * Binary file format for saveBinary() and loadBinary() in the List and
+ * Dict classes, which hold their data in one or two arrays of the same
+ * length. The arrays are written as they are, so loading one is a bulk
+ * copy out of a memory-mapped file, with no parsing.
+ * <p/>
+ * The layout is a magic number, the number of arrays, and the number of
+ * entries, then the type of each array (using the Table column types)
+ * with its offset and length in the file. Each array is little-endian and
+ * starts on an 8-byte boundary. String arrays are stored the same way as
+ * STRING columns in TableMapping: the end offset of each entry in the
+ * UTF-8 data (inverted for null entries), then the data itself.
+ * Advanced users only, not official API.
+ */
+class BinaryArrays {
+  static final int MAGIC = 0x9007A77A;
+
+  // size of the buffer used for writing, and the most mapped at once
+  static final int WRITE_SIZE = 1 << 20;
+  static final int MAP_SIZE = 1 << 30;
+
+
+  /**
+   * Write the first 'count' entries of each array. The arrays can be
+   * String[], int[], long[], float[], or double[].
+   */
+  static void save(File file, int count, Object... arrays) throws IOException {
+    int[] types = new int[arrays.length];
+    byte[][][] strings = new byte[arrays.length][][];
+    long[] lengths = new long[arrays.length];
+    for (int i = 0; i < arrays.length; i++) {
+      types[i] = typeOf(arrays[i]);
+      if (types[i] == Table.STRING) {
+        // encoded up front, since their size isn't known
+        String[] array = (String[]) arrays[i];
+        strings[i] = new byte[count][];
+        long length = 0;
+        for (int j = 0; j < count; j++) {
+          if (array[j] != null) {
+            strings[i][j] = array[j].getBytes(StandardCharsets.UTF_8);
+            length += strings[i][j].length;
+          }
+        }
+        if (length > Integer.MAX_VALUE) {
+          throw new IOException("Strings larger than 2 GB can't be saved");
+        }
+        lengths[i] = 4L * count + length;
+      } else {
+        lengths[i] = (long) count * typeSize(types[i]);
+      }
+    }
+
+    ByteBuffer header =
+      ByteBuffer.allocate(12 + 20 * arrays.length).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC);
+    header.putInt(arrays.length);
+    header.putInt(count);
+    long[] offsets = new long[arrays.length];
+    long offset = align(header.capacity());
+    for (int i = 0; i < arrays.length; i++) {
+      offsets[i] = offset;
+      offset = align(offset + lengths[i]);
+      header.putInt(types[i]);
+      header.putLong(offsets[i]);
+      header.putLong(lengths[i]);
+    }
+    header.flip();
+
+    try (FileChannel channel =
+         FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                          StandardOpenOption.WRITE,
+                          StandardOpenOption.TRUNCATE_EXISTING)) {
+      writeFully(channel, header, 0);
+      ByteBuffer buffer =
+        ByteBuffer.allocateDirect(WRITE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      for (int i = 0; i < arrays.length; i++) {
+        if (types[i] == Table.STRING) {
+          writeStrings(channel, buffer, offsets[i], strings[i]);
+        } else {
+          writeValues(channel, buffer, offsets[i], arrays[i], types[i], count);
+        }
+      }
+    }
+  }
+
+
+  static private void writeValues(FileChannel channel, ByteBuffer buffer,
+                                  long position, Object array, int type,
+                                  int count) throws IOException {
+    int size = typeSize(type);
+    int index = 0;
+    while (index < count) {
+      int length = Math.min(count - index, WRITE_SIZE / size);
+      buffer.clear();
+      switch (type) {
+      case Table.INT: buffer.asIntBuffer().put((int[]) array, index, length); break;
+      case Table.LONG: buffer.asLongBuffer().put((long[]) array, index, length); break;
+      case Table.FLOAT: buffer.asFloatBuffer().put((float[]) array, index, length); break;
+      case Table.DOUBLE: buffer.asDoubleBuffer().put((double[]) array, index, length); break;
+      }
+      buffer.limit(length * size);
+      position = writeFully(channel, buffer, position);
+      index += length;
+    }
+  }
+
+
+  static private void writeStrings(FileChannel channel, ByteBuffer buffer,
+                                   long position, byte[][] strings) throws IOException {
+    buffer.clear();
+    int end = 0;
+    for (byte[] b : strings) {
+      position = flushIfFull(channel, buffer, position, 4);
+      if (b == null) {
+        buffer.putInt(~end);
+      } else {
+        end += b.length;
+        buffer.putInt(end);
+      }
+    }
+    for (byte[] b : strings) {
+      if (b != null) {
+        int index = 0;
+        while (index < b.length) {
+          position = flushIfFull(channel, buffer, position, 1);
+          int length = Math.min(buffer.remaining(), b.length - index);
+          buffer.put(b, index, length);
+          index += length;
+        }
+      }
+    }
+    buffer.flip();
+    writeFully(channel, buffer, position);
+  }
+
+
+  static private long flushIfFull(FileChannel channel, ByteBuffer buffer,
+                                  long position, int needed) throws IOException {
+    if (buffer.remaining() < needed) {
+      buffer.flip();
+      position = writeFully(channel, buffer, position);
+      buffer.clear();
+    }
+    return position;
+  }
+
+
+  static private long writeFully(FileChannel channel, ByteBuffer buffer,
+                                 long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+    return position;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Read a file written by save(), which has to contain arrays of these
+   * types, in this order. Each array that comes back is exactly as long
+   * as the number of entries.
+   */
+  static Object[] load(File file, int... expected) throws IOException {
+    try (FileChannel channel =
+         FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer start = read(channel, 0, 12);
+      int magic = start.getInt();
+      if (magic != MAGIC) {
+        throw new IOException("Not a binary List or Dict file (magic was " + PApplet.hex(magic) + ")");
+      }
+      int arrayCount = start.getInt();
+      int count = start.getInt();
+      if (arrayCount != expected.length || count < 0) {
+        throw new IOException(file + " has " + arrayCount + " arrays, expected " + expected.length);
+      }
+      ByteBuffer header = read(channel, 12, 20 * arrayCount);
+      Object[] arrays = new Object[arrayCount];
+      for (int i = 0; i < arrayCount; i++) {
+        int type = header.getInt();
+        long offset = header.getLong();
+        long length = header.getLong();
+        if (type != expected[i]) {
+          throw new IOException("Array " + i + " in " + file + " has the wrong type");
+        }
+        if (type == Table.STRING) {
+          arrays[i] = readStrings(channel, offset, length, count);
+        } else {
+          arrays[i] = readValues(channel, offset, type, count);
+        }
+      }
+      return arrays;
+    }
+  }
+
+
+  static private Object readValues(FileChannel channel, long position,
+                                   int type, int count) throws IOException {
+    Object array;
+    switch (type) {
+    case Table.INT: array = new int[count]; break;
+    case Table.LONG: array = new long[count]; break;
+    case Table.FLOAT: array = new float[count]; break;
+    default: array = new double[count]; break;
+    }
+    int size = typeSize(type);
+    int index = 0;
+    while (index < count) {
+      int length = Math.min(count - index, MAP_SIZE / size);
+      ByteBuffer buffer = map(channel, position, (long) length * size);
+      switch (type) {
+      case Table.INT: buffer.asIntBuffer().get((int[]) array, index, length); break;
+      case Table.LONG: buffer.asLongBuffer().get((long[]) array, index, length); break;
+      case Table.FLOAT: buffer.asFloatBuffer().get((float[]) array, index, length); break;
+      case Table.DOUBLE: buffer.asDoubleBuffer().get((double[]) array, index, length); break;
+      }
+      position += (long) length * size;
+      index += length;
+    }
+    return array;
+  }
+
+
+  static private String[] readStrings(FileChannel channel, long position,
+                                      long length, int count) throws IOException {
+    int[] ends = (int[]) readValues(channel, position, Table.INT, count);
+    long dataLength = length - 4L * count;
+    if (dataLength < 0 || dataLength > Integer.MAX_VALUE) {
+      throw new IOException("String data has the wrong length");
+    }
+    ByteBuffer buffer = map(channel, position + 4L * count, dataLength);
+    String[] outgoing = new String[count];
+    byte[] scratch = new byte[256];
+    int start = 0;
+    for (int i = 0; i < count; i++) {
+      if (ends[i] >= 0) {
+        int size = ends[i] - start;
+        if (size < 0 || ends[i] > dataLength) {
+          throw new IOException("String data is damaged");
+        }
+        if (size > scratch.length) {
+          scratch = new byte[Math.max(size, scratch.length * 2)];
+        }
+        buffer.position(start);
+        buffer.get(scratch, 0, size);
+        outgoing[i] = new String(scratch, 0, size, StandardCharsets.UTF_8);
+        start = ends[i];
+      }
+    }
+    return outgoing;
+  }
+
+
+  static private ByteBuffer map(FileChannel channel, long offset,
+                                long length) throws IOException {
+    if (offset + length > channel.size()) {
+      throw new IOException("File ended early");
+    }
+    return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+
+  static private ByteBuffer read(FileChannel channel, long offset,
+                                 int length) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (bytes.hasRemaining()) {
+      if (channel.read(bytes, offset + bytes.position()) == -1) {
+        throw new IOException("File ended early");
+      }
+    }
+    bytes.flip();
+    return bytes;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static private int typeOf(Object array) {
+    if (array instanceof String[]) return Table.STRING;
+    if (array instanceof int[]) return Table.INT;
+    if (array instanceof long[]) return Table.LONG;
+    if (array instanceof float[]) return Table.FLOAT;
+    if (array instanceof double[]) return Table.DOUBLE;
+    throw new IllegalArgumentException("Can't save a " + array.getClass().getSimpleName());
+  }
+
+
+  static private int typeSize(int type) {
+    return (type == Table.LONG || type == Table.DOUBLE) ? 8 : 4;
+  }
+
+
+  static private long align(long offset) {
+    return (offset + 7) & ~7L;
+  }
+}
@@ -0,0 +1,274 @@
+package processing.data;
+
+
+/**
+ * Finds where a key is in the keys[] array of IntDict, FloatDict, and the
+ * other Dict classes. This is a table of positions by hash (open
+ * addressing with linear probing), so a lookup only reads from two int
+ * and String arrays, and adding a key doesn't box an Integer or make an
+ * entry object the way a HashMap&lt;String, Integer&gt; did. A key that's
+ * removed is taken out by moving the keys after it back (no tombstones),
+ * so removing is as cheap as adding. A null String is a key like any
+ * other, the same as it was with the HashMap.
+ * <p/>
+ * The keys themselves stay in the Dict's array, which can be a String[],
+ * or an int[] or long[] for IntIntDict and the other primitive-keyed
+ * classes. Every method takes that array, which has to hold the keys at
+ * the positions that were added. Finding and adding have a version for
+ * each kind of array, the rest only need the hash of a key.
+ * Advanced users only, not official API.
+ */
+class DictIndex {
+  int[] table;  // position + 1 of each key, by hash, or 0 for empty
+  int size;
+
+
+  DictIndex() {
+    table = new int[16];
+  }
+
+
+  DictIndex(String[] keys, int count) {
+    rebuild(keys, count, null);
+  }
+
+
+  DictIndex(Object keys, int count, boolean[] gap) {
+    rebuild(keys, count, gap);
+  }
+
+
+  /** Position of this key, or -1 if it's not there. */
+  int find(String[] keys, String key) {
+    int mask = table.length - 1;
+    int slot = mix(hash(key)) & mask;
+    while (true) {
+      int position = table[slot];
+      if (position == 0) {
+        return -1;
+      }
+      String k = keys[position - 1];
+      if (k == key || (key != null && key.equals(k))) {
+        return position - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+
+  int find(int[] keys, int key) {
+    int mask = table.length - 1;
+    int slot = mix(key) & mask;
+    while (true) {
+      int position = table[slot];
+      if (position == 0 || keys[position - 1] == key) {
+        return position - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+
+  int find(long[] keys, long key) {
+    int mask = table.length - 1;
+    int slot = mix(hash(key)) & mask;
+    while (true) {
+      int position = table[slot];
+      if (position == 0 || keys[position - 1] == key) {
+        return position - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+
+  /**
+   * Add the key at this position. If the key is already somewhere else,
+   * this position replaces it, the same as HashMap.put() would.
+   */
+  void put(String[] keys, int position) {
+    if ((size + 1) * 2 > table.length) {
+      grow(keys);
+    }
+    String key = keys[position];
+    int mask = table.length - 1;
+    int slot = mix(hash(key)) & mask;
+    while (table[slot] != 0) {
+      String k = keys[table[slot] - 1];
+      if (k == key || (key != null && key.equals(k))) {
+        table[slot] = position + 1;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = position + 1;
+    size++;
+  }
+
+
+  void put(int[] keys, int position) {
+    if ((size + 1) * 2 > table.length) {
+      grow(keys);
+    }
+    int key = keys[position];
+    int mask = table.length - 1;
+    int slot = mix(key) & mask;
+    while (table[slot] != 0) {
+      if (keys[table[slot] - 1] == key) {
+        table[slot] = position + 1;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = position + 1;
+    size++;
+  }
+
+
+  void put(long[] keys, int position) {
+    if ((size + 1) * 2 > table.length) {
+      grow(keys);
+    }
+    long key = keys[position];
+    int mask = table.length - 1;
+    int slot = mix(hash(key)) & mask;
+    while (table[slot] != 0) {
+      if (keys[table[slot] - 1] == key) {
+        table[slot] = position + 1;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = position + 1;
+    size++;
+  }
+
+
+  /** Take out the key at this position, which must still be in keys[]. */
+  void remove(Object keys, int position) {
+    int slot = slotOf(keys, position);
+    if (slot == -1) {
+      return;  // a duplicate that was replaced
+    }
+    // Move back any keys after this one that would no longer be found
+    int mask = table.length - 1;
+    int next = slot;
+    while (true) {
+      next = (next + 1) & mask;
+      int p = table[next];
+      if (p == 0) {
+        break;
+      }
+      int home = mix(hashAt(keys, p - 1)) & mask;
+      // can it move to 'slot'? only if its home is not between slot and next
+      boolean between = (slot <= next) ?
+        (slot < home && home <= next) : (slot < home || home <= next);
+      if (!between) {
+        table[slot] = p;
+        slot = next;
+      }
+    }
+    table[slot] = 0;
+    size--;
+  }
+
+
+  /** Call before the keys at these positions are swapped. */
+  void swap(Object keys, int a, int b) {
+    int slotA = slotOf(keys, a);
+    int slotB = slotOf(keys, b);
+    if (slotA != -1) {
+      table[slotA] = b + 1;
+    }
+    if (slotB != -1) {
+      table[slotB] = a + 1;
+    }
+  }
+
+
+  /**
+   * Start over with the first 'count' keys, leaving out the positions
+   * marked in 'gap' (which can be null if there are none).
+   */
+  void rebuild(Object keys, int count, boolean[] gap) {
+    int capacity = 16;
+    while (capacity < count * 2) {
+      capacity <<= 1;
+    }
+    table = new int[capacity];
+    size = 0;
+    for (int i = 0; i < count; i++) {
+      if (gap == null || !gap[i]) {
+        if (keys instanceof String[]) {
+          put((String[]) keys, i);
+        } else if (keys instanceof int[]) {
+          put((int[]) keys, i);
+        } else {
+          put((long[]) keys, i);
+        }
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private int slotOf(Object keys, int position) {
+    int mask = table.length - 1;
+    int slot = mix(hashAt(keys, position)) & mask;
+    while (true) {
+      int p = table[slot];
+      if (p == 0) {
+        return -1;
+      }
+      if (p == position + 1) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+
+  private void grow(Object keys) {
+    int[] old = table;
+    table = new int[old.length * 2];
+    int mask = table.length - 1;
+    for (int p : old) {
+      if (p != 0) {
+        int slot = mix(hashAt(keys, p - 1)) & mask;
+        while (table[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        table[slot] = p;
+      }
+    }
+  }
+
+
+  static private int hashAt(Object keys, int position) {
+    if (keys instanceof String[]) {
+      return hash(((String[]) keys)[position]);
+    } else if (keys instanceof int[]) {
+      return ((int[]) keys)[position];
+    } else {
+      return hash(((long[]) keys)[position]);
+    }
+  }
+
+
+  static private int hash(String key) {
+    return (key == null) ? 0 : key.hashCode();
+  }
+
+
+  static private int hash(long key) {
+    return (int) (key ^ (key >>> 32));
+  }
+
+
+  static private int mix(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -1,7 +1,6 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -25,7 +24,16 @@ public class DoubleDict {
   protected double[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<>();
+  private DictIndex indices = new DictIndex();
+
+  /**
+   * Spots left by keys removed since the last compact(), the same length
+   * as keys[], or null if nothing has been removed yet
+   */
+  private boolean[] gap;
+
+  /** Number of keys removed since the last compact(), still taking up a spot */
+  private int removed;
 
 
   public DoubleDict() {
@@ -64,7 +72,7 @@ public class DoubleDict {
       if (pieces.length == 2) {
         keys[count] = pieces[0];
         values[count] = PApplet.parseFloat(pieces[1]);
-        indices.put(pieces[0], count);
+        indices.put(keys, count);
         count++;
       }
     }
@@ -82,7 +90,7 @@ public class DoubleDict {
     this.values = values;
     count = keys.length;
     for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+      indices.put(keys, i);
     }
   }
 
@@ -103,7 +111,7 @@ public class DoubleDict {
     for (int i = 0; i < count; i++) {
       keys[i] = (String) pairs[i][0];
       values[i] = (Float) pairs[i][1];
-      indices.put(keys[i], i);
+      indices.put(keys, i);
     }
   }
 
@@ -116,7 +124,7 @@ public class DoubleDict {
     for (Map.Entry<String, Double> e : incoming.entrySet()) {
       keys[index] = e.getKey();
       values[index] = e.getValue();
-      indices.put(keys[index], index);
+      indices.put(keys, index);
       index++;
     }
   }
@@ -127,7 +135,7 @@ public class DoubleDict {
    * @brief Returns the number of key/value pairs
    */
   public int size() {
-    return count;
+    return count - removed;
   }
 
 
@@ -136,6 +144,7 @@ public class DoubleDict {
    * Helpful for situations like sorting and then grabbing the top 50 entries.
    */
   public void resize(int length) {
+    compact();
     if (length == count) return;
 
     if (length > count) {
@@ -164,15 +173,14 @@ public class DoubleDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<>();
+    removed = 0;
+    gap = null;
+    indices = new DictIndex();
   }
 
 
   private void resetIndices() {
-    indices = new HashMap<>(count);
-    for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
-    }
+    indices = new DictIndex(keys, count);
   }
 
 
@@ -205,18 +213,19 @@ public class DoubleDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeAt(index);
       }
 
       public Entry next() {
-        ++index;
-        Entry e = new Entry(keys[index], values[index]);
-        return e;
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return new Entry(keys[index], values[index]);
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return following(index) < count;
       }
     };
   }
@@ -226,11 +235,13 @@ public class DoubleDict {
 
 
   public String key(int index) {
+    compact();
     return keys[index];
   }
 
 
   protected void crop() {
+    compact();
     if (count != keys.length) {
       keys = PApplet.subset(keys, 0, count);
       values = PApplet.subset(values, 0, count);
@@ -255,16 +266,19 @@ public class DoubleDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeAt(index);
       }
 
       public String next() {
-        return key(++index);
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return keys[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return following(index) < count;
       }
     };
   }
@@ -283,6 +297,7 @@ public class DoubleDict {
 
 
   public String[] keyArray(String[] outgoing) {
+    compact();
     if (outgoing == null || outgoing.length != count) {
       outgoing = new String[count];
     }
@@ -292,6 +307,7 @@ public class DoubleDict {
 
 
   public double value(int index) {
+    compact();
     return values[index];
   }
 
@@ -316,16 +332,19 @@ public class DoubleDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeAt(index);
       }
 
       public Double next() {
-        return value(++index);
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return values[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return following(index) < count;
       }
     };
   }
@@ -349,6 +368,7 @@ public class DoubleDict {
    * size as the number of values, a new array will be allocated and returned.
    */
   public double[] valueArray(double[] array) {
+    compact();
     if (array == null || array.length != size()) {
       array = new double[count];
     }
@@ -364,7 +384,7 @@ public class DoubleDict {
    * @brief Return a value for the specified key
    */
   public double get(String key) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       throw new IllegalArgumentException("No key named '" + key + "'");
     }
@@ -373,7 +393,7 @@ public class DoubleDict {
 
 
   public double get(String key, double alternate) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       return alternate;
     }
@@ -386,7 +406,7 @@ public class DoubleDict {
    * @brief Create a new key/value pair or change the value of one
    */
   public void set(String key, double amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -396,11 +416,14 @@ public class DoubleDict {
 
 
   public void setIndex(int index, String key, double value) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
+    indices.remove(keys, index);
     keys[index] = key;
     values[index] = value;
+    indices.put(keys, index);
   }
 
 
@@ -409,7 +432,7 @@ public class DoubleDict {
    * @brief Check if a key is a part of the data structure
    */
   public boolean hasKey(String key) {
-    return index(key) != -1;
+    return indices.find(keys, key) != -1;
   }
 
 
@@ -418,7 +441,7 @@ public class DoubleDict {
    * @brief Add to a value
    */
   public void add(String key, double amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -441,7 +464,7 @@ public class DoubleDict {
    * @brief Multiply a value
    */
   public void mult(String key, double amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index != -1) {
       values[index] *= amount;
     }
@@ -453,7 +476,7 @@ public class DoubleDict {
    * @brief Divide a value
    */
   public void div(String key, double amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index != -1) {
       values[index] /= amount;
     }
@@ -475,6 +498,7 @@ public class DoubleDict {
    * @brief Return the smallest value
    */
   public int minIndex() {
+    compact();
     //checkMinMax("minIndex");
     if (count == 0) return -1;
 
@@ -530,6 +554,7 @@ public class DoubleDict {
    */
   // The index of the entry that has the max value. Reference above is incorrect.
   public int maxIndex() {
+    compact();
     //checkMinMax("maxIndex");
     if (count == 0) {
       return -1;
@@ -590,19 +615,25 @@ public class DoubleDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    compact();
+    return indices.find(keys, what);
   }
 
 
   protected void create(String what, double much) {
+    if (count == keys.length && removed * 4 >= count) {
+      compact();  // reuse the gaps before making more room
+    }
     if (count == keys.length) {
       keys = PApplet.expand(keys);
       values = PApplet.expand(values);
+      if (gap != null) {
+        gap = PApplet.expand(gap, keys.length);
+      }
     }
-    indices.put(what, Integer.valueOf(count));
     keys[count] = what;
     values[count] = much;
+    indices.put(keys, count);
     count++;
   }
 
@@ -612,44 +643,99 @@ public class DoubleDict {
    * @brief Remove a key/value pair
    */
   public double remove(String key) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       throw new NoSuchElementException("'" + key + "' not found");
     }
     double value = values[index];
-    removeIndex(index);
+    removeAt(index);
     return value;
   }
 
 
   public double removeIndex(int index) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
     double value = values[index];
-    indices.remove(keys[index]);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
-    count--;
-    keys[count] = null;
-    values[count] = 0;
+    removeAt(index);
     return value;
   }
 
 
+  /** Take out the key at this spot, leaving a gap until compact(). */
+  private void removeAt(int position) {
+    if (position < 0 || (gap != null && gap[position])) {
+      throw new IllegalStateException("Nothing to remove at " + position);
+    }
+    indices.remove(keys, position);
+    if (gap == null) {
+      gap = new boolean[keys.length];
+    }
+    gap[position] = true;
+    keys[position] = null;
+    values[position] = 0;
+    removed++;
+    // gaps at the end can go right away
+    while (count > 0 && gap[count-1]) {
+      count--;
+      removed--;
+      gap[count] = false;
+    }
+  }
+
+
+  /** Position of the next key after this one, skipping removed keys. */
+  private int following(int position) {
+    do {
+      position++;
+    } while (position < count && gap != null && gap[position]);
+    return position;
+  }
+
+
+  /**
+   * Close up the gaps left by removed keys, so that positions are in
+   * order again. Removing a key is quick because this only happens the
+   * next time something needs the position of an entry.
+   */
+  private void compact() {
+    if (removed != 0) {
+      int index = 0;
+      for (int i = 0; i < count; i++) {
+        if (!gap[i]) {
+          keys[index] = keys[i];
+          values[index] = values[i];
+          index++;
+        }
+        gap[i] = false;
+      }
+      for (int i = index; i < count; i++) {
+        keys[i] = null;
+        values[i] = 0;
+      }
+      count = index;
+      removed = 0;
+      resetIndices();
+    }
+  }
+
+
   public void swap(int a, int b) {
+    compact();
+    indices.swap(keys, a, b);
+    swapEntries(a, b);
+  }
+
+
+  private void swapEntries(int a, int b) {
     String tkey = keys[a];
     double tvalue = values[a];
     keys[a] = keys[b];
     values[a] = values[b];
     keys[b] = tkey;
     values[b] = tvalue;
-
-//    indices.put(keys[a], Integer.valueOf(a));
-//    indices.put(keys[b], Integer.valueOf(b));
   }
 
 
@@ -711,6 +797,7 @@ public class DoubleDict {
 
   protected void sortImpl(final boolean useKeys, final boolean reverse,
                           final boolean stable) {
+    compact();
     Sort s = new Sort() {
       @Override
       public int size() {
@@ -763,7 +850,7 @@ public class DoubleDict {
 
       @Override
       public void swap(int a, int b) {
-        DoubleDict.this.swap(a, b);
+        swapEntries(a, b);
       }
     };
     s.run();
@@ -791,18 +878,18 @@ public class DoubleDict {
 
   /** Returns a duplicate copy of this object. */
   public DoubleDict copy() {
+    compact();
     DoubleDict outgoing = new DoubleDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
+    outgoing.indices = new DictIndex(outgoing.keys, count);
     outgoing.count = count;
     return outgoing;
   }
 
 
   public void print() {
+    compact();
     for (int i = 0; i < size(); i++) {
       System.out.println(keys[i] + " = " + values[i]);
     }
@@ -824,6 +911,7 @@ public class DoubleDict {
    * @param writer
    */
   public void write(PrintWriter writer) {
+    compact();
     for (int i = 0; i < count; i++) {
       writer.println(keys[i] + "\t" + values[i]);
     }
@@ -831,10 +919,30 @@ public class DoubleDict {
   }
 
 
+  /**
+   * Save the entries to a binary file. Loading it with loadBinary() is
+   * a bulk copy, much faster than parsing the text written by save().
+   */
+  public void saveBinary(File file) throws IOException {
+    compact();
+    BinaryArrays.save(file, count, keys, values);
+  }
+
+
+  /**
+   * Load a dictionary written by saveBinary().
+   */
+  static public DoubleDict loadBinary(File file) throws IOException {
+    Object[] arrays = BinaryArrays.load(file, Table.STRING, Table.DOUBLE);
+    return new DoubleDict((String[]) arrays[0], (double[]) arrays[1]);
+  }
+
+
   /**
    * Return this dictionary as a String in JSON format.
    */
   public String toJSON() {
+    compact();
     StringList items = new StringList();
     for (int i = 0; i < count; i++) {
       items.append(JSONObject.quote(keys[i])+ ": " + values[i]);
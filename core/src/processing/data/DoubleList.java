@@ -1,10 +1,12 @@
 package processing.data;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
 
 import processing.core.PApplet;
 
@@ -496,23 +498,34 @@ public class DoubleList implements Iterable<Double> {
 
   public int minIndex() {
     checkMinMax("minIndex");
-    double m;
-    int mi = -1;
-    for (int i = 0; i < count; i++) {
-      // find one good value to start
-      if (data[i] == data[i]) {
-        m = data[i];
-        mi = i;
-
-        // calculate the rest
-        for (int j = i+1; j < count; j++) {
-          double d = data[j];
-          if (!Double.isNaN(d) && (d < m)) {
-            m = data[j];
-            mi = j;
+    final double[] data = this.data;
+    final int[] found = new int[ListChunks.count(count)];
+    ListChunks.run(count, found.length, (chunk, start, stop) -> {
+      int mi = -1;
+      for (int i = start; i < stop; i++) {
+        // find one good value to start
+        if (data[i] == data[i]) {
+          double m = data[i];
+          mi = i;
+
+          // calculate the rest
+          for (int j = i+1; j < stop; j++) {
+            double d = data[j];
+            if (!Double.isNaN(d) && (d < m)) {
+              m = data[j];
+              mi = j;
+            }
           }
+          break;
         }
-        break;
+      }
+      found[chunk] = mi;
+    });
+    // Will still return -1 if there are 1 or more entries, and they're all NaN
+    int mi = -1;
+    for (int index : found) {
+      if (index != -1 && (mi == -1 || data[index] < data[mi])) {
+        mi = index;
       }
     }
     return mi;
@@ -532,23 +545,34 @@ public class DoubleList implements Iterable<Double> {
 
   public int maxIndex() {
     checkMinMax("maxIndex");
-    double m;
-    int mi = -1;
-    for (int i = 0; i < count; i++) {
-      // find one good value to start
-      if (data[i] == data[i]) {
-        m = data[i];
-        mi = i;
-
-        // calculate the rest
-        for (int j = i+1; j < count; j++) {
-          double d = data[j];
-          if (!Double.isNaN(d) && (d > m)) {
-            m = data[j];
-            mi = j;
+    final double[] data = this.data;
+    final int[] found = new int[ListChunks.count(count)];
+    ListChunks.run(count, found.length, (chunk, start, stop) -> {
+      int mi = -1;
+      for (int i = start; i < stop; i++) {
+        // find one good value to start
+        if (data[i] == data[i]) {
+          double m = data[i];
+          mi = i;
+
+          // calculate the rest
+          for (int j = i+1; j < stop; j++) {
+            double d = data[j];
+            if (!Double.isNaN(d) && (d > m)) {
+              m = data[j];
+              mi = j;
+            }
           }
+          break;
         }
-        break;
+      }
+      found[chunk] = mi;
+    });
+    // Will still return -1 if there are 1 or more entries, and they're all NaN
+    int mi = -1;
+    for (int index : found) {
+      if (index != -1 && (mi == -1 || data[index] > data[mi])) {
+        mi = index;
       }
     }
     return mi;
@@ -556,14 +580,139 @@ public class DoubleList implements Iterable<Double> {
 
 
   public double sum() {
+    final double[] data = this.data;
+    final double[] sums = new double[ListChunks.count(count)];
+    ListChunks.run(count, sums.length, (chunk, start, stop) -> {
+      double sum = 0;
+      for (int i = start; i < stop; i++) {
+        sum += data[i];
+      }
+      sums[chunk] = sum;
+    });
     double sum = 0;
-    for (int i = 0; i < count; i++) {
-      sum += data[i];
+    for (double s : sums) {
+      sum += s;
     }
     return sum;
   }
 
 
+  /**
+   * Replace each value with the sum of it and all the values before it,
+   * so the last value becomes the sum of the list.
+   */
+  public void cumulativeSum() {
+    final double[] data = this.data;
+    final int chunks = ListChunks.count(count);
+    final double[] totals = new double[chunks];
+    // running sums inside each chunk
+    ListChunks.run(count, chunks, (chunk, start, stop) -> {
+      double sum = 0;
+      for (int i = start; i < stop; i++) {
+        sum += data[i];
+        data[i] = sum;
+      }
+      totals[chunk] = sum;
+    });
+    if (chunks > 1) {
+      // then add everything from the chunks before
+      final double[] offsets = new double[chunks];
+      for (int i = 1; i < chunks; i++) {
+        offsets[i] = offsets[i-1] + totals[i-1];
+      }
+      ListChunks.run(count, chunks, (chunk, start, stop) -> {
+        double offset = offsets[chunk];
+        if (offset != 0) {
+          for (int i = start; i < stop; i++) {
+            data[i] += offset;
+          }
+        }
+      });
+    }
+  }
+
+
+  /**
+   * Replace each value with the result of a function, for instance
+   * <tt>list.map(v -&gt; v * 2)</tt> to double everything. On a long list,
+   * the function is called from several threads at once (and not in order).
+   */
+  public void map(final DoubleUnaryOperator function) {
+    final double[] data = this.data;
+    ListChunks.run(count, ListChunks.count(count), (chunk, start, stop) -> {
+      for (int i = start; i < stop; i++) {
+        data[i] = function.applyAsDouble(data[i]);
+      }
+    });
+  }
+
+
+  /**
+   * Count the values in each of a number of equal ranges, from min() to
+   * max(). Returns a list with the count for each range. NaN values are
+   * not counted.
+   */
+  public IntList histogram(int bins) {
+    return histogram(bins, min(), max());
+  }
+
+
+  /**
+   * Count the values in each of a number of equal ranges from low to high,
+   * leaving out NaN and anything smaller than low or larger than high.
+   * The high value itself goes in the last range.
+   */
+  public IntList histogram(final int bins, final double low, final double high) {
+    if (bins < 1) {
+      throw new IllegalArgumentException("histogram() needs at least one bin");
+    }
+    final double[] data = this.data;
+    final int chunks = ListChunks.count(count);
+    final int[][] tallies = new int[chunks][bins];
+    final double scale = (high > low) ? bins / (high - low) : 0;
+    ListChunks.run(count, chunks, (chunk, start, stop) -> {
+      int[] tally = tallies[chunk];
+      for (int i = start; i < stop; i++) {
+        double value = data[i];
+        if (value >= low && value <= high) {
+          int bin = (int) ((value - low) * scale);
+          tally[bin < bins ? bin : bins - 1]++;
+        }
+      }
+    });
+    int[] outgoing = tallies[0];
+    for (int c = 1; c < chunks; c++) {
+      for (int i = 0; i < bins; i++) {
+        outgoing[i] += tallies[c][i];
+      }
+    }
+    return new IntList(outgoing);
+  }
+
+
+  /**
+   * The value that this percentage (0 to 100) of the list is at or below,
+   * for instance 50 for the median. Between two values, the result is
+   * interpolated. NaN values are left out, and if there's nothing else,
+   * the result is NaN. Uses quickselect (no sort) on a copy of the values,
+   * so the order of the list doesn't change.
+   */
+  public double percentile(double percentile) {
+    checkMinMax("percentile");
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile() must be between 0 and 100");
+    }
+    double[] values = new double[count];
+    int valid = 0;
+    for (int i = 0; i < count; i++) {
+      if (data[i] == data[i]) {
+        values[valid++] = data[i];
+      }
+    }
+    return TableGroups.percentile(values, 0, valid, percentile);
+  }
+
+
   /**
    * Sorts the array in place.
    *
@@ -571,7 +720,11 @@ public class DoubleList implements Iterable<Double> {
    * @brief Sorts an array, lowest to highest
    */
   public void sort() {
-    Arrays.sort(data, 0, count);
+    if (ListChunks.count(count) > 1) {
+      Arrays.parallelSort(data, 0, count);
+    } else {
+      Arrays.sort(data, 0, count);
+    }
   }
 
 
@@ -582,6 +735,20 @@ public class DoubleList implements Iterable<Double> {
    * @brief Reverse sort, orders values from highest to lowest
    */
   public void sortReverse() {
+    if (ListChunks.count(count) > 1) {
+      Arrays.parallelSort(data, 0, count);
+      // NaN values sort to the end, leave them there and reverse the rest
+      int right = count - 1;
+      while (right >= 0 && data[right] != data[right]) {
+        right--;
+      }
+      for (int i = 0; i < right; i++, right--) {
+        double temp = data[i];
+        data[i] = data[right];
+        data[right] = temp;
+      }
+      return;
+    }
     new Sort() {
       @Override
       public int size() {
@@ -862,6 +1029,26 @@ public class DoubleList implements Iterable<Double> {
   }
 
 
+  /**
+   * Save the values to a binary file. Loading it with loadBinary() is
+   * a bulk copy, much faster than parsing the text written by save().
+   */
+  public void saveBinary(File file) throws IOException {
+    BinaryArrays.save(file, count, data);
+  }
+
+
+  /**
+   * Load a list written by saveBinary().
+   */
+  static public DoubleList loadBinary(File file) throws IOException {
+    DoubleList outgoing = new DoubleList(0);
+    outgoing.data = (double[]) BinaryArrays.load(file, Table.DOUBLE)[0];
+    outgoing.count = outgoing.data.length;
+    return outgoing;
+  }
+
+
   /**
    * Return this dictionary as a String in JSON format.
    */
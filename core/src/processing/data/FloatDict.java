@@ -1,7 +1,6 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -27,7 +26,16 @@ public class FloatDict {
   protected float[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<>();
+  private DictIndex indices = new DictIndex();
+
+  /**
+   * Spots left by keys removed since the last compact(), the same length
+   * as keys[], or null if nothing has been removed yet
+   */
+  private boolean[] gap;
+
+  /** Number of keys removed since the last compact(), still taking up a spot */
+  private int removed;
 
 
   public FloatDict() {
@@ -66,7 +74,7 @@ public class FloatDict {
       if (pieces.length == 2) {
         keys[count] = pieces[0];
         values[count] = PApplet.parseFloat(pieces[1]);
-        indices.put(pieces[0], count);
+        indices.put(keys, count);
         count++;
       }
     }
@@ -84,7 +92,7 @@ public class FloatDict {
     this.values = values;
     count = keys.length;
     for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+      indices.put(keys, i);
     }
   }
 
@@ -105,7 +113,7 @@ public class FloatDict {
     for (int i = 0; i < count; i++) {
       keys[i] = (String) pairs[i][0];
       values[i] = (Float) pairs[i][1];
-      indices.put(keys[i], i);
+      indices.put(keys, i);
     }
   }
 
@@ -117,7 +125,7 @@ public class FloatDict {
    * @webBrief Returns the number of key/value pairs
    */
   public int size() {
-    return count;
+    return count - removed;
   }
 
 
@@ -126,6 +134,7 @@ public class FloatDict {
    * Helpful for situations like sorting and then grabbing the top 50 entries.
    */
   public void resize(int length) {
+    compact();
     if (length == count) return;
 
     if (length > count) {
@@ -154,15 +163,14 @@ public class FloatDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<>();
+    removed = 0;
+    gap = null;
+    indices = new DictIndex();
   }
 
 
   private void resetIndices() {
-    indices = new HashMap<>(count);
-    for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
-    }
+    indices = new DictIndex(keys, count);
   }
 
 
@@ -195,18 +203,19 @@ public class FloatDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeAt(index);
       }
 
       public Entry next() {
-        ++index;
-        Entry e = new Entry(keys[index], values[index]);
-        return e;
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return new Entry(keys[index], values[index]);
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return following(index) < count;
       }
     };
   }
@@ -216,11 +225,13 @@ public class FloatDict {
 
 
   public String key(int index) {
+    compact();
     return keys[index];
   }
 
 
   protected void crop() {
+    compact();
     if (count != keys.length) {
       keys = PApplet.subset(keys, 0, count);
       values = PApplet.subset(values, 0, count);
@@ -250,16 +261,19 @@ public class FloatDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeAt(index);
       }
 
       public String next() {
-        return key(++index);
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return keys[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return following(index) < count;
       }
     };
   }
@@ -279,6 +293,7 @@ public class FloatDict {
 
 
   public String[] keyArray(String[] outgoing) {
+    compact();
     if (outgoing == null || outgoing.length != count) {
       outgoing = new String[count];
     }
@@ -288,6 +303,7 @@ public class FloatDict {
 
 
   public float value(int index) {
+    compact();
     return values[index];
   }
 
@@ -314,16 +330,19 @@ public class FloatDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeAt(index);
       }
 
       public Float next() {
-        return value(++index);
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return values[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return following(index) < count;
       }
     };
   }
@@ -351,6 +370,7 @@ public class FloatDict {
    * size as the number of values, a new array will be allocated and returned.
    */
   public float[] valueArray(float[] array) {
+    compact();
     if (array == null || array.length != size()) {
       array = new float[count];
     }
@@ -366,7 +386,7 @@ public class FloatDict {
    * @webBrief Return a value for the specified key
    */
   public float get(String key) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       throw new IllegalArgumentException("No key named '" + key + "'");
     }
@@ -375,7 +395,7 @@ public class FloatDict {
 
 
   public float get(String key, float alternate) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       return alternate;
     }
@@ -390,7 +410,7 @@ public class FloatDict {
    * @webBrief Create a new key/value pair or change the value of one
    */
   public void set(String key, float amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -400,11 +420,14 @@ public class FloatDict {
 
 
   public void setIndex(int index, String key, float value) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
+    indices.remove(keys, index);
     keys[index] = key;
     values[index] = value;
+    indices.put(keys, index);
   }
 
 
@@ -415,7 +438,7 @@ public class FloatDict {
    * @webBrief Check if a key is a part of the data structure
    */
   public boolean hasKey(String key) {
-    return index(key) != -1;
+    return indices.find(keys, key) != -1;
   }
 
 
@@ -427,7 +450,7 @@ public class FloatDict {
    * @webBrief Add to a value
    */
   public void add(String key, float amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -454,7 +477,7 @@ public class FloatDict {
    * @webBrief Multiply a value
    */
   public void mult(String key, float amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index != -1) {
       values[index] *= amount;
     }
@@ -468,7 +491,7 @@ public class FloatDict {
    * @webBrief Divide a value
    */
   public void div(String key, float amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index != -1) {
       values[index] /= amount;
     }
@@ -492,6 +515,7 @@ public class FloatDict {
    * @webBrief Return the smallest value
    */
   public int minIndex() {
+    compact();
     //checkMinMax("minIndex");
     if (count == 0) return -1;
 
@@ -549,6 +573,7 @@ public class FloatDict {
    */
   // The index of the entry that has the max value. Reference above is incorrect.
   public int maxIndex() {
+    compact();
     //checkMinMax("maxIndex");
     if (count == 0) {
       return -1;
@@ -621,19 +646,25 @@ public class FloatDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    compact();
+    return indices.find(keys, what);
   }
 
 
   protected void create(String what, float much) {
+    if (count == keys.length && removed * 4 >= count) {
+      compact();  // reuse the gaps before making more room
+    }
     if (count == keys.length) {
       keys = PApplet.expand(keys);
       values = PApplet.expand(values);
+      if (gap != null) {
+        gap = PApplet.expand(gap, keys.length);
+      }
     }
-    indices.put(what, Integer.valueOf(count));
     keys[count] = what;
     values[count] = much;
+    indices.put(keys, count);
     count++;
   }
 
@@ -645,44 +676,99 @@ public class FloatDict {
    * @webBrief Remove a key/value pair
    */
   public float remove(String key) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       throw new NoSuchElementException("'" + key + "' not found");
     }
     float value = values[index];
-    removeIndex(index);
+    removeAt(index);
     return value;
   }
 
 
   public float removeIndex(int index) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
     float value = values[index];
-    indices.remove(keys[index]);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
-    count--;
-    keys[count] = null;
-    values[count] = 0;
+    removeAt(index);
     return value;
   }
 
 
+  /** Take out the key at this spot, leaving a gap until compact(). */
+  private void removeAt(int position) {
+    if (position < 0 || (gap != null && gap[position])) {
+      throw new IllegalStateException("Nothing to remove at " + position);
+    }
+    indices.remove(keys, position);
+    if (gap == null) {
+      gap = new boolean[keys.length];
+    }
+    gap[position] = true;
+    keys[position] = null;
+    values[position] = 0;
+    removed++;
+    // gaps at the end can go right away
+    while (count > 0 && gap[count-1]) {
+      count--;
+      removed--;
+      gap[count] = false;
+    }
+  }
+
+
+  /** Position of the next key after this one, skipping removed keys. */
+  private int following(int position) {
+    do {
+      position++;
+    } while (position < count && gap != null && gap[position]);
+    return position;
+  }
+
+
+  /**
+   * Close up the gaps left by removed keys, so that positions are in
+   * order again. Removing a key is quick because this only happens the
+   * next time something needs the position of an entry.
+   */
+  private void compact() {
+    if (removed != 0) {
+      int index = 0;
+      for (int i = 0; i < count; i++) {
+        if (!gap[i]) {
+          keys[index] = keys[i];
+          values[index] = values[i];
+          index++;
+        }
+        gap[i] = false;
+      }
+      for (int i = index; i < count; i++) {
+        keys[i] = null;
+        values[i] = 0;
+      }
+      count = index;
+      removed = 0;
+      resetIndices();
+    }
+  }
+
+
   public void swap(int a, int b) {
+    compact();
+    indices.swap(keys, a, b);
+    swapEntries(a, b);
+  }
+
+
+  private void swapEntries(int a, int b) {
     String tkey = keys[a];
     float tvalue = values[a];
     keys[a] = keys[b];
     values[a] = values[b];
     keys[b] = tkey;
     values[b] = tvalue;
-
-//    indices.put(keys[a], Integer.valueOf(a));
-//    indices.put(keys[b], Integer.valueOf(b));
   }
 
 
@@ -749,6 +835,7 @@ public class FloatDict {
 
   protected void sortImpl(final boolean useKeys, final boolean reverse,
                           final boolean stable) {
+    compact();
     Sort s = new Sort() {
       @Override
       public int size() {
@@ -801,7 +888,7 @@ public class FloatDict {
 
       @Override
       public void swap(int a, int b) {
-        FloatDict.this.swap(a, b);
+        swapEntries(a, b);
       }
     };
     s.run();
@@ -829,18 +916,18 @@ public class FloatDict {
 
   /** Returns a duplicate copy of this object. */
   public FloatDict copy() {
+    compact();
     FloatDict outgoing = new FloatDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
+    outgoing.indices = new DictIndex(outgoing.keys, count);
     outgoing.count = count;
     return outgoing;
   }
 
 
   public void print() {
+    compact();
     for (int i = 0; i < size(); i++) {
       System.out.println(keys[i] + " = " + values[i]);
     }
@@ -862,6 +949,7 @@ public class FloatDict {
    * @param writer
    */
   public void write(PrintWriter writer) {
+    compact();
     for (int i = 0; i < count; i++) {
       writer.println(keys[i] + "\t" + values[i]);
     }
@@ -869,10 +957,30 @@ public class FloatDict {
   }
 
 
+  /**
+   * Save the entries to a binary file. Loading it with loadBinary() is
+   * a bulk copy, much faster than parsing the text written by save().
+   */
+  public void saveBinary(File file) throws IOException {
+    compact();
+    BinaryArrays.save(file, count, keys, values);
+  }
+
+
+  /**
+   * Load a dictionary written by saveBinary().
+   */
+  static public FloatDict loadBinary(File file) throws IOException {
+    Object[] arrays = BinaryArrays.load(file, Table.STRING, Table.FLOAT);
+    return new FloatDict((String[]) arrays[0], (float[]) arrays[1]);
+  }
+
+
   /**
    * Return this dictionary as a String in JSON format.
    */
   public String toJSON() {
+    compact();
     StringList items = new StringList();
     for (int i = 0; i < count; i++) {
       items.append(JSONObject.quote(keys[i])+ ": " + values[i]);
@@ -1,10 +1,12 @@
 package processing.data;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
 
 import processing.core.PApplet;
 
@@ -502,23 +504,34 @@ public class FloatList implements Iterable<Float> {
 
   public int minIndex() {
     checkMinMax("minIndex");
-    float m;
-    int mi = -1;
-    for (int i = 0; i < count; i++) {
-      // find one good value to start
-      if (data[i] == data[i]) {
-        m = data[i];
-        mi = i;
-
-        // calculate the rest
-        for (int j = i+1; j < count; j++) {
-          float d = data[j];
-          if (!Float.isNaN(d) && (d < m)) {
-            m = data[j];
-            mi = j;
+    final float[] data = this.data;
+    final int[] found = new int[ListChunks.count(count)];
+    ListChunks.run(count, found.length, (chunk, start, stop) -> {
+      int mi = -1;
+      for (int i = start; i < stop; i++) {
+        // find one good value to start
+        if (data[i] == data[i]) {
+          float m = data[i];
+          mi = i;
+
+          // calculate the rest
+          for (int j = i+1; j < stop; j++) {
+            float d = data[j];
+            if (!Float.isNaN(d) && (d < m)) {
+              m = data[j];
+              mi = j;
+            }
           }
+          break;
         }
-        break;
+      }
+      found[chunk] = mi;
+    });
+    // Will still return -1 if there are 1 or more entries, and they're all NaN
+    int mi = -1;
+    for (int index : found) {
+      if (index != -1 && (mi == -1 || data[index] < data[mi])) {
+        mi = index;
       }
     }
     return mi;
@@ -540,23 +553,34 @@ public class FloatList implements Iterable<Float> {
 
   public int maxIndex() {
     checkMinMax("maxIndex");
-    float m;
-    int mi = -1;
-    for (int i = 0; i < count; i++) {
-      // find one good value to start
-      if (data[i] == data[i]) {
-        m = data[i];
-        mi = i;
-
-        // calculate the rest
-        for (int j = i+1; j < count; j++) {
-          float d = data[j];
-          if (!Float.isNaN(d) && (d > m)) {
-            m = data[j];
-            mi = j;
+    final float[] data = this.data;
+    final int[] found = new int[ListChunks.count(count)];
+    ListChunks.run(count, found.length, (chunk, start, stop) -> {
+      int mi = -1;
+      for (int i = start; i < stop; i++) {
+        // find one good value to start
+        if (data[i] == data[i]) {
+          float m = data[i];
+          mi = i;
+
+          // calculate the rest
+          for (int j = i+1; j < stop; j++) {
+            float d = data[j];
+            if (!Float.isNaN(d) && (d > m)) {
+              m = data[j];
+              mi = j;
+            }
           }
+          break;
         }
-        break;
+      }
+      found[chunk] = mi;
+    });
+    // Will still return -1 if there are 1 or more entries, and they're all NaN
+    int mi = -1;
+    for (int index : found) {
+      if (index != -1 && (mi == -1 || data[index] > data[mi])) {
+        mi = index;
       }
     }
     return mi;
@@ -576,14 +600,143 @@ public class FloatList implements Iterable<Float> {
 
 
   public double sumDouble() {
+    final float[] data = this.data;
+    final double[] sums = new double[ListChunks.count(count)];
+    ListChunks.run(count, sums.length, (chunk, start, stop) -> {
+      double sum = 0;
+      for (int i = start; i < stop; i++) {
+        sum += data[i];
+      }
+      sums[chunk] = sum;
+    });
     double sum = 0;
-    for (int i = 0; i < count; i++) {
-      sum += data[i];
+    for (double s : sums) {
+      sum += s;
     }
     return sum;
   }
 
 
+  /**
+   * Replace each value with the sum of it and all the values before it,
+   * so the last value becomes the sum of the list.
+   */
+  public void cumulativeSum() {
+    final float[] data = this.data;
+    final int chunks = ListChunks.count(count);
+    if (chunks == 1) {
+      double sum = 0;
+      for (int i = 0; i < count; i++) {
+        sum += data[i];
+        data[i] = (float) sum;
+      }
+      return;
+    }
+    // add up each chunk first, without rounding anything to float yet
+    final double[] totals = new double[chunks];
+    ListChunks.run(count, chunks, (chunk, start, stop) -> {
+      double sum = 0;
+      for (int i = start; i < stop; i++) {
+        sum += data[i];
+      }
+      totals[chunk] = sum;
+    });
+    final double[] offsets = new double[chunks];
+    for (int i = 1; i < chunks; i++) {
+      offsets[i] = offsets[i-1] + totals[i-1];
+    }
+    // then the running sums, starting from everything in the chunks before
+    ListChunks.run(count, chunks, (chunk, start, stop) -> {
+      double sum = offsets[chunk];
+      for (int i = start; i < stop; i++) {
+        sum += data[i];
+        data[i] = (float) sum;
+      }
+    });
+  }
+
+
+  /**
+   * Replace each value with the result of a function, for instance
+   * <tt>list.map(v -&gt; v * 2)</tt> to double everything. On a long list,
+   * the function is called from several threads at once (and not in order).
+   */
+  public void map(final DoubleUnaryOperator function) {
+    final float[] data = this.data;
+    ListChunks.run(count, ListChunks.count(count), (chunk, start, stop) -> {
+      for (int i = start; i < stop; i++) {
+        data[i] = (float) function.applyAsDouble(data[i]);
+      }
+    });
+  }
+
+
+  /**
+   * Count the values in each of a number of equal ranges, from min() to
+   * max(). Returns a list with the count for each range. NaN values are
+   * not counted.
+   */
+  public IntList histogram(int bins) {
+    return histogram(bins, min(), max());
+  }
+
+
+  /**
+   * Count the values in each of a number of equal ranges from low to high,
+   * leaving out NaN and anything smaller than low or larger than high.
+   * The high value itself goes in the last range.
+   */
+  public IntList histogram(final int bins, final float low, final float high) {
+    if (bins < 1) {
+      throw new IllegalArgumentException("histogram() needs at least one bin");
+    }
+    final float[] data = this.data;
+    final int chunks = ListChunks.count(count);
+    final int[][] tallies = new int[chunks][bins];
+    final double scale = (high > low) ? bins / ((double) high - low) : 0;
+    ListChunks.run(count, chunks, (chunk, start, stop) -> {
+      int[] tally = tallies[chunk];
+      for (int i = start; i < stop; i++) {
+        float value = data[i];
+        if (value >= low && value <= high) {
+          int bin = (int) (((double) value - low) * scale);
+          tally[bin < bins ? bin : bins - 1]++;
+        }
+      }
+    });
+    int[] outgoing = tallies[0];
+    for (int c = 1; c < chunks; c++) {
+      for (int i = 0; i < bins; i++) {
+        outgoing[i] += tallies[c][i];
+      }
+    }
+    return new IntList(outgoing);
+  }
+
+
+  /**
+   * The value that this percentage (0 to 100) of the list is at or below,
+   * for instance 50 for the median. Between two values, the result is
+   * interpolated. NaN values are left out, and if there's nothing else,
+   * the result is NaN. Uses quickselect (no sort) on a copy of the values,
+   * so the order of the list doesn't change.
+   */
+  public float percentile(double percentile) {
+    checkMinMax("percentile");
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile() must be between 0 and 100");
+    }
+    double[] values = new double[count];
+    int valid = 0;
+    for (int i = 0; i < count; i++) {
+      if (data[i] == data[i]) {
+        values[valid++] = data[i];
+      }
+    }
+    return (float) TableGroups.percentile(values, 0, valid, percentile);
+  }
+
+
   /**
    * Sorts an array, lowest to highest
    *
@@ -591,7 +744,11 @@ public class FloatList implements Iterable<Float> {
    * @webBrief Sorts an array, lowest to highest
    */
   public void sort() {
-    Arrays.sort(data, 0, count);
+    if (ListChunks.count(count) > 1) {
+      Arrays.parallelSort(data, 0, count);
+    } else {
+      Arrays.sort(data, 0, count);
+    }
   }
 
 
@@ -603,6 +760,20 @@ public class FloatList implements Iterable<Float> {
    * @webBrief A sort in reverse
    */
   public void sortReverse() {
+    if (ListChunks.count(count) > 1) {
+      Arrays.parallelSort(data, 0, count);
+      // NaN values sort to the end, leave them there and reverse the rest
+      int right = count - 1;
+      while (right >= 0 && data[right] != data[right]) {
+        right--;
+      }
+      for (int i = 0; i < right; i++, right--) {
+        float temp = data[i];
+        data[i] = data[right];
+        data[right] = temp;
+      }
+      return;
+    }
     new Sort() {
       @Override
       public int size() {
@@ -883,6 +1054,26 @@ public class FloatList implements Iterable<Float> {
   }
 
 
+  /**
+   * Save the values to a binary file. Loading it with loadBinary() is
+   * a bulk copy, much faster than parsing the text written by save().
+   */
+  public void saveBinary(File file) throws IOException {
+    BinaryArrays.save(file, count, data);
+  }
+
+
+  /**
+   * Load a list written by saveBinary().
+   */
+  static public FloatList loadBinary(File file) throws IOException {
+    FloatList outgoing = new FloatList(0);
+    outgoing.data = (float[]) BinaryArrays.load(file, Table.FLOAT)[0];
+    outgoing.count = outgoing.data.length;
+    return outgoing;
+  }
+
+
   /**
    * Return this dictionary as a String in JSON format.
    */
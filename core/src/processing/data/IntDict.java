@@ -1,7 +1,6 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -26,7 +25,16 @@ public class IntDict {
   protected int[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<>();
+  private DictIndex indices = new DictIndex();
+
+  /**
+   * Spots left by keys removed since the last compact(), the same length
+   * as keys[], or null if nothing has been removed yet
+   */
+  private boolean[] gap;
+
+  /** Number of keys removed since the last compact(), still taking up a spot */
+  private int removed;
 
 
   public IntDict() {
@@ -65,7 +73,7 @@ public class IntDict {
       if (pieces.length == 2) {
         keys[count] = pieces[0];
         values[count] = PApplet.parseInt(pieces[1]);
-        indices.put(pieces[0], count);
+        indices.put(keys, count);
         count++;
       }
     }
@@ -82,7 +90,7 @@ public class IntDict {
     this.values = values;
     count = keys.length;
     for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+      indices.put(keys, i);
     }
   }
 
@@ -103,7 +111,7 @@ public class IntDict {
     for (int i = 0; i < count; i++) {
       keys[i] = (String) pairs[i][0];
       values[i] = (Integer) pairs[i][1];
-      indices.put(keys[i], i);
+      indices.put(keys, i);
     }
   }
 
@@ -115,7 +123,7 @@ public class IntDict {
    * @webBrief Returns the number of key/value pairs
    */
   public int size() {
-    return count;
+    return count - removed;
   }
 
 
@@ -124,6 +132,7 @@ public class IntDict {
    * Helpful for situations like sorting and then grabbing the top 50 entries.
    */
   public void resize(int length) {
+    compact();
     if (length > count) {
       throw new IllegalArgumentException("resize() can only be used to shrink the dictionary");
     }
@@ -150,15 +159,14 @@ public class IntDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<>();
+    removed = 0;
+    gap = null;
+    indices = new DictIndex();
   }
 
 
   private void resetIndices() {
-    indices = new HashMap<>(count);
-    for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
-    }
+    indices = new DictIndex(keys, count);
   }
 
 
@@ -191,18 +199,19 @@ public class IntDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeAt(index);
       }
 
       public Entry next() {
-        ++index;
-        Entry e = new Entry(keys[index], values[index]);
-        return e;
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return new Entry(keys[index], values[index]);
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return following(index) < count;
       }
     };
   }
@@ -212,11 +221,13 @@ public class IntDict {
 
 
   public String key(int index) {
+    compact();
     return keys[index];
   }
 
 
   protected void crop() {
+    compact();
     if (count != keys.length) {
       keys = PApplet.subset(keys, 0, count);
       values = PApplet.subset(values, 0, count);
@@ -247,16 +258,19 @@ public class IntDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeAt(index);
       }
 
       public String next() {
-        return key(++index);
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return keys[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return following(index) < count;
       }
     };
   }
@@ -276,6 +290,7 @@ public class IntDict {
 
 
   public String[] keyArray(String[] outgoing) {
+    compact();
     if (outgoing == null || outgoing.length != count) {
       outgoing = new String[count];
     }
@@ -285,6 +300,7 @@ public class IntDict {
 
 
   public int value(int index) {
+    compact();
     return values[index];
   }
 
@@ -311,16 +327,19 @@ public class IntDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeAt(index);
       }
 
       public Integer next() {
-        return value(++index);
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return values[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return following(index) < count;
       }
     };
   }
@@ -350,6 +369,7 @@ public class IntDict {
    * @param array values to copy into the array
    */
   public int[] valueArray(int[] array) {
+    compact();
     if (array == null || array.length != size()) {
       array = new int[count];
     }
@@ -365,7 +385,7 @@ public class IntDict {
    * @webBrief Return a value for the specified key
    */
   public int get(String key) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       throw new IllegalArgumentException("No key named '" + key + "'");
     }
@@ -374,7 +394,7 @@ public class IntDict {
 
 
   public int get(String key, int alternate) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) return alternate;
     return values[index];
   }
@@ -387,7 +407,7 @@ public class IntDict {
    * @webBrief Create a new key/value pair or change the value of one
    */
   public void set(String key, int amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -397,11 +417,14 @@ public class IntDict {
 
 
   public void setIndex(int index, String key, int value) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
+    indices.remove(keys, index);
     keys[index] = key;
     values[index] = value;
+    indices.put(keys, index);
   }
 
 
@@ -412,7 +435,7 @@ public class IntDict {
    * @webBrief Check if a key is a part of the data structure
    */
   public boolean hasKey(String key) {
-    return index(key) != -1;
+    return indices.find(keys, key) != -1;
   }
 
 
@@ -434,7 +457,9 @@ public class IntDict {
    */
   public void increment(IntDict dict) {
     for (int i = 0; i < dict.count; i++) {
-      add(dict.key(i), dict.value(i));
+      if (dict.gap == null || !dict.gap[i]) {  // skip removed keys
+        add(dict.keys[i], dict.values[i]);
+      }
     }
   }
 
@@ -447,7 +472,7 @@ public class IntDict {
    * @webBrief Add to a value
    */
   public void add(String key, int amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -474,7 +499,7 @@ public class IntDict {
    * @webBrief Multiply a value
    */
   public void mult(String key, int amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index != -1) {
       values[index] *= amount;
     }
@@ -488,7 +513,7 @@ public class IntDict {
    * @webBrief Divide a value
    */
   public void div(String key, int amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index != -1) {
       values[index] /= amount;
     }
@@ -507,6 +532,7 @@ public class IntDict {
 
   // return the index of the minimum value
   public int minIndex() {
+    compact();
     //checkMinMax("minIndex");
     if (count == 0) return -1;
 
@@ -542,6 +568,7 @@ public class IntDict {
 
   // return the index of the max value
   public int maxIndex() {
+    compact();
     //checkMinMax("maxIndex");
     if (count == 0) {
       return -1;
@@ -598,19 +625,25 @@ public class IntDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    compact();
+    return indices.find(keys, what);
   }
 
 
   protected void create(String what, int much) {
+    if (count == keys.length && removed * 4 >= count) {
+      compact();  // reuse the gaps before making more room
+    }
     if (count == keys.length) {
       keys = PApplet.expand(keys);
       values = PApplet.expand(values);
+      if (gap != null) {
+        gap = PApplet.expand(gap, keys.length);
+      }
     }
-    indices.put(what, Integer.valueOf(count));
     keys[count] = what;
     values[count] = much;
+    indices.put(keys, count);
     count++;
   }
 
@@ -621,44 +654,99 @@ public class IntDict {
    * @webBrief Remove a key/value pair
    */
   public int remove(String key) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       throw new NoSuchElementException("'" + key + "' not found");
     }
     int value = values[index];
-    removeIndex(index);
+    removeAt(index);
     return value;
   }
 
 
   public int removeIndex(int index) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
     int value = values[index];
-    indices.remove(keys[index]);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
-    count--;
-    keys[count] = null;
-    values[count] = 0;
+    removeAt(index);
     return value;
   }
 
 
+  /** Take out the key at this spot, leaving a gap until compact(). */
+  private void removeAt(int position) {
+    if (position < 0 || (gap != null && gap[position])) {
+      throw new IllegalStateException("Nothing to remove at " + position);
+    }
+    indices.remove(keys, position);
+    if (gap == null) {
+      gap = new boolean[keys.length];
+    }
+    gap[position] = true;
+    keys[position] = null;
+    values[position] = 0;
+    removed++;
+    // gaps at the end can go right away
+    while (count > 0 && gap[count-1]) {
+      count--;
+      removed--;
+      gap[count] = false;
+    }
+  }
+
+
+  /** Position of the next key after this one, skipping removed keys. */
+  private int following(int position) {
+    do {
+      position++;
+    } while (position < count && gap != null && gap[position]);
+    return position;
+  }
+
+
+  /**
+   * Close up the gaps left by removed keys, so that positions are in
+   * order again. Removing a key is quick because this only happens the
+   * next time something needs the position of an entry.
+   */
+  private void compact() {
+    if (removed != 0) {
+      int index = 0;
+      for (int i = 0; i < count; i++) {
+        if (!gap[i]) {
+          keys[index] = keys[i];
+          values[index] = values[i];
+          index++;
+        }
+        gap[i] = false;
+      }
+      for (int i = index; i < count; i++) {
+        keys[i] = null;
+        values[i] = 0;
+      }
+      count = index;
+      removed = 0;
+      resetIndices();
+    }
+  }
+
+
   public void swap(int a, int b) {
+    compact();
+    indices.swap(keys, a, b);
+    swapEntries(a, b);
+  }
+
+
+  private void swapEntries(int a, int b) {
     String tkey = keys[a];
     int tvalue = values[a];
     keys[a] = keys[b];
     values[a] = values[b];
     keys[b] = tkey;
     values[b] = tvalue;
-
-//    indices.put(keys[a], Integer.valueOf(a));
-//    indices.put(keys[b], Integer.valueOf(b));
   }
 
 
@@ -724,6 +812,7 @@ public class IntDict {
 
   protected void sortImpl(final boolean useKeys, final boolean reverse,
                           final boolean stable) {
+    compact();
     Sort s = new Sort() {
       @Override
       public int size() {
@@ -749,7 +838,7 @@ public class IntDict {
 
       @Override
       public void swap(int a, int b) {
-        IntDict.this.swap(a, b);
+        swapEntries(a, b);
       }
     };
     s.run();
@@ -777,18 +866,18 @@ public class IntDict {
 
   /** Returns a duplicate copy of this object. */
   public IntDict copy() {
+    compact();
     IntDict outgoing = new IntDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
+    outgoing.indices = new DictIndex(outgoing.keys, count);
     outgoing.count = count;
     return outgoing;
   }
 
 
   public void print() {
+    compact();
     for (int i = 0; i < size(); i++) {
       System.out.println(keys[i] + " = " + values[i]);
     }
@@ -809,6 +898,7 @@ public class IntDict {
    * Write tab-delimited entries to a PrintWriter
    */
   public void write(PrintWriter writer) {
+    compact();
     for (int i = 0; i < count; i++) {
       writer.println(keys[i] + "\t" + values[i]);
     }
@@ -816,10 +906,30 @@ public class IntDict {
   }
 
 
+  /**
+   * Save the entries to a binary file. Loading it with loadBinary() is
+   * a bulk copy, much faster than parsing the text written by save().
+   */
+  public void saveBinary(File file) throws IOException {
+    compact();
+    BinaryArrays.save(file, count, keys, values);
+  }
+
+
+  /**
+   * Load a dictionary written by saveBinary().
+   */
+  static public IntDict loadBinary(File file) throws IOException {
+    Object[] arrays = BinaryArrays.load(file, Table.STRING, Table.INT);
+    return new IntDict((String[]) arrays[0], (int[]) arrays[1]);
+  }
+
+
   /**
    * Return this dictionary as a String in JSON format.
    */
   public String toJSON() {
+    compact();
     StringList items = new StringList();
     for (int i = 0; i < count; i++) {
       items.append(JSONObject.quote(keys[i])+ ": " + values[i]);
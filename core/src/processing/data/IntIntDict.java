@@ -0,0 +1,871 @@
+package processing.data;
+
+import java.io.*;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import processing.core.PApplet;
+
+
+/**
+ * A lookup from <b>int</b> keys to <b>int</b> values, like IntDict but
+ * without turning the keys into Strings. Useful for ids that are already
+ * numbers, such as counts for each device or each row id:
+ * <pre>
+ * IntIntDict counts = new IntIntDict();
+ * for (TableRow row : table.rows()) {
+ *   counts.increment(row.getInt("device"));
+ * }
+ * </pre>
+ * Entries stay in the order they were added (until sorted), and nothing
+ * is allocated to add, look up, or remove a key.
+ *
+ * @see IntDict
+ */
+public class IntIntDict {
+
+  /** Number of elements in the table */
+  protected int count;
+
+  protected int[] keys;
+  protected int[] values;
+
+  /** Internal implementation for faster lookups */
+  private DictIndex indices = new DictIndex();
+
+  /**
+   * Spots left by keys removed since the last compact(), the same length
+   * as keys[], or null if nothing has been removed yet
+   */
+  private boolean[] gap;
+
+  /** Number of keys removed since the last compact(), still taking up a spot */
+  private int removed;
+
+
+  public IntIntDict() {
+    count = 0;
+    keys = new int[10];
+    values = new int[10];
+  }
+
+
+  /**
+   * Create a new lookup with a specific size. This is more efficient than not
+   * specifying a size. Use it when you know the rough size of the thing you're creating.
+   *
+   * @nowebref
+   */
+  public IntIntDict(int length) {
+    count = 0;
+    keys = new int[length];
+    values = new int[length];
+  }
+
+
+  /**
+   * Read a set of entries from a Reader that has each key/value pair on
+   * a single line, separated by a tab.
+   *
+   * @nowebref
+   */
+  public IntIntDict(BufferedReader reader) {
+    String[] lines = PApplet.loadStrings(reader);
+    keys = new int[lines.length];
+    values = new int[lines.length];
+
+    for (int i = 0; i < lines.length; i++) {
+      String[] pieces = PApplet.split(lines[i], '\t');
+      if (pieces.length == 2) {
+        keys[count] = PApplet.parseInt(pieces[0]);
+        values[count] = PApplet.parseInt(pieces[1]);
+        indices.put(keys, count);
+        count++;
+      }
+    }
+  }
+
+
+  /**
+   * @nowebref
+   */
+  public IntIntDict(int[] keys, int[] values) {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("key and value arrays must be the same length");
+    }
+    this.keys = keys;
+    this.values = values;
+    count = keys.length;
+    for (int i = 0; i < count; i++) {
+      indices.put(keys, i);
+    }
+  }
+
+
+  /**
+   * Constructor to allow (more intuitive) inline initialization, e.g.:
+   * <pre>
+   * new IntIntDict(new Object[][] {
+   *   { 1, 5 },
+   *   { 2, 13 }
+   * });
+   * </pre>
+   */
+  public IntIntDict(Object[][] pairs) {
+    count = pairs.length;
+    this.keys = new int[count];
+    this.values = new int[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = ((Number) pairs[i][0]).intValue();
+      values[i] = ((Number) pairs[i][1]).intValue();
+      indices.put(keys, i);
+    }
+  }
+
+
+  /**
+   * Returns the number of key/value pairs
+   */
+  public int size() {
+    return count - removed;
+  }
+
+
+  /**
+   * Resize the internal data, this can only be used to shrink the list.
+   * Helpful for situations like sorting and then grabbing the top 50 entries.
+   */
+  public void resize(int length) {
+    compact();
+    if (length > count) {
+      throw new IllegalArgumentException("resize() can only be used to shrink the dictionary");
+    }
+    if (length < 1) {
+      throw new IllegalArgumentException("resize(" + length + ") is too small, use 1 or higher");
+    }
+
+    int[] newKeys = new int[length];
+    int[] newValues = new int[length];
+    PApplet.arrayCopy(keys, newKeys, length);
+    PApplet.arrayCopy(values, newValues, length);
+    keys = newKeys;
+    values = newValues;
+    count = length;
+    resetIndices();
+  }
+
+
+  /**
+   * Remove all entries from the data structure.
+   */
+  public void clear() {
+    count = 0;
+    removed = 0;
+    gap = null;
+    indices = new DictIndex();
+  }
+
+
+  private void resetIndices() {
+    indices = new DictIndex(keys, count, null);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public class Entry {
+    public int key;
+    public int value;
+
+    Entry(int key, int value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+
+  public Iterable<Entry> entries() {
+    return new Iterable<Entry>() {
+
+      public Iterator<Entry> iterator() {
+        return entryIterator();
+      }
+    };
+  }
+
+
+  public Iterator<Entry> entryIterator() {
+    return new Iterator<Entry>() {
+      int index = -1;
+
+      public void remove() {
+        removeAt(index);
+      }
+
+      public Entry next() {
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return new Entry(keys[index], values[index]);
+      }
+
+      public boolean hasNext() {
+        return following(index) < count;
+      }
+    };
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public int key(int index) {
+    compact();
+    return keys[index];
+  }
+
+
+  protected void crop() {
+    compact();
+    if (count != keys.length) {
+      keys = PApplet.subset(keys, 0, count);
+      values = PApplet.subset(values, 0, count);
+    }
+  }
+
+
+  public Iterable<Integer> keys() {
+    return new Iterable<Integer>() {
+
+      @Override
+      public Iterator<Integer> iterator() {
+        return keyIterator();
+      }
+    };
+  }
+
+
+  // Use this to iterate when you want to be able to remove elements along the way
+  public Iterator<Integer> keyIterator() {
+    return new Iterator<Integer>() {
+      int index = -1;
+
+      public void remove() {
+        removeAt(index);
+      }
+
+      public Integer next() {
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return keys[index];
+      }
+
+      public boolean hasNext() {
+        return following(index) < count;
+      }
+    };
+  }
+
+
+  /**
+   * Return a copy of the internal keys array. This array can be modified.
+   */
+  public int[] keyArray() {
+    crop();
+    return keyArray(null);
+  }
+
+
+  public int[] keyArray(int[] outgoing) {
+    compact();
+    if (outgoing == null || outgoing.length != count) {
+      outgoing = new int[count];
+    }
+    System.arraycopy(keys, 0, outgoing, 0, count);
+    return outgoing;
+  }
+
+
+  public int value(int index) {
+    compact();
+    return values[index];
+  }
+
+
+  public Iterable<Integer> values() {
+    return new Iterable<Integer>() {
+
+      @Override
+      public Iterator<Integer> iterator() {
+        return valueIterator();
+      }
+    };
+  }
+
+
+  public Iterator<Integer> valueIterator() {
+    return new Iterator<Integer>() {
+      int index = -1;
+
+      public void remove() {
+        removeAt(index);
+      }
+
+      public Integer next() {
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return values[index];
+      }
+
+      public boolean hasNext() {
+        return following(index) < count;
+      }
+    };
+  }
+
+
+  /**
+   * Create a new array and copy each of the values into it.
+   */
+  public int[] valueArray() {
+    crop();
+    return valueArray(null);
+  }
+
+
+  /**
+   * Fill an already-allocated array with the values (more efficient than
+   * creating a new array each time). If 'array' is null, or not the same
+   * size as the number of values, a new array will be allocated and returned.
+   */
+  public int[] valueArray(int[] array) {
+    compact();
+    if (array == null || array.length != size()) {
+      array = new int[count];
+    }
+    System.arraycopy(values, 0, array, 0, count);
+    return array;
+  }
+
+
+  /**
+   * Return a value for the specified key.
+   */
+  public int get(int key) {
+    int index = indices.find(keys, key);
+    if (index == -1) {
+      throw new IllegalArgumentException("No key " + key);
+    }
+    return values[index];
+  }
+
+
+  public int get(int key, int alternate) {
+    int index = indices.find(keys, key);
+    if (index == -1) {
+      return alternate;
+    }
+    return values[index];
+  }
+
+
+  /**
+   * Create a new key/value pair or change the value of one.
+   */
+  public void set(int key, int amount) {
+    int index = indices.find(keys, key);
+    if (index == -1) {
+      create(key, amount);
+    } else {
+      values[index] = amount;
+    }
+  }
+
+
+  public void setIndex(int index, int key, int value) {
+    compact();
+    if (index < 0 || index >= count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    indices.remove(keys, index);
+    keys[index] = key;
+    values[index] = value;
+    indices.put(keys, index);
+  }
+
+
+  /**
+   * Check if a key is a part of the data structure.
+   */
+  public boolean hasKey(int key) {
+    return indices.find(keys, key) != -1;
+  }
+
+
+  /**
+   * Increase the value of a specific key value by 1
+   */
+  public void increment(int key) {
+    int index = indices.find(keys, key);
+    if (index == -1) {
+      create(key, 1);
+    } else {
+      values[index]++;
+    }
+  }
+
+
+  /**
+   * Merge another dictionary into this one. Calling this increment()
+   * since it doesn't make sense in practice for the other dictionary types,
+   * even though it's technically an add().
+   */
+  public void increment(IntIntDict dict) {
+    for (int i = 0; i < dict.count; i++) {
+      if (dict.gap == null || !dict.gap[i]) {  // skip removed keys
+        add(dict.keys[i], dict.values[i]);
+      }
+    }
+  }
+
+
+  /**
+   * Add to a value. If the key does not exist, a new pair is initialized
+   * with the value supplied.
+   */
+  public void add(int key, int amount) {
+    int index = indices.find(keys, key);
+    if (index == -1) {
+      create(key, amount);
+    } else {
+      values[index] += amount;
+    }
+  }
+
+
+  /**
+   * Subtract from a value.
+   */
+  public void sub(int key, int amount) {
+    add(key, -amount);
+  }
+
+
+  /**
+   * Multiply a value.
+   */
+  public void mult(int key, int amount) {
+    int index = indices.find(keys, key);
+    if (index != -1) {
+      values[index] *= amount;
+    }
+  }
+
+
+  /**
+   * Divide a value.
+   */
+  public void div(int key, int amount) {
+    int index = indices.find(keys, key);
+    if (index != -1) {
+      values[index] /= amount;
+    }
+  }
+
+
+  private void checkMinMax(String functionName) {
+    if (size() == 0) {
+      String msg =
+        String.format("Cannot use %s() on an empty %s.",
+                      functionName, getClass().getSimpleName());
+      throw new RuntimeException(msg);
+    }
+  }
+
+
+  // The index of the entry that has the min value. Reference above is incorrect.
+  public int minIndex() {
+    compact();
+    if (count == 0) return -1;
+
+    int index = 0;
+    int value = values[0];
+    for (int i = 1; i < count; i++) {
+      if (values[i] < value) {
+        index = i;
+        value = values[i];
+      }
+    }
+    return index;
+  }
+
+
+  // return the key for the minimum value
+  public int minKey() {
+    checkMinMax("minKey");
+    return keys[minIndex()];
+  }
+
+
+  // return the minimum value, or throw an error if there are no values
+  public int minValue() {
+    checkMinMax("minValue");
+    return values[minIndex()];
+  }
+
+
+  // The index of the entry that has the max value.
+  public int maxIndex() {
+    compact();
+    if (count == 0) return -1;
+
+    int index = 0;
+    int value = values[0];
+    for (int i = 1; i < count; i++) {
+      if (values[i] > value) {
+        index = i;
+        value = values[i];
+      }
+    }
+    return index;
+  }
+
+
+  /** The key for a max value; throws an error if there are no entries */
+  public int maxKey() {
+    checkMinMax("maxKey");
+    return keys[maxIndex()];
+  }
+
+
+  /** The max value. (Or a RuntimeException if there are no entries.) */
+  public int maxValue() {
+    checkMinMax("maxValue");
+    return values[maxIndex()];
+  }
+
+
+  public int sum() {
+    long amount = sumLong();
+    if (amount > Integer.MAX_VALUE) {
+      throw new RuntimeException("sum() exceeds " + Integer.MAX_VALUE + ", use sumLong()");
+    }
+    if (amount < Integer.MIN_VALUE) {
+      throw new RuntimeException("sum() less than " + Integer.MIN_VALUE + ", use sumLong()");
+    }
+    return (int) amount;
+  }
+
+
+  public long sumLong() {
+    long sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += values[i];  // removed entries are 0
+    }
+    return sum;
+  }
+
+
+  public int index(int what) {
+    compact();
+    return indices.find(keys, what);
+  }
+
+
+  protected void create(int what, int much) {
+    if (count == keys.length && removed * 4 >= count) {
+      compact();  // reuse the gaps before making more room
+    }
+    if (count == keys.length) {
+      keys = PApplet.expand(keys);
+      values = PApplet.expand(values);
+      if (gap != null) {
+        gap = PApplet.expand(gap, keys.length);
+      }
+    }
+    keys[count] = what;
+    values[count] = much;
+    indices.put(keys, count);
+    count++;
+  }
+
+
+  /**
+   * Remove a key/value pair.
+   */
+  public int remove(int key) {
+    int index = indices.find(keys, key);
+    if (index == -1) {
+      throw new NoSuchElementException("" + key + " not found");
+    }
+    int value = values[index];
+    removeAt(index);
+    return value;
+  }
+
+
+  public int removeIndex(int index) {
+    compact();
+    if (index < 0 || index >= count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    int value = values[index];
+    removeAt(index);
+    return value;
+  }
+
+
+  /** Take out the key at this spot, leaving a gap until compact(). */
+  private void removeAt(int position) {
+    if (position < 0 || (gap != null && gap[position])) {
+      throw new IllegalStateException("Nothing to remove at " + position);
+    }
+    indices.remove(keys, position);
+    if (gap == null) {
+      gap = new boolean[keys.length];
+    }
+    gap[position] = true;
+    values[position] = 0;
+    removed++;
+    // gaps at the end can go right away
+    while (count > 0 && gap[count-1]) {
+      count--;
+      removed--;
+      gap[count] = false;
+    }
+  }
+
+
+  /** Position of the next key after this one, skipping removed keys. */
+  private int following(int position) {
+    do {
+      position++;
+    } while (position < count && gap != null && gap[position]);
+    return position;
+  }
+
+
+  /**
+   * Close up the gaps left by removed keys, so that positions are in
+   * order again. Removing a key is quick because this only happens the
+   * next time something needs the position of an entry.
+   */
+  private void compact() {
+    if (removed != 0) {
+      int index = 0;
+      for (int i = 0; i < count; i++) {
+        if (!gap[i]) {
+          keys[index] = keys[i];
+          values[index] = values[i];
+          index++;
+        }
+        gap[i] = false;
+      }
+      count = index;
+      removed = 0;
+      resetIndices();
+    }
+  }
+
+
+  public void swap(int a, int b) {
+    compact();
+    indices.swap(keys, a, b);
+    swapEntries(a, b);
+  }
+
+
+  private void swapEntries(int a, int b) {
+    int tkey = keys[a];
+    int tvalue = values[a];
+    keys[a] = keys[b];
+    values[a] = values[b];
+    keys[b] = tkey;
+    values[b] = tvalue;
+  }
+
+
+  /**
+   * Sort the keys from smallest to largest.
+   */
+  public void sortKeys() {
+    sortImpl(true, false, true);
+  }
+
+
+  /**
+   * Sort the keys from largest to smallest.
+   */
+  public void sortKeysReverse() {
+    sortImpl(true, true, true);
+  }
+
+
+  /**
+   * Sort by values in ascending order. The smallest value will be at [0].
+   */
+  public void sortValues() {
+    sortValues(true);
+  }
+
+
+  /**
+   * Set true to ensure that the order returned is identical. Slightly
+   * slower because the tie-breaker for identical values compares the keys.
+   * @param stable
+   */
+  public void sortValues(boolean stable) {
+    sortImpl(false, false, stable);
+  }
+
+
+  /**
+   * Sort by values in descending order. The largest value will be at [0].
+   */
+  public void sortValuesReverse() {
+    sortValuesReverse(true);
+  }
+
+
+  public void sortValuesReverse(boolean stable) {
+    sortImpl(false, true, stable);
+  }
+
+
+  protected void sortImpl(final boolean useKeys, final boolean reverse,
+                          final boolean stable) {
+    compact();
+    Sort s = new Sort() {
+      @Override
+      public int size() {
+        return count;
+      }
+
+      @Override
+      public int compare(int a, int b) {
+        int diff;
+        if (useKeys) {
+          diff = Integer.compare(keys[a], keys[b]);
+        } else {  // sort values
+          diff = Integer.compare(values[a], values[b]);
+          if (diff == 0 && stable) {
+            diff = Integer.compare(keys[a], keys[b]);
+          }
+        }
+        return reverse ? -diff : diff;
+      }
+
+      @Override
+      public void swap(int a, int b) {
+        swapEntries(a, b);
+      }
+    };
+    s.run();
+
+    // Set the indices after sort/swaps (performance fix 160411)
+    resetIndices();
+  }
+
+
+  /**
+   * Sum all of the values in this dictionary, then return a new IntFloatDict of
+   * each key, divided by the total sum. The total for all values will be ~1.0.
+   * @return a IntFloatDict with the original keys, mapped to their pct of the total
+   */
+  public IntFloatDict getPercent() {
+    double sum = sumLong();
+    IntFloatDict outgoing = new IntFloatDict();
+    for (int i = 0; i < size(); i++) {
+      double percent = value(i) / sum;
+      outgoing.set(key(i), (float) percent);
+    }
+    return outgoing;
+  }
+
+
+  /** Returns a duplicate copy of this object. */
+  public IntIntDict copy() {
+    compact();
+    IntIntDict outgoing = new IntIntDict(count);
+    System.arraycopy(keys, 0, outgoing.keys, 0, count);
+    System.arraycopy(values, 0, outgoing.values, 0, count);
+    outgoing.indices = new DictIndex(outgoing.keys, count, null);
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  public void print() {
+    compact();
+    for (int i = 0; i < size(); i++) {
+      System.out.println(keys[i] + " = " + values[i]);
+    }
+  }
+
+
+  /**
+   * Save tab-delimited entries to a file (TSV format, UTF-8 encoding)
+   */
+  public void save(File file) {
+    PrintWriter writer = PApplet.createWriter(file);
+    write(writer);
+    writer.close();
+  }
+
+
+  /**
+   * Write tab-delimited entries to a PrintWriter
+   */
+  public void write(PrintWriter writer) {
+    compact();
+    for (int i = 0; i < count; i++) {
+      writer.println(keys[i] + "\t" + values[i]);
+    }
+    writer.flush();
+  }
+
+
+  /**
+   * Save the entries to a binary file. Loading it with loadBinary() is
+   * a bulk copy, much faster than parsing the text written by save().
+   */
+  public void saveBinary(File file) throws IOException {
+    compact();
+    BinaryArrays.save(file, count, keys, values);
+  }
+
+
+  /**
+   * Load a dictionary written by saveBinary().
+   */
+  static public IntIntDict loadBinary(File file) throws IOException {
+    Object[] arrays = BinaryArrays.load(file, Table.INT, Table.INT);
+    return new IntIntDict((int[]) arrays[0], (int[]) arrays[1]);
+  }
+
+
+  /**
+   * Return this dictionary as a String in JSON format. The keys are
+   * written as Strings, since JSON has no other kind of key.
+   */
+  public String toJSON() {
+    compact();
+    StringList items = new StringList();
+    for (int i = 0; i < count; i++) {
+      items.append("\"" + keys[i] + "\": " + values[i]);
+    }
+    return "{ " + items.join(", ") + " }";
+  }
+
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " size=" + size() + " " + toJSON();
+  }
+}
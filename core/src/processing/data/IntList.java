@@ -1,10 +1,12 @@
 package processing.data;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.function.IntUnaryOperator;
 
 import processing.core.PApplet;
 
@@ -103,8 +105,9 @@ public class IntList implements Iterable<Integer> {
     int count = stop - start;
     IntList newbie = new IntList(count);
     for (int i = 0; i < count; i++) {
-      newbie.set(i, start+i);
+      newbie.data[i] = start+i;
     }
+    newbie.count = count;
     return newbie;
   }
 
@@ -502,11 +505,7 @@ public class IntList implements Iterable<Integer> {
    */
   public int min() {
     checkMinMax("min");
-    int outgoing = data[0];
-    for (int i = 1; i < count; i++) {
-      if (data[i] < outgoing) outgoing = data[i];
-    }
-    return outgoing;
+    return data[minIndex()];
   }
 
 
@@ -515,13 +514,22 @@ public class IntList implements Iterable<Integer> {
   @SuppressWarnings("unused")
   public int minIndex() {
     checkMinMax("minIndex");
-    int value = data[0];
-    int index = 0;
-    for (int i = 1; i < count; i++) {
-      if (data[i] < value) {
-        value = data[i];
-        index = i;
+    final int[] data = this.data;
+    final int[] found = new int[ListChunks.count(count)];
+    ListChunks.run(count, found.length, (chunk, start, stop) -> {
+      int value = data[start];
+      int index = start;
+      for (int i = start + 1; i < stop; i++) {
+        if (data[i] < value) {
+          value = data[i];
+          index = i;
+        }
       }
+      found[chunk] = index;
+    });
+    int index = found[0];
+    for (int i = 1; i < found.length; i++) {
+      if (data[found[i]] < data[index]) index = found[i];
     }
     return index;
   }
@@ -535,11 +543,7 @@ public class IntList implements Iterable<Integer> {
    */
   public int max() {
     checkMinMax("max");
-    int outgoing = data[0];
-    for (int i = 1; i < count; i++) {
-      if (data[i] > outgoing) outgoing = data[i];
-    }
-    return outgoing;
+    return data[maxIndex()];
   }
 
 
@@ -547,13 +551,22 @@ public class IntList implements Iterable<Integer> {
   // if there are ties, it returns the first one found.
   public int maxIndex() {
     checkMinMax("maxIndex");
-    int value = data[0];
-    int index = 0;
-    for (int i = 1; i < count; i++) {
-      if (data[i] > value) {
-        value = data[i];
-        index = i;
+    final int[] data = this.data;
+    final int[] found = new int[ListChunks.count(count)];
+    ListChunks.run(count, found.length, (chunk, start, stop) -> {
+      int value = data[start];
+      int index = start;
+      for (int i = start + 1; i < stop; i++) {
+        if (data[i] > value) {
+          value = data[i];
+          index = i;
+        }
       }
+      found[chunk] = index;
+    });
+    int index = found[0];
+    for (int i = 1; i < found.length; i++) {
+      if (data[found[i]] > data[index]) index = found[i];
     }
     return index;
   }
@@ -572,14 +585,135 @@ public class IntList implements Iterable<Integer> {
 
 
   public long sumLong() {
+    final int[] data = this.data;
+    final long[] sums = new long[ListChunks.count(count)];
+    ListChunks.run(count, sums.length, (chunk, start, stop) -> {
+      long sum = 0;
+      for (int i = start; i < stop; i++) {
+        sum += data[i];
+      }
+      sums[chunk] = sum;
+    });
     long sum = 0;
-    for (int i = 0; i < count; i++) {
-      sum += data[i];
+    for (long s : sums) {
+      sum += s;
     }
     return sum;
   }
 
 
+  /**
+   * Replace each value with the sum of it and all the values before it,
+   * so the last value becomes the sum of the list. This uses int math
+   * (like += would), so the sums wrap around past Integer.MAX_VALUE.
+   */
+  public void cumulativeSum() {
+    final int[] data = this.data;
+    final int chunks = ListChunks.count(count);
+    final int[] totals = new int[chunks];
+    // running sums inside each chunk
+    ListChunks.run(count, chunks, (chunk, start, stop) -> {
+      int sum = 0;
+      for (int i = start; i < stop; i++) {
+        sum += data[i];
+        data[i] = sum;
+      }
+      totals[chunk] = sum;
+    });
+    if (chunks > 1) {
+      // then add everything from the chunks before
+      final int[] offsets = new int[chunks];
+      for (int i = 1; i < chunks; i++) {
+        offsets[i] = offsets[i-1] + totals[i-1];
+      }
+      ListChunks.run(count, chunks, (chunk, start, stop) -> {
+        int offset = offsets[chunk];
+        if (offset != 0) {
+          for (int i = start; i < stop; i++) {
+            data[i] += offset;
+          }
+        }
+      });
+    }
+  }
+
+
+  /**
+   * Replace each value with the result of a function, for instance
+   * <tt>list.map(v -&gt; v * 2)</tt> to double everything. On a long list,
+   * the function is called from several threads at once (and not in order).
+   */
+  public void map(final IntUnaryOperator function) {
+    final int[] data = this.data;
+    ListChunks.run(count, ListChunks.count(count), (chunk, start, stop) -> {
+      for (int i = start; i < stop; i++) {
+        data[i] = function.applyAsInt(data[i]);
+      }
+    });
+  }
+
+
+  /**
+   * Count the values in each of a number of equal ranges, from min() to
+   * max(). Returns a list with the count for each range.
+   */
+  public IntList histogram(int bins) {
+    return histogram(bins, min(), max());
+  }
+
+
+  /**
+   * Count the values in each of a number of equal ranges from low to high,
+   * leaving out anything smaller than low or larger than high. The high
+   * value itself goes in the last range.
+   */
+  public IntList histogram(final int bins, final int low, final int high) {
+    if (bins < 1) {
+      throw new IllegalArgumentException("histogram() needs at least one bin");
+    }
+    final int[] data = this.data;
+    final int chunks = ListChunks.count(count);
+    final int[][] tallies = new int[chunks][bins];
+    final double scale = (high > low) ? bins / ((double) high - low) : 0;
+    ListChunks.run(count, chunks, (chunk, start, stop) -> {
+      int[] tally = tallies[chunk];
+      for (int i = start; i < stop; i++) {
+        int value = data[i];
+        if (value >= low && value <= high) {
+          int bin = (int) (((double) value - low) * scale);
+          tally[bin < bins ? bin : bins - 1]++;
+        }
+      }
+    });
+    int[] outgoing = tallies[0];
+    for (int c = 1; c < chunks; c++) {
+      for (int i = 0; i < bins; i++) {
+        outgoing[i] += tallies[c][i];
+      }
+    }
+    return new IntList(outgoing);
+  }
+
+
+  /**
+   * The value that this percentage (0 to 100) of the list is at or below,
+   * for instance 50 for the median. Between two values, the result is
+   * interpolated. Uses quickselect (no sort) on a copy of the values, so
+   * the order of the list doesn't change.
+   */
+  public double percentile(double percentile) {
+    checkMinMax("percentile");
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile() must be between 0 and 100");
+    }
+    double[] values = new double[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = data[i];
+    }
+    return TableGroups.percentile(values, 0, count, percentile);
+  }
+
+
   /**
    * Sorts the array, lowest to highest.
    *
@@ -587,7 +721,11 @@ public class IntList implements Iterable<Integer> {
    * @webBrief Sorts the array, lowest to highest
    */
   public void sort() {
-    Arrays.sort(data, 0, count);
+    if (ListChunks.count(count) > 1) {
+      Arrays.parallelSort(data, 0, count);
+    } else {
+      Arrays.sort(data, 0, count);
+    }
   }
 
 
@@ -599,6 +737,11 @@ public class IntList implements Iterable<Integer> {
    * @webBrief Reverse sort, orders values from highest to lowest
    */
   public void sortReverse() {
+    if (ListChunks.count(count) > 1) {
+      Arrays.parallelSort(data, 0, count);
+      reverse();
+      return;
+    }
     new Sort() {
       @Override
       public int size() {
@@ -860,6 +1003,26 @@ public class IntList implements Iterable<Integer> {
   }
 
 
+  /**
+   * Save the values to a binary file. Loading it with loadBinary() is
+   * a bulk copy, much faster than parsing the text written by save().
+   */
+  public void saveBinary(File file) throws IOException {
+    BinaryArrays.save(file, count, data);
+  }
+
+
+  /**
+   * Load a list written by saveBinary().
+   */
+  static public IntList loadBinary(File file) throws IOException {
+    IntList outgoing = new IntList(0);
+    outgoing.data = (int[]) BinaryArrays.load(file, Table.INT)[0];
+    outgoing.count = outgoing.data.length;
+    return outgoing;
+  }
+
+
   /**
    * Return this dictionary as a String in JSON format.
    */
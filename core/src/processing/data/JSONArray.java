@@ -42,6 +42,7 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
 
 import processing.core.PApplet;
@@ -109,7 +110,23 @@ public class JSONArray {
   /**
    * The arrayList where the JSONArray's properties are kept.
    */
-  private final ArrayList<Object> myArrayList;
+  private ArrayList<Object> myArrayList;
+
+  /**
+   * Arrays that are nothing but numbers, as they come from the parser, are
+   * kept in an IntList, LongList, or DoubleList instead (and myArrayList
+   * is null), so that a large array isn't a separate Integer, Long, or
+   * Double object for each value. Whole numbers in an array that also has
+   * decimals are stored as doubles, if they can be stored exactly. Changing
+   * the array moves the values back into myArrayList first.
+   */
+  private Object numbers;
+
+  /**
+   * Entries of a DoubleList that were parsed as an Integer or a Long, so
+   * that get() still returns the same type. Null if there are none.
+   */
+  private BitSet wholeNumbers;
 
 
   /**
@@ -137,6 +154,7 @@ public class JSONArray {
    */
   protected JSONArray(JSONTokener x) {
     this();
+    startNumbers();
     if (x.nextClean() != '[') {
       throw new RuntimeException("A JSONArray text must start with '['");
     }
@@ -145,10 +163,10 @@ public class JSONArray {
       for (;;) {
         if (x.nextClean() == ',') {
           x.back();
-          myArrayList.add(JSONObject.NULL);
+          appendParsed(JSONObject.NULL);
         } else {
           x.back();
-          myArrayList.add(x.nextValue());
+          appendParsed(x.nextValue());
         }
         switch (x.nextClean()) {
         case ';':
@@ -172,10 +190,7 @@ public class JSONArray {
    * @nowebref
    */
   public JSONArray(IntList list) {
-    myArrayList = new ArrayList<>();
-    for (int item : list.values()) {
-      myArrayList.add(Integer.valueOf(item));
-    }
+    numbers = list.copy();
   }
 
 
@@ -260,10 +275,131 @@ public class JSONArray {
     if (index < 0 || index >= this.size()) {
       return null;
     }
+    if (myArrayList == null) {
+      if (numbers instanceof IntList) {
+        return Integer.valueOf(((IntList) numbers).data[index]);
+      } else if (numbers instanceof LongList) {
+        return wholeNumber(((LongList) numbers).data[index]);
+      }
+      double value = ((DoubleList) numbers).data[index];
+      if (wholeNumbers != null && wholeNumbers.get(index)) {
+        return wholeNumber((long) value);
+      }
+      return Double.valueOf(value);
+    }
     return myArrayList.get(index);
   }
 
 
+  /** The same Integer or Long that the parser would have returned. */
+  static private Object wholeNumber(long value) {
+    if (value == (int) value) {
+      return Integer.valueOf((int) value);
+    }
+    return Long.valueOf(value);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Used by the parsers, before adding values with appendParsed(). */
+  void startNumbers() {
+    myArrayList = null;
+    numbers = new IntList();
+    wholeNumbers = null;
+  }
+
+
+  /**
+   * Add a value from the parser, keeping the numbers unboxed for as long
+   * as the array is nothing but numbers.
+   */
+  void appendParsed(Object value) {
+    if (myArrayList == null) {
+      if (numbers instanceof IntList) {
+        IntList ints = (IntList) numbers;
+        if (value instanceof Integer) {
+          ints.append((Integer) value);
+          return;
+        } else if (value instanceof Long) {
+          LongList longs = new LongList(Math.max(ints.count * 2, 10));
+          for (int i = 0; i < ints.count; i++) {
+            longs.append(ints.data[i]);
+          }
+          numbers = longs;
+        } else if (value instanceof Double) {
+          DoubleList doubles = new DoubleList(Math.max(ints.count * 2, 10));
+          for (int i = 0; i < ints.count; i++) {
+            doubles.append(ints.data[i]);
+          }
+          numbers = doubles;
+          wholeNumbers = new BitSet();
+          wholeNumbers.set(0, ints.count);
+        }
+      }
+      if (numbers instanceof LongList) {
+        LongList longs = (LongList) numbers;
+        if (value instanceof Integer || value instanceof Long) {
+          longs.append(((Number) value).longValue());
+          return;
+        } else if (value instanceof Double) {
+          boolean exact = true;
+          for (int i = 0; exact && i < longs.count; i++) {
+            exact = isExactDouble(longs.data[i]);
+          }
+          if (exact) {
+            DoubleList doubles = new DoubleList(Math.max(longs.count * 2, 10));
+            for (int i = 0; i < longs.count; i++) {
+              doubles.append(longs.data[i]);
+            }
+            numbers = doubles;
+            wholeNumbers = new BitSet();
+            wholeNumbers.set(0, longs.count);
+          }
+        }
+      }
+      if (numbers instanceof DoubleList) {
+        DoubleList doubles = (DoubleList) numbers;
+        if (value instanceof Double) {
+          doubles.append((Double) value);
+          return;
+        } else if (value instanceof Integer ||
+                   (value instanceof Long && isExactDouble((Long) value))) {
+          if (wholeNumbers == null) {
+            wholeNumbers = new BitSet();
+          }
+          wholeNumbers.set(doubles.count);
+          doubles.append(((Number) value).doubleValue());
+          return;
+        }
+      }
+      unpack();
+    }
+    myArrayList.add(value);
+  }
+
+
+  static private boolean isExactDouble(long value) {
+    return Math.abs(value) <= (1L << 53);
+  }
+
+
+  /** Move unboxed numbers back to myArrayList, so the array can be changed. */
+  private void unpack() {
+    if (myArrayList == null) {
+      int count = size();
+      ArrayList<Object> list = new ArrayList<>(Math.max(count, 10));
+      for (int i = 0; i < count; i++) {
+        list.add(opt(i));
+      }
+      myArrayList = list;
+      numbers = null;
+      wholeNumbers = null;
+    }
+  }
+
+
   /**
    * Get the object value associated with an index.
    * @param index must be between 0 and length() - 1
@@ -327,6 +463,9 @@ public class JSONArray {
    * @see JSONArray#getBoolean(int)
    */
   public int getInt(int index) {
+    if (numbers instanceof IntList && index >= 0 && index < size()) {
+      return ((IntList) numbers).data[index];
+    }
     Object object = this.get(index);
     try {
       return object instanceof Number
@@ -364,6 +503,11 @@ public class JSONArray {
    *  be converted to a number.
    */
   public long getLong(int index) {
+    if (numbers instanceof IntList && index >= 0 && index < size()) {
+      return ((IntList) numbers).data[index];
+    } else if (numbers instanceof LongList && index >= 0 && index < size()) {
+      return ((LongList) numbers).data[index];
+    }
     Object object = this.get(index);
     try {
       return object instanceof Number
@@ -425,6 +569,14 @@ public class JSONArray {
    *  be converted to a number.
    */
   public double getDouble(int index) {
+    if (numbers != null && index >= 0 && index < size()) {
+      if (numbers instanceof IntList) {
+        return ((IntList) numbers).data[index];
+      } else if (numbers instanceof LongList) {
+        return ((LongList) numbers).data[index];
+      }
+      return ((DoubleList) numbers).data[index];
+    }
     Object object = this.get(index);
     try {
       return object instanceof Number
@@ -984,8 +1136,7 @@ public class JSONArray {
    * @param value a JSONArray value
    */
   public JSONArray append(JSONArray value) {
-    myArrayList.add(value);
-    return this;
+    return append((Object) value);
   }
 
 
@@ -993,8 +1144,7 @@ public class JSONArray {
    * @param value a JSONObject value
    */
   public JSONArray append(JSONObject value) {
-    myArrayList.add(value);
-    return this;
+    return append((Object) value);
   }
 
 
@@ -1006,6 +1156,7 @@ public class JSONArray {
    * @return this.
    */
   protected JSONArray append(Object value) {
+    unpack();
     myArrayList.add(value);
     return this;
   }
@@ -1210,6 +1361,7 @@ public class JSONArray {
     if (index < 0) {
       throw new RuntimeException("JSONArray[" + index + "] not found.");
     }
+    unpack();
     if (index < this.size()) {
       this.myArrayList.set(index, value);
     } else {
@@ -1232,6 +1384,14 @@ public class JSONArray {
    * @see JSONArray#remove(int)
    */
   public int size() {
+    if (myArrayList == null) {
+      if (numbers instanceof IntList) {
+        return ((IntList) numbers).count;
+      } else if (numbers instanceof LongList) {
+        return ((LongList) numbers).count;
+      }
+      return ((DoubleList) numbers).count;
+    }
     return myArrayList.size();
   }
 
@@ -1264,6 +1424,7 @@ public class JSONArray {
    */
   public Object remove(int index) {
     Object o = this.opt(index);
+    unpack();
     this.myArrayList.remove(index);
     return o;
   }
@@ -1325,7 +1486,8 @@ public class JSONArray {
         }
       }
     }
-    output.print(format(indentFactor));
+    // straight to the output, rather than building a String first
+    writeInternal(output, indentFactor, 0);
     output.flush();
     return true;
   }
@@ -1400,7 +1562,7 @@ public class JSONArray {
       int thisFactor = (indentFactor == -1) ? 0 : indentFactor;
 
       if (length == 1) {
-        JSONObject.writeValue(writer, this.myArrayList.get(0),
+        JSONObject.writeValue(writer, this.opt(0),
                               indentFactor, indent);
 //                              thisFactor, indent);
       } else if (length != 0) {
@@ -1416,7 +1578,7 @@ public class JSONArray {
           JSONObject.indent(writer, newIndent);
 //          JSONObject.writeValue(writer, this.myArrayList.get(i),
 //                                thisFactor, newIndent);
-          JSONObject.writeValue(writer, this.myArrayList.get(i),
+          JSONObject.writeValue(writer, this.opt(i),
                                 indentFactor, newIndent);
           commanate = true;
         }
@@ -1449,7 +1611,7 @@ public class JSONArray {
       if (i > 0) {
         sb.append(separator);
       }
-      sb.append(JSONObject.valueToString(this.myArrayList.get(i)));
+      sb.append(JSONObject.valueToString(this.opt(i)));
     }
     return sb.toString();
   }
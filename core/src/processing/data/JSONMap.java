@@ -0,0 +1,259 @@
+package processing.data;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+
+/**
+ * Storage for the keys and values of a JSONObject, kept in the order they
+ * were added. Most objects in a JSON file have only a few keys, so the
+ * keys and values are two small arrays that are searched in order, rather
+ * than a HashMap with an entry object for each key. Objects with more
+ * than a few keys also get a table of positions by hash (open addressing,
+ * so still no entry objects), rebuilt when it fills up or a key is removed.
+ * <p/>
+ * Keys are shared between objects through a small pool (see intern()),
+ * so that a file with a million records that all have the same keys only
+ * has one copy of each key.
+ * Advanced users only, not official API.
+ */
+class JSONMap {
+  static final String[] NO_KEYS = new String[0];
+  static final Object[] NO_VALUES = new Object[0];
+
+  /** Up to this many keys, just look through them. */
+  static final int SCAN = 8;
+
+  String[] keys = NO_KEYS;
+  Object[] values = NO_VALUES;
+  int size;
+  int[] table;  // position + 1 of each key, by hash, or 0 for empty
+
+
+  int size() {
+    return size;
+  }
+
+
+  int indexOf(String key) {
+    if (table == null) {
+      for (int i = 0; i < size; i++) {
+        String k = keys[i];
+        if (k == key || k.equals(key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+    int mask = table.length - 1;
+    int slot = mix(key.hashCode()) & mask;
+    while (true) {
+      int position = table[slot];
+      if (position == 0) {
+        return -1;
+      }
+      String k = keys[position - 1];
+      if (k == key || k.equals(key)) {
+        return position - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+
+  boolean containsKey(String key) {
+    return indexOf(key) != -1;
+  }
+
+
+  Object get(String key) {
+    int index = indexOf(key);
+    return (index == -1) ? null : values[index];
+  }
+
+
+  /** Returns the value that was replaced, or null if the key is new. */
+  Object put(String key, Object value) {
+    int index = indexOf(key);
+    if (index != -1) {
+      Object previous = values[index];
+      values[index] = value;
+      return previous;
+    }
+    if (size == keys.length) {
+      int length = Math.max(4, size * 2);
+      keys = Arrays.copyOf(keys, length);
+      values = Arrays.copyOf(values, length);
+    }
+    keys[size] = key;
+    values[size] = value;
+    size++;
+    if (table != null && size * 2 <= table.length) {
+      place(size - 1);
+    } else if (size > SCAN) {
+      rebuild();
+    }
+    return null;
+  }
+
+
+  /** Returns the value that was removed, or null if there was none. */
+  Object remove(String key) {
+    int index = indexOf(key);
+    if (index == -1) {
+      return null;
+    }
+    Object previous = values[index];
+    removeIndex(index);
+    return previous;
+  }
+
+
+  void removeIndex(int index) {
+    System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+    System.arraycopy(values, index + 1, values, index, size - index - 1);
+    size--;
+    keys[size] = null;
+    values[size] = null;
+    if (table != null) {
+      // positions after this one have all moved
+      if (size > SCAN) {
+        rebuild();
+      } else {
+        table = null;
+      }
+    }
+  }
+
+
+  /** The keys in order. Removing from this removes from the object. */
+  Set<String> keySet() {
+    return new AbstractSet<String>() {
+      @Override
+      public Iterator<String> iterator() {
+        return new Iterator<String>() {
+          int index;
+          boolean removable;
+
+          @Override
+          public boolean hasNext() {
+            return index < size;
+          }
+
+          @Override
+          public String next() {
+            if (index >= size) {
+              throw new NoSuchElementException();
+            }
+            removable = true;
+            return keys[index++];
+          }
+
+          @Override
+          public void remove() {
+            if (!removable) {
+              throw new IllegalStateException();
+            }
+            removable = false;
+            removeIndex(--index);
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return (o instanceof String) && containsKey((String) o);
+      }
+    };
+  }
+
+
+  private void rebuild() {
+    int capacity = 16;
+    while (capacity < size * 2) {
+      capacity <<= 1;
+    }
+    table = new int[capacity];
+    for (int i = 0; i < size; i++) {
+      place(i);
+    }
+  }
+
+
+  private void place(int index) {
+    int mask = table.length - 1;
+    int slot = mix(keys[index].hashCode()) & mask;
+    while (table[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = index + 1;
+  }
+
+
+  static private int mix(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static final int POOL_SIZE = 1024;
+
+  /**
+   * Keys seen recently. Each key has one place in the array (from its
+   * hash) and replaces whatever was there, so the pool never grows, and
+   * keys that are used over and over stay in it. There's no lock, so
+   * threads parsing at the same time can share it: the worst a race can
+   * do is keep a key from being shared, and Strings are immutable, so a
+   * key that was put there by another thread is always complete.
+   */
+  static final String[] pool = new String[POOL_SIZE];
+
+
+  /** The pooled copy of this key, if there is one. */
+  static String intern(String key) {
+    int slot = mix(key.hashCode()) & (POOL_SIZE - 1);
+    String pooled = pool[slot];
+    if (pooled != null && (pooled == key || pooled.equals(key))) {
+      return pooled;
+    }
+    pool[slot] = key;
+    return key;
+  }
+
+
+  /**
+   * The pooled key for these characters, so that a new String is only
+   * made for keys that haven't been seen recently.
+   */
+  static String intern(char[] chars, int offset, int length) {
+    int hash = 0;
+    for (int i = offset; i < offset + length; i++) {
+      hash = 31 * hash + chars[i];  // same as String.hashCode()
+    }
+    int slot = mix(hash) & (POOL_SIZE - 1);
+    String pooled = pool[slot];
+    if (pooled != null && pooled.length() == length) {
+      boolean same = true;
+      for (int i = 0; same && i < length; i++) {
+        same = pooled.charAt(i) == chars[offset + i];
+      }
+      if (same) {
+        return pooled;
+      }
+    }
+    String key = new String(chars, offset, length);
+    pool[slot] = key;
+    return key;
+  }
+}
@@ -124,22 +124,6 @@ import processing.core.PApplet;
  * @see PApplet#saveJSONArray(JSONArray, String)
  */
 public class JSONObject {
-  /**
-   * The maximum number of keys in the key pool.
-   */
-  private static final int keyPoolSize = 100;
-
-  /**
-   * Key pooling is like string interning, but without permanently tying up
-   * memory. To help conserve memory, storage of duplicated key strings in
-   * JSONObjects will be avoided by using a key pool to manage unique key
-   * string objects. This is used by JSONObject.put(string, object).
-   */
-  private static HashMap<String, Object> keyPool =
-    new HashMap<>(keyPoolSize);
-
-
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
   /**
@@ -190,10 +174,11 @@ public class JSONObject {
 
 
   /**
-   * The map where the JSONObject's properties are kept.
+   * The map where the JSONObject's properties are kept, in the order they
+   * were added. Keys are shared with other objects through its key pool.
    */
 //  private final Map map;
-  private final HashMap<String, Object> map;
+  private final JSONMap map;
 
 
   /**
@@ -210,7 +195,7 @@ public class JSONObject {
    * @nowebref
    */
   public JSONObject() {
-    this.map = new HashMap<>();
+    this.map = new JSONMap();
   }
 
 
@@ -304,14 +289,14 @@ public class JSONObject {
    *  the JSONObject.
    */
   protected JSONObject(HashMap<String, Object> map) {
-    this.map = new HashMap<>();
+    this.map = new JSONMap();
     if (map != null) {
       Iterator i = map.entrySet().iterator();
       while (i.hasNext()) {
         Map.Entry e = (Map.Entry) i.next();
         Object value = e.getValue();
         if (value != null) {
-          map.put((String) e.getKey(), wrap(value));
+          this.map.put(JSONMap.intern((String) e.getKey()), wrap(value));
         }
       }
     }
@@ -322,7 +307,7 @@ public class JSONObject {
    * @nowebref
    */
   public JSONObject(IntDict dict) {
-    map = new HashMap<>();
+    map = new JSONMap();
     for (int i = 0; i < dict.size(); i++) {
       setInt(dict.key(i), dict.value(i));
     }
@@ -333,7 +318,7 @@ public class JSONObject {
    * @nowebref
    */
   public JSONObject(FloatDict dict) {
-    map = new HashMap<>();
+    map = new JSONMap();
     for (int i = 0; i < dict.size(); i++) {
       setFloat(dict.key(i), dict.value(i));
     }
@@ -344,7 +329,7 @@ public class JSONObject {
    * @nowebref
    */
   public JSONObject(StringDict dict) {
-    map = new HashMap<>();
+    map = new JSONMap();
     for (int i = 0; i < dict.size(); i++) {
       setString(dict.key(i), dict.value(i));
     }
@@ -1021,7 +1006,7 @@ public class JSONObject {
    * @return A String.
    * @throws RuntimeException If number is null or a non-finite number.
    */
-  private static String numberToString(Number number) {
+  static String numberToString(Number number) {
     if (number == null) {
       throw new RuntimeException("Null pointer");
     }
@@ -1371,22 +1356,12 @@ public class JSONObject {
    *  or if the key is null.
    */
   public JSONObject put(String key, Object value) {
-    String pooled;
     if (key == null) {
       throw new RuntimeException("Null key.");
     }
     if (value != null) {
       testValidity(value);
-      pooled = (String)keyPool.get(key);
-      if (pooled == null) {
-        if (keyPool.size() >= keyPoolSize) {
-          keyPool = new HashMap<>(keyPoolSize);
-        }
-        keyPool.put(key, key);
-      } else {
-        key = pooled;
-      }
-      this.map.put(key, value);
+      this.map.put(JSONMap.intern(key), value);
     } else {
       this.remove(key);
     }
@@ -1655,7 +1630,8 @@ public class JSONObject {
         }
       }
     }
-    output.print(format(indentFactor));
+    // straight to the output, rather than building a String first
+    writeInternal(output, indentFactor, 0);
     output.flush();
     return true;
   }
@@ -1873,24 +1849,23 @@ public class JSONObject {
     try {
       boolean commanate = false;
       final int length = this.size();
-      Iterator keys = this.keyIterator();
       writer.write('{');
 
       int actualFactor = (indentFactor == -1) ? 0 : indentFactor;
 
       if (length == 1) {
-        Object key = keys.next();
-        writer.write(quote(key.toString()));
+        String key = map.keys[0];
+        quote(key, writer);
         writer.write(':');
         if (actualFactor > 0) {
           writer.write(' ');
         }
         //writeValue(writer, this.map.get(key), actualFactor, indent);
-        writeValue(writer, this.map.get(key), indentFactor, indent);
+        writeValue(writer, map.values[0], indentFactor, indent);
       } else if (length != 0) {
         final int newIndent = indent + actualFactor;
-        while (keys.hasNext()) {
-          Object key = keys.next();
+        for (int i = 0; i < length; i++) {
+          String key = map.keys[i];
           if (commanate) {
             writer.write(',');
           }
@@ -1898,13 +1873,13 @@ public class JSONObject {
             writer.write('\n');
           }
           indent(writer, newIndent);
-          writer.write(quote(key.toString()));
+          quote(key, writer);
           writer.write(':');
           if (actualFactor > 0) {
             writer.write(' ');
           }
           //writeValue(writer, this.map.get(key), actualFactor, newIndent);
-          writeValue(writer, this.map.get(key), indentFactor, newIndent);
+          writeValue(writer, map.values[i], indentFactor, newIndent);
           commanate = true;
         }
         if (indentFactor != -1) {
@@ -0,0 +1,755 @@
+package processing.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Reads JSON one token at a time, for files that are too large to load
+ * with loadJSONObject() or loadJSONArray(). Nothing is kept in memory
+ * except the token being read, so a file of any size can be read, and
+ * parts that aren't needed can be passed over with skipValue() without
+ * building anything.
+ * <p/>
+ * Iterating over a JSONReader returns each object of an array as its own
+ * JSONObject, one at a time. This works for a file that's one large array
+ * of records, and also for files with one record per line (JSON Lines):
+ * <pre>
+ * for (JSONObject record : streamJSON("telemetry.json")) {
+ *   total += record.getFloat("speed");
+ * }
+ * </pre>
+ * To get to an array further down, use beginObject(), nextName(), and
+ * skipValue() to move through the file. For instance, with GeoJSON:
+ * <pre>
+ * JSONReader reader = streamJSON("roads.geojson");
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *   if (reader.nextName().equals("features")) {
+ *     for (JSONObject feature : reader) {
+ *       // ...
+ *     }
+ *   } else {
+ *     reader.skipValue();
+ *   }
+ * }
+ * reader.close();
+ * </pre>
+ * Errors in the file throw a RuntimeException with the line number.
+ *
+ * @see JSONWriter
+ */
+public class JSONReader implements Iterable<JSONObject>, Closeable {
+  static public final int BEGIN_OBJECT = 1;
+  static public final int END_OBJECT = 2;
+  static public final int BEGIN_ARRAY = 3;
+  static public final int END_ARRAY = 4;
+  static public final int NAME = 5;
+  static public final int STRING = 6;
+  static public final int NUMBER = 7;
+  static public final int BOOLEAN = 8;
+  static public final int NULL = 9;
+  static public final int END_DOCUMENT = 10;
+
+  // where in the file the reader is, one of these for each level
+  static final int DOCUMENT = 0;
+  static final int EMPTY_OBJECT = 1;
+  static final int OBJECT = 2;  // after at least one value
+  static final int AFTER_NAME = 3;
+  static final int EMPTY_ARRAY = 4;
+  static final int ARRAY = 5;
+
+  Reader reader;
+  char[] buffer = new char[8192];
+  int pos;
+  int limit;
+  int line = 1;
+
+  int[] stack = new int[32];
+  int depth = 1;  // stack[0] is the DOCUMENT
+
+  int peeked;  // token found by peek() but not read yet, 0 for none
+
+  // contents of the last NAME, STRING, NUMBER, or BOOLEAN
+  String text;
+  char[] number = new char[32];
+  int numberLength;
+  boolean bool;
+  StringBuilder builder = new StringBuilder();
+
+
+  public JSONReader(Reader reader) {
+    this.reader = reader;
+  }
+
+
+  /**
+   * The type of the next token, without reading it: BEGIN_OBJECT,
+   * END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN,
+   * NULL, or END_DOCUMENT.
+   */
+  public int peek() {
+    if (peeked == 0) {
+      try {
+        peeked = find();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return peeked;
+  }
+
+
+  /**
+   * Read the next token, and return its type (see peek()). For names,
+   * strings, numbers, and booleans, the value is available from
+   * getString(), getInt(), getLong(), getFloat(), getDouble(), and
+   * getBoolean() until the next token is read.
+   */
+  public int nextToken() {
+    int token = peek();
+    peeked = 0;
+    switch (token) {
+    case BEGIN_OBJECT:
+      push(EMPTY_OBJECT);
+      break;
+    case BEGIN_ARRAY:
+      push(EMPTY_ARRAY);
+      break;
+    case END_OBJECT:
+    case END_ARRAY:
+      depth--;
+      break;
+    }
+    return token;
+  }
+
+
+  /** True if there's another value in the current object or array. */
+  public boolean hasNext() {
+    int token = peek();
+    return token != END_OBJECT && token != END_ARRAY && token != END_DOCUMENT;
+  }
+
+
+  public void beginObject() {
+    expect(BEGIN_OBJECT, "the start of an object");
+  }
+
+
+  public void endObject() {
+    expect(END_OBJECT, "the end of an object");
+  }
+
+
+  public void beginArray() {
+    expect(BEGIN_ARRAY, "the start of an array");
+  }
+
+
+  public void endArray() {
+    expect(END_ARRAY, "the end of an array");
+  }
+
+
+  public String nextName() {
+    expect(NAME, "a name");
+    return text;
+  }
+
+
+  /**
+   * Read a string, or the text of a number or boolean.
+   * Returns null (and moves past it) if the value is null.
+   */
+  public String nextString() {
+    int token = nextToken();
+    if (token == NULL) {
+      return null;
+    } else if (token != STRING && token != NUMBER && token != BOOLEAN) {
+      throw error("Expected a string but found " + describeToken(token));
+    }
+    return getString();
+  }
+
+
+  public int nextInt() {
+    expect(NUMBER, "a number");
+    return getInt();
+  }
+
+
+  public long nextLong() {
+    expect(NUMBER, "a number");
+    return getLong();
+  }
+
+
+  public float nextFloat() {
+    expect(NUMBER, "a number");
+    return getFloat();
+  }
+
+
+  public double nextDouble() {
+    expect(NUMBER, "a number");
+    return getDouble();
+  }
+
+
+  public boolean nextBoolean() {
+    expect(BOOLEAN, "true or false");
+    return bool;
+  }
+
+
+  public void nextNull() {
+    expect(NULL, "null");
+  }
+
+
+  /**
+   * Read the next value as a JSONObject, JSONArray, String, Integer,
+   * Long, Double, Boolean, or JSONObject.NULL.
+   */
+  public Object nextValue() {
+    int token = nextToken();
+    switch (token) {
+    case BEGIN_OBJECT:
+      JSONObject object = new JSONObject();
+      while (peek() != END_OBJECT) {
+        String name = nextName();
+        if (object.hasKey(name)) {  // same as JSONObject.parse()
+          throw error("Duplicate key \"" + name + "\"");
+        }
+        object.put(name, nextValue());
+      }
+      nextToken();
+      return object;
+    case BEGIN_ARRAY:
+      JSONArray array = new JSONArray();
+      array.startNumbers();
+      while (peek() != END_ARRAY) {
+        array.appendParsed(nextValue());
+      }
+      nextToken();
+      return array;
+    case STRING:
+      return text;
+    case NUMBER:
+      return JSONObject.stringToValue(getString());
+    case BOOLEAN:
+      return bool;
+    case NULL:
+      return JSONObject.NULL;
+    }
+    throw error("Expected a value but found " + describeToken(token));
+  }
+
+
+  /** Read the next object in full. */
+  public JSONObject nextObject() {
+    if (peek() != BEGIN_OBJECT) {
+      throw error("Expected an object but found " + describeToken(peek()));
+    }
+    return (JSONObject) nextValue();
+  }
+
+
+  /** Read the next array in full. */
+  public JSONArray nextArray() {
+    if (peek() != BEGIN_ARRAY) {
+      throw error("Expected an array but found " + describeToken(peek()));
+    }
+    return (JSONArray) nextValue();
+  }
+
+
+  /**
+   * Move past the next value, including everything inside it if it's an
+   * object or array. If the next token is a name, the name and its value
+   * are both skipped. Strings and numbers that are skipped are never
+   * turned into Java objects.
+   */
+  public void skipValue() {
+    try {
+      int level = 0;
+      do {
+        int token = (peeked == 0) ? find(true) : peeked;
+        peeked = 0;
+        switch (token) {
+        case BEGIN_OBJECT:
+          push(EMPTY_OBJECT);
+          level++;
+          break;
+        case BEGIN_ARRAY:
+          push(EMPTY_ARRAY);
+          level++;
+          break;
+        case END_OBJECT:
+        case END_ARRAY:
+          if (level == 0) {
+            throw error("Expected a value but found " + describeToken(token));
+          }
+          depth--;
+          level--;
+          break;
+        case NAME:
+          if (level == 0) {
+            skipValue();  // and the value that goes with it
+            return;
+          }
+          break;
+        case END_DOCUMENT:
+          throw error("Expected a value but the file ended");
+        }
+      } while (level > 0);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Text of the last name, string, number, or boolean that was read. */
+  public String getString() {
+    if (text == null) {
+      text = new String(number, 0, numberLength);
+    }
+    return text;
+  }
+
+
+  public int getInt() {
+    long value = getLong();
+    if (value != (int) value) {
+      return (int) getDouble();
+    }
+    return (int) value;
+  }
+
+
+  public long getLong() {
+    if (text != null && numberLength == 0) {
+      return (long) getDouble();  // a string
+    }
+    long value = 0;
+    boolean negative = (numberLength > 0 && number[0] == '-');
+    int start = negative ? 1 : 0;
+    // up to 18 digits can't overflow
+    if (numberLength - start > 18) {
+      return (long) getDouble();
+    }
+    for (int i = start; i < numberLength; i++) {
+      char c = number[i];
+      if (c < '0' || c > '9') {
+        return (long) getDouble();
+      }
+      value = value * 10 + (c - '0');
+    }
+    return negative ? -value : value;
+  }
+
+
+  public float getFloat() {
+    return (float) getDouble();
+  }
+
+
+  public double getDouble() {
+    if (numberLength == 0) {
+      return Double.parseDouble(getString());
+    }
+    // whole numbers that fit in 53 bits are exact
+    boolean whole = numberLength < 16;
+    for (int i = 0; whole && i < numberLength; i++) {
+      char c = number[i];
+      whole = (c >= '0' && c <= '9') || (i == 0 && c == '-' && numberLength > 1);
+    }
+    if (whole) {
+      return getLong();
+    }
+    return Double.parseDouble(getString());
+  }
+
+
+  public boolean getBoolean() {
+    return bool;
+  }
+
+
+  /** Line of the file that's being read, for error messages. */
+  public int getLineNumber() {
+    return line;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Iterate over the objects of the array that comes next (or the objects
+   * one after another, at the top level of a JSON Lines file). Each one is
+   * read in full as it's returned, and anything else is skipped.
+   */
+  @Override
+  public Iterator<JSONObject> iterator() {
+    if (peek() == BEGIN_ARRAY) {
+      nextToken();
+    }
+    final int level = depth;
+
+    return new Iterator<JSONObject>() {
+      JSONObject next;
+
+      @Override
+      public boolean hasNext() {
+        while (next == null && depth == level && JSONReader.this.hasNext()) {
+          if (peek() == BEGIN_OBJECT) {
+            next = nextObject();
+          } else {
+            skipValue();
+          }
+        }
+        if (next == null && depth == level && peek() == END_ARRAY) {
+          nextToken();
+        }
+        return next != null;
+      }
+
+      @Override
+      public JSONObject next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        JSONObject outgoing = next;
+        next = null;
+        return outgoing;
+      }
+    };
+  }
+
+
+  @Override
+  public void close() {
+    try {
+      reader.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private void expect(int token, String description) {
+    int found = nextToken();
+    if (found != token) {
+      throw error("Expected " + description + " but found " + describeToken(found));
+    }
+  }
+
+
+  private void push(int state) {
+    if (depth == stack.length) {
+      stack = java.util.Arrays.copyOf(stack, depth * 2);
+    }
+    stack[depth++] = state;
+  }
+
+
+  private int find() throws IOException {
+    return find(false);
+  }
+
+
+  /**
+   * Work out what the next token is, and read its contents. When skipping,
+   * strings and numbers are passed over without being kept.
+   */
+  private int find(boolean skip) throws IOException {
+    int state = stack[depth - 1];
+    if (state == EMPTY_OBJECT || state == OBJECT) {
+      int c = nextClean();
+      if (c == '}') {
+        return END_OBJECT;
+      }
+      if (state == OBJECT) {
+        if (c != ',') {
+          throw error("Expected , or } but found " + describe(c));
+        }
+        c = nextClean();
+      }
+      if (c != '"') {
+        throw error("Expected a name but found " + describe(c));
+      }
+      stack[depth - 1] = AFTER_NAME;
+      if (skip) {
+        skipString();
+      } else {
+        readString(true);
+      }
+      return NAME;
+    }
+
+    if (state == AFTER_NAME) {
+      int c = nextClean();
+      if (c != ':') {
+        throw error("Expected : but found " + describe(c));
+      }
+      stack[depth - 1] = OBJECT;
+    } else if (state == EMPTY_ARRAY) {
+      int c = nextClean();
+      if (c == ']') {
+        return END_ARRAY;
+      }
+      pos--;
+      stack[depth - 1] = ARRAY;
+    } else if (state == ARRAY) {
+      int c = nextClean();
+      if (c == ']') {
+        return END_ARRAY;
+      }
+      if (c != ',') {
+        throw error("Expected , or ] but found " + describe(c));
+      }
+    } else {  // DOCUMENT, any number of values one after another
+      int c = nextClean();
+      if (c == -1) {
+        return END_DOCUMENT;
+      }
+      pos--;
+    }
+
+    int c = nextClean();
+    switch (c) {
+    case '{':
+      return BEGIN_OBJECT;
+    case '[':
+      return BEGIN_ARRAY;
+    case '"':
+      if (skip) {
+        skipString();
+      } else {
+        readString(false);
+      }
+      return STRING;
+    case 't':
+      literal("rue");
+      bool = true;
+      text = "true";
+      numberLength = 0;
+      return BOOLEAN;
+    case 'f':
+      literal("alse");
+      bool = false;
+      text = "false";
+      numberLength = 0;
+      return BOOLEAN;
+    case 'n':
+      literal("ull");
+      text = null;
+      numberLength = 0;
+      return NULL;
+    case -1:
+      throw error("Expected a value but the file ended");
+    }
+    if (c == '-' || (c >= '0' && c <= '9')) {
+      readNumber((char) c);
+      return NUMBER;
+    }
+    throw error("Expected a value but found " + describe(c));
+  }
+
+
+  /** Next character that isn't whitespace, or -1 at the end. */
+  private int nextClean() throws IOException {
+    while (true) {
+      if (pos == limit && !fill()) {
+        return -1;
+      }
+      char c = buffer[pos++];
+      if (c == '\n') {
+        line++;
+      } else if (c != ' ' && c != '\t' && c != '\r') {
+        return c;
+      }
+    }
+  }
+
+
+  private boolean fill() throws IOException {
+    int count = reader.read(buffer, 0, buffer.length);
+    if (count <= 0) {
+      pos = limit = 0;
+      return false;
+    }
+    pos = 0;
+    limit = count;
+    return true;
+  }
+
+
+  private void literal(String rest) throws IOException {
+    for (int i = 0; i < rest.length(); i++) {
+      if (pos == limit && !fill()) {
+        throw error("The file ended in the middle of a value");
+      }
+      if (buffer[pos++] != rest.charAt(i)) {
+        throw error("Unexpected value, expected true, false, or null");
+      }
+    }
+  }
+
+
+  private void readNumber(char first) throws IOException {
+    numberLength = 0;
+    text = null;
+    addNumber(first);
+    while (true) {
+      if (pos == limit && !fill()) {
+        break;
+      }
+      char c = buffer[pos];
+      if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+        addNumber(c);
+        pos++;
+      } else {
+        break;
+      }
+    }
+    if (numberLength == 1 && first == '-') {
+      throw error("Expected a number after -");
+    }
+  }
+
+
+  private void addNumber(char c) {
+    if (numberLength == number.length) {
+      number = java.util.Arrays.copyOf(number, numberLength * 2);
+    }
+    number[numberLength++] = c;
+  }
+
+
+  /**
+   * Read a string, after its opening quote. Names come from the same pool
+   * as the keys of JSONObject, so most of them don't need a new String.
+   */
+  private void readString(boolean name) throws IOException {
+    numberLength = 0;
+    // most strings have no escapes and are all in the buffer
+    for (int i = pos; i < limit; i++) {
+      char c = buffer[i];
+      if (c == '"') {
+        text = name ?
+          JSONMap.intern(buffer, pos, i - pos) : new String(buffer, pos, i - pos);
+        pos = i + 1;
+        return;
+      } else if (c == '\\') {
+        break;
+      }
+    }
+    builder.setLength(0);
+    while (true) {
+      if (pos == limit && !fill()) {
+        throw error("Unterminated string");
+      }
+      char c = buffer[pos++];
+      if (c == '"') {
+        text = name ? JSONMap.intern(builder.toString()) : builder.toString();
+        return;
+      } else if (c == '\\') {
+        builder.append(escape());
+      } else {
+        builder.append(c);
+      }
+    }
+  }
+
+
+  private void skipString() throws IOException {
+    text = null;
+    numberLength = 0;
+    while (true) {
+      if (pos == limit && !fill()) {
+        throw error("Unterminated string");
+      }
+      char c = buffer[pos++];
+      if (c == '"') {
+        return;
+      } else if (c == '\\') {
+        escape();
+      }
+    }
+  }
+
+
+  private char escape() throws IOException {
+    if (pos == limit && !fill()) {
+      throw error("Unterminated string");
+    }
+    char c = buffer[pos++];
+    switch (c) {
+    case 'b': return '\b';
+    case 't': return '\t';
+    case 'n': return '\n';
+    case 'f': return '\f';
+    case 'r': return '\r';
+    case 'u':
+      int value = 0;
+      for (int i = 0; i < 4; i++) {
+        if (pos == limit && !fill()) {
+          throw error("Unterminated string");
+        }
+        int digit = JSONTokener.dehexchar(buffer[pos++]);
+        if (digit == -1) {
+          throw error("Illegal escape.");
+        }
+        value = (value << 4) | digit;
+      }
+      return (char) value;
+    case '"':
+    case '\'':
+    case '\\':
+    case '/':
+      return c;
+    }
+    throw error("Illegal escape.");
+  }
+
+
+  private String describe(int c) {
+    if (c == -1) {
+      return "the end of the file";
+    }
+    return "'" + (char) c + "'";
+  }
+
+
+  static private String describeToken(int token) {
+    switch (token) {
+    case BEGIN_OBJECT: return "the start of an object";
+    case END_OBJECT: return "the end of an object";
+    case BEGIN_ARRAY: return "the start of an array";
+    case END_ARRAY: return "the end of an array";
+    case NAME: return "a name";
+    case STRING: return "a string";
+    case NUMBER: return "a number";
+    case BOOLEAN: return "a boolean";
+    case NULL: return "null";
+    }
+    return "the end of the file";
+  }
+
+
+  private RuntimeException error(String message) {
+    return new RuntimeException(message + " on line " + line);
+  }
+}
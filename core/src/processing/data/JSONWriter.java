@@ -0,0 +1,311 @@
+package processing.data;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+import processing.core.PApplet;
+
+
+/**
+ * Writes JSON one value at a time, straight to a file, for data that's
+ * too large to build as a JSONObject or JSONArray first:
+ * <pre>
+ * JSONWriter writer = createJSONWriter("points.json");
+ * writer.beginArray();
+ * for (PVector p : points) {
+ *   writer.beginObject();
+ *   writer.name("x").value(p.x);
+ *   writer.name("y").value(p.y);
+ *   writer.endObject();
+ * }
+ * writer.endArray();
+ * writer.close();
+ * </pre>
+ * Whole JSONObject and JSONArray values can be written with value() as
+ * well. Values written one after another at the top level go on their own
+ * lines, which is the JSON Lines format that JSONReader can read back.
+ * <p/>
+ * Options are the same as saveJSONObject(): "compact" for no whitespace,
+ * or "indent=N" for N spaces (the default is 2).
+ *
+ * @see JSONReader
+ */
+public class JSONWriter implements Closeable, Flushable {
+  static final int DOCUMENT = 0;
+  static final int EMPTY_OBJECT = 1;
+  static final int OBJECT = 2;
+  static final int AFTER_NAME = 3;
+  static final int EMPTY_ARRAY = 4;
+  static final int ARRAY = 5;
+
+  Writer writer;
+  int indentFactor = 2;
+
+  int[] stack = new int[32];
+  int depth = 1;
+  boolean started;  // something has been written at the top level
+
+
+  public JSONWriter(Writer writer) {
+    this(writer, null);
+  }
+
+
+  public JSONWriter(Writer writer, String options) {
+    this.writer = writer;
+    if (options != null) {
+      for (String opt : PApplet.split(options, ',')) {
+        if (opt.equals("compact")) {
+          indentFactor = -1;
+        } else if (opt.startsWith("indent=")) {
+          indentFactor = PApplet.parseInt(opt.substring(7), -2);
+          if (indentFactor == -2) {
+            throw new IllegalArgumentException("Could not read a number from " + opt);
+          }
+        } else {
+          System.err.println("Ignoring " + opt);
+        }
+      }
+    }
+  }
+
+
+  public JSONWriter beginObject() {
+    open(EMPTY_OBJECT, '{');
+    return this;
+  }
+
+
+  public JSONWriter endObject() {
+    return close(EMPTY_OBJECT, OBJECT, '}');
+  }
+
+
+  public JSONWriter beginArray() {
+    open(EMPTY_ARRAY, '[');
+    return this;
+  }
+
+
+  public JSONWriter endArray() {
+    return close(EMPTY_ARRAY, ARRAY, ']');
+  }
+
+
+  /** Name of the next value inside an object. */
+  public JSONWriter name(String name) {
+    int state = stack[depth - 1];
+    if (state != EMPTY_OBJECT && state != OBJECT) {
+      throw new IllegalStateException("name() can only be used inside an object");
+    }
+    if (name == null) {
+      throw new IllegalArgumentException("Null key.");
+    }
+    try {
+      if (state == OBJECT) {
+        writer.write(',');
+      }
+      newline(depth - 1);
+      JSONObject.quote(name, writer);
+      writer.write(':');
+      if (indentFactor > 0) {
+        writer.write(' ');
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    stack[depth - 1] = AFTER_NAME;
+    return this;
+  }
+
+
+  public JSONWriter value(String value) {
+    try {
+      before();
+      if (value == null) {
+        writer.write("null");
+      } else {
+        JSONObject.quote(value, writer);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  public JSONWriter value(int value) {
+    return raw(String.valueOf(value));
+  }
+
+
+  public JSONWriter value(long value) {
+    return raw(String.valueOf(value));
+  }
+
+
+  public JSONWriter value(float value) {
+    return raw(JSONObject.numberToString(value));
+  }
+
+
+  public JSONWriter value(double value) {
+    return raw(JSONObject.numberToString(value));
+  }
+
+
+  public JSONWriter value(boolean value) {
+    return raw(value ? "true" : "false");
+  }
+
+
+  public JSONWriter nullValue() {
+    return raw("null");
+  }
+
+
+  /** Write a whole JSONObject, with the same layout as its format(). */
+  public JSONWriter value(JSONObject value) {
+    before();
+    if (value == null) {
+      return write("null");
+    }
+    value.writeInternal(writer, indentFactor, indent(depth - 1));
+    return this;
+  }
+
+
+  /** Write a whole JSONArray, with the same layout as its format(). */
+  public JSONWriter value(JSONArray value) {
+    before();
+    if (value == null) {
+      return write("null");
+    }
+    value.writeInternal(writer, indentFactor, indent(depth - 1));
+    return this;
+  }
+
+
+  @Override
+  public void flush() {
+    try {
+      writer.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  /**
+   * Finish the file. Objects and arrays that are still open are an error,
+   * since the file would not be valid JSON.
+   */
+  @Override
+  public void close() {
+    try {
+      if (started && depth == 1) {
+        newline(-1);
+      }
+      writer.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    if (depth != 1) {
+      throw new IllegalStateException("JSONWriter closed before the end of every object and array");
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private JSONWriter raw(String text) {
+    before();
+    return write(text);
+  }
+
+
+  private JSONWriter write(String text) {
+    try {
+      writer.write(text);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  /** Commas and whitespace before a value, depending on where it goes. */
+  private void before() {
+    try {
+      int state = stack[depth - 1];
+      switch (state) {
+      case DOCUMENT:
+        if (started) {
+          writer.write('\n');  // JSON Lines
+        }
+        started = true;
+        break;
+      case AFTER_NAME:
+        stack[depth - 1] = OBJECT;
+        break;
+      case EMPTY_ARRAY:
+      case ARRAY:
+        if (state == ARRAY) {
+          writer.write(',');
+        }
+        newline(depth - 1);
+        stack[depth - 1] = ARRAY;
+        break;
+      default:
+        throw new IllegalStateException("Use name() before each value in an object");
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  private void open(int state, char c) {
+    before();
+    write(String.valueOf(c));
+    if (depth == stack.length) {
+      stack = java.util.Arrays.copyOf(stack, depth * 2);
+    }
+    stack[depth++] = state;
+  }
+
+
+  private JSONWriter close(int empty, int nonempty, char c) {
+    int state = stack[depth - 1];
+    if (state != empty && state != nonempty) {
+      throw new IllegalStateException("Nothing to close with " + c);
+    }
+    depth--;
+    try {
+      if (state == nonempty) {
+        newline(depth - 1);
+      }
+      writer.write(c);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  /** Line break and indent for something 'level' deep, unless compact. */
+  private void newline(int level) throws IOException {
+    if (indentFactor != -1) {
+      writer.write('\n');
+      JSONObject.indent(writer, indent(level));
+    }
+  }
+
+
+  private int indent(int level) {
+    return (indentFactor <= 0) ? 0 : Math.max(0, level) * indentFactor;
+  }
+}
@@ -0,0 +1,51 @@
+package processing.data;
+
+import java.util.stream.IntStream;
+
+
+/**
+ * Splits the data[] of IntList, FloatList, and the other List classes into
+ * one chunk per core, so that sum(), min(), cumulativeSum() and the rest
+ * can use all the cores on a long list. A shorter list is a single chunk
+ * that runs on the calling thread, so it costs nothing extra.
+ * <p/>
+ * For the same length, chunk i always covers the same range, which lets
+ * a result be built in two passes (like the totals of each chunk, then
+ * the running sums inside each one).
+ * Advanced users only, not official API.
+ */
+class ListChunks {
+  // lists with at least this many values are split across threads
+  static int parallelCount = 1 << 17;
+  static int threadCount = Runtime.getRuntime().availableProcessors();
+
+
+  interface Task {
+    void run(int chunk, int start, int stop);
+  }
+
+
+  /** Number of chunks to use for a list of this length. */
+  static int count(int length) {
+    if (threadCount < 2 || length < parallelCount) {
+      return 1;
+    }
+    return Math.min(threadCount, length);
+  }
+
+
+  /** Run the task on each chunk, in parallel when there's more than one. */
+  static void run(final int length, final int chunks, final Task task) {
+    if (chunks == 1) {
+      task.run(0, 0, length);
+    } else {
+      IntStream.range(0, chunks).parallel().forEach(i ->
+        task.run(i, start(length, chunks, i), start(length, chunks, i + 1)));
+    }
+  }
+
+
+  static private int start(int length, int chunks, int chunk) {
+    return (int) ((long) length * chunk / chunks);
+  }
+}
@@ -1,7 +1,6 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -24,7 +23,16 @@ public class LongDict {
   protected long[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<>();
+  private DictIndex indices = new DictIndex();
+
+  /**
+   * Spots left by keys removed since the last compact(), the same length
+   * as keys[], or null if nothing has been removed yet
+   */
+  private boolean[] gap;
+
+  /** Number of keys removed since the last compact(), still taking up a spot */
+  private int removed;
 
 
   public LongDict() {
@@ -63,7 +71,7 @@ public class LongDict {
       if (pieces.length == 2) {
         keys[count] = pieces[0];
         values[count] = PApplet.parseInt(pieces[1]);
-        indices.put(pieces[0], count);
+        indices.put(keys, count);
         count++;
       }
     }
@@ -80,7 +88,7 @@ public class LongDict {
     this.values = values;
     count = keys.length;
     for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+      indices.put(keys, i);
     }
   }
 
@@ -101,7 +109,7 @@ public class LongDict {
     for (int i = 0; i < count; i++) {
       keys[i] = (String) pairs[i][0];
       values[i] = (Integer) pairs[i][1];
-      indices.put(keys[i], i);
+      indices.put(keys, i);
     }
   }
 
@@ -113,7 +121,7 @@ public class LongDict {
    * @webBrief Returns the number of key/value pairs
    */
   public int size() {
-    return count;
+    return count - removed;
   }
 
 
@@ -122,6 +130,7 @@ public class LongDict {
    * Helpful for situations like sorting and then grabbing the top 50 entries.
    */
   public void resize(int length) {
+    compact();
     if (length > count) {
       throw new IllegalArgumentException("resize() can only be used to shrink the dictionary");
     }
@@ -148,15 +157,14 @@ public class LongDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<>();
+    removed = 0;
+    gap = null;
+    indices = new DictIndex();
   }
 
 
   private void resetIndices() {
-    indices = new HashMap<>(count);
-    for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
-    }
+    indices = new DictIndex(keys, count);
   }
 
 
@@ -189,18 +197,19 @@ public class LongDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeAt(index);
       }
 
       public Entry next() {
-        ++index;
-        Entry e = new Entry(keys[index], values[index]);
-        return e;
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return new Entry(keys[index], values[index]);
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return following(index) < count;
       }
     };
   }
@@ -210,11 +219,13 @@ public class LongDict {
 
 
   public String key(int index) {
+    compact();
     return keys[index];
   }
 
 
   protected void crop() {
+    compact();
     if (count != keys.length) {
       keys = PApplet.subset(keys, 0, count);
       values = PApplet.subset(values, 0, count);
@@ -239,16 +250,19 @@ public class LongDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeAt(index);
       }
 
       public String next() {
-        return key(++index);
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return keys[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return following(index) < count;
       }
     };
   }
@@ -267,6 +281,7 @@ public class LongDict {
 
 
   public String[] keyArray(String[] outgoing) {
+    compact();
     if (outgoing == null || outgoing.length != count) {
       outgoing = new String[count];
     }
@@ -276,6 +291,7 @@ public class LongDict {
 
 
   public long value(int index) {
+    compact();
     return values[index];
   }
 
@@ -302,16 +318,19 @@ public class LongDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeAt(index);
       }
 
       public Long next() {
-        return value(++index);
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return values[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return following(index) < count;
       }
     };
   }
@@ -337,6 +356,7 @@ public class LongDict {
    * @param array values to copy into the array
    */
   public int[] valueArray(int[] array) {
+    compact();
     if (array == null || array.length != size()) {
       array = new int[count];
     }
@@ -352,7 +372,7 @@ public class LongDict {
    * @webBrief Return a value for the specified key
    */
   public long get(String key) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       throw new IllegalArgumentException("No key named '" + key + "'");
     }
@@ -361,7 +381,7 @@ public class LongDict {
 
 
   public long get(String key, long alternate) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) return alternate;
     return values[index];
   }
@@ -374,7 +394,7 @@ public class LongDict {
    * @webBrief Create a new key/value pair or change the value of one
    */
   public void set(String key, long amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -384,11 +404,14 @@ public class LongDict {
 
 
   public void setIndex(int index, String key, long value) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
+    indices.remove(keys, index);
     keys[index] = key;
     values[index] = value;
+    indices.put(keys, index);
   }
 
 
@@ -399,7 +422,7 @@ public class LongDict {
    * @webBrief Check if a key is a part of the data structure
    */
   public boolean hasKey(String key) {
-    return index(key) != -1;
+    return indices.find(keys, key) != -1;
   }
 
 
@@ -421,7 +444,9 @@ public class LongDict {
    */
   public void increment(LongDict dict) {
     for (int i = 0; i < dict.count; i++) {
-      add(dict.key(i), dict.value(i));
+      if (dict.gap == null || !dict.gap[i]) {  // skip removed keys
+        add(dict.keys[i], dict.values[i]);
+      }
     }
   }
 
@@ -433,7 +458,7 @@ public class LongDict {
    * @webBrief Add to a value
    */
   public void add(String key, long amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -460,7 +485,7 @@ public class LongDict {
    * @webBrief Multiply a value
    */
   public void mult(String key, long amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index != -1) {
       values[index] *= amount;
     }
@@ -474,7 +499,7 @@ public class LongDict {
    * @webBrief Divide a value
    */
   public void div(String key, long amount) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index != -1) {
       values[index] /= amount;
     }
@@ -493,6 +518,7 @@ public class LongDict {
 
   // return the index of the minimum value
   public int minIndex() {
+    compact();
     //checkMinMax("minIndex");
     if (count == 0) return -1;
 
@@ -528,6 +554,7 @@ public class LongDict {
 
   // return the index of the max value
   public int maxIndex() {
+    compact();
     //checkMinMax("maxIndex");
     if (count == 0) {
       return -1;
@@ -572,19 +599,25 @@ public class LongDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    compact();
+    return indices.find(keys, what);
   }
 
 
   protected void create(String what, long much) {
+    if (count == keys.length && removed * 4 >= count) {
+      compact();  // reuse the gaps before making more room
+    }
     if (count == keys.length) {
       keys = PApplet.expand(keys);
       values = PApplet.expand(values);
+      if (gap != null) {
+        gap = PApplet.expand(gap, keys.length);
+      }
     }
-    indices.put(what, Integer.valueOf(count));
     keys[count] = what;
     values[count] = much;
+    indices.put(keys, count);
     count++;
   }
 
@@ -596,44 +629,99 @@ public class LongDict {
    * @webBrief Remove a key/value pair
    */
   public long remove(String key) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       throw new NoSuchElementException("'" + key + "' not found");
     }
     long value = values[index];
-    removeIndex(index);
+    removeAt(index);
     return value;
   }
 
 
   public long removeIndex(int index) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
     long value = values[index];
-    indices.remove(keys[index]);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
-    count--;
-    keys[count] = null;
-    values[count] = 0;
+    removeAt(index);
     return value;
   }
 
 
+  /** Take out the key at this spot, leaving a gap until compact(). */
+  private void removeAt(int position) {
+    if (position < 0 || (gap != null && gap[position])) {
+      throw new IllegalStateException("Nothing to remove at " + position);
+    }
+    indices.remove(keys, position);
+    if (gap == null) {
+      gap = new boolean[keys.length];
+    }
+    gap[position] = true;
+    keys[position] = null;
+    values[position] = 0;
+    removed++;
+    // gaps at the end can go right away
+    while (count > 0 && gap[count-1]) {
+      count--;
+      removed--;
+      gap[count] = false;
+    }
+  }
+
+
+  /** Position of the next key after this one, skipping removed keys. */
+  private int following(int position) {
+    do {
+      position++;
+    } while (position < count && gap != null && gap[position]);
+    return position;
+  }
+
+
+  /**
+   * Close up the gaps left by removed keys, so that positions are in
+   * order again. Removing a key is quick because this only happens the
+   * next time something needs the position of an entry.
+   */
+  private void compact() {
+    if (removed != 0) {
+      int index = 0;
+      for (int i = 0; i < count; i++) {
+        if (!gap[i]) {
+          keys[index] = keys[i];
+          values[index] = values[i];
+          index++;
+        }
+        gap[i] = false;
+      }
+      for (int i = index; i < count; i++) {
+        keys[i] = null;
+        values[i] = 0;
+      }
+      count = index;
+      removed = 0;
+      resetIndices();
+    }
+  }
+
+
   public void swap(int a, int b) {
+    compact();
+    indices.swap(keys, a, b);
+    swapEntries(a, b);
+  }
+
+
+  private void swapEntries(int a, int b) {
     String tkey = keys[a];
     long tvalue = values[a];
     keys[a] = keys[b];
     values[a] = values[b];
     keys[b] = tkey;
     values[b] = tvalue;
-
-//    indices.put(keys[a], Integer.valueOf(a));
-//    indices.put(keys[b], Integer.valueOf(b));
   }
 
 
@@ -699,6 +787,7 @@ public class LongDict {
 
   protected void sortImpl(final boolean useKeys, final boolean reverse,
                           final boolean stable) {
+    compact();
     Sort s = new Sort() {
       @Override
       public int size() {
@@ -730,7 +819,7 @@ public class LongDict {
 
       @Override
       public void swap(int a, int b) {
-        LongDict.this.swap(a, b);
+        swapEntries(a, b);
       }
     };
     s.run();
@@ -758,18 +847,18 @@ public class LongDict {
 
   /** Returns a duplicate copy of this object. */
   public LongDict copy() {
+    compact();
     LongDict outgoing = new LongDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
+    outgoing.indices = new DictIndex(outgoing.keys, count);
     outgoing.count = count;
     return outgoing;
   }
 
 
   public void print() {
+    compact();
     for (int i = 0; i < size(); i++) {
       System.out.println(keys[i] + " = " + values[i]);
     }
@@ -790,6 +879,7 @@ public class LongDict {
    * Write tab-delimited entries to a PrintWriter
    */
   public void write(PrintWriter writer) {
+    compact();
     for (int i = 0; i < count; i++) {
       writer.println(keys[i] + "\t" + values[i]);
     }
@@ -797,10 +887,30 @@ public class LongDict {
   }
 
 
+  /**
+   * Save the entries to a binary file. Loading it with loadBinary() is
+   * a bulk copy, much faster than parsing the text written by save().
+   */
+  public void saveBinary(File file) throws IOException {
+    compact();
+    BinaryArrays.save(file, count, keys, values);
+  }
+
+
+  /**
+   * Load a dictionary written by saveBinary().
+   */
+  static public LongDict loadBinary(File file) throws IOException {
+    Object[] arrays = BinaryArrays.load(file, Table.STRING, Table.LONG);
+    return new LongDict((String[]) arrays[0], (long[]) arrays[1]);
+  }
+
+
   /**
    * Return this dictionary as a String in JSON format.
    */
   public String toJSON() {
+    compact();
     StringList items = new StringList();
     for (int i = 0; i < count; i++) {
       items.append(JSONObject.quote(keys[i])+ ": " + values[i]);
@@ -0,0 +1,874 @@
+package processing.data;
+
+import java.io.*;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import processing.core.PApplet;
+
+
+/**
+ * A lookup from <b>long</b> keys to <b>double</b> values, like DoubleDict but
+ * without turning the keys into Strings. Useful for ids that are already
+ * numbers, such as counts for each device or each row id:
+ * <pre>
+ * LongDoubleDict counts = new LongDoubleDict();
+ * for (TableRow row : table.rows()) {
+ *   counts.add(row.getLong("device"), row.getDouble("watts"));
+ * }
+ * </pre>
+ * Entries stay in the order they were added (until sorted), and nothing
+ * is allocated to add, look up, or remove a key.
+ *
+ * @see DoubleDict
+ */
+public class LongDoubleDict {
+
+  /** Number of elements in the table */
+  protected int count;
+
+  protected long[] keys;
+  protected double[] values;
+
+  /** Internal implementation for faster lookups */
+  private DictIndex indices = new DictIndex();
+
+  /**
+   * Spots left by keys removed since the last compact(), the same length
+   * as keys[], or null if nothing has been removed yet
+   */
+  private boolean[] gap;
+
+  /** Number of keys removed since the last compact(), still taking up a spot */
+  private int removed;
+
+
+  public LongDoubleDict() {
+    count = 0;
+    keys = new long[10];
+    values = new double[10];
+  }
+
+
+  /**
+   * Create a new lookup with a specific size. This is more efficient than not
+   * specifying a size. Use it when you know the rough size of the thing you're creating.
+   *
+   * @nowebref
+   */
+  public LongDoubleDict(int length) {
+    count = 0;
+    keys = new long[length];
+    values = new double[length];
+  }
+
+
+  /**
+   * Read a set of entries from a Reader that has each key/value pair on
+   * a single line, separated by a tab.
+   *
+   * @nowebref
+   */
+  public LongDoubleDict(BufferedReader reader) {
+    String[] lines = PApplet.loadStrings(reader);
+    keys = new long[lines.length];
+    values = new double[lines.length];
+
+    for (int i = 0; i < lines.length; i++) {
+      String[] pieces = PApplet.split(lines[i], '\t');
+      if (pieces.length == 2) {
+        keys[count] = Long.parseLong(pieces[0]);
+        values[count] = Double.parseDouble(pieces[1]);
+        indices.put(keys, count);
+        count++;
+      }
+    }
+  }
+
+
+  /**
+   * @nowebref
+   */
+  public LongDoubleDict(long[] keys, double[] values) {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("key and value arrays must be the same length");
+    }
+    this.keys = keys;
+    this.values = values;
+    count = keys.length;
+    for (int i = 0; i < count; i++) {
+      indices.put(keys, i);
+    }
+  }
+
+
+  /**
+   * Constructor to allow (more intuitive) inline initialization, e.g.:
+   * <pre>
+   * new LongDoubleDict(new Object[][] {
+   *   { 1L, 0.5 },
+   *   { 2L, 1.3 }
+   * });
+   * </pre>
+   */
+  public LongDoubleDict(Object[][] pairs) {
+    count = pairs.length;
+    this.keys = new long[count];
+    this.values = new double[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = ((Number) pairs[i][0]).longValue();
+      values[i] = ((Number) pairs[i][1]).doubleValue();
+      indices.put(keys, i);
+    }
+  }
+
+
+  /**
+   * Returns the number of key/value pairs
+   */
+  public int size() {
+    return count - removed;
+  }
+
+
+  /**
+   * Resize the internal data, this can only be used to shrink the list.
+   * Helpful for situations like sorting and then grabbing the top 50 entries.
+   */
+  public void resize(int length) {
+    compact();
+    if (length > count) {
+      throw new IllegalArgumentException("resize() can only be used to shrink the dictionary");
+    }
+    if (length < 1) {
+      throw new IllegalArgumentException("resize(" + length + ") is too small, use 1 or higher");
+    }
+
+    long[] newKeys = new long[length];
+    double[] newValues = new double[length];
+    PApplet.arrayCopy(keys, newKeys, length);
+    PApplet.arrayCopy(values, newValues, length);
+    keys = newKeys;
+    values = newValues;
+    count = length;
+    resetIndices();
+  }
+
+
+  /**
+   * Remove all entries from the data structure.
+   */
+  public void clear() {
+    count = 0;
+    removed = 0;
+    gap = null;
+    indices = new DictIndex();
+  }
+
+
+  private void resetIndices() {
+    indices = new DictIndex(keys, count, null);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public class Entry {
+    public long key;
+    public double value;
+
+    Entry(long key, double value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+
+  public Iterable<Entry> entries() {
+    return new Iterable<Entry>() {
+
+      public Iterator<Entry> iterator() {
+        return entryIterator();
+      }
+    };
+  }
+
+
+  public Iterator<Entry> entryIterator() {
+    return new Iterator<Entry>() {
+      int index = -1;
+
+      public void remove() {
+        removeAt(index);
+      }
+
+      public Entry next() {
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return new Entry(keys[index], values[index]);
+      }
+
+      public boolean hasNext() {
+        return following(index) < count;
+      }
+    };
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public long key(int index) {
+    compact();
+    return keys[index];
+  }
+
+
+  protected void crop() {
+    compact();
+    if (count != keys.length) {
+      keys = PApplet.subset(keys, 0, count);
+      values = PApplet.subset(values, 0, count);
+    }
+  }
+
+
+  public Iterable<Long> keys() {
+    return new Iterable<Long>() {
+
+      @Override
+      public Iterator<Long> iterator() {
+        return keyIterator();
+      }
+    };
+  }
+
+
+  // Use this to iterate when you want to be able to remove elements along the way
+  public Iterator<Long> keyIterator() {
+    return new Iterator<Long>() {
+      int index = -1;
+
+      public void remove() {
+        removeAt(index);
+      }
+
+      public Long next() {
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return keys[index];
+      }
+
+      public boolean hasNext() {
+        return following(index) < count;
+      }
+    };
+  }
+
+
+  /**
+   * Return a copy of the internal keys array. This array can be modified.
+   */
+  public long[] keyArray() {
+    crop();
+    return keyArray(null);
+  }
+
+
+  public long[] keyArray(long[] outgoing) {
+    compact();
+    if (outgoing == null || outgoing.length != count) {
+      outgoing = new long[count];
+    }
+    System.arraycopy(keys, 0, outgoing, 0, count);
+    return outgoing;
+  }
+
+
+  public double value(int index) {
+    compact();
+    return values[index];
+  }
+
+
+  public Iterable<Double> values() {
+    return new Iterable<Double>() {
+
+      @Override
+      public Iterator<Double> iterator() {
+        return valueIterator();
+      }
+    };
+  }
+
+
+  public Iterator<Double> valueIterator() {
+    return new Iterator<Double>() {
+      int index = -1;
+
+      public void remove() {
+        removeAt(index);
+      }
+
+      public Double next() {
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return values[index];
+      }
+
+      public boolean hasNext() {
+        return following(index) < count;
+      }
+    };
+  }
+
+
+  /**
+   * Create a new array and copy each of the values into it.
+   */
+  public double[] valueArray() {
+    crop();
+    return valueArray(null);
+  }
+
+
+  /**
+   * Fill an already-allocated array with the values (more efficient than
+   * creating a new array each time). If 'array' is null, or not the same
+   * size as the number of values, a new array will be allocated and returned.
+   */
+  public double[] valueArray(double[] array) {
+    compact();
+    if (array == null || array.length != size()) {
+      array = new double[count];
+    }
+    System.arraycopy(values, 0, array, 0, count);
+    return array;
+  }
+
+
+  /**
+   * Return a value for the specified key.
+   */
+  public double get(long key) {
+    int index = indices.find(keys, key);
+    if (index == -1) {
+      throw new IllegalArgumentException("No key " + key);
+    }
+    return values[index];
+  }
+
+
+  public double get(long key, double alternate) {
+    int index = indices.find(keys, key);
+    if (index == -1) {
+      return alternate;
+    }
+    return values[index];
+  }
+
+
+  /**
+   * Create a new key/value pair or change the value of one.
+   */
+  public void set(long key, double amount) {
+    int index = indices.find(keys, key);
+    if (index == -1) {
+      create(key, amount);
+    } else {
+      values[index] = amount;
+    }
+  }
+
+
+  public void setIndex(int index, long key, double value) {
+    compact();
+    if (index < 0 || index >= count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    indices.remove(keys, index);
+    keys[index] = key;
+    values[index] = value;
+    indices.put(keys, index);
+  }
+
+
+  /**
+   * Check if a key is a part of the data structure.
+   */
+  public boolean hasKey(long key) {
+    return indices.find(keys, key) != -1;
+  }
+
+
+  /**
+   * Add to a value. If the key does not exist, a new pair is initialized
+   * with the value supplied.
+   */
+  public void add(long key, double amount) {
+    int index = indices.find(keys, key);
+    if (index == -1) {
+      create(key, amount);
+    } else {
+      values[index] += amount;
+    }
+  }
+
+
+  /**
+   * Subtract from a value.
+   */
+  public void sub(long key, double amount) {
+    add(key, -amount);
+  }
+
+
+  /**
+   * Multiply a value.
+   */
+  public void mult(long key, double amount) {
+    int index = indices.find(keys, key);
+    if (index != -1) {
+      values[index] *= amount;
+    }
+  }
+
+
+  /**
+   * Divide a value.
+   */
+  public void div(long key, double amount) {
+    int index = indices.find(keys, key);
+    if (index != -1) {
+      values[index] /= amount;
+    }
+  }
+
+
+  private void checkMinMax(String functionName) {
+    if (size() == 0) {
+      String msg =
+        String.format("Cannot use %s() on an empty %s.",
+                      functionName, getClass().getSimpleName());
+      throw new RuntimeException(msg);
+    }
+  }
+
+
+  // The index of the entry that has the min value, ignoring NaN.
+  public int minIndex() {
+    compact();
+    if (count == 0) return -1;
+
+    // Will still return -1 if there are 1 or more entries, and they're all NaN
+    int mi = -1;
+    for (int i = 0; i < count; i++) {
+      double d = values[i];
+      if ((d == d) && (mi == -1 || d < values[mi])) {
+        mi = i;
+      }
+    }
+    return mi;
+  }
+
+
+  // return the key for the minimum value
+  public long minKey() {
+    checkMinMax("minKey");
+    int index = minIndex();
+    if (index == -1) {
+      throw new RuntimeException("minKey() has only NaN values");
+    }
+    return keys[index];
+  }
+
+
+  // return the minimum value, or throw an error if there are no values
+  public double minValue() {
+    checkMinMax("minValue");
+    int index = minIndex();
+    if (index == -1) {
+      return Double.NaN;
+    }
+    return values[index];
+  }
+
+
+  // The index of the entry that has the max value, ignoring NaN.
+  public int maxIndex() {
+    compact();
+    if (count == 0) return -1;
+
+    // Will still return -1 if there are 1 or more entries, and they're all NaN
+    int mi = -1;
+    for (int i = 0; i < count; i++) {
+      double d = values[i];
+      if ((d == d) && (mi == -1 || d > values[mi])) {
+        mi = i;
+      }
+    }
+    return mi;
+  }
+
+
+  /** The key for a max value; throws an error if there are no entries */
+  public long maxKey() {
+    checkMinMax("maxKey");
+    int index = maxIndex();
+    if (index == -1) {
+      throw new RuntimeException("maxKey() has only NaN values");
+    }
+    return keys[index];
+  }
+
+
+  /** The max value. (Or a RuntimeException if there are no entries.) */
+  public double maxValue() {
+    checkMinMax("maxValue");
+    int index = maxIndex();
+    if (index == -1) {
+      return Double.NaN;
+    }
+    return values[index];
+  }
+
+
+  public double sum() {
+    return sumDouble();
+  }
+
+
+  public double sumDouble() {
+    double sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += values[i];  // removed entries are 0
+    }
+    return sum;
+  }
+
+
+  public int index(long what) {
+    compact();
+    return indices.find(keys, what);
+  }
+
+
+  protected void create(long what, double much) {
+    if (count == keys.length && removed * 4 >= count) {
+      compact();  // reuse the gaps before making more room
+    }
+    if (count == keys.length) {
+      keys = PApplet.expand(keys);
+      values = PApplet.expand(values);
+      if (gap != null) {
+        gap = PApplet.expand(gap, keys.length);
+      }
+    }
+    keys[count] = what;
+    values[count] = much;
+    indices.put(keys, count);
+    count++;
+  }
+
+
+  /**
+   * Remove a key/value pair.
+   */
+  public double remove(long key) {
+    int index = indices.find(keys, key);
+    if (index == -1) {
+      throw new NoSuchElementException("" + key + " not found");
+    }
+    double value = values[index];
+    removeAt(index);
+    return value;
+  }
+
+
+  public double removeIndex(int index) {
+    compact();
+    if (index < 0 || index >= count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    double value = values[index];
+    removeAt(index);
+    return value;
+  }
+
+
+  /** Take out the key at this spot, leaving a gap until compact(). */
+  private void removeAt(int position) {
+    if (position < 0 || (gap != null && gap[position])) {
+      throw new IllegalStateException("Nothing to remove at " + position);
+    }
+    indices.remove(keys, position);
+    if (gap == null) {
+      gap = new boolean[keys.length];
+    }
+    gap[position] = true;
+    values[position] = 0;
+    removed++;
+    // gaps at the end can go right away
+    while (count > 0 && gap[count-1]) {
+      count--;
+      removed--;
+      gap[count] = false;
+    }
+  }
+
+
+  /** Position of the next key after this one, skipping removed keys. */
+  private int following(int position) {
+    do {
+      position++;
+    } while (position < count && gap != null && gap[position]);
+    return position;
+  }
+
+
+  /**
+   * Close up the gaps left by removed keys, so that positions are in
+   * order again. Removing a key is quick because this only happens the
+   * next time something needs the position of an entry.
+   */
+  private void compact() {
+    if (removed != 0) {
+      int index = 0;
+      for (int i = 0; i < count; i++) {
+        if (!gap[i]) {
+          keys[index] = keys[i];
+          values[index] = values[i];
+          index++;
+        }
+        gap[i] = false;
+      }
+      count = index;
+      removed = 0;
+      resetIndices();
+    }
+  }
+
+
+  public void swap(int a, int b) {
+    compact();
+    indices.swap(keys, a, b);
+    swapEntries(a, b);
+  }
+
+
+  private void swapEntries(int a, int b) {
+    long tkey = keys[a];
+    double tvalue = values[a];
+    keys[a] = keys[b];
+    values[a] = values[b];
+    keys[b] = tkey;
+    values[b] = tvalue;
+  }
+
+
+  /**
+   * Sort the keys from smallest to largest.
+   */
+  public void sortKeys() {
+    sortImpl(true, false, true);
+  }
+
+
+  /**
+   * Sort the keys from largest to smallest.
+   */
+  public void sortKeysReverse() {
+    sortImpl(true, true, true);
+  }
+
+
+  /**
+   * Sort by values in ascending order. The smallest value will be at [0].
+   */
+  public void sortValues() {
+    sortValues(true);
+  }
+
+
+  /**
+   * Set true to ensure that the order returned is identical. Slightly
+   * slower because the tie-breaker for identical values compares the keys.
+   * @param stable
+   */
+  public void sortValues(boolean stable) {
+    sortImpl(false, false, stable);
+  }
+
+
+  /**
+   * Sort by values in descending order. The largest value will be at [0].
+   */
+  public void sortValuesReverse() {
+    sortValuesReverse(true);
+  }
+
+
+  public void sortValuesReverse(boolean stable) {
+    sortImpl(false, true, stable);
+  }
+
+
+  protected void sortImpl(final boolean useKeys, final boolean reverse,
+                          final boolean stable) {
+    compact();
+    Sort s = new Sort() {
+      @Override
+      public int size() {
+        if (useKeys) {
+          return count;  // don't worry about NaN values
+
+        } else if (count == 0) {  // skip the NaN check, it'll AIOOBE
+          return 0;
+
+        } else {  // first move NaN values to the end of the list
+          int right = count - 1;
+          while (values[right] != values[right]) {
+            right--;
+            if (right == -1) {
+              return 0;  // all values are NaN
+            }
+          }
+          for (int i = right; i >= 0; --i) {
+            if (Double.isNaN(values[i])) {
+              swap(i, right);
+              --right;
+            }
+          }
+          return right + 1;
+        }
+      }
+
+      @Override
+      public int compare(int a, int b) {
+        int diff;
+        if (useKeys) {
+          diff = Long.compare(keys[a], keys[b]);
+        } else {  // sort values
+          diff = Double.compare(values[a], values[b]);
+          if (diff == 0 && stable) {
+            diff = Long.compare(keys[a], keys[b]);
+          }
+        }
+        return reverse ? -diff : diff;
+      }
+
+      @Override
+      public void swap(int a, int b) {
+        swapEntries(a, b);
+      }
+    };
+    s.run();
+
+    // Set the indices after sort/swaps (performance fix 160411)
+    resetIndices();
+  }
+
+
+  /**
+   * Sum all of the values in this dictionary, then return a new LongDoubleDict of
+   * each key, divided by the total sum. The total for all values will be ~1.0.
+   * @return a LongDoubleDict with the original keys, mapped to their pct of the total
+   */
+  public LongDoubleDict getPercent() {
+    double sum = sumDouble();
+    LongDoubleDict outgoing = new LongDoubleDict();
+    for (int i = 0; i < size(); i++) {
+      double percent = value(i) / sum;
+      outgoing.set(key(i), percent);
+    }
+    return outgoing;
+  }
+
+
+  /** Returns a duplicate copy of this object. */
+  public LongDoubleDict copy() {
+    compact();
+    LongDoubleDict outgoing = new LongDoubleDict(count);
+    System.arraycopy(keys, 0, outgoing.keys, 0, count);
+    System.arraycopy(values, 0, outgoing.values, 0, count);
+    outgoing.indices = new DictIndex(outgoing.keys, count, null);
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  public void print() {
+    compact();
+    for (int i = 0; i < size(); i++) {
+      System.out.println(keys[i] + " = " + values[i]);
+    }
+  }
+
+
+  /**
+   * Save tab-delimited entries to a file (TSV format, UTF-8 encoding)
+   */
+  public void save(File file) {
+    PrintWriter writer = PApplet.createWriter(file);
+    write(writer);
+    writer.close();
+  }
+
+
+  /**
+   * Write tab-delimited entries to a PrintWriter
+   */
+  public void write(PrintWriter writer) {
+    compact();
+    for (int i = 0; i < count; i++) {
+      writer.println(keys[i] + "\t" + values[i]);
+    }
+    writer.flush();
+  }
+
+
+  /**
+   * Save the entries to a binary file. Loading it with loadBinary() is
+   * a bulk copy, much faster than parsing the text written by save().
+   */
+  public void saveBinary(File file) throws IOException {
+    compact();
+    BinaryArrays.save(file, count, keys, values);
+  }
+
+
+  /**
+   * Load a dictionary written by saveBinary().
+   */
+  static public LongDoubleDict loadBinary(File file) throws IOException {
+    Object[] arrays = BinaryArrays.load(file, Table.LONG, Table.DOUBLE);
+    return new LongDoubleDict((long[]) arrays[0], (double[]) arrays[1]);
+  }
+
+
+  /**
+   * Return this dictionary as a String in JSON format. The keys are
+   * written as Strings, since JSON has no other kind of key.
+   */
+  public String toJSON() {
+    compact();
+    StringList items = new StringList();
+    for (int i = 0; i < count; i++) {
+      items.append("\"" + keys[i] + "\": " + values[i]);
+    }
+    return "{ " + items.join(", ") + " }";
+  }
+
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " size=" + size() + " " + toJSON();
+  }
+}
@@ -1,10 +1,12 @@
 package processing.data;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.function.LongUnaryOperator;
 
 import processing.core.PApplet;
 
@@ -113,8 +115,9 @@ public class LongList implements Iterable<Long> {
     int count = stop - start;
     LongList newbie = new LongList(count);
     for (int i = 0; i < count; i++) {
-      newbie.set(i, start+i);
+      newbie.data[i] = start+i;
     }
+    newbie.count = count;
     return newbie;
   }
 
@@ -500,11 +503,7 @@ public class LongList implements Iterable<Long> {
    */
   public long min() {
     checkMinMax("min");
-    long outgoing = data[0];
-    for (int i = 1; i < count; i++) {
-      if (data[i] < outgoing) outgoing = data[i];
-    }
-    return outgoing;
+    return data[minIndex()];
   }
 
 
@@ -513,13 +512,22 @@ public class LongList implements Iterable<Long> {
   @SuppressWarnings("unused")
   public int minIndex() {
     checkMinMax("minIndex");
-    long value = data[0];
-    int index = 0;
-    for (int i = 1; i < count; i++) {
-      if (data[i] < value) {
-        value = data[i];
-        index = i;
+    final long[] data = this.data;
+    final int[] found = new int[ListChunks.count(count)];
+    ListChunks.run(count, found.length, (chunk, start, stop) -> {
+      long value = data[start];
+      int index = start;
+      for (int i = start + 1; i < stop; i++) {
+        if (data[i] < value) {
+          value = data[i];
+          index = i;
+        }
       }
+      found[chunk] = index;
+    });
+    int index = found[0];
+    for (int i = 1; i < found.length; i++) {
+      if (data[found[i]] < data[index]) index = found[i];
     }
     return index;
   }
@@ -533,11 +541,7 @@ public class LongList implements Iterable<Long> {
    */
   public long max() {
     checkMinMax("max");
-    long outgoing = data[0];
-    for (int i = 1; i < count; i++) {
-      if (data[i] > outgoing) outgoing = data[i];
-    }
-    return outgoing;
+    return data[maxIndex()];
   }
 
 
@@ -545,13 +549,22 @@ public class LongList implements Iterable<Long> {
   // if there are ties, it returns the first one found.
   public int maxIndex() {
     checkMinMax("maxIndex");
-    long value = data[0];
-    int index = 0;
-    for (int i = 1; i < count; i++) {
-      if (data[i] > value) {
-        value = data[i];
-        index = i;
+    final long[] data = this.data;
+    final int[] found = new int[ListChunks.count(count)];
+    ListChunks.run(count, found.length, (chunk, start, stop) -> {
+      long value = data[start];
+      int index = start;
+      for (int i = start + 1; i < stop; i++) {
+        if (data[i] > value) {
+          value = data[i];
+          index = i;
+        }
       }
+      found[chunk] = index;
+    });
+    int index = found[0];
+    for (int i = 1; i < found.length; i++) {
+      if (data[found[i]] > data[index]) index = found[i];
     }
     return index;
   }
@@ -570,14 +583,136 @@ public class LongList implements Iterable<Long> {
 
 
   public long sumLong() {
+    final long[] data = this.data;
+    final long[] sums = new long[ListChunks.count(count)];
+    ListChunks.run(count, sums.length, (chunk, start, stop) -> {
+      long sum = 0;
+      for (int i = start; i < stop; i++) {
+        sum += data[i];
+      }
+      sums[chunk] = sum;
+    });
     long sum = 0;
-    for (int i = 0; i < count; i++) {
-      sum += data[i];
+    for (long s : sums) {
+      sum += s;
     }
     return sum;
   }
 
 
+  /**
+   * Replace each value with the sum of it and all the values before it,
+   * so the last value becomes the sum of the list. This uses long math
+   * (like += would), so the sums wrap around past Long.MAX_VALUE.
+   */
+  public void cumulativeSum() {
+    final long[] data = this.data;
+    final int chunks = ListChunks.count(count);
+    final long[] totals = new long[chunks];
+    // running sums inside each chunk
+    ListChunks.run(count, chunks, (chunk, start, stop) -> {
+      long sum = 0;
+      for (int i = start; i < stop; i++) {
+        sum += data[i];
+        data[i] = sum;
+      }
+      totals[chunk] = sum;
+    });
+    if (chunks > 1) {
+      // then add everything from the chunks before
+      final long[] offsets = new long[chunks];
+      for (int i = 1; i < chunks; i++) {
+        offsets[i] = offsets[i-1] + totals[i-1];
+      }
+      ListChunks.run(count, chunks, (chunk, start, stop) -> {
+        long offset = offsets[chunk];
+        if (offset != 0) {
+          for (int i = start; i < stop; i++) {
+            data[i] += offset;
+          }
+        }
+      });
+    }
+  }
+
+
+  /**
+   * Replace each value with the result of a function, for instance
+   * <tt>list.map(v -&gt; v * 2)</tt> to double everything. On a long list,
+   * the function is called from several threads at once (and not in order).
+   */
+  public void map(final LongUnaryOperator function) {
+    final long[] data = this.data;
+    ListChunks.run(count, ListChunks.count(count), (chunk, start, stop) -> {
+      for (int i = start; i < stop; i++) {
+        data[i] = function.applyAsLong(data[i]);
+      }
+    });
+  }
+
+
+  /**
+   * Count the values in each of a number of equal ranges, from min() to
+   * max(). Returns a list with the count for each range.
+   */
+  public IntList histogram(int bins) {
+    return histogram(bins, min(), max());
+  }
+
+
+  /**
+   * Count the values in each of a number of equal ranges from low to high,
+   * leaving out anything smaller than low or larger than high. The high
+   * value itself goes in the last range.
+   */
+  public IntList histogram(final int bins, final long low, final long high) {
+    if (bins < 1) {
+      throw new IllegalArgumentException("histogram() needs at least one bin");
+    }
+    final long[] data = this.data;
+    final int chunks = ListChunks.count(count);
+    final int[][] tallies = new int[chunks][bins];
+    final double scale = (high > low) ? bins / ((double) high - low) : 0;
+    ListChunks.run(count, chunks, (chunk, start, stop) -> {
+      int[] tally = tallies[chunk];
+      for (int i = start; i < stop; i++) {
+        long value = data[i];
+        if (value >= low && value <= high) {
+          int bin = (int) (((double) value - low) * scale);
+          tally[bin < bins ? bin : bins - 1]++;
+        }
+      }
+    });
+    int[] outgoing = tallies[0];
+    for (int c = 1; c < chunks; c++) {
+      for (int i = 0; i < bins; i++) {
+        outgoing[i] += tallies[c][i];
+      }
+    }
+    return new IntList(outgoing);
+  }
+
+
+  /**
+   * The value that this percentage (0 to 100) of the list is at or below,
+   * for instance 50 for the median. Between two values, the result is
+   * interpolated. Uses quickselect (no sort) on a copy of the values, so
+   * the order of the list doesn't change. The copy is made of doubles, so
+   * values past 2^53 lose some precision.
+   */
+  public double percentile(double percentile) {
+    checkMinMax("percentile");
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile() must be between 0 and 100");
+    }
+    double[] values = new double[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = data[i];
+    }
+    return TableGroups.percentile(values, 0, count, percentile);
+  }
+
+
   /**
    * Sorts the array in place.
    *
@@ -585,7 +720,11 @@ public class LongList implements Iterable<Long> {
    * @webBrief Sorts the array, lowest to highest
    */
   public void sort() {
-    Arrays.sort(data, 0, count);
+    if (ListChunks.count(count) > 1) {
+      Arrays.parallelSort(data, 0, count);
+    } else {
+      Arrays.sort(data, 0, count);
+    }
   }
 
 
@@ -596,6 +735,11 @@ public class LongList implements Iterable<Long> {
    * @webBrief Reverse sort, orders values from highest to lowest
    */
   public void sortReverse() {
+    if (ListChunks.count(count) > 1) {
+      Arrays.parallelSort(data, 0, count);
+      reverse();
+      return;
+    }
     new Sort() {
       @Override
       public int size() {
@@ -840,6 +984,26 @@ public class LongList implements Iterable<Long> {
   }
 
 
+  /**
+   * Save the values to a binary file. Loading it with loadBinary() is
+   * a bulk copy, much faster than parsing the text written by save().
+   */
+  public void saveBinary(File file) throws IOException {
+    BinaryArrays.save(file, count, data);
+  }
+
+
+  /**
+   * Load a list written by saveBinary().
+   */
+  static public LongList loadBinary(File file) throws IOException {
+    LongList outgoing = new LongList(0);
+    outgoing.data = (long[]) BinaryArrays.load(file, Table.LONG)[0];
+    outgoing.count = outgoing.data.length;
+    return outgoing;
+  }
+
+
   /**
    * Return this dictionary as a String in JSON format.
    */
@@ -0,0 +1,245 @@
+package processing.data;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import processing.core.PApplet;
+
+
+/**
+ * Reads a sheet from the content.xml of an ODS file one element at a time,
+ * instead of loading the whole document as XML first, so the memory used
+ * is only what the Table needs. Cells go straight into the table, which
+ * grows by doubling like TableParser does.
+ * <p/>
+ * Repeated rows and cells (table:number-rows-repeated and
+ * table:number-columns-repeated) that are empty only move the row or
+ * column along, so the runs of a million empty rows or thousands of empty
+ * columns that spreadsheets like to write at the end of a sheet cost
+ * nothing. Repeated cells and rows with something in them are copied.
+ * <p/>
+ * The contents of a cell are its office:value (for numbers), or else all
+ * of the text in its text:p element.
+ * Advanced users only, not official API.
+ */
+class OdsTableParser implements XMLStreamConstants {
+  Table table;
+  boolean header;
+  XMLStreamReader reader;
+
+  int row;  // where the next row goes
+  int rowCount;  // rows up to the last one that had something in it
+  StringList titles;
+  StringBuilder text = new StringBuilder();
+
+
+  OdsTableParser(Table table, boolean header) {
+    this.table = table;
+    this.header = header;
+  }
+
+
+  /**
+   * Read the sheet with this name, or the first one if worksheet is null.
+   * Returns false if there was no such sheet.
+   */
+  boolean parse(InputStream input, String worksheet) throws XMLStreamException {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    reader = factory.createXMLStreamReader(input);
+    try {
+      while (reader.hasNext()) {
+        if (reader.next() == START_ELEMENT && is("table", "table")) {
+          if (worksheet == null || worksheet.equals(attribute("table", "name"))) {
+            parseSheet();
+            return true;
+          }
+          skip();
+        }
+      }
+      return false;
+    } finally {
+      reader.close();
+    }
+  }
+
+
+  protected void parseSheet() throws XMLStreamException {
+    row = 0;
+    rowCount = 0;
+    if (table.rowCount == 0) {
+      table.resizeRows(10);
+    }
+    // rows can also be inside table:table-header-rows or table:table-row-group
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == START_ELEMENT) {
+        if (is("table", "table-row")) {
+          parseRow();
+        } else {
+          depth++;
+        }
+      } else if (event == END_ELEMENT) {
+        depth--;
+      }
+    }
+    table.resizeRows(rowCount);
+  }
+
+
+  protected void parseRow() throws XMLStreamException {
+    int rowRepeat = attributeInt("table", "number-rows-repeated");
+    boolean rowNotNull = false;
+    int column = 0;
+    if (header) {
+      titles = new StringList();
+    }
+
+    while (reader.nextTag() == START_ELEMENT) {
+      if (is("table", "table-cell") || is("table", "covered-table-cell")) {
+        int cellRepeat = attributeInt("table", "number-columns-repeated");
+        String cellData = attribute("office", "value");
+        if (cellData != null) {
+          skip();
+        } else {
+          cellData = cellText();
+        }
+        if (cellData == null) {
+          column += cellRepeat;  // nothing to store, just move along
+        } else {
+          for (int c = 0; c < cellRepeat; c++) {
+            store(column++, cellData);
+          }
+          rowNotNull = true;
+        }
+      } else {
+        skip();
+      }
+    }
+
+    if (header) {
+      if (titles.size() != 0) {
+        table.setColumnTitles(titles.toArray());
+      }
+      header = false;
+
+    } else {
+      if (rowNotNull) {
+        for (int r = 1; r < rowRepeat; r++) {
+          for (int col = 0; col < table.getColumnCount(); col++) {
+            store(row + r, col, table.getString(row, col));
+          }
+        }
+      }
+      row += rowRepeat;
+    }
+  }
+
+
+  protected void store(int column, String value) {
+    if (header) {
+      titles.set(column, value);
+    } else {
+      store(row, column, value);
+    }
+  }
+
+
+  protected void store(int row, int column, String value) {
+    if (row >= table.rowCount) {
+      table.resizeRows(Math.max(row + 1, table.rowCount << 1));
+    }
+    table.setString(row, column, value);
+    if (row >= rowCount) {
+      rowCount = row + 1;
+    }
+  }
+
+
+  /**
+   * Read the text of a cell, up to its end tag. Returns null for a cell
+   * with nothing in it.
+   */
+  protected String cellText() throws XMLStreamException {
+    text.setLength(0);
+    int paragraphs = 0;
+    boolean children = false;
+    int depth = 1;
+    int paragraphDepth = 0;  // depth of the text:p being read, if any
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == START_ELEMENT) {
+        depth++;
+        if (depth == 2) {
+          children = true;
+          if (is("text", "p")) {
+            paragraphs++;
+            paragraphDepth = depth;
+          }
+        }
+      } else if (event == END_ELEMENT) {
+        if (depth == paragraphDepth) {
+          paragraphDepth = 0;
+        }
+        depth--;
+      } else if (paragraphDepth != 0 &&
+                 (event == CHARACTERS || event == CDATA || event == SPACE)) {
+        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+      }
+    }
+    if (!children) {
+      return null;
+    }
+    if (paragraphs != 1) {
+      throw new RuntimeException("found more than one text:p element");
+    }
+    return text.toString();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Whether the current element is prefix:name, the way ODS files name them. */
+  protected boolean is(String prefix, String name) {
+    return name.equals(reader.getLocalName()) && prefix.equals(reader.getPrefix());
+  }
+
+
+  protected String attribute(String prefix, String name) {
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+      if (name.equals(reader.getAttributeLocalName(i)) &&
+          prefix.equals(reader.getAttributePrefix(i))) {
+        return reader.getAttributeValue(i);
+      }
+    }
+    return null;
+  }
+
+
+  /** Number of times a row or cell is repeated, 1 if not set. */
+  protected int attributeInt(String prefix, String name) {
+    String value = attribute(prefix, name);
+    return (value == null) ? 1 : Math.max(1, PApplet.parseInt(value, 1));
+  }
+
+
+  /** Move past the end of the current element. */
+  protected void skip() throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == START_ELEMENT) {
+        depth++;
+      } else if (event == END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+}
@@ -0,0 +1,374 @@
+package processing.data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+import processing.core.PApplet;
+
+
+/**
+ * Loads CSV or TSV data on all available cores, used for the "parallel"
+ * option of loadTable(). Input is read a large block at a time, and each
+ * block is split into chunks that end on record boundaries. The chunks are
+ * parsed into separate tables by TableParser on the fork-join pool, while
+ * the next block is being read, then copied back into the table in order.
+ * <p/>
+ * To split on a boundary without reading the whole block one char at a
+ * time, the quotes in each chunk are counted in parallel: an odd number of
+ * quotes before the start of a chunk means it starts inside a quoted field,
+ * so its first newline can't be used. This assumes the quotes in the file
+ * are balanced, which is true for any CSV that follows RFC 4180.
+ * Advanced users only, not official API.
+ */
+class ParallelTableParser {
+  Table table;
+  boolean tsv;
+  ForkJoinPool pool;
+  int chunkCount;
+  int blockSize = 1 << 24;  // chars read at a time
+  int minChunk = 1 << 16;   // smallest chunk worth handing to another thread
+
+  int row;  // rows copied into the table so far
+
+  // for the "infer" option, see TableParser
+  int inferRows;
+  int inferColumn;
+  int[] seen;
+  TableInference.Text text = new TableInference.Text();
+
+
+  ParallelTableParser(Table table, boolean tsv) {
+    this.table = table;
+    this.tsv = tsv;
+    pool = ForkJoinPool.commonPool();
+    chunkCount = Runtime.getRuntime().availableProcessors();
+  }
+
+
+  /**
+   * Each chunk of the first block picks its own column types from its
+   * first rows, later chunks start with the types of the table. When a
+   * chunk is added, the table and the chunk are both widened to fit
+   * whatever was seen in either one.
+   */
+  void infer(int rows, int firstColumn) {
+    inferRows = rows;
+    inferColumn = firstColumn;
+    seen = null;
+  }
+
+
+  void parse(Reader reader, boolean header) throws IOException {
+    char[] current = new char[blockSize];
+    char[] next = new char[blockSize];
+    int length = read(reader, current, 0);
+    boolean eof = length < current.length;
+
+    int start = 0;
+    if (length > 0 && current[0] == '\uFEFF') {
+      start = 1;
+    }
+    if (header) {
+      start = new TableParser(table, tsv).parseHeader(current, start, length);
+    }
+
+    row = 0;
+    boolean done = false;
+    while (!done) {
+      int[] bounds = findBoundaries(current, start, length, eof);
+      if (bounds == null) {
+        // a single record fills the entire block, so make room for more
+        current = PApplet.expand(current, current.length << 1);
+        length += read(reader, current, length);
+        eof = length < current.length;
+        continue;
+      }
+      List<ForkJoinTask<TableParser>> tasks = parseChunks(current, bounds);
+
+      // while those are running, carry the remainder over to the next block
+      int end = bounds[bounds.length - 1];
+      done = eof;
+      if (!done) {
+        if (next.length < current.length) {
+          next = new char[current.length];
+        }
+        int carry = length - end;
+        System.arraycopy(current, end, next, 0, carry);
+        length = carry + read(reader, next, carry);
+        eof = length < next.length;
+      }
+      for (ForkJoinTask<TableParser> task : tasks) {
+        append(task.join());
+      }
+
+      char[] temp = current;
+      current = next;
+      next = temp;
+      start = 0;
+    }
+    table.resizeRows(row);
+    if (inferRows != 0 && row < inferRows) {
+      checkCategories();
+    }
+  }
+
+
+  /** Read until the array is full or the input runs out. */
+  static int read(Reader reader, char[] c, int offset) throws IOException {
+    int total = 0;
+    while (offset + total < c.length) {
+      int count = reader.read(c, offset + total, c.length - (offset + total));
+      if (count == -1) {
+        break;
+      }
+      total += count;
+    }
+    return total;
+  }
+
+
+  /**
+   * Split c[start, stop) into chunks that begin and end on records.
+   * @return the chunk boundaries, beginning with start and ending with the
+   * end of the last complete record (or stop, if this is the final block),
+   * or null if there's no complete record at all
+   */
+  int[] findBoundaries(final char[] c, int start, final int stop, boolean last) {
+    int count = Math.max(1, Math.min(chunkCount, (stop - start) / minChunk));
+    final int[] splits = new int[count + 1];
+    for (int i = 0; i <= count; i++) {
+      splits[i] = start + (int) ((long) (stop - start) * i / count);
+    }
+
+    // whether each split falls inside a quoted field
+    final boolean[] quoted = new boolean[count];
+    if (!tsv && count > 1) {
+      final int[] quotes = new int[count];
+      IntStream.range(0, count).parallel().forEach(i -> {
+        int found = 0;
+        for (int j = splits[i]; j < splits[i+1]; j++) {
+          if (c[j] == '\"') found++;
+        }
+        quotes[i] = found;
+      });
+      int total = 0;
+      for (int i = 0; i < count; i++) {
+        quoted[i] = (total & 1) == 1;
+        total += quotes[i];
+      }
+    }
+
+    final int[] breaks = new int[count + 1];
+    breaks[0] = start;
+    IntStream.range(1, count + 1).parallel().forEach(i -> {
+      if (i < count) {
+        breaks[i] = nextBreak(c, splits[i], stop, quoted[i], false);
+      } else {
+        breaks[i] = last ? stop : nextBreak(c, splits[i-1], stop, quoted[i-1], true);
+      }
+    });
+
+    IntList outgoing = new IntList();
+    outgoing.append(start);
+    int end = breaks[count];
+    for (int i = 1; i < count; i++) {
+      int b = breaks[i];
+      if (b != -1 && b > outgoing.get(outgoing.size() - 1) && (end == -1 || b < end)) {
+        outgoing.append(b);
+      }
+    }
+    if (end == -1) {
+      // no newline in the last segment, settle for the last one found
+      if (outgoing.size() == 1) {
+        return null;
+      }
+    } else if (end > outgoing.get(outgoing.size() - 1)) {
+      outgoing.append(end);
+    }
+    return outgoing.values();
+  }
+
+
+  /**
+   * Find the first (or the last) place a new record can start in
+   * c[from, stop), given whether 'from' is inside a quoted field.
+   * A CR at the very end of the block isn't used, since an LF may follow.
+   * @return index after the line ending, or -1 if there isn't one
+   */
+  int nextBreak(char[] c, int from, int stop, boolean quoted, boolean lastOne) {
+    int found = -1;
+    for (int i = from; i < stop; i++) {
+      char ch = c[i];
+      if (ch == '\"') {
+        if (!tsv) quoted = !quoted;
+      } else if (!quoted) {
+        int b = -1;
+        if (ch == '\n') {
+          b = i + 1;
+        } else if (ch == '\r' && i + 1 < stop) {
+          b = (c[i+1] == '\n') ? i + 2 : i + 1;
+        }
+        if (b != -1) {
+          if (!lastOne) {
+            return b;
+          }
+          found = b;
+          i = b - 1;
+        }
+      }
+    }
+    return found;
+  }
+
+
+  List<ForkJoinTask<TableParser>> parseChunks(final char[] c, int[] bounds) {
+    List<ForkJoinTask<TableParser>> tasks = new ArrayList<>();
+    for (int i = 0; i < bounds.length - 1; i++) {
+      final int start = bounds[i];
+      final int stop = bounds[i+1];
+      // copied here, since the table changes while the chunks are parsed
+      final TableParser parser = new TableParser(table.emptyCopy(), tsv);
+      if (inferRows != 0) {
+        if (seen == null) {
+          parser.infer(inferRows, inferColumn);
+          parser.partial = true;
+        } else {
+          parser.inferFrom(seen.clone(), inferRows);
+        }
+      }
+      tasks.add(pool.submit(() -> {
+        parser.parse(c, start, stop, false);
+        return parser;
+      }));
+    }
+    return tasks;
+  }
+
+
+  /** Copy the rows of a chunk to the end of the table. */
+  void append(TableParser parser) {
+    Table chunk = parser.table;
+    int count = chunk.getRowCount();
+    table.ensureColumn(chunk.getColumnCount() - 1);
+    if (inferRows != 0) {
+      matchTypes(parser);
+    }
+    if (row + count > table.rowCount) {
+      table.resizeRows(Math.max(row + count, table.rowCount << 1));
+    }
+
+    for (int col = 0; col < chunk.getColumnCount(); col++) {
+      Object source = chunk.columns[col];
+      Object target = table.columns[col];
+      if (chunk.columnTypes[col] == Table.CATEGORY) {
+        // chunks each have their own categories, map them to the table's
+        Table.HashMapBlows categories = chunk.columnCategories[col];
+        Table.HashMapBlows tableCategories = table.columnCategories[col];
+        int[] remap = new int[categories.size()];
+        for (int i = 0; i < remap.length; i++) {
+          remap[i] = tableCategories.index(categories.key(i));
+        }
+        int[] indices = (int[]) source;
+        int[] tableIndices = (int[]) target;
+        for (int i = 0; i < count; i++) {
+          int index = indices[i];
+          tableIndices[row + i] =
+            (index == chunk.missingCategory) ? index : remap[index];
+        }
+      } else {
+        System.arraycopy(source, 0, target, row, count);
+      }
+    }
+    if (inferRows != 0) {
+      text.append(parser.text, count, row);
+    }
+    row += count;
+    if (inferRows != 0 && row >= inferRows) {
+      checkCategories();
+    }
+  }
+
+
+  /**
+   * Give a column of the table and the chunk the same type, the smallest
+   * one for what was seen in both.
+   */
+  void matchTypes(TableParser parser) {
+    Table chunk = parser.table;
+    int columnCount = chunk.getColumnCount();
+    if (seen == null) {
+      // nothing loaded yet, so use whatever the first chunk picked
+      seen = new int[columnCount];
+      System.arraycopy(parser.seen, 0, seen, 0, Math.min(columnCount, parser.seen.length));
+      for (int col = inferColumn; col < columnCount; col++) {
+        setTableType(col, chunk.columnTypes[col]);
+      }
+      return;
+    }
+    if (seen.length < columnCount) {
+      seen = PApplet.expand(seen, columnCount);
+    }
+    for (int col = inferColumn; col < columnCount; col++) {
+      int tableSeen = seen[col];
+      int chunkSeen = (col < parser.seen.length) ? parser.seen[col] : 0;
+      int type;
+      int mask;
+      if (tableSeen == 0 || chunkSeen == 0) {
+        type = Table.STRING;
+        mask = 0;
+      } else if (tableSeen == TableInference.TEXT || chunkSeen == TableInference.TEXT) {
+        // categories stay that way if the other only had empty entries
+        boolean category =
+          (tableSeen == TableInference.TEXT || tableSeen == TableInference.EMPTY) &&
+          (chunkSeen == TableInference.TEXT || chunkSeen == TableInference.EMPTY);
+        type = category ? Table.CATEGORY : Table.STRING;
+        mask = category ? TableInference.TEXT : 0;
+      } else {
+        mask = tableSeen | chunkSeen;
+        type = TableInference.typeFor(mask);
+      }
+      seen[col] = mask;
+      if (table.columnTypes[col] != type) {
+        setTableType(col, type);
+      }
+      if (chunk.columnTypes[col] != type) {
+        parser.text.setColumnType(chunk, col, type, chunk.getRowCount());
+      }
+    }
+  }
+
+
+  /**
+   * Change the type of a column of the table. Rows past the ones that have
+   * been loaded are dropped first, since they would add a null category.
+   */
+  void setTableType(int col, int type) {
+    if (table.rowCount != row) {
+      table.resizeRows(row);
+    }
+    text.setColumnType(table, col, type, row);
+  }
+
+
+  /**
+   * Chunks with only a few rows keep all their text columns as CATEGORY,
+   * so decide once enough rows have been loaded, the same as TableParser.
+   */
+  void checkCategories() {
+    if (seen == null) {
+      return;
+    }
+    for (int col = inferColumn; col < seen.length; col++) {
+      if (seen[col] == TableInference.TEXT &&
+          !TableInference.fewCategories(table.columnCategories[col].size(), row)) {
+        setTableType(col, Table.STRING);
+        seen[col] = 0;
+      }
+    }
+  }
+}
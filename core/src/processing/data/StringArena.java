@@ -0,0 +1,274 @@
+package processing.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * A list of Strings kept as UTF-8 in a single byte array, used by
+ * StringList.compress() and for STRING columns by Table.compress(). Each
+ * String object costs 40 bytes or so before its first character, which
+ * is more than the data itself for short ids and codes. Here an entry
+ * costs its UTF-8 bytes (one per character for ASCII) plus its end offset,
+ * and a String is only made when get() is called.
+ * <p/>
+ * Finding and counting entries compare the UTF-8 bytes directly, so
+ * hasValue(), getTally(), and Table.findRowIndex() don't create a String
+ * for each entry. The layout is the same as STRING columns in
+ * TableMapping: the end offset of each entry, inverted for null entries.
+ * Entries can't be changed once encoded.
+ * Advanced users only, not official API.
+ */
+class StringArena {
+  // can't appear in UTF-8, so a search for a String that can't be encoded
+  static private final byte[] NO_MATCH = { (byte) 0xFF };
+
+  byte[] bytes;  // UTF-8 of each entry, one after another
+  int[] ends;    // end of each entry in bytes, or ~end for null
+  int count;
+
+
+  /**
+   * Encode the first 'count' entries, or return null if the UTF-8 would
+   * be larger than the 2 GB that fits in a byte array, or if an entry has
+   * half of a surrogate pair (which UTF-8 would turn into a '?').
+   */
+  static StringArena encode(String[] data, int count) {
+    long total = 0;
+    for (int i = 0; i < count; i++) {
+      if (data[i] != null) {
+        total += data[i].length();  // will grow if not all ASCII
+      }
+    }
+    if (total > Integer.MAX_VALUE - 8) {
+      return null;
+    }
+    byte[] bytes = new byte[(int) total];
+    int[] ends = new int[count];
+    int end = 0;
+    for (int i = 0; i < count; i++) {
+      String str = data[i];
+      if (str == null) {
+        ends[i] = ~end;
+        continue;
+      }
+      int length = str.length();
+      if (end + length > bytes.length) {
+        bytes = grow(bytes, end + length);
+        if (bytes == null) return null;
+      }
+      // copy ASCII directly, which is most entries in most data
+      int c = 0;
+      while (c < length) {
+        char ch = str.charAt(c);
+        if (ch >= 0x80) break;
+        bytes[end + c] = (byte) ch;
+        c++;
+      }
+      if (c < length) {
+        if (!valid(str, c)) {
+          return null;
+        }
+        byte[] utf8 = str.getBytes(StandardCharsets.UTF_8);
+        if (end + utf8.length > bytes.length) {
+          bytes = grow(bytes, end + utf8.length);
+          if (bytes == null) return null;
+        }
+        System.arraycopy(utf8, 0, bytes, end, utf8.length);
+        end += utf8.length;
+      } else {
+        end += length;
+      }
+      ends[i] = end;
+    }
+    StringArena outgoing = new StringArena();
+    outgoing.bytes = (end == bytes.length) ? bytes : Arrays.copyOf(bytes, end);
+    outgoing.ends = ends;
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  static private byte[] grow(byte[] bytes, int needed) {
+    if (needed < 0 || needed > Integer.MAX_VALUE - 8) {
+      return null;  // past 2 GB (or wrapped around)
+    }
+    long size = Math.max(needed, bytes.length + (long) (bytes.length >> 1));
+    return Arrays.copyOf(bytes, (int) Math.min(size, Integer.MAX_VALUE - 8));
+  }
+
+
+  /** True if every surrogate from 'start' on is part of a pair. */
+  static private boolean valid(String str, int start) {
+    int length = str.length();
+    for (int i = start; i < length; i++) {
+      char ch = str.charAt(i);
+      if (Character.isHighSurrogate(ch)) {
+        if (i + 1 == length || !Character.isLowSurrogate(str.charAt(i + 1))) {
+          return false;
+        }
+        i++;
+      } else if (Character.isLowSurrogate(ch)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * UTF-8 bytes of a String to search for, or null for null. A String
+   * that can't be encoded gets bytes that don't match any entry.
+   */
+  static byte[] utf8(String str) {
+    if (str == null) {
+      return null;
+    }
+    if (!valid(str, 0)) {
+      return NO_MATCH;
+    }
+    return str.getBytes(StandardCharsets.UTF_8);
+  }
+
+
+  int start(int index) {
+    if (index == 0) {
+      return 0;
+    }
+    int end = ends[index - 1];
+    return (end < 0) ? ~end : end;
+  }
+
+
+  String get(int index) {
+    int end = ends[index];
+    if (end < 0) {
+      return null;
+    }
+    int start = start(index);
+    return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+  }
+
+
+  /** Decode every entry, for when the list or column goes back to normal. */
+  String[] decode() {
+    String[] outgoing = new String[count];
+    for (int i = 0; i < count; i++) {
+      outgoing[i] = get(i);
+    }
+    return outgoing;
+  }
+
+
+  /** True if the entry is the same as these UTF-8 bytes (or both null). */
+  boolean matches(int index, byte[] utf8) {
+    int end = ends[index];
+    if (end < 0 || utf8 == null) {
+      return end < 0 && utf8 == null;
+    }
+    int start = start(index);
+    if (end - start != utf8.length) {
+      return false;
+    }
+    for (int i = 0; i < utf8.length; i++) {
+      if (bytes[start + i] != utf8[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /** First index at or after 'from' that matches, or -1 if none. */
+  int index(byte[] utf8, int from) {
+    for (int i = from; i < count; i++) {
+      if (matches(i, utf8)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+
+  /**
+   * Count each different entry, in the order they're first found. Only
+   * one String is made for each different entry. Null entries are counted
+   * under a null key, same as IntDict.increment(null).
+   */
+  IntDict tally() {
+    int capacity = 16;
+    while (capacity < (long) count * 2) {
+      capacity <<= 1;
+    }
+    int mask = capacity - 1;
+    int[] table = new int[capacity];  // first index + 1 of each entry, by hash
+    int[] first = new int[Math.max(count, 1)];
+    int[] counts = new int[Math.max(count, 1)];
+    int distinct = 0;
+    int nulls = -1;  // which of the distinct entries is null
+    for (int i = 0; i < count; i++) {
+      int end = ends[i];
+      if (end < 0) {
+        if (nulls == -1) {
+          nulls = distinct;
+          first[distinct] = i;
+          counts[distinct++] = 1;
+        } else {
+          counts[nulls]++;
+        }
+        continue;
+      }
+      int start = start(i);
+      int slot = hash(start, end) & mask;
+      while (true) {
+        int found = table[slot];
+        if (found == 0) {
+          table[slot] = distinct + 1;
+          first[distinct] = i;
+          counts[distinct++] = 1;
+          break;
+        }
+        if (same(first[found - 1], start, end)) {
+          counts[found - 1]++;
+          break;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+    String[] keys = new String[distinct];
+    for (int i = 0; i < distinct; i++) {
+      keys[i] = get(first[i]);
+    }
+    return new IntDict(keys, Arrays.copyOf(counts, distinct));
+  }
+
+
+  private boolean same(int index, int start, int end) {
+    int otherStart = start(index);
+    if (ends[index] - otherStart != end - start) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      if (bytes[otherStart++] != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  private int hash(int start, int end) {
+    int h = 0;
+    for (int i = start; i < end; i++) {
+      h = 31 * h + bytes[i];
+    }
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+
+  /** Approximate number of bytes used. */
+  long memory() {
+    return bytes.length + 4L * ends.length;
+  }
+}
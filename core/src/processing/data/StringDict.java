@@ -1,7 +1,6 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -26,7 +25,16 @@ public class StringDict {
   protected String[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<>();
+  private DictIndex indices = new DictIndex();
+
+  /**
+   * Spots left by keys removed since the last compact(), the same length
+   * as keys[], or null if nothing has been removed yet
+   */
+  private boolean[] gap;
+
+  /** Number of keys removed since the last compact(), still taking up a spot */
+  private int removed;
 
 
   public StringDict() {
@@ -66,7 +74,7 @@ public class StringDict {
       if (pieces.length == 2) {
         keys[count] = pieces[0];
         values[count] = pieces[1];
-        indices.put(keys[count], count);
+        indices.put(keys, count);
         count++;
       }
     }
@@ -84,7 +92,7 @@ public class StringDict {
     this.values = values;
     count = keys.length;
     for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+      indices.put(keys, i);
     }
   }
 
@@ -106,7 +114,7 @@ public class StringDict {
     for (int i = 0; i < count; i++) {
       keys[i] = pairs[i][0];
       values[i] = pairs[i][1];
-      indices.put(keys[i], i);
+      indices.put(keys, i);
     }
   }
 
@@ -138,7 +146,7 @@ public class StringDict {
    * @webBrief Returns the number of key/value pairs
    */
   public int size() {
-    return count;
+    return count - removed;
   }
 
 
@@ -147,6 +155,7 @@ public class StringDict {
    * Helpful for situations like sorting and then grabbing the top 50 entries.
    */
   public void resize(int length) {
+    compact();
     if (length > count) {
       throw new IllegalArgumentException("resize() can only be used to shrink the dictionary");
     }
@@ -173,15 +182,14 @@ public class StringDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<>();
+    removed = 0;
+    gap = null;
+    indices = new DictIndex();
   }
 
 
   private void resetIndices() {
-    indices = new HashMap<>(count);
-    for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
-    }
+    indices = new DictIndex(keys, count);
   }
 
 
@@ -214,18 +222,19 @@ public class StringDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeAt(index);
       }
 
       public Entry next() {
-        ++index;
-        Entry e = new Entry(keys[index], values[index]);
-        return e;
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return new Entry(keys[index], values[index]);
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return following(index) < count;
       }
     };
   }
@@ -235,11 +244,13 @@ public class StringDict {
 
 
   public String key(int index) {
+    compact();
     return keys[index];
   }
 
 
   protected void crop() {
+    compact();
     if (count != keys.length) {
       keys = PApplet.subset(keys, 0, count);
       values = PApplet.subset(values, 0, count);
@@ -269,16 +280,19 @@ public class StringDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeAt(index);
       }
 
       public String next() {
-        return key(++index);
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return keys[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return following(index) < count;
       }
     };
   }
@@ -297,6 +311,7 @@ public class StringDict {
 
 
   public String[] keyArray(String[] outgoing) {
+    compact();
     if (outgoing == null || outgoing.length != count) {
       outgoing = new String[count];
     }
@@ -306,6 +321,7 @@ public class StringDict {
 
 
   public String value(int index) {
+    compact();
     return values[index];
   }
 
@@ -331,16 +347,19 @@ public class StringDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeAt(index);
       }
 
       public String next() {
-        return value(++index);
+        index = following(index);
+        if (index >= count) {
+          throw new NoSuchElementException();
+        }
+        return values[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return following(index) < count;
       }
     };
   }
@@ -364,6 +383,7 @@ public class StringDict {
    * size as the number of values, a new array will be allocated and returned.
    */
   public String[] valueArray(String[] array) {
+    compact();
     if (array == null || array.length != size()) {
       array = new String[count];
     }
@@ -379,14 +399,14 @@ public class StringDict {
    * @webBrief Return a value for the specified key
    */
   public String get(String key) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) return null;
     return values[index];
   }
 
 
   public String get(String key, String alternate) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) return alternate;
     return values[index];
   }
@@ -399,7 +419,7 @@ public class StringDict {
    * @webBrief Create a new key/value pair or change the value of one
    */
   public void set(String key, String value) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       create(key, value);
     } else {
@@ -409,17 +429,20 @@ public class StringDict {
 
 
   public void setIndex(int index, String key, String value) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
+    indices.remove(keys, index);
     keys[index] = key;
     values[index] = value;
+    indices.put(keys, index);
   }
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    compact();
+    return indices.find(keys, what);
   }
 
 
@@ -430,18 +453,24 @@ public class StringDict {
    * @webBrief Check if a key is a part of the data structure
    */
   public boolean hasKey(String key) {
-    return index(key) != -1;
+    return indices.find(keys, key) != -1;
   }
 
 
   protected void create(String key, String value) {
+    if (count == keys.length && removed * 4 >= count) {
+      compact();  // reuse the gaps before making more room
+    }
     if (count == keys.length) {
       keys = PApplet.expand(keys);
       values = PApplet.expand(values);
+      if (gap != null) {
+        gap = PApplet.expand(gap, keys.length);
+      }
     }
-    indices.put(key, Integer.valueOf(count));
     keys[count] = key;
     values[count] = value;
+    indices.put(keys, count);
     count++;
   }
 
@@ -452,45 +481,100 @@ public class StringDict {
    * @webBrief Remove a key/value pair
    */
   public String remove(String key) {
-    int index = index(key);
+    int index = indices.find(keys, key);
     if (index == -1) {
       throw new NoSuchElementException("'" + key + "' not found");
     }
     String value = values[index];
-    removeIndex(index);
+    removeAt(index);
     return value;
   }
 
 
   public String removeIndex(int index) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
     String value = values[index];
-    indices.remove(keys[index]);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
-    count--;
-    keys[count] = null;
-    values[count] = null;
+    removeAt(index);
     return value;
   }
 
 
+  /** Take out the key at this spot, leaving a gap until compact(). */
+  private void removeAt(int position) {
+    if (position < 0 || (gap != null && gap[position])) {
+      throw new IllegalStateException("Nothing to remove at " + position);
+    }
+    indices.remove(keys, position);
+    if (gap == null) {
+      gap = new boolean[keys.length];
+    }
+    gap[position] = true;
+    keys[position] = null;
+    values[position] = null;
+    removed++;
+    // gaps at the end can go right away
+    while (count > 0 && gap[count-1]) {
+      count--;
+      removed--;
+      gap[count] = false;
+    }
+  }
+
+
+  /** Position of the next key after this one, skipping removed keys. */
+  private int following(int position) {
+    do {
+      position++;
+    } while (position < count && gap != null && gap[position]);
+    return position;
+  }
+
+
+  /**
+   * Close up the gaps left by removed keys, so that positions are in
+   * order again. Removing a key is quick because this only happens the
+   * next time something needs the position of an entry.
+   */
+  private void compact() {
+    if (removed != 0) {
+      int index = 0;
+      for (int i = 0; i < count; i++) {
+        if (!gap[i]) {
+          keys[index] = keys[i];
+          values[index] = values[i];
+          index++;
+        }
+        gap[i] = false;
+      }
+      for (int i = index; i < count; i++) {
+        keys[i] = null;
+        values[i] = null;
+      }
+      count = index;
+      removed = 0;
+      resetIndices();
+    }
+  }
+
+
 
   public void swap(int a, int b) {
+    compact();
+    indices.swap(keys, a, b);
+    swapEntries(a, b);
+  }
+
+
+  private void swapEntries(int a, int b) {
     String tkey = keys[a];
     String tvalue = values[a];
     keys[a] = keys[b];
     values[a] = values[b];
     keys[b] = tkey;
     values[b] = tvalue;
-
-//    indices.put(keys[a], Integer.valueOf(a));
-//    indices.put(keys[b], Integer.valueOf(b));
   }
 
 
@@ -538,6 +622,7 @@ public class StringDict {
 
 
   protected void sortImpl(final boolean useKeys, final boolean reverse) {
+    compact();
     Sort s = new Sort() {
       @Override
       public int size() {
@@ -563,7 +648,7 @@ public class StringDict {
 
       @Override
       public void swap(int a, int b) {
-        StringDict.this.swap(a, b);
+        swapEntries(a, b);
       }
     };
     s.run();
@@ -575,18 +660,18 @@ public class StringDict {
 
   /** Returns a duplicate copy of this object. */
   public StringDict copy() {
+    compact();
     StringDict outgoing = new StringDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
+    outgoing.indices = new DictIndex(outgoing.keys, count);
     outgoing.count = count;
     return outgoing;
   }
 
 
   public void print() {
+    compact();
     for (int i = 0; i < size(); i++) {
       System.out.println(keys[i] + " = " + values[i]);
     }
@@ -607,6 +692,7 @@ public class StringDict {
    * Write tab-delimited entries to a PrintWriter
    */
   public void write(PrintWriter writer) {
+    compact();
     for (int i = 0; i < count; i++) {
       writer.println(keys[i] + "\t" + values[i]);
     }
@@ -614,10 +700,30 @@ public class StringDict {
   }
 
 
+  /**
+   * Save the entries to a binary file. Loading it with loadBinary() is
+   * a bulk copy, much faster than parsing the text written by save().
+   */
+  public void saveBinary(File file) throws IOException {
+    compact();
+    BinaryArrays.save(file, count, keys, values);
+  }
+
+
+  /**
+   * Load a dictionary written by saveBinary().
+   */
+  static public StringDict loadBinary(File file) throws IOException {
+    Object[] arrays = BinaryArrays.load(file, Table.STRING, Table.STRING);
+    return new StringDict((String[]) arrays[0], (String[]) arrays[1]);
+  }
+
+
   /**
    * Return this dictionary as a String in JSON format.
    */
   public String toJSON() {
+    compact();
     StringList items = new StringList();
     for (int i = 0; i < count; i++) {
       items.append(JSONObject.quote(keys[i])+ ": " + JSONObject.quote(values[i]));
@@ -1,6 +1,7 @@
 package processing.data;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -24,6 +25,9 @@ public class StringList implements Iterable<String> {
   int count;
   String[] data;
 
+  /** Entries as UTF-8 after compress(), or null. data is null while set. */
+  StringArena arena;
+
 
   public StringList() {
     this(10);
@@ -87,12 +91,50 @@ public class StringList implements Iterable<String> {
    * size changes (from very large to very small).
    */
   private void crop() {
+    decompress();
     if (count != data.length) {
       data = PApplet.subset(data, 0, count);
     }
   }
 
 
+  /**
+   * Store the entries as UTF-8 in a single byte array, instead of a String
+   * object for each. For a long list of short entries, like ids or codes,
+   * that takes a fraction of the memory. get() makes a new String each
+   * time it's called, while hasValue(), index(), and getTally() compare
+   * the UTF-8 directly. The list goes back to normal the first time it's
+   * changed, or used for something like sort() or values().
+   * Returns false if the entries are too large (over 2 GB) to compress,
+   * or if one has half of a surrogate pair, which UTF-8 can't store.
+   */
+  public boolean compress() {
+    if (arena == null) {
+      StringArena encoded = StringArena.encode(data, count);
+      if (encoded == null) {
+        return false;
+      }
+      arena = encoded;
+      data = null;
+    }
+    return true;
+  }
+
+
+  public boolean isCompressed() {
+    return arena != null;
+  }
+
+
+  /** Back to a String object for each entry, before making changes. */
+  private void decompress() {
+    if (arena != null) {
+      data = arena.decode();
+      arena = null;
+    }
+  }
+
+
   /**
    * Get the length of the list.
    *
@@ -105,6 +147,7 @@ public class StringList implements Iterable<String> {
 
 
   public void resize(int length) {
+    decompress();
     if (length > data.length) {
       String[] temp = new String[length];
       System.arraycopy(data, 0, temp, 0, count);
@@ -124,6 +167,10 @@ public class StringList implements Iterable<String> {
    * @webBrief Remove all entries from the list
    */
   public void clear() {
+    if (arena != null) {
+      arena = null;
+      data = new String[10];
+    }
     count = 0;
   }
 
@@ -138,7 +185,12 @@ public class StringList implements Iterable<String> {
     if (index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
-    return data[index];
+    return entry(index);
+  }
+
+
+  private String entry(int index) {
+    return (arena != null) ? arena.get(index) : data[index];
   }
 
 
@@ -151,6 +203,7 @@ public class StringList implements Iterable<String> {
    * @webBrief Set an entry at a particular index
    */
   public void set(int index, String what) {
+    decompress();
     if (index >= count) {
       data = PApplet.expand(data, index+1);
       for (int i = count; i < index; i++) {
@@ -169,6 +222,7 @@ public class StringList implements Iterable<String> {
 
 
   public String pop() {
+    decompress();
     if (count == 0) {
       throw new RuntimeException("Can't call pop() on an empty list");
     }
@@ -185,6 +239,7 @@ public class StringList implements Iterable<String> {
    * @webBrief Remove an element from the specified index
    */
   public String remove(int index) {
+    decompress();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
@@ -200,6 +255,7 @@ public class StringList implements Iterable<String> {
   // Remove the first instance of a particular value and return its index.
   @SuppressWarnings("unused")
   public int removeValue(String value) {
+    decompress();
     if (value == null) {
       for (int i = 0; i < count; i++) {
         if (data[i] == null) {
@@ -221,6 +277,7 @@ public class StringList implements Iterable<String> {
   // Remove all instances of a particular value and return the count removed.
   @SuppressWarnings("unused")
   public int removeValues(String value) {
+    decompress();
     int ii = 0;
     if (value == null) {
       for (int i = 0; i < count; i++) {
@@ -244,6 +301,7 @@ public class StringList implements Iterable<String> {
   // replace the first value that matches, return the index that was replaced
   @SuppressWarnings("unused")
   public int replaceValue(String value, String newValue) {
+    decompress();
     if (value == null) {
       for (int i = 0; i < count; i++) {
         if (data[i] == null) {
@@ -266,6 +324,7 @@ public class StringList implements Iterable<String> {
   // replace all values that match, return the count of those replaced
   @SuppressWarnings("unused")
   public int replaceValues(String value, String newValue) {
+    decompress();
     int changed = 0;
     if (value == null) {
       for (int i = 0; i < count; i++) {
@@ -293,6 +352,7 @@ public class StringList implements Iterable<String> {
    * @webBrief Add a new entry to the list
    */
   public void append(String value) {
+    decompress();
     if (count == data.length) {
       data = PApplet.expand(data);
     }
@@ -308,9 +368,7 @@ public class StringList implements Iterable<String> {
 
 
   public void append(StringList list) {
-    for (String v : list.values()) {  // will concat the list...
-      append(v);
-    }
+    append(list.toArray());  // a copy, in case the list is this one
   }
 
 
@@ -359,6 +417,7 @@ public class StringList implements Iterable<String> {
 
   // same as splice
   public void insert(int index, String[] values) {
+    decompress();
     if (index < 0) {
       throw new IllegalArgumentException("insert() index cannot be negative: it was " + index);
     }
@@ -387,7 +446,7 @@ public class StringList implements Iterable<String> {
 
 
   public void insert(int index, StringList list) {
-    insert(index, list.values());
+    insert(index, list.toArray());
   }
 
 
@@ -436,6 +495,9 @@ public class StringList implements Iterable<String> {
 
   /** Return the first index of a particular value. */
   public int index(String what) {
+    if (arena != null) {
+      return arena.index(StringArena.utf8(what), 0);
+    }
     if (what == null) {
       for (int i = 0; i < count; i++) {
         if (data[i] == null) {
@@ -460,6 +522,9 @@ public class StringList implements Iterable<String> {
    * @webBrief Check if a value is a part of the list
    */
   public boolean hasValue(String value) {
+    if (arena != null) {
+      return arena.index(StringArena.utf8(value), 0) != -1;
+    }
     if (value == null) {
       for (int i = 0; i < count; i++) {
         if (data[i] == null) {
@@ -501,6 +566,7 @@ public class StringList implements Iterable<String> {
 
 
   private void sortImpl(final boolean reverse) {
+    decompress();
     new Sort() {
       @Override
       public int size() {
@@ -530,6 +596,7 @@ public class StringList implements Iterable<String> {
    * @webBrief Reverse the order of the list
    */
   public void reverse() {
+    decompress();
     int ii = count - 1;
     for (int i = 0; i < count/2; i++) {
       String t = data[i];
@@ -548,6 +615,7 @@ public class StringList implements Iterable<String> {
    */
   @SuppressWarnings("unused")
   public void shuffle() {
+    decompress();
     Random r = new Random();
     int num = count;
     while (num > 1) {
@@ -566,6 +634,7 @@ public class StringList implements Iterable<String> {
    */
   @SuppressWarnings("unused")
   public void shuffle(PApplet sketch) {
+    decompress();
     int num = count;
     while (num > 1) {
       int value = (int) sketch.random(num);
@@ -586,7 +655,7 @@ public class StringList implements Iterable<String> {
     if (count == 0) {
       throw new ArrayIndexOutOfBoundsException("No entries in this StringList");
     }
-    return data[(int) (Math.random() * count)];
+    return entry((int) (Math.random() * count));
   }
 
 
@@ -620,6 +689,7 @@ public class StringList implements Iterable<String> {
    * @webBrief Make the entire list lower case
    */
   public void lower() {
+    decompress();
     for (int i = 0; i < count; i++) {
       if (data[i] != null) {
         data[i] = data[i].toLowerCase();
@@ -635,6 +705,7 @@ public class StringList implements Iterable<String> {
    * @webBrief Make the entire list upper case
    */
   public void upper() {
+    decompress();
     for (int i = 0; i < count; i++) {
       if (data[i] != null) {
         data[i] = data[i].toUpperCase();
@@ -644,6 +715,13 @@ public class StringList implements Iterable<String> {
 
 
   public StringList copy() {
+    if (arena != null) {
+      StringList outgoing = new StringList(0);
+      outgoing.data = null;
+      outgoing.arena = arena;  // never changed, so it can be shared
+      outgoing.count = count;
+      return outgoing;
+    }
     StringList outgoing = new StringList(data);
     outgoing.count = count;
     return outgoing;
@@ -656,6 +734,7 @@ public class StringList implements Iterable<String> {
    * things to happen.
    */
   public String[] values() {
+    decompress();
     crop();
     return data;
   }
@@ -672,7 +751,7 @@ public class StringList implements Iterable<String> {
       }
 
       public String next() {
-        return data[++index];
+        return entry(++index);
       }
 
       public boolean hasNext() {
@@ -714,7 +793,13 @@ public class StringList implements Iterable<String> {
     if (array == null || array.length != count) {
       array = new String[count];
     }
-    System.arraycopy(data, 0, array, 0, count);
+    if (arena != null) {
+      for (int i = 0; i < count; i++) {
+        array[i] = arena.get(i);
+      }
+    } else {
+      System.arraycopy(data, 0, array, 0, count);
+    }
     return array;
   }
 
@@ -727,7 +812,9 @@ public class StringList implements Iterable<String> {
 
   public StringList getSubset(int start, int num) {
     String[] subset = new String[num];
-    System.arraycopy(data, start, subset, 0, num);
+    for (int i = 0; i < num; i++) {
+      subset[i] = entry(start + i);
+    }
     return new StringList(subset);
   }
 
@@ -740,6 +827,9 @@ public class StringList implements Iterable<String> {
 
   /** Count the number of times each String entry is found in this list. */
   public IntDict getTally() {
+    if (arena != null) {
+      return arena.tally();  // compares the UTF-8, one String per entry
+    }
     IntDict outgoing = new IntDict();
     for (int i = 0; i < count; i++) {
       outgoing.increment(data[i]);
@@ -752,7 +842,7 @@ public class StringList implements Iterable<String> {
   public IntDict getOrder() {
     IntDict outgoing = new IntDict();
     for (int i = 0; i < count; i++) {
-      outgoing.set(data[i], i);
+      outgoing.set(entry(i), i);
     }
     return outgoing;
   }
@@ -763,10 +853,10 @@ public class StringList implements Iterable<String> {
       return "";
     }
     StringBuilder sb = new StringBuilder();
-    sb.append(data[0]);
+    sb.append(entry(0));
     for (int i = 1; i < count; i++) {
       sb.append(separator);
-      sb.append(data[i]);
+      sb.append(entry(i));
     }
     return sb.toString();
   }
@@ -774,7 +864,7 @@ public class StringList implements Iterable<String> {
 
   public void print() {
     for (int i = 0; i < count; i++) {
-      System.out.format("[%d] %s%n", i, data[i]);
+      System.out.format("[%d] %s%n", i, entry(i));
     }
   }
 
@@ -794,12 +884,33 @@ public class StringList implements Iterable<String> {
    */
   public void write(PrintWriter writer) {
     for (int i = 0; i < count; i++) {
-      writer.println(data[i]);
+      writer.println(entry(i));
     }
     writer.flush();
   }
 
 
+  /**
+   * Save the values to a binary file. Loading it with loadBinary() is
+   * a bulk copy, much faster than parsing the text written by save().
+   */
+  public void saveBinary(File file) throws IOException {
+    decompress();
+    BinaryArrays.save(file, count, (Object) data);
+  }
+
+
+  /**
+   * Load a list written by saveBinary().
+   */
+  static public StringList loadBinary(File file) throws IOException {
+    StringList outgoing = new StringList(0);
+    outgoing.data = (String[]) BinaryArrays.load(file, Table.STRING)[0];
+    outgoing.count = outgoing.data.length;
+    return outgoing;
+  }
+
+
   /**
    * Return this dictionary as a String in JSON format.
    */
@@ -37,9 +37,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLStreamException;
 
 import processing.core.PApplet;
 import processing.core.PConstants;
@@ -95,6 +93,12 @@ public class Table {
   HashMapBlows[] columnCategories;
   HashMap<String, Integer> columnIndices;
 
+  // created by index() or sortedIndex(), null for columns without one
+  TableIndex[] indexes;
+
+  // the file this table is kept up to date with, for the "follow" option
+  TableFollow follow;
+
   protected Object[] columns;  // [column]
 
   // accessible for advanced users
@@ -135,10 +139,21 @@ public class Table {
    * @nowebref
    */
   public Table(File file, String options) throws IOException {
-    // uses createInput() to handle .gz (and eventually .bz2) files
     init();
-    parse(PApplet.createInput(file),
-          extensionOptions(true, file.getName(), options));
+    if (hasOption(options, "mapped")) {
+      loadMapped(file);
+    } else if (hasOption(options, "follow")) {
+      follow = new TableFollow(this, file, extensionOptions(true, file.getName(), options));
+      follow.refresh();
+    } else if (isArrow(extensionOptions(true, file.getName(), options)) &&
+               !file.getName().toLowerCase().endsWith(".gz")) {
+      // maps each batch, rather than reading it into memory
+      TableArrow.load(this, file);
+    } else {
+      // uses createInput() to handle .gz (and eventually .bz2) files
+      parse(PApplet.createInput(file),
+            extensionOptions(true, file.getName(), options));
+    }
   }
 
   /**
@@ -156,7 +171,15 @@ public class Table {
    * <li>tsv - parse the table as tab-separated values
    * <li>newlines - this CSV file contains newlines inside individual cells
    * <li>header - this table has a header (title) row
+   * <li>parallel - split a CSV or TSV file into chunks that are parsed
+   * on all available cores (assumes quotes in the file are balanced)
+   * <li>infer - pick the type of each column from its first 1000 rows,
+   * or infer=N for the first N rows (columns that already have a type,
+   * for instance from a dictionary, are left alone)
+   * <li>arrow or arrows - read the Arrow IPC file or stream format
    * </ul>
+   * The "mapped" and "follow" options are only available with the File
+   * version.
    *
    * @nowebref
    * @param input
@@ -277,10 +300,65 @@ public class Table {
   }
 
 
+  /**
+   * Read the rows of a CSV, TSV, or binary file one at a time, for files
+   * that are too large to load into memory. Only a small batch of rows is
+   * kept, and it's reused as the file is read.
+   *
+   * @nowebref
+   * @see TableStream
+   */
+  static public TableStream stream(File file, String options) throws IOException {
+    InputStream input = PApplet.createInput(file);
+    if (input == null) {
+      throw new FileNotFoundException(file.getPath());
+    }
+    return new TableStream(input, extensionOptions(true, file.getName(), options), null);
+  }
+
+
+  /**
+   * @nowebref
+   */
+  static public TableStream stream(InputStream input, String options) throws IOException {
+    return new TableStream(input, options, null);
+  }
+
+
+  /**
+   * Same as typedParse(), but reads the rows one at a time.
+   */
+  public TableStream typedStream(InputStream input, String options) throws IOException {
+    return new TableStream(input, options, this);
+  }
+
+
+  /**
+   * For a table loaded with the "follow" option, add any rows that have
+   * been written to the end of the file since it was loaded (or since the
+   * last refresh). Only the new part of the file is read, so this can be
+   * called often, for instance in draw(). A line that's still being written
+   * is left for the next refresh. Returns the number of rows added.
+   *
+   * @nowebref
+   */
+  public int refresh() {
+    if (follow == null) {
+      throw new IllegalStateException("Only tables loaded with the 'follow' option can be refreshed");
+    }
+    try {
+      return follow.refresh();
+    } catch (IOException e) {
+      throw new RuntimeException("Error reading " + follow.file, e);
+    }
+  }
+
+
   protected void init() {
     columns = new Object[0];
     columnTypes = new int[0];
     columnCategories = new HashMapBlows[0];
+    indexes = null;
   }
 
 
@@ -316,8 +394,25 @@ public class Table {
   */
 
 
-  static final String[] loadExtensions = { "csv", "tsv", "ods", "bin" };
-  static final String[] saveExtensions = { "csv", "tsv", "ods", "bin", "html" };
+  static final String[] loadExtensions = { "csv", "tsv", "ods", "bin", "arrow", "arrows" };
+  static final String[] saveExtensions = { "csv", "tsv", "ods", "bin", "arrow", "arrows", "html" };
+
+  static boolean hasOption(String options, String option) {
+    if (options != null) {
+      for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+        if (opt.equals(option)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+
+  static boolean isArrow(String options) {
+    return hasOption(options, "arrow") || hasOption(options, "arrows");
+  }
+
 
   static public String extensionOptions(boolean loading, String filename, String options) {
     String extension = PApplet.checkExtension(filename);
@@ -343,6 +438,8 @@ public class Table {
     boolean header = false;
     String extension = null;
     boolean binary = false;
+    boolean parallel = false;
+    int inferRows = 0;
     String encoding = "UTF-8";
 
     String worksheet = null;
@@ -365,8 +462,23 @@ public class Table {
         } else if (opt.equals("bin")) {
           binary = true;
           extension = "bin";
+        } else if (opt.equals("arrow") || opt.equals("arrows")) {
+          extension = "arrow";  // either layout is read from a stream
         } else if (opt.equals("header")) {
           header = true;
+        } else if (opt.equals("parallel")) {
+          parallel = true;
+        } else if (opt.equals("infer")) {
+          inferRows = TableInference.DEFAULT_ROWS;
+        } else if (opt.startsWith("infer=")) {
+          inferRows = PApplet.parseInt(opt.substring(6), 0);
+          if (inferRows <= 0) {
+            throw new IllegalArgumentException("Use infer=N to pick column types from the first N rows");
+          }
+        } else if (opt.equals("mapped")) {
+          throw new IllegalArgumentException("The 'mapped' option can only be used when loading from a File");
+        } else if (opt.equals("follow")) {
+          throw new IllegalArgumentException("The 'follow' option can only be used when loading from a File");
         } else if (opt.startsWith(sheetParam)) {
           worksheet = opt.substring(sheetParam.length());
         } else if (opt.startsWith("dictionary=")) {
@@ -383,34 +495,41 @@ public class Table {
       throw new IllegalArgumentException("No extension specified for this Table");
     }
 
+    // columns that already have types (from a dictionary) are left alone
+    int inferColumn = getColumnCount();
+
     if (binary) {
       loadBinary(input);
 
+    } else if (extension.equals("arrow")) {
+      TableArrow.read(this, input);
+
     } else if (extension.equals("ods")) {
       odsParse(input, worksheet, header);
-
-    } else {
-      InputStreamReader isr = new InputStreamReader(input, encoding);
-      BufferedReader reader = new BufferedReader(isr);
-
-      // strip out the Unicode BOM, if present
-      reader.mark(1);
-      int c = reader.read();
-      // if not the BOM, back up to the beginning again
-      if (c != '\uFEFF') {
-        reader.reset();
+      if (inferRows != 0) {
+        // everything is already loaded, so use all of it
+        TableInference.infer(this, inferColumn, getRowCount(), false);
       }
 
-      /*
-       if (awfulCSV) {
-        parseAwfulCSV(reader, header);
-      } else if ("tsv".equals(extension)) {
-        parseBasic(reader, header, true);
-      } else if ("csv".equals(extension)) {
-        parseBasic(reader, header, false);
+    } else {
+      // Tokenizes straight into the typed columns (and also strips
+      // the Unicode BOM, if present). parseBasic() is the older,
+      // line-at-a-time version that builds a String[] for each row.
+      InputStreamReader reader = new InputStreamReader(input, encoding);
+      boolean tsv = "tsv".equals(extension);
+      if (parallel) {
+        ParallelTableParser parser = new ParallelTableParser(this, tsv);
+        if (inferRows != 0) {
+          parser.infer(inferRows, inferColumn);
+        }
+        parser.parse(reader, header);
+      } else {
+        TableParser parser = new TableParser(this, tsv);
+        if (inferRows != 0) {
+          parser.infer(inferRows, inferColumn);
+        }
+        parser.parse(reader, header);
       }
-      */
-      parseBasic(reader, header, "tsv".equals(extension));
     }
   }
 
@@ -858,27 +977,15 @@ public class Table {
   protected void odsParse(InputStream input, String worksheet, boolean header) {
     try {
       InputStream contentStream = odsFindContentXML(input);
-      XML xml = new XML(contentStream);
-
+      if (contentStream == null) {
+        throw new RuntimeException("No content.xml found in the ODS file.");
+      }
       // table files will have multiple sheets..
       // <table:table table:name="Sheet1" table:style-name="ta1" table:print="false">
       // <table:table table:name="Sheet2" table:style-name="ta1" table:print="false">
       // <table:table table:name="Sheet3" table:style-name="ta1" table:print="false">
-      XML[] sheets =
-        xml.getChildren("office:body/office:spreadsheet/table:table");
-
-      boolean found = false;
-      for (XML sheet : sheets) {
-//        System.out.println(sheet.getAttribute("table:name"));
-        if (worksheet == null || worksheet.equals(sheet.getString("table:name"))) {
-          odsParseSheet(sheet, header);
-          found = true;
-          if (worksheet == null) {
-            break;  // only read the first sheet
-          }
-        }
-      }
-      if (!found) {
+      // streamed, since the XML for a large sheet is many times its size
+      if (!new OdsTableParser(this, header).parse(contentStream, worksheet)) {
         if (worksheet == null) {
           throw new RuntimeException("No worksheets found in the ODS file.");
         } else {
@@ -886,140 +993,8 @@ public class Table {
                                      " found in the ODS file.");
         }
       }
-    } catch (UnsupportedEncodingException e) {
-      e.printStackTrace();
-    } catch (IOException e) {
-      e.printStackTrace();
-    } catch (ParserConfigurationException e) {
+    } catch (XMLStreamException e) {
       e.printStackTrace();
-    } catch (SAXException e) {
-      e.printStackTrace();
-    }
-  }
-
-
-  /**
-   * Parses a single sheet of XML from this file.
-   * @param The XML object for a single worksheet from the ODS file
-   */
-  private void odsParseSheet(XML sheet, boolean header) {
-    // Extra <p> or <a> tags inside the text tag for the cell will be stripped.
-    // Different from showing formulas, and not quite the same as 'save as
-    // displayed' option when saving from inside OpenOffice. Only time we
-    // wouldn't want this would be so that we could parse hyperlinks and
-    // styling information intact, but that's out of scope for the p5 version.
-    final boolean ignoreTags = true;
-
-    XML[] rows = sheet.getChildren("table:table-row");
-    //xml.getChildren("office:body/office:spreadsheet/table:table/table:table-row");
-
-    int rowIndex = 0;
-    for (XML row : rows) {
-      int rowRepeat = row.getInt("table:number-rows-repeated", 1);
-//      if (rowRepeat != 1) {
-//          System.out.println(rowRepeat + " " + rowCount + " " + (rowCount + rowRepeat));
-//      }
-      boolean rowNotNull = false;
-      XML[] cells = row.getChildren();
-      int columnIndex = 0;
-
-      for (XML cell : cells) {
-        int cellRepeat = cell.getInt("table:number-columns-repeated", 1);
-
-//        <table:table-cell table:formula="of:=SUM([.E7:.E8])" office:value-type="float" office:value="4150">
-//        <text:p>4150.00</text:p>
-//        </table:table-cell>
-
-        String cellData = ignoreTags ? cell.getString("office:value") : null;
-
-        // if there's an office:value in the cell, just roll with that
-        if (cellData == null) {
-          int cellKids = cell.getChildCount();
-          if (cellKids != 0) {
-            XML[] paragraphElements = cell.getChildren("text:p");
-            if (paragraphElements.length != 1) {
-              for (XML el : paragraphElements) {
-                System.err.println(el.toString());
-              }
-              throw new RuntimeException("found more than one text:p element");
-            }
-            XML textp = paragraphElements[0];
-            String textpContent = textp.getContent();
-            // if there are sub-elements, the content shows up as a child element
-            // (for which getName() returns null.. which seems wrong)
-            if (textpContent != null) {
-              cellData = textpContent;  // nothing fancy, the text is in the text:p element
-            } else {
-              XML[] textpKids = textp.getChildren();
-              StringBuilder cellBuffer = new StringBuilder();
-              for (XML kid : textpKids) {
-                String kidName = kid.getName();
-                if (kidName == null) {
-                  odsAppendNotNull(kid, cellBuffer);
-
-                } else if (kidName.equals("text:s")) {
-                  int spaceCount = kid.getInt("text:c", 1);
-                  for (int space = 0; space < spaceCount; space++) {
-                    cellBuffer.append(' ');
-                  }
-                } else if (kidName.equals("text:span")) {
-                  odsAppendNotNull(kid, cellBuffer);
-
-                } else if (kidName.equals("text:a")) {
-                  // <text:a xlink:href="http://blah.com/">blah.com</text:a>
-                  if (ignoreTags) {
-                    cellBuffer.append(kid.getString("xlink:href"));
-                  } else {
-                    odsAppendNotNull(kid, cellBuffer);
-                  }
-
-                } else {
-                  odsAppendNotNull(kid, cellBuffer);
-                  System.err.println(getClass().getName() + ": don't understand: " + kid);
-                  //throw new RuntimeException("I'm not used to this.");
-                }
-              }
-              cellData = cellBuffer.toString();
-            }
-            //setString(rowIndex, columnIndex, c); //text[0].getContent());
-            //columnIndex++;
-          }
-        }
-        for (int r = 0; r < cellRepeat; r++) {
-          if (cellData != null) {
-            //System.out.println("setting " + rowIndex + "," + columnIndex + " to " + cellData);
-            setString(rowIndex, columnIndex, cellData);
-          }
-          columnIndex++;
-          if (cellData != null) {
-//            if (columnIndex > columnMax) {
-//              columnMax = columnIndex;
-//            }
-            rowNotNull = true;
-          }
-        }
-      }
-      if (header) {
-        removeTitleRow();  // efficient enough on the first row
-        header = false;  // avoid infinite loop
-
-      } else {
-        if (rowNotNull && rowRepeat > 1) {
-          String[] rowStrings = getStringRow(rowIndex);
-          for (int r = 1; r < rowRepeat; r++) {
-            addRow(rowStrings);
-          }
-        }
-        rowIndex += rowRepeat;
-      }
-    }
-  }
-
-
-  private void odsAppendNotNull(XML kid, StringBuilder buffer) {
-    String content = kid.getContent();
-    if (content != null) {
-      buffer.append(content);
     }
   }
 
@@ -1192,53 +1167,62 @@ public class Table {
 
 
   public boolean save(File file, String options) throws IOException {
-    return save(PApplet.createOutput(file),
-                Table.extensionOptions(false, file.getName(), options));
+    if (hasOption(options, "mapped")) {
+      saveMapped(file);
+      return true;
+    }
+    options = Table.extensionOptions(false, file.getName(), options);
+    String extension = saveExtension(options);
+    if (extension.equals("csv") || extension.equals("tsv") || extension.equals("bin")) {
+      // formats straight to bytes, and compresses .gz files on another thread
+      TableWriter writer = new TableWriter(file, this, extension, getRowCount());
+      try {
+        writer.writeRows(this);
+      } finally {
+        writer.close();
+      }
+      return true;
+    }
+    return save(PApplet.createOutput(file), options);
   }
 
 
   public boolean save(OutputStream output, String options) {
-    PrintWriter writer = PApplet.createWriter(output);
-    String extension = null;
-    if (options == null) {
-      throw new IllegalArgumentException("No extension specified for saving this Table");
-    }
-
-    String[] opts = PApplet.trim(PApplet.split(options, ','));
-    // Only option for save is the extension, so we can safely grab the last
-    extension = opts[opts.length - 1];
-    boolean found = false;
-    for (String ext : saveExtensions) {
-      if (extension.equals(ext)) {
-        found = true;
-        break;
+    String extension = saveExtension(options);
+    if (extension.equals("csv") || extension.equals("tsv") || extension.equals("bin")) {
+      try {
+        TableWriter writer = new TableWriter(output, this, extension, getRowCount());
+        try {
+          writer.writeRows(this);
+        } finally {
+          writer.close();
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+        return false;
       }
+      return true;
     }
-    // Not providing a fallback; let's make users specify an extension
-    if (!found) {
-      throw new IllegalArgumentException("'" + extension + "' not available for Table");
-    }
-
-    if (extension.equals("csv")) {
-      writeCSV(writer);
-    } else if (extension.equals("tsv")) {
-      writeTSV(writer);
-    } else if (extension.equals("ods")) {
+    if (extension.equals("arrow") || extension.equals("arrows")) {
       try {
-        saveODS(output);
+        TableArrow.save(this, output, extension.equals("arrow"));
       } catch (IOException e) {
         e.printStackTrace();
         return false;
       }
-    } else if (extension.equals("html")) {
-      writeHTML(writer);
-    } else if (extension.equals("bin")) {
+      return true;
+    }
+
+    PrintWriter writer = PApplet.createWriter(output);
+    if (extension.equals("ods")) {
       try {
-        saveBinary(output);
+        saveODS(output);
       } catch (IOException e) {
         e.printStackTrace();
         return false;
       }
+    } else if (extension.equals("html")) {
+      writeHTML(writer);
     }
     writer.flush();
     writer.close();
@@ -1246,6 +1230,24 @@ public class Table {
   }
 
 
+  static String saveExtension(String options) {
+    if (options == null) {
+      throw new IllegalArgumentException("No extension specified for saving this Table");
+    }
+
+    String[] opts = PApplet.trim(PApplet.split(options, ','));
+    // Only option for save is the extension, so we can safely grab the last
+    String extension = opts[opts.length - 1];
+    // Not providing a fallback; let's make users specify an extension
+    for (String ext : saveExtensions) {
+      if (extension.equals(ext)) {
+        return extension;
+      }
+    }
+    throw new IllegalArgumentException("'" + extension + "' not available for Table");
+  }
+
+
   protected void writeTSV(PrintWriter writer) {
     if (columnTitles != null) {
       for (int col = 0; col < columns.length; col++) {
@@ -1626,38 +1628,7 @@ public class Table {
 
   protected void saveBinary(OutputStream os) throws IOException {
     DataOutputStream output = new DataOutputStream(new BufferedOutputStream(os));
-    output.writeInt(0x9007AB1E);  // version
-    output.writeInt(getRowCount());
-    output.writeInt(getColumnCount());
-    if (columnTitles != null) {
-      output.writeBoolean(true);
-      for (String title : columnTitles) {
-        output.writeUTF(title);
-      }
-    } else {
-      output.writeBoolean(false);
-    }
-    for (int i = 0; i < getColumnCount(); i++) {
-      //System.out.println(i + " is " + columnTypes[i]);
-      output.writeInt(columnTypes[i]);
-    }
-
-    for (int i = 0; i < getColumnCount(); i++) {
-      if (columnTypes[i] == CATEGORY) {
-        columnCategories[i].write(output);
-      }
-    }
-    if (missingString == null) {
-      output.writeBoolean(false);
-    } else {
-      output.writeBoolean(true);
-      output.writeUTF(missingString);
-    }
-    output.writeInt(missingInt);
-    output.writeLong(missingLong);
-    output.writeFloat(missingFloat);
-    output.writeDouble(missingDouble);
-    output.writeInt(missingCategory);
+    saveBinaryHeader(output, getRowCount());
 
     for (TableRow row : rows()) {
       for (int col = 0; col < getColumnCount(); col++) {
@@ -1700,14 +1671,66 @@ public class Table {
   }
 
 
+  /**
+   * Write the titles, types, categories, and missing values of a binary
+   * table, the part that loadBinaryHeader() reads.
+   */
+  protected void saveBinaryHeader(DataOutputStream output, int rowCount) throws IOException {
+    output.writeInt(0x9007AB1E);  // version
+    output.writeInt(rowCount);
+    output.writeInt(getColumnCount());
+    if (columnTitles != null) {
+      output.writeBoolean(true);
+      for (String title : columnTitles) {
+        output.writeUTF(title);
+      }
+    } else {
+      output.writeBoolean(false);
+    }
+    for (int i = 0; i < getColumnCount(); i++) {
+      //System.out.println(i + " is " + columnTypes[i]);
+      output.writeInt(columnTypes[i]);
+    }
+
+    for (int i = 0; i < getColumnCount(); i++) {
+      if (columnTypes[i] == CATEGORY) {
+        columnCategories[i].write(output);
+      }
+    }
+    if (missingString == null) {
+      output.writeBoolean(false);
+    } else {
+      output.writeBoolean(true);
+      output.writeUTF(missingString);
+    }
+    output.writeInt(missingInt);
+    output.writeLong(missingLong);
+    output.writeFloat(missingFloat);
+    output.writeDouble(missingDouble);
+    output.writeInt(missingCategory);
+  }
+
+
   protected void loadBinary(InputStream is) throws IOException {
     DataInputStream input = new DataInputStream(new BufferedInputStream(is));
+    int rowCount = loadBinaryHeader(input, Integer.MAX_VALUE);
+    loadBinaryRows(input, rowCount);
+    input.close();
+  }
 
+
+  /**
+   * Read the titles, types, categories, and missing values of a binary
+   * table, and make room for at most maxRows of its rows. Returns the
+   * number of rows in the file.
+   */
+  protected int loadBinaryHeader(DataInputStream input, int maxRows) throws IOException {
     int magic = input.readInt();
     if (magic != 0x9007AB1E) {
       throw new IOException("Not a compatible binary table (magic was " + PApplet.hex(magic) + ")");
     }
-    int rowCount = input.readInt();
+    int fileRowCount = input.readInt();
+    int rowCount = Math.min(fileRowCount, maxRows);
     setRowCount(rowCount);
     int columnCount = input.readInt();
     setColumnCount(columnCount);
@@ -1763,8 +1786,14 @@ public class Table {
     missingFloat = input.readFloat();
     missingDouble = input.readDouble();
     missingCategory = input.readInt();
+    return fileRowCount;
+  }
 
-    for (int row = 0; row < rowCount; row++) {
+
+  /** Read the next 'count' rows of a binary table into rows 0 to count-1. */
+  protected void loadBinaryRows(DataInputStream input, int count) throws IOException {
+    int columnCount = getColumnCount();
+    for (int row = 0; row < count; row++) {
       for (int col = 0; col < columnCount; col++) {
         switch (columnTypes[col]) {
         case STRING:
@@ -1794,58 +1823,159 @@ public class Table {
         }
       }
     }
+  }
 
-    input.close();
+
+  /**
+   * Write the table in the columnar format used by the "mapped" option,
+   * where each column starts on its own page so that it can be mapped
+   * into memory separately. See TableMapping for the details.
+   */
+  protected void saveMapped(File file) throws IOException {
+    TableMapping.save(this, file);
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+  /**
+   * Memory-map a table written by saveMapped(). Columns aren't read until
+   * they're used, so this returns right away, even for huge files.
+   */
+  protected void loadMapped(File file) throws IOException {
+    TableMapping.load(this, file);
+  }
 
 
   /**
-   * Use <b>addColumn()</b> to add a new column to a <b>Table</b> object.
-   * Typically, you will want to specify a title, so the column may be easily
-   * referenced later by name. (If no title is specified, the new column's title
-   * will be <b>null</b>.) A column type may also be specified, in which case all values
-   * stored in this column must be of the same type (e.g., <b>Table.INT</b> or
-   * <b>Table.FLOAT</b>). If no type is specified, the default type of <b>STRING</b> is used.
-   *
-   * @webref table:method
-   * @webBrief Adds a new column to a table
-   * @see Table#removeColumn(String)
+   * Get the data for a column, reading it from the mapping first
+   * if this table came from loadMapped() and it's not been used yet.
    */
-  public void addColumn() {
-    addColumn(null, STRING);
+  Object column(int col) {
+    Object data = columns[col];
+    if (data instanceof TableMapping.Column) {
+      data = ((TableMapping.Column) data).load();
+      columns[col] = data;
+    } else if (data instanceof TableEncoding.Column) {
+      data = ((TableEncoding.Column) data).load();
+      columns[col] = data;
+    }
+    return data;
   }
 
 
   /**
-   * @param title the title to be used for the new column
+   * The UTF-8 entries of a STRING column that compress() kept in a single
+   * byte array, or null if the column isn't stored that way. Entries are
+   * by row, so they can be searched without decoding the column.
    */
-  public void addColumn(String title) {
-    addColumn(title, STRING);
+  StringArena arena(int col) {
+    Object data = columns[col];
+    return (data instanceof TableEncoding.Utf8) ?
+      ((TableEncoding.Utf8) data).arena : null;
   }
 
 
   /**
-   * @param type the type to be used for the new column: INT, LONG, FLOAT, DOUBLE, or STRING
+   * Store INT, LONG, CATEGORY, and STRING columns in a compressed form
+   * when that makes them smaller. This works best for columns that are
+   * sorted (like timestamps), or that use the same few values over and
+   * over (like status codes or names). STRING columns where most values
+   * are different (like ids) are kept as UTF-8 in a single byte array.
+   * Getting values works the same as before, and is fastest when reading
+   * the rows in order.
+   * <p/>
+   * A column goes back to normal the first time it's changed, or used
+   * for something that needs all of its values at once, like sort(),
+   * index(), or adding rows to the table.
    */
-  public void addColumn(String title, int type) {
-    insertColumn(columns.length, title, type);
+  public void compress() {
+    for (int col = 0; col < getColumnCount(); col++) {
+      compress(col);
+    }
   }
 
 
-  public void insertColumn(int index) {
-    insertColumn(index, null, STRING);
+  /**
+   * Compress a single column, returns false if it's a type that can't be
+   * compressed, or wouldn't be any smaller.
+   */
+  public boolean compress(int column) {
+    checkColumn(column);
+    if (columns[column] instanceof TableEncoding.Column) {
+      return true;
+    }
+    TableEncoding.Column encoded =
+      TableEncoding.encode(columnTypes[column], column(column), rowCount);
+    if (encoded != null) {
+      columns[column] = encoded;
+      return true;
+    }
+    return false;
   }
 
 
-  public void insertColumn(int index, String title) {
-    insertColumn(index, title, STRING);
+  public boolean compress(String columnName) {
+    return compress(getColumnIndex(columnName));
   }
 
 
-  public void insertColumn(int index, String title, int type) {
+  public boolean isCompressed(int column) {
+    checkColumn(column);
+    return columns[column] instanceof TableEncoding.Column;
+  }
+
+
+  public boolean isCompressed(String columnName) {
+    return isCompressed(getColumnIndex(columnName));
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Use <b>addColumn()</b> to add a new column to a <b>Table</b> object.
+   * Typically, you will want to specify a title, so the column may be easily
+   * referenced later by name. (If no title is specified, the new column's title
+   * will be <b>null</b>.) A column type may also be specified, in which case all values
+   * stored in this column must be of the same type (e.g., <b>Table.INT</b> or
+   * <b>Table.FLOAT</b>). If no type is specified, the default type of <b>STRING</b> is used.
+   *
+   * @webref table:method
+   * @webBrief Adds a new column to a table
+   * @see Table#removeColumn(String)
+   */
+  public void addColumn() {
+    addColumn(null, STRING);
+  }
+
+
+  /**
+   * @param title the title to be used for the new column
+   */
+  public void addColumn(String title) {
+    addColumn(title, STRING);
+  }
+
+
+  /**
+   * @param type the type to be used for the new column: INT, LONG, FLOAT, DOUBLE, or STRING
+   */
+  public void addColumn(String title, int type) {
+    insertColumn(columns.length, title, type);
+  }
+
+
+  public void insertColumn(int index) {
+    insertColumn(index, null, STRING);
+  }
+
+
+  public void insertColumn(int index, String title) {
+    insertColumn(index, title, STRING);
+  }
+
+
+  public void insertColumn(int index, String title, int type) {
     if (title != null && columnTitles == null) {
       columnTitles = new String[columns.length];
     }
@@ -1873,6 +2003,14 @@ public class Table {
     System.arraycopy(columns, index, temp, index+1, columns.length - index);
     columns = temp;
 
+    if (indexes != null) {
+      TableIndex[] indexTemp = new TableIndex[indexes.length + 1];
+      System.arraycopy(indexes, 0, indexTemp, 0, index);
+      System.arraycopy(indexes, index, indexTemp, index+1, indexes.length - index);
+      indexes = indexTemp;
+      renumberIndexes();
+    }
+
     switch (type) {
       case INT: columns[index] = new int[rowCount]; break;
       case LONG: columns[index] = new long[rowCount]; break;
@@ -1920,6 +2058,19 @@ public class Table {
     columns = columnsTemp;
     columnCategories = catTemp;
 
+    int[] typesTemp = new int[newCount];
+    System.arraycopy(columnTypes, 0, typesTemp, 0, column);
+    System.arraycopy(columnTypes, column + 1, typesTemp, column, newCount - column);
+    columnTypes = typesTemp;
+
+    if (indexes != null) {
+      TableIndex[] indexTemp = new TableIndex[newCount];
+      System.arraycopy(indexes, 0, indexTemp, 0, column);
+      System.arraycopy(indexes, column + 1, indexTemp, column, newCount - column);
+      indexes = indexTemp;
+      renumberIndexes();
+    }
+
     if (columnTitles != null) {
       String[] titlesTemp = new String[newCount];
       for (int i = 0; i < column; i++) {
@@ -1967,6 +2118,9 @@ public class Table {
       columnTypes = PApplet.expand(columnTypes, newCount);
       columnCategories = (HashMapBlows[])
         PApplet.expand(columnCategories, newCount);
+      if (indexes != null) {
+        indexes = (TableIndex[]) PApplet.expand(indexes, newCount);
+      }
     }
   }
 
@@ -2020,6 +2174,7 @@ public class Table {
    * @param newType something fresh, maybe try an int or a float for size?
    */
   public void setColumnType(int column, int newType) {
+    invalidateIndex(column);
     switch (newType) {
       case INT: {
         int[] intData = new int[rowCount];
@@ -2317,18 +2472,25 @@ public class Table {
 
   public void setRowCount(int newCount) {
     if (newCount != rowCount) {
+      if (indexes != null) {
+        if (newCount == rowCount - 1) {
+          indexRemove(newCount);
+        } else if (newCount != rowCount + 1) {
+          invalidateIndexes();
+        }
+      }
       if (newCount > 1000000) {
         System.out.print("Note: setting maximum row count to " + PApplet.nfc(newCount));
       }
       long t = System.currentTimeMillis();
       for (int col = 0; col < columns.length; col++) {
         switch (columnTypes[col]) {
-          case INT: columns[col] = PApplet.expand((int[]) columns[col], newCount); break;
-          case LONG: columns[col] = PApplet.expand((long[]) columns[col], newCount); break;
-          case FLOAT: columns[col] = PApplet.expand((float[]) columns[col], newCount); break;
-          case DOUBLE: columns[col] = PApplet.expand((double[]) columns[col], newCount); break;
-          case STRING: columns[col] = PApplet.expand((String[]) columns[col], newCount); break;
-          case CATEGORY: columns[col] = PApplet.expand((int[]) columns[col], newCount); break;
+          case INT: columns[col] = PApplet.expand((int[]) column(col), newCount); break;
+          case LONG: columns[col] = PApplet.expand((long[]) column(col), newCount); break;
+          case FLOAT: columns[col] = PApplet.expand((float[]) column(col), newCount); break;
+          case DOUBLE: columns[col] = PApplet.expand((double[]) column(col), newCount); break;
+          case STRING: columns[col] = PApplet.expand((String[]) column(col), newCount); break;
+          case CATEGORY: columns[col] = PApplet.expand((int[]) column(col), newCount); break;
         }
         if (newCount > 1000000) {
           try {
@@ -2342,6 +2504,43 @@ public class Table {
         int ms = (int) (System.currentTimeMillis() - t);
         System.out.println(" (resize took " + PApplet.nfc(ms) + " ms)");
       }
+      if (indexes != null && newCount == rowCount + 1) {
+        rowCount = newCount;
+        indexAdd(newCount - 1);
+      }
+    }
+    rowCount = newCount;
+  }
+
+
+  /**
+   * Same as setRowCount(), but without the progress notes or the pauses
+   * for large tables. Used by the parsers, which manage their own growth.
+   */
+  void resizeRows(int newCount) {
+    if (newCount != rowCount) {
+      invalidateIndexes();
+      expandRows(newCount);
+    }
+  }
+
+
+  /**
+   * Same as resizeRows(), but the indexes are left alone, for rows that
+   * are added to them with indexAdd() once they've been filled in.
+   */
+  void expandRows(int newCount) {
+    if (newCount != rowCount) {
+      for (int col = 0; col < columns.length; col++) {
+        switch (columnTypes[col]) {
+          case INT: columns[col] = PApplet.expand((int[]) column(col), newCount); break;
+          case LONG: columns[col] = PApplet.expand((long[]) column(col), newCount); break;
+          case FLOAT: columns[col] = PApplet.expand((float[]) column(col), newCount); break;
+          case DOUBLE: columns[col] = PApplet.expand((double[]) column(col), newCount); break;
+          case STRING: columns[col] = PApplet.expand((String[]) column(col), newCount); break;
+          case CATEGORY: columns[col] = PApplet.expand((int[]) column(col), newCount); break;
+        }
+      }
     }
     rowCount = newCount;
   }
@@ -2398,10 +2597,10 @@ public class Table {
         break;
       case CATEGORY:
         int index = source.getInt(col);
-        setInt(row, col, index);
         if (!columnCategories[col].hasCategory(index)) {
           columnCategories[col].setCategory(index, source.getString(col));
         }
+        setInt(row, col, index);
         break;
 
       default:
@@ -2436,36 +2635,36 @@ public class Table {
         case CATEGORY:
         case INT: {
           int[] intTemp = new int[rowCount+1];
-          System.arraycopy(columns[col], 0, intTemp, 0, insert);
-          System.arraycopy(columns[col], insert, intTemp, insert+1, rowCount - insert);
+          System.arraycopy(column(col), 0, intTemp, 0, insert);
+          System.arraycopy(column(col), insert, intTemp, insert+1, rowCount - insert);
           columns[col] = intTemp;
           break;
         }
         case LONG: {
           long[] longTemp = new long[rowCount+1];
-          System.arraycopy(columns[col], 0, longTemp, 0, insert);
-          System.arraycopy(columns[col], insert, longTemp, insert+1, rowCount - insert);
+          System.arraycopy(column(col), 0, longTemp, 0, insert);
+          System.arraycopy(column(col), insert, longTemp, insert+1, rowCount - insert);
           columns[col] = longTemp;
           break;
         }
         case FLOAT: {
           float[] floatTemp = new float[rowCount+1];
-          System.arraycopy(columns[col], 0, floatTemp, 0, insert);
-          System.arraycopy(columns[col], insert, floatTemp, insert+1, rowCount - insert);
+          System.arraycopy(column(col), 0, floatTemp, 0, insert);
+          System.arraycopy(column(col), insert, floatTemp, insert+1, rowCount - insert);
           columns[col] = floatTemp;
           break;
         }
         case DOUBLE: {
           double[] doubleTemp = new double[rowCount+1];
-          System.arraycopy(columns[col], 0, doubleTemp, 0, insert);
-          System.arraycopy(columns[col], insert, doubleTemp, insert+1, rowCount - insert);
+          System.arraycopy(column(col), 0, doubleTemp, 0, insert);
+          System.arraycopy(column(col), insert, doubleTemp, insert+1, rowCount - insert);
           columns[col] = doubleTemp;
           break;
         }
         case STRING: {
           String[] stringTemp = new String[rowCount+1];
-          System.arraycopy(columns[col], 0, stringTemp, 0, insert);
-          System.arraycopy(columns[col], insert, stringTemp, insert+1, rowCount - insert);
+          System.arraycopy(column(col), 0, stringTemp, 0, insert);
+          System.arraycopy(column(col), insert, stringTemp, insert+1, rowCount - insert);
           columns[col] = stringTemp;
           break;
         }
@@ -2474,6 +2673,14 @@ public class Table {
     // Need to increment before setRow(), because it calls ensureBounds()
     // https://github.com/processing/processing/issues/5406
     ++rowCount;
+    if (indexes != null) {
+      for (TableIndex index : indexes) {
+        if (index != null) {
+          index.shift(insert, 1);
+        }
+      }
+      indexAdd(insert);
+    }
     setRow(insert, columnData);
   }
 
@@ -2488,58 +2695,66 @@ public class Table {
    * @see Table#clearRows()
    */
   public void removeRow(int row) {
+    indexRemove(row);
     for (int col = 0; col < columns.length; col++) {
       switch (columnTypes[col]) {
         case CATEGORY:
         case INT: {
           int[] intTemp = new int[rowCount-1];
-//          int[] intData = (int[]) columns[col];
+//          int[] intData = (int[]) column(col);
 //          System.arraycopy(intData, 0, intTemp, 0, dead);
 //          System.arraycopy(intData, dead+1, intTemp, dead, (rowCount - dead) + 1);
-          System.arraycopy(columns[col], 0, intTemp, 0, row);
-          System.arraycopy(columns[col], row+1, intTemp, row, (rowCount - row) - 1);
+          System.arraycopy(column(col), 0, intTemp, 0, row);
+          System.arraycopy(column(col), row+1, intTemp, row, (rowCount - row) - 1);
           columns[col] = intTemp;
           break;
         }
         case LONG: {
           long[] longTemp = new long[rowCount-1];
-//          long[] longData = (long[]) columns[col];
+//          long[] longData = (long[]) column(col);
 //          System.arraycopy(longData, 0, longTemp, 0, dead);
 //          System.arraycopy(longData, dead+1, longTemp, dead, (rowCount - dead) + 1);
-          System.arraycopy(columns[col], 0, longTemp, 0, row);
-          System.arraycopy(columns[col], row+1, longTemp, row, (rowCount - row) - 1);
+          System.arraycopy(column(col), 0, longTemp, 0, row);
+          System.arraycopy(column(col), row+1, longTemp, row, (rowCount - row) - 1);
           columns[col] = longTemp;
           break;
         }
         case FLOAT: {
           float[] floatTemp = new float[rowCount-1];
-//          float[] floatData = (float[]) columns[col];
+//          float[] floatData = (float[]) column(col);
 //          System.arraycopy(floatData, 0, floatTemp, 0, dead);
 //          System.arraycopy(floatData, dead+1, floatTemp, dead, (rowCount - dead) + 1);
-          System.arraycopy(columns[col], 0, floatTemp, 0, row);
-          System.arraycopy(columns[col], row+1, floatTemp, row, (rowCount - row) - 1);
+          System.arraycopy(column(col), 0, floatTemp, 0, row);
+          System.arraycopy(column(col), row+1, floatTemp, row, (rowCount - row) - 1);
           columns[col] = floatTemp;
           break;
         }
         case DOUBLE: {
           double[] doubleTemp = new double[rowCount-1];
-//          double[] doubleData = (double[]) columns[col];
+//          double[] doubleData = (double[]) column(col);
 //          System.arraycopy(doubleData, 0, doubleTemp, 0, dead);
 //          System.arraycopy(doubleData, dead+1, doubleTemp, dead, (rowCount - dead) + 1);
-          System.arraycopy(columns[col], 0, doubleTemp, 0, row);
-          System.arraycopy(columns[col], row+1, doubleTemp, row, (rowCount - row) - 1);
+          System.arraycopy(column(col), 0, doubleTemp, 0, row);
+          System.arraycopy(column(col), row+1, doubleTemp, row, (rowCount - row) - 1);
           columns[col] = doubleTemp;
           break;
         }
         case STRING: {
           String[] stringTemp = new String[rowCount-1];
-          System.arraycopy(columns[col], 0, stringTemp, 0, row);
-          System.arraycopy(columns[col], row+1, stringTemp, row, (rowCount - row) - 1);
+          System.arraycopy(column(col), 0, stringTemp, 0, row);
+          System.arraycopy(column(col), row+1, stringTemp, row, (rowCount - row) - 1);
           columns[col] = stringTemp;
         }
       }
     }
     rowCount--;
+    if (indexes != null) {
+      for (TableIndex index : indexes) {
+        if (index != null) {
+          index.shift(row + 1, -1);
+        }
+      }
+    }
   }
 
 
@@ -2556,15 +2771,15 @@ public class Table {
   protected void setRowCol(int row, int col, String piece) {
     switch (columnTypes[col]) {
     case STRING:
-      String[] stringData = (String[]) columns[col];
+      String[] stringData = (String[]) column(col);
       stringData[row] = piece;
       break;
     case INT:
-      int[] intData = (int[]) columns[col];
+      int[] intData = (int[]) column(col);
       intData[row] = PApplet.parseInt(piece, missingInt);
       break;
     case LONG:
-      long[] longData = (long[]) columns[col];
+      long[] longData = (long[]) column(col);
       try {
         longData[row] = Long.parseLong(piece);
       } catch (NumberFormatException nfe) {
@@ -2572,11 +2787,11 @@ public class Table {
       }
       break;
     case FLOAT:
-      float[] floatData = (float[]) columns[col];
+      float[] floatData = (float[]) column(col);
       floatData[row] = PApplet.parseFloat(piece, missingFloat);
       break;
     case DOUBLE:
-      double[] doubleData = (double[]) columns[col];
+      double[] doubleData = (double[]) column(col);
       try {
         doubleData[row] = Double.parseDouble(piece);
       } catch (NumberFormatException nfe) {
@@ -2584,7 +2799,7 @@ public class Table {
       }
       break;
     case CATEGORY:
-      int[] indexData = (int[]) columns[col];
+      int[] indexData = (int[]) column(col);
       indexData[row] = columnCategories[col].index(piece);
       break;
     default:
@@ -2604,9 +2819,13 @@ public class Table {
 
 
   protected void setRowCol(int row, int col, Object piece) {
+    TableIndex index = getIndex(col);
+    if (index != null) {
+      index.remove(row);
+    }
     switch (columnTypes[col]) {
       case STRING:
-        String[] stringData = (String[]) columns[col];
+        String[] stringData = (String[]) column(col);
         if (piece == null) {
           stringData[row] = null;
 //        } else if (piece instanceof String) {
@@ -2617,7 +2836,7 @@ public class Table {
         }
         break;
       case INT:
-        int[] intData = (int[]) columns[col];
+        int[] intData = (int[]) column(col);
         //intData[row] = PApplet.parseInt(piece, missingInt);
         if (piece == null) {
           intData[row] = missingInt;
@@ -2628,7 +2847,7 @@ public class Table {
         }
         break;
       case LONG:
-        long[] longData = (long[]) columns[col];
+        long[] longData = (long[]) column(col);
         if (piece == null) {
           longData[row] = missingLong;
         } else if (piece instanceof Long) {
@@ -2642,7 +2861,7 @@ public class Table {
         }
         break;
       case FLOAT:
-        float[] floatData = (float[]) columns[col];
+        float[] floatData = (float[]) column(col);
         if (piece == null) {
           floatData[row] = missingFloat;
         } else if (piece instanceof Float) {
@@ -2652,7 +2871,7 @@ public class Table {
         }
         break;
       case DOUBLE:
-        double[] doubleData = (double[]) columns[col];
+        double[] doubleData = (double[]) column(col);
         if (piece == null) {
           doubleData[row] = missingDouble;
         } else if (piece instanceof Double) {
@@ -2666,7 +2885,7 @@ public class Table {
         }
         break;
       case CATEGORY:
-        int[] indexData = (int[]) columns[col];
+        int[] indexData = (int[]) column(col);
         if (piece == null) {
           indexData[row] = missingCategory;
         } else {
@@ -2681,6 +2900,9 @@ public class Table {
       default:
         throw new IllegalArgumentException("That's not a valid column type.");
     }
+    if (index != null) {
+      index.add(row);
+    }
   }
 
 
@@ -3115,7 +3337,11 @@ public class Table {
     checkBounds(row, column);
     if (columnTypes[column] == INT ||
         columnTypes[column] == CATEGORY) {
-      int[] intData = (int[]) columns[column];
+      Object data = columns[column];
+      if (data instanceof TableEncoding.Column) {
+        return ((TableEncoding.Column) data).getInt(row);
+      }
+      int[] intData = (int[]) column(column);
       return intData[row];
     }
     String str = getString(row, column);
@@ -3163,8 +3389,15 @@ public class Table {
           columnTypes[column] != CATEGORY) {
         throw new IllegalArgumentException("Column " + column + " is not an int column.");
       }
-      int[] intData = (int[]) columns[column];
+      TableIndex index = getIndex(column);
+      if (index != null) {
+        index.remove(row);
+      }
+      int[] intData = (int[]) column(column);
       intData[row] = value;
+      if (index != null) {
+        index.add(row);
+      }
     }
   }
 
@@ -3184,6 +3417,17 @@ public class Table {
 
 
   public int[] getIntColumn(int col) {
+    checkColumn(col);
+    if (columnTypes[col] == INT || columnTypes[col] == CATEGORY) {
+      if (columns[col] instanceof TableMapping.Column) {
+        // straight from the mapping, without reading it into the table
+        return ((TableMapping.Column) columns[col]).ints();
+      }
+      if (columns[col] instanceof TableEncoding.Column) {
+        return (int[]) ((TableEncoding.Column) columns[col]).load();
+      }
+      return PApplet.subset((int[]) columns[col], 0, rowCount);
+    }
     int[] outgoing = new int[rowCount];
     for (int row = 0; row < rowCount; row++) {
       outgoing[row] = getInt(row, col);
@@ -3207,7 +3451,11 @@ public class Table {
   public long getLong(int row, int column) {
     checkBounds(row, column);
     if (columnTypes[column] == LONG) {
-      long[] longData = (long[]) columns[column];
+      Object data = columns[column];
+      if (data instanceof TableEncoding.Column) {
+        return ((TableEncoding.Column) data).getLong(row);
+      }
+      long[] longData = (long[]) column(column);
       return longData[row];
     }
     String str = getString(row, column);
@@ -3241,8 +3489,15 @@ public class Table {
       if (columnTypes[column] != LONG) {
         throw new IllegalArgumentException("Column " + column + " is not a 'long' column.");
       }
-      long[] longData = (long[]) columns[column];
+      TableIndex index = getIndex(column);
+      if (index != null) {
+        index.remove(row);
+      }
+      long[] longData = (long[]) column(column);
       longData[row] = value;
+      if (index != null) {
+        index.add(row);
+      }
     }
   }
 
@@ -3259,6 +3514,17 @@ public class Table {
 
 
   public long[] getLongColumn(int col) {
+    checkColumn(col);
+    if (columnTypes[col] == LONG) {
+      if (columns[col] instanceof TableMapping.Column) {
+        // straight from the mapping, without reading it into the table
+        return ((TableMapping.Column) columns[col]).longs();
+      }
+      if (columns[col] instanceof TableEncoding.Column) {
+        return (long[]) ((TableEncoding.Column) columns[col]).load();
+      }
+      return PApplet.subset((long[]) columns[col], 0, rowCount);
+    }
     long[] outgoing = new long[rowCount];
     for (int row = 0; row < rowCount; row++) {
       outgoing[row] = getLong(row, col);
@@ -3298,7 +3564,7 @@ public class Table {
   public float getFloat(int row, int column) {
     checkBounds(row, column);
     if (columnTypes[column] == FLOAT) {
-      float[] floatData = (float[]) columns[column];
+      float[] floatData = (float[]) column(column);
       return floatData[row];
     }
     String str = getString(row, column);
@@ -3347,8 +3613,15 @@ public class Table {
       if (columnTypes[column] != FLOAT) {
         throw new IllegalArgumentException("Column " + column + " is not a float column.");
       }
-      float[] longData = (float[]) columns[column];
+      TableIndex index = getIndex(column);
+      if (index != null) {
+        index.remove(row);
+      }
+      float[] longData = (float[]) column(column);
       longData[row] = value;
+      if (index != null) {
+        index.add(row);
+      }
     }
   }
 
@@ -3367,6 +3640,14 @@ public class Table {
 
 
   public float[] getFloatColumn(int col) {
+    checkColumn(col);
+    if (columnTypes[col] == FLOAT) {
+      if (columns[col] instanceof TableMapping.Column) {
+        // straight from the mapping, without reading it into the table
+        return ((TableMapping.Column) columns[col]).floats();
+      }
+      return PApplet.subset((float[]) columns[col], 0, rowCount);
+    }
     float[] outgoing = new float[rowCount];
     for (int row = 0; row < rowCount; row++) {
       outgoing[row] = getFloat(row, col);
@@ -3390,7 +3671,7 @@ public class Table {
   public double getDouble(int row, int column) {
     checkBounds(row, column);
     if (columnTypes[column] == DOUBLE) {
-      double[] doubleData = (double[]) columns[column];
+      double[] doubleData = (double[]) column(column);
       return doubleData[row];
     }
     String str = getString(row, column);
@@ -3424,8 +3705,15 @@ public class Table {
       if (columnTypes[column] != DOUBLE) {
         throw new IllegalArgumentException("Column " + column + " is not a 'double' column.");
       }
-      double[] doubleData = (double[]) columns[column];
+      TableIndex index = getIndex(column);
+      if (index != null) {
+        index.remove(row);
+      }
+      double[] doubleData = (double[]) column(column);
       doubleData[row] = value;
+      if (index != null) {
+        index.add(row);
+      }
     }
   }
 
@@ -3442,6 +3730,14 @@ public class Table {
 
 
   public double[] getDoubleColumn(int col) {
+    checkColumn(col);
+    if (columnTypes[col] == DOUBLE) {
+      if (columns[col] instanceof TableMapping.Column) {
+        // straight from the mapping, without reading it into the table
+        return ((TableMapping.Column) columns[col]).doubles();
+      }
+      return PApplet.subset((double[]) columns[col], 0, rowCount);
+    }
     double[] outgoing = new double[rowCount];
     for (int row = 0; row < rowCount; row++) {
       outgoing[row] = getDouble(row, col);
@@ -3536,8 +3832,12 @@ public class Table {
    */
   public String getString(int row, int column) {
     checkBounds(row, column);
+    if (columns[column] instanceof TableEncoding.Column &&
+        columnTypes[column] != CATEGORY) {
+      return ((TableEncoding.Column) columns[column]).getString(row);
+    }
     if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
+      String[] stringData = (String[]) column(column);
       return stringData[row];
     } else if (columnTypes[column] == CATEGORY) {
       int cat = getInt(row, column);
@@ -3554,7 +3854,7 @@ public class Table {
         return null;
       }
     }
-    return String.valueOf(Array.get(columns[column], row));
+    return String.valueOf(Array.get(column(column), row));
   }
 
 
@@ -3596,8 +3896,15 @@ public class Table {
     if (columnTypes[column] != STRING) {
       throw new IllegalArgumentException("Column " + column + " is not a String column.");
     }
-    String[] stringData = (String[]) columns[column];
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      index.remove(row);
+    }
+    String[] stringData = (String[]) column(column);
     stringData[row] = value;
+    if (index != null) {
+      index.add(row);
+    }
   }
 
   /**
@@ -3652,6 +3959,141 @@ public class Table {
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
+  /**
+   * Build a hash index for a column, so that findRow(), findRows(),
+   * matchRow(), getRowMap() and the rest don't need to look through every
+   * row each time they're called. The index is kept up to date as the
+   * table is changed, and is worth the memory when the same column is
+   * searched over and over, like once per frame in draw().
+   *
+   * @param columnName title of the column to index
+   * @see Table#sortedIndex(String)
+   * @see Table#removeIndex(String)
+   */
+  public void index(String columnName) {
+    index(getColumnIndex(columnName));
+  }
+
+
+  /**
+   * @param column ID number of the column to index
+   */
+  public void index(int column) {
+    setIndex(column, false);
+  }
+
+
+  /**
+   * Build a sorted index for a column. Lookups are a little slower than
+   * with index(), but it uses much less memory for columns where most of
+   * the values are different, and it can also be used by findRowIndices()
+   * to find the rows that have numbers within a range.
+   *
+   * @param columnName title of the column to index
+   * @see Table#index(String)
+   * @see Table#removeIndex(String)
+   */
+  public void sortedIndex(String columnName) {
+    sortedIndex(getColumnIndex(columnName));
+  }
+
+
+  /**
+   * @param column ID number of the column to index
+   */
+  public void sortedIndex(int column) {
+    setIndex(column, true);
+  }
+
+
+  /**
+   * Remove the index for a column, if it has one.
+   */
+  public void removeIndex(String columnName) {
+    removeIndex(getColumnIndex(columnName));
+  }
+
+
+  public void removeIndex(int column) {
+    checkColumn(column);
+    if (indexes != null) {
+      indexes[column] = null;
+    }
+  }
+
+
+  protected void setIndex(int column, boolean sorted) {
+    checkColumn(column);
+    if (indexes == null) {
+      indexes = new TableIndex[columns.length];
+    }
+    TableIndex index = new TableIndex(this, column, sorted);
+    index.build();
+    indexes[column] = index;
+  }
+
+
+  TableIndex getIndex(int column) {
+    return (indexes == null) ? null : indexes[column];
+  }
+
+
+  /** Add a row to all indexes, after it's been added or set. */
+  protected void indexAdd(int row) {
+    if (indexes != null) {
+      for (TableIndex index : indexes) {
+        if (index != null) {
+          index.add(row);
+        }
+      }
+    }
+  }
+
+
+  /** Remove a row from all indexes, before it's removed or changed. */
+  protected void indexRemove(int row) {
+    if (indexes != null) {
+      for (TableIndex index : indexes) {
+        if (index != null) {
+          index.remove(row);
+        }
+      }
+    }
+  }
+
+
+  protected void invalidateIndex(int column) {
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      index.invalidate();
+    }
+  }
+
+
+  protected void invalidateIndexes() {
+    if (indexes != null) {
+      for (TableIndex index : indexes) {
+        if (index != null) {
+          index.invalidate();
+        }
+      }
+    }
+  }
+
+
+  /** Columns have been added or removed, so update their numbers. */
+  protected void renumberIndexes() {
+    for (int col = 0; col < indexes.length; col++) {
+      if (indexes[col] != null) {
+        indexes[col].column = col;
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
   /**
    * Return the row that contains the first String that matches.
    * @param value the String to match
@@ -3659,8 +4101,19 @@ public class Table {
    */
   public int findRowIndex(String value, int column) {
     checkColumn(column);
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      int row = index.findFirst(value);
+      if (row != -2) {
+        return row;
+      }
+    }
+    StringArena arena = arena(column);
+    if (arena != null) {
+      return arena.index(StringArena.utf8(value), 0);
+    }
     if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
+      String[] stringData = (String[]) column(column);
       if (value == null) {
         for (int row = 0; row < rowCount; row++) {
           if (stringData[row] == null) return row;
@@ -3705,12 +4158,26 @@ public class Table {
    * @param column ID number of the column to search
    */
   public int[] findRowIndices(String value, int column) {
+    checkColumn(column);
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      int[] rows = index.find(value);
+      if (rows != null) {
+        return rows;
+      }
+    }
+
     int[] outgoing = new int[rowCount];
     int count = 0;
 
-    checkColumn(column);
-    if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
+    StringArena arena = arena(column);
+    if (arena != null) {
+      byte[] utf8 = StringArena.utf8(value);
+      for (int row = arena.index(utf8, 0); row != -1; row = arena.index(utf8, row + 1)) {
+        outgoing[count++] = row;
+      }
+    } else if (columnTypes[column] == STRING) {
+      String[] stringData = (String[]) column(column);
       if (value == null) {
         for (int row = 0; row < rowCount; row++) {
           if (stringData[row] == null) {
@@ -3751,6 +4218,44 @@ public class Table {
   }
 
 
+  /**
+   * Return the rows that have numbers from low to high (inclusive) in a
+   * column, in order. Uses the column's sortedIndex() if it has one,
+   * otherwise each row is checked. Rows that are missing values (NaN)
+   * are never included.
+   * @param low the smallest number to include
+   * @param high the largest number to include
+   * @param column ID number of the column to search
+   */
+  public int[] findRowIndices(double low, double high, int column) {
+    checkColumn(column);
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      int[] rows = index.findRange(low, high);
+      if (rows != null) {
+        return rows;
+      }
+    }
+    int[] outgoing = new int[rowCount];
+    int count = 0;
+    for (int row = 0; row < rowCount; row++) {
+      double value = getDouble(row, column);
+      if (value >= low && value <= high) {
+        outgoing[count++] = row;
+      }
+    }
+    return PApplet.subset(outgoing, 0, count);
+  }
+
+
+  /**
+   * @param columnName title of the column to search
+   */
+  public int[] findRowIndices(double low, double high, String columnName) {
+    return findRowIndices(low, high, getColumnIndex(columnName));
+  }
+
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
   /**
@@ -3844,8 +4349,13 @@ public class Table {
    */
   public int matchRowIndex(String regexp, int column) {
     checkColumn(column);
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      int[] rows = index.match(regexp);
+      return (rows.length == 0) ? -1 : rows[0];
+    }
     if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
+      String[] stringData = (String[]) column(column);
       for (int row = 0; row < rowCount; row++) {
         if (stringData[row] != null &&
             PApplet.match(stringData[row], regexp) != null) {
@@ -3882,12 +4392,17 @@ public class Table {
    * @param column ID number of the column to search
    */
   public int[] matchRowIndices(String regexp, int column) {
+    checkColumn(column);
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      return index.match(regexp);
+    }
+
     int[] outgoing = new int[rowCount];
     int count = 0;
 
-    checkColumn(column);
     if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
+      String[] stringData = (String[]) column(column);
       for (int row = 0; row < rowCount; row++) {
         if (stringData[row] != null &&
             PApplet.match(stringData[row], regexp) != null) {
@@ -4023,7 +4538,8 @@ public class Table {
 
   public void replace(String orig, String replacement, int col) {
     if (columnTypes[col] == STRING) {
-      String[] stringData = (String[]) columns[col];
+      invalidateIndex(col);
+      String[] stringData = (String[]) column(col);
 
       if (orig != null) {
         for (int row = 0; row < rowCount; row++) {
@@ -4060,7 +4576,8 @@ public class Table {
   public void replaceAll(String regex, String replacement, int column) {
     checkColumn(column);
     if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
+      invalidateIndex(column);
+      String[] stringData = (String[]) column(column);
       for (int row = 0; row < rowCount; row++) {
         if (stringData[row] != null) {
           stringData[row] = stringData[row].replaceAll(regex, replacement);
@@ -4227,7 +4744,8 @@ public class Table {
    */
   public void trim(int column) {
     if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
+      invalidateIndex(column);
+      String[] stringData = (String[]) column(column);
       for (int row = 0; row < rowCount; row++) {
         if (stringData[row] != null) {
           stringData[row] = PApplet.trim(stringData[row]);
@@ -4300,12 +4818,26 @@ public class Table {
     HashMap<String,Integer> dataToIndex = new HashMap<>();
     ArrayList<String> indexToData = new ArrayList<>();
 
+    // Open addressing table of (index + 1) so that categories can be found
+    // from a char buffer without creating a String. Rebuilt whenever
+    // indexToData has changed behind its back.
+    int[] charLookup;
+    int charLookupCount;
+
     HashMapBlows() { }
 
     HashMapBlows(DataInputStream input) throws IOException {
       read(input);
     }
 
+    /** Copy with the same index for every category (including null). */
+    HashMapBlows copy() {
+      HashMapBlows outgoing = new HashMapBlows();
+      outgoing.dataToIndex.putAll(dataToIndex);
+      outgoing.indexToData.addAll(indexToData);
+      return outgoing;
+    }
+
     /** gets the index, and creates one if it doesn't already exist. */
     int index(String key) {
       Integer value = dataToIndex.get(key);
@@ -4319,6 +4851,62 @@ public class Table {
       return v;
     }
 
+    /** same as index(String), but for a range of chars */
+    int index(char[] c, int offset, int length) {
+      if (charLookup == null || charLookupCount != indexToData.size()) {
+        rebuildCharLookup();
+      }
+      int mask = charLookup.length - 1;
+      int slot = charHash(c, offset, length) & mask;
+      int entry;
+      while ((entry = charLookup[slot]) != 0) {
+        if (TableParser.matches(indexToData.get(entry - 1), c, offset, length)) {
+          return entry - 1;
+        }
+        slot = (slot + 1) & mask;
+      }
+      int v = index(new String(c, offset, length));
+      charLookup[slot] = v + 1;
+      charLookupCount = indexToData.size();
+      if (charLookupCount * 2 > charLookup.length) {
+        rebuildCharLookup();
+      }
+      return v;
+    }
+
+    private void rebuildCharLookup() {
+      int size = 16;
+      while (size < indexToData.size() * 4) {
+        size <<= 1;
+      }
+      charLookup = new int[size];
+      int mask = size - 1;
+      for (int i = 0; i < indexToData.size(); i++) {
+        String key = indexToData.get(i);
+        if (key != null) {
+          int slot = spread(key.hashCode()) & mask;
+          while (charLookup[slot] != 0) {
+            slot = (slot + 1) & mask;
+          }
+          charLookup[slot] = i + 1;
+        }
+      }
+      charLookupCount = indexToData.size();
+    }
+
+    /** Same as String.hashCode() for the chars, so keys can use theirs. */
+    static private int charHash(char[] c, int offset, int length) {
+      int h = 0;
+      for (int i = offset; i < offset + length; i++) {
+        h = 31*h + c[i];
+      }
+      return spread(h);
+    }
+
+    static private int spread(int h) {
+      return h ^ (h >>> 16);
+    }
+
     String key(int index) {
       return indexToData.get(index);
     }
@@ -4333,6 +4921,7 @@ public class Table {
       }
       indexToData.set(index, name);
       dataToIndex.put(name, index);
+      charLookup = null;
     }
 
     int size() {
@@ -4358,6 +4947,7 @@ public class Table {
       int count = input.readInt();
       //System.out.println("found " + count + " entries in category map");
       dataToIndex = new HashMap<>(count);
+      charLookup = null;
       for (int i = 0; i < count; i++) {
         String str = input.readUTF();
         //System.out.println(i + " " + str);
@@ -4422,104 +5012,123 @@ public class Table {
   }
 
 
+  /**
+   * Sort the rows by several columns: by the first column, then rows with
+   * the same value in the first column are sorted by the second, and so
+   * on. Rows that are equal in all of those columns stay in their
+   * original order.
+   *
+   * @param columnNames titles of the columns to sort, in order
+   */
+  public void sort(String... columnNames) {
+    sort(getColumnIndices(columnNames), false);
+  }
+
+
+  /**
+   * @param columns ID numbers of the columns to sort, in order
+   */
+  public void sort(int... columns) {
+    sort(columns, false);
+  }
+
+
+  public void sortReverse(String... columnNames) {
+    sort(getColumnIndices(columnNames), true);
+  }
+
+
+  public void sortReverse(int... columns) {
+    sort(columns, true);
+  }
+
+
+  protected int[] getColumnIndices(String[] columnNames) {
+    int[] outgoing = new int[columnNames.length];
+    for (int i = 0; i < columnNames.length; i++) {
+      outgoing[i] = getColumnIndex(columnNames[i]);
+    }
+    return outgoing;
+  }
+
+
   protected void sort(final int column, final boolean reverse) {
-    final int[] order = IntList.fromRange(getRowCount()).array();
-    Sort s = new Sort() {
+    sort(new int[] { column }, reverse);
+  }
 
-      @Override
-      public int size() {
-        return getRowCount();
-      }
 
-      @Override
-      public int compare(int index1, int index2) {
-        int a = reverse ? order[index2] : order[index1];
-        int b = reverse ? order[index1] : order[index2];
+  /**
+   * Stable sort by one or more columns. The order is worked out from the
+   * keys of each column (see TableSort), starting with the last column,
+   * and then all columns are rearranged once at the end.
+   */
+  protected void sort(int[] sortColumns, boolean reverse) {
+    for (int column : sortColumns) {
+      checkColumn(column);
+    }
+    invalidateIndexes();
+    int[] order = IntList.fromRange(getRowCount()).array();
+    for (int i = sortColumns.length - 1; i >= 0; --i) {
+      order = TableSort.sort(this, sortColumns[i], reverse, order);
+    }
+    reorderRows(order);
+  }
 
-        switch (getColumnType(column)) {
-        case INT:
-          return getInt(a, column) - getInt(b, column);
-        case LONG:
-          long diffl = getLong(a, column) - getLong(b, column);
-          return diffl == 0 ? 0 : (diffl < 0 ? -1 : 1);
-        case FLOAT:
-          float difff = getFloat(a, column) - getFloat(b, column);
-          return difff == 0 ? 0 : (difff < 0 ? -1 : 1);
-        case DOUBLE:
-          double diffd = getDouble(a, column) - getDouble(b, column);
-          return diffd == 0 ? 0 : (diffd < 0 ? -1 : 1);
-        case STRING:
-          String string1 = getString(a, column);
-          if (string1 == null) {
-            string1 = "";  // avoid NPE when cells are left empty
-          }
-          String string2 = getString(b, column);
-          if (string2 == null) {
-            string2 = "";
-          }
-          return string1.compareToIgnoreCase(string2);
-        case CATEGORY:
-          return getInt(a, column) - getInt(b, column);
-        default:
-          throw new IllegalArgumentException("Invalid column type: " + getColumnType(column));
-        }
-      }
 
-      @Override
-      public void swap(int a, int b) {
-        int temp = order[a];
-        order[a] = order[b];
-        order[b] = temp;
-      }
+  /** Rearrange the rows so that the new row i is the old row order[i]. */
+  protected void reorderRows(final int[] order) {
+    java.util.stream.IntStream range =
+      java.util.stream.IntStream.range(0, getColumnCount());
+    if (rowCount >= TableSort.parallelRows) {
+      range = range.parallel();
+    }
+    range.forEach(col -> reorderColumn(col, order));
+  }
 
-    };
-    s.run();
 
-    //Object[] newColumns = new Object[getColumnCount()];
-    for (int col = 0; col < getColumnCount(); col++) {
-      switch (getColumnType(col)) {
-      case INT:
-      case CATEGORY:
-        int[] oldInt = (int[]) columns[col];
-        int[] newInt = new int[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newInt[row] = oldInt[order[row]];
-        }
-        columns[col] = newInt;
-        break;
-      case LONG:
-        long[] oldLong = (long[]) columns[col];
-        long[] newLong = new long[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newLong[row] = oldLong[order[row]];
-        }
-        columns[col] = newLong;
-        break;
-      case FLOAT:
-        float[] oldFloat = (float[]) columns[col];
-        float[] newFloat = new float[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newFloat[row] = oldFloat[order[row]];
-        }
-        columns[col] = newFloat;
-        break;
-      case DOUBLE:
-        double[] oldDouble = (double[]) columns[col];
-        double[] newDouble = new double[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newDouble[row] = oldDouble[order[row]];
-        }
-        columns[col] = newDouble;
-        break;
-      case STRING:
-        String[] oldString = (String[]) columns[col];
-        String[] newString = new String[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newString[row] = oldString[order[row]];
-        }
-        columns[col] = newString;
-        break;
+  protected void reorderColumn(int col, int[] order) {
+    switch (getColumnType(col)) {
+    case INT:
+    case CATEGORY:
+      int[] oldInt = (int[]) column(col);
+      int[] newInt = new int[rowCount];
+      for (int row = 0; row < getRowCount(); row++) {
+        newInt[row] = oldInt[order[row]];
+      }
+      columns[col] = newInt;
+      break;
+    case LONG:
+      long[] oldLong = (long[]) column(col);
+      long[] newLong = new long[rowCount];
+      for (int row = 0; row < getRowCount(); row++) {
+        newLong[row] = oldLong[order[row]];
       }
+      columns[col] = newLong;
+      break;
+    case FLOAT:
+      float[] oldFloat = (float[]) column(col);
+      float[] newFloat = new float[rowCount];
+      for (int row = 0; row < getRowCount(); row++) {
+        newFloat[row] = oldFloat[order[row]];
+      }
+      columns[col] = newFloat;
+      break;
+    case DOUBLE:
+      double[] oldDouble = (double[]) column(col);
+      double[] newDouble = new double[rowCount];
+      for (int row = 0; row < getRowCount(); row++) {
+        newDouble[row] = oldDouble[order[row]];
+      }
+      columns[col] = newDouble;
+      break;
+    case STRING:
+      String[] oldString = (String[]) column(col);
+      String[] newString = new String[rowCount];
+      for (int row = 0; row < getRowCount(); row++) {
+        newString[row] = oldString[order[row]];
+      }
+      columns[col] = newString;
+      break;
     }
   }
 
@@ -4533,8 +5142,7 @@ public class Table {
 
 
   public String[] getUnique(int column) {
-    StringList list = new StringList(getStringColumn(column));
-    return list.getUnique();
+    return getTally(column).keyArray();
   }
 
 
@@ -4544,6 +5152,11 @@ public class Table {
 
 
   public IntDict getTally(int column) {
+    checkColumn(column);
+    StringArena arena = arena(column);
+    if (arena != null) {
+      return arena.tally();
+    }
     StringList list = new StringList(getStringColumn(column));
     return list.getTally();
   }
@@ -4652,6 +5265,10 @@ public class Table {
    * </pre>
    */
   public Map<String, TableRow> getRowMap(int column) {
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      return index.rowMap();
+    }
     Map<String, TableRow> outgoing = new HashMap<>();
     for (int row = 0; row < getRowCount(); row++) {
       String id = getString(row, column);
@@ -4668,6 +5285,137 @@ public class Table {
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
+  /**
+   * Group the rows by the values in one or more columns, then use agg()
+   * on the result to make a new Table with a row for each group:
+   * <pre>
+   * Table byState = table.groupBy("state").agg("count", "mean(population)");
+   * </pre>
+   * Faster than filling an IntDict or FloatDict by hand, since it works
+   * straight from the column data, and uses all available cores for
+   * large tables.
+   *
+   * @param columnNames titles of the columns to group by
+   * @see TableGroups#agg(String...)
+   */
+  public TableGroups groupBy(String... columnNames) {
+    int[] keyColumns = new int[columnNames.length];
+    for (int i = 0; i < columnNames.length; i++) {
+      keyColumns[i] = getColumnIndex(columnNames[i]);
+    }
+    return groupBy(keyColumns);
+  }
+
+
+  /**
+   * @param columns ID numbers of the columns to group by
+   */
+  public TableGroups groupBy(int... columns) {
+    if (columns.length == 0) {
+      throw new IllegalArgumentException("groupBy() needs at least one column");
+    }
+    for (int column : columns) {
+      checkColumn(column);
+    }
+    TableGroups groups = new TableGroups(this, columns);
+    groups.group();
+    return groups;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Select the rows where a column compares to a number, for instance
+   * where("temp", "&gt;=", 30). Works straight from the column data, one
+   * bit per row, and selections can be combined with and() or or(). Use
+   * view() on the result for a Table of just those rows.
+   *
+   * @param columnName title of the column to compare
+   * @param op one of ==, !=, &lt;, &lt;=, &gt;, or &gt;=
+   * @param value the number to compare against
+   * @see TableSelection
+   */
+  public TableSelection where(String columnName, String op, double value) {
+    return where(getColumnIndex(columnName), op, value);
+  }
+
+
+  /**
+   * @param column ID number of the column to compare
+   */
+  public TableSelection where(int column, String op, double value) {
+    return TableSelection.where(this, column, op, value);
+  }
+
+
+  /**
+   * Select the rows where a column compares to a String, using
+   * String.compareTo() for &lt; and &gt;. Missing (null) entries only match
+   * "== null", or anything with !=.
+   */
+  public TableSelection where(String columnName, String op, String value) {
+    return where(getColumnIndex(columnName), op, value);
+  }
+
+
+  public TableSelection where(int column, String op, String value) {
+    return TableSelection.where(this, column, op, value);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Kinds of join() to make. INNER only keeps rows that have a match in
+   * both tables, LEFT keeps every row of this table, and fills in missing
+   * values for the other table's columns where there's no match.
+   */
+  static public enum JoinType { INNER, LEFT }
+
+
+  /**
+   * Make a new Table that combines the rows of this table with the rows
+   * of another that have the same value in a key column, for instance to
+   * add the details of each device to a table of readings:
+   * <pre>
+   * Table full = readings.join(devices, "device", "id", Table.JoinType.LEFT);
+   * </pre>
+   * The result has all the columns of this table, followed by the columns
+   * of the other table (except its key), with the same types. Titles that
+   * are already taken get a number added to them ("name_2"). Rows are in
+   * the same order as this table.
+   * <p/>
+   * The smaller of the two tables is put into a hash table, so this is
+   * much faster than calling findRow() for each row. Missing keys (null,
+   * NaN, or missing categories) don't match anything.
+   *
+   * @param other the table to join with this one
+   * @param leftKey title of the key column in this table
+   * @param rightKey title of the key column in the other table
+   * @param type INNER or LEFT
+   */
+  public Table join(Table other, String leftKey, String rightKey, JoinType type) {
+    return join(other, getColumnIndex(leftKey), other.getColumnIndex(rightKey), type);
+  }
+
+
+  /**
+   * @param leftKey ID number of the key column in this table
+   * @param rightKey ID number of the key column in the other table
+   */
+  public Table join(Table other, int leftKey, int rightKey, JoinType type) {
+    checkColumn(leftKey);
+    other.checkColumn(rightKey);
+    return new TableJoin(this, other, leftKey, rightKey, type == JoinType.LEFT).join();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
 //  /**
 //   * Return an object that maps the String values in one column back to the
 //   * row from which they came. For instance, if the "name" of each row is
@@ -4982,15 +5730,15 @@ public class Table {
   private void convertRowCol(DataOutputStream output, int row, int col, String piece) {
     switch (columnTypes[col]) {
       case STRING:
-        String[] stringData = (String[]) columns[col];
+        String[] stringData = (String[]) column(col);
         stringData[row] = piece;
         break;
       case INT:
-        int[] intData = (int[]) columns[col];
+        int[] intData = (int[]) column(col);
         intData[row] = PApplet.parseInt(piece, missingInt);
         break;
       case LONG:
-        long[] longData = (long[]) columns[col];
+        long[] longData = (long[]) column(col);
         try {
           longData[row] = Long.parseLong(piece);
         } catch (NumberFormatException nfe) {
@@ -4998,11 +5746,11 @@ public class Table {
         }
         break;
       case FLOAT:
-        float[] floatData = (float[]) columns[col];
+        float[] floatData = (float[]) column(col);
         floatData[row] = PApplet.parseFloat(piece, missingFloat);
         break;
       case DOUBLE:
-        double[] doubleData = (double[]) columns[col];
+        double[] doubleData = (double[]) column(col);
         try {
           doubleData[row] = Double.parseDouble(piece);
         } catch (NumberFormatException nfe) {
@@ -5016,6 +5764,30 @@ public class Table {
   */
 
 
+  /**
+   * Create an empty table with the same column titles, types, and missing
+   * values as this one. CATEGORY columns start out with their own (empty)
+   * set of categories.
+   */
+  Table emptyCopy() {
+    Table outgoing = new Table();
+    outgoing.setColumnCount(getColumnCount());
+    if (columnTitles != null) {
+      outgoing.setColumnTitles(columnTitles.clone());
+    }
+    for (int col = 0; col < getColumnCount(); col++) {
+      outgoing.setColumnType(col, columnTypes[col]);
+    }
+    outgoing.missingString = missingString;
+    outgoing.missingInt = missingInt;
+    outgoing.missingLong = missingLong;
+    outgoing.missingFloat = missingFloat;
+    outgoing.missingDouble = missingDouble;
+    outgoing.missingCategory = missingCategory;
+    return outgoing;
+  }
+
+
   /** Make a copy of the current table */
   public Table copy() {
     return new Table(rows());
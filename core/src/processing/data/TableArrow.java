@@ -0,0 +1,1252 @@
+package processing.data;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Reads and writes tables in the Arrow IPC format, so they can be passed
+ * back and forth with pyarrow, pandas, R, and anything else that speaks
+ * Arrow, without going through CSV. Both layouts are supported: the file
+ * format (.arrow, which starts and ends with "ARROW1" and has a footer
+ * that says where each batch of rows is) and the stream format (.arrows).
+ * <p/>
+ * Each message is a small FlatBuffers header, followed by a body with the
+ * actual column data, little-endian and padded to 8 bytes. The headers
+ * are read and written here directly, rather than using the FlatBuffers
+ * or Arrow libraries, since only a handful of fields are needed.
+ * <p/>
+ * Columns are written as Int32, Int64, Float32, Float64, and Utf8, and
+ * CATEGORY columns as Utf8 with a dictionary. When reading, other integer
+ * sizes, Bool, dates, times, timestamps, and durations are read as INT
+ * or LONG (with the raw values), and null entries become the missing
+ * value for the column. Nested types and compressed bodies aren't
+ * supported. Each record batch is added to the end of the table.
+ * <p/>
+ * When loading from a File, the batches are memory-mapped. If there's
+ * only one batch, numeric columns without nulls are left as mapped
+ * columns (see TableMapping.Column), so they aren't copied until they're
+ * used, and loading a very large table returns almost right away.
+ * Advanced users only, not official API.
+ */
+class TableArrow {
+  static final byte[] MAGIC = { 'A', 'R', 'R', 'O', 'W', '1' };
+  static final int CONTINUATION = 0xFFFFFFFF;
+  static final short VERSION = 4;  // MetadataVersion.V5
+
+  // MessageHeader union
+  static final byte SCHEMA = 1;
+  static final byte DICTIONARY_BATCH = 2;
+  static final byte RECORD_BATCH = 3;
+
+  // Type union
+  static final byte TYPE_INT = 2;
+  static final byte TYPE_FLOAT = 3;
+  static final byte TYPE_UTF8 = 5;
+  static final byte TYPE_BOOL = 6;
+  static final byte TYPE_DATE = 8;
+  static final byte TYPE_TIME = 9;
+  static final byte TYPE_TIMESTAMP = 10;
+  static final byte TYPE_DURATION = 18;
+  static final byte TYPE_LARGE_UTF8 = 20;
+
+  static final short PRECISION_SINGLE = 1;
+  static final short PRECISION_DOUBLE = 2;
+
+  static final int WRITE_SIZE = 1 << 20;
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+  // WRITING
+
+
+  /**
+   * Write the table as one record batch, plus a dictionary batch for each
+   * CATEGORY column. Closes the stream when finished.
+   *
+   * @param file true for the file format, false for the stream format
+   */
+  static void save(Table table, OutputStream stream, boolean file) throws IOException {
+    Output output = new Output(Channels.newChannel(stream));
+    try {
+      if (file) {
+        output.put(MAGIC);
+        output.pad();
+      }
+      Flat.Table schema = schema(table);
+      output.message(SCHEMA, schema, null);
+
+      int columnCount = table.getColumnCount();
+      List<long[]> dictionaryBlocks = new ArrayList<>();
+      for (int col = 0; col < columnCount; col++) {
+        if (table.getColumnType(col) == Table.CATEGORY) {
+          ArrayList<String> keys = table.columnCategories[col].indexToData;
+          Body body = new Body();
+          body.strings(keys.toArray(new String[0]), keys.size());
+          Flat.Table batch = new Flat.Table()
+            .add(0, 8, col)  // id
+            .add(1, body.recordBatch(keys.size()));  // data
+          dictionaryBlocks.add(output.message(DICTIONARY_BATCH, batch, body));
+        }
+      }
+
+      int rowCount = table.getRowCount();
+      Body body = new Body();
+      for (int col = 0; col < columnCount; col++) {
+        Object data = table.column(col);
+        switch (table.getColumnType(col)) {
+        case Table.INT:
+          body.node(rowCount, 0);
+          body.buffer(0, null);
+          body.buffer(4L * rowCount, data);
+          break;
+        case Table.LONG:
+        case Table.FLOAT:
+        case Table.DOUBLE:
+          // NaN stays NaN, rather than becoming null
+          body.node(rowCount, 0);
+          body.buffer(0, null);
+          body.buffer((table.getColumnType(col) == Table.FLOAT ? 4L : 8L) * rowCount, data);
+          break;
+        case Table.STRING:
+          body.strings((String[]) data, rowCount);
+          break;
+        case Table.CATEGORY:
+          int[] indices = (int[]) data;
+          boolean[] valid = new boolean[rowCount];
+          int nulls = 0;
+          for (int row = 0; row < rowCount; row++) {
+            valid[row] = indices[row] != table.missingCategory && indices[row] >= 0;
+            if (!valid[row]) nulls++;
+          }
+          body.node(rowCount, nulls);
+          body.buffer(nulls == 0 ? 0 : (rowCount + 7) / 8, nulls == 0 ? null : valid);
+          body.buffer(4L * rowCount, indices);
+          break;
+        }
+      }
+      long[] recordBlock = output.message(RECORD_BATCH, body.recordBatch(rowCount), body);
+
+      // end of stream marker
+      output.putInt(CONTINUATION);
+      output.putInt(0);
+
+      if (file) {
+        Flat.Table footer = new Flat.Table()
+          .add(0, 2, VERSION)
+          .add(1, schema)
+          .add(2, blocks(dictionaryBlocks))
+          .add(3, blocks(Arrays.asList(recordBlock)));
+        byte[] bytes = Flat.build(footer);
+        output.put(bytes);
+        output.putInt(bytes.length);
+        output.put(MAGIC);
+      }
+      output.flush();
+    } finally {
+      output.channel.close();
+    }
+  }
+
+
+  static Flat.Table schema(Table table) {
+    int columnCount = table.getColumnCount();
+    Flat.Node[] fields = new Flat.Node[columnCount];
+    for (int col = 0; col < columnCount; col++) {
+      String title = table.getColumnTitle(col);
+      Flat.Table field = new Flat.Table()
+        .add(0, new Flat.Str(title == null ? "" : title))
+        .add(1, 1, 1)  // nullable
+        .add(5, new Flat.Vector(new Flat.Node[0]));  // children
+      switch (table.getColumnType(col)) {
+      case Table.INT:
+        field.add(2, 1, TYPE_INT).add(3, intType(32));
+        break;
+      case Table.LONG:
+        field.add(2, 1, TYPE_INT).add(3, intType(64));
+        break;
+      case Table.FLOAT:
+        field.add(2, 1, TYPE_FLOAT).add(3, new Flat.Table().add(0, 2, PRECISION_SINGLE));
+        break;
+      case Table.DOUBLE:
+        field.add(2, 1, TYPE_FLOAT).add(3, new Flat.Table().add(0, 2, PRECISION_DOUBLE));
+        break;
+      case Table.STRING:
+        field.add(2, 1, TYPE_UTF8).add(3, new Flat.Table());
+        break;
+      case Table.CATEGORY:
+        field.add(2, 1, TYPE_UTF8).add(3, new Flat.Table());
+        field.add(4, new Flat.Table()
+                  .add(0, 8, col)  // id
+                  .add(1, intType(32)));  // indexType
+        break;
+      }
+      fields[col] = field;
+    }
+    return new Flat.Table()
+      .add(0, 2, 0)  // little-endian
+      .add(1, new Flat.Vector(fields));
+  }
+
+
+  static Flat.Table intType(int bitWidth) {
+    return new Flat.Table().add(0, 4, bitWidth).add(1, 1, 1);
+  }
+
+
+  /** Vector of Block structs for the footer. */
+  static Flat.Structs blocks(List<long[]> blocks) {
+    ByteBuffer bytes = ByteBuffer.allocate(24 * blocks.size()).order(ByteOrder.LITTLE_ENDIAN);
+    for (long[] block : blocks) {
+      bytes.putLong(block[0]);  // offset
+      bytes.putInt((int) block[1]);  // metaDataLength
+      bytes.putInt(0);  // padding
+      bytes.putLong(block[2]);  // bodyLength
+    }
+    return new Flat.Structs(bytes.array(), blocks.size());
+  }
+
+
+  /**
+   * The layout of a record batch body: a FieldNode for each column, and
+   * the offset and length of each of its buffers, along with the data
+   * that goes in them.
+   */
+  static class Body {
+    ByteBuffer nodes = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+    ByteBuffer buffers = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+    List<Object> data = new ArrayList<>();
+    List<Long> lengths = new ArrayList<>();
+    long length;
+
+    void node(long count, long nulls) {
+      nodes = room(nodes, 16);
+      nodes.putLong(count);
+      nodes.putLong(nulls);
+    }
+
+    void buffer(long bufferLength, Object content) {
+      buffers = room(buffers, 16);
+      buffers.putLong(length);
+      buffers.putLong(bufferLength);
+      data.add(content);
+      lengths.add(bufferLength);
+      length += (bufferLength + 7) & ~7L;
+    }
+
+    /** Validity, offsets, and UTF-8 data for a column of Strings. */
+    void strings(String[] values, int count) {
+      byte[][] utf8 = new byte[count][];
+      int[] offsets = new int[count + 1];
+      boolean[] valid = new boolean[count];
+      int nulls = 0;
+      long total = 0;
+      for (int i = 0; i < count; i++) {
+        if (values[i] == null) {
+          nulls++;
+        } else {
+          valid[i] = true;
+          utf8[i] = values[i].getBytes(StandardCharsets.UTF_8);
+          total += utf8[i].length;
+          if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too much text in one column to save as Arrow");
+          }
+        }
+        offsets[i + 1] = (int) total;
+      }
+      node(count, nulls);
+      buffer(nulls == 0 ? 0 : (count + 7) / 8, nulls == 0 ? null : valid);
+      buffer(4L * (count + 1), offsets);
+      buffer(total, utf8);
+    }
+
+    Flat.Table recordBatch(long count) {
+      return new Flat.Table()
+        .add(0, 8, count)
+        .add(1, new Flat.Structs(Arrays.copyOf(nodes.array(), nodes.position()), nodes.position() / 16))
+        .add(2, new Flat.Structs(Arrays.copyOf(buffers.array(), buffers.position()), buffers.position() / 16));
+    }
+
+    static ByteBuffer room(ByteBuffer buffer, int needed) {
+      if (buffer.remaining() < needed) {
+        ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+      }
+      return buffer;
+    }
+  }
+
+
+  /** Writes to a channel through a large buffer, keeping track of the position. */
+  static class Output {
+    WritableByteChannel channel;
+    ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    long position;
+
+    Output(WritableByteChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Write a message and its body, returns the offset, metadata length,
+     * and body length for the footer.
+     */
+    long[] message(byte type, Flat.Table header, Body body) throws IOException {
+      long start = position;
+      long bodyLength = (body == null) ? 0 : body.length;
+      Flat.Table message = new Flat.Table()
+        .add(0, 2, VERSION)
+        .add(1, 1, type)
+        .add(2, header)
+        .add(3, 8, bodyLength);
+      byte[] bytes = Flat.build(message);
+      int metadataLength = (bytes.length + 7) & ~7;
+      putInt(CONTINUATION);
+      putInt(metadataLength);
+      put(bytes);
+      pad();
+
+      if (body != null) {
+        long bodyStart = position;
+        for (int i = 0; i < body.data.size(); i++) {
+          long expected = position + body.lengths.get(i);
+          content(body.data.get(i), body.lengths.get(i));
+          if (position != expected) {
+            throw new IllegalStateException("Arrow buffer was " + (position - expected) + " bytes off");
+          }
+          pad();
+        }
+        if (position - bodyStart != bodyLength) {
+          throw new IllegalStateException("Arrow body length is off");
+        }
+      }
+      return new long[] { start, 8 + metadataLength, bodyLength };
+    }
+
+    void content(Object data, long length) throws IOException {
+      if (data instanceof boolean[]) {
+        boolean[] valid = (boolean[]) data;
+        for (int i = 0; i < length; i++) {
+          int bits = 0;
+          for (int b = 0; b < 8 && i * 8 + b < valid.length; b++) {
+            if (valid[i * 8 + b]) bits |= 1 << b;
+          }
+          room(1);
+          buffer.put((byte) bits);
+          position++;
+        }
+      } else if (data instanceof int[]) {
+        int[] values = (int[]) data;
+        int count = (int) (length / 4);
+        for (int i = 0; i < count; ) {
+          room(4);
+          int n = Math.min(count - i, buffer.remaining() / 4);
+          buffer.asIntBuffer().put(values, i, n);
+          buffer.position(buffer.position() + n * 4);
+          position += n * 4L;
+          i += n;
+        }
+      } else if (data instanceof long[]) {
+        long[] values = (long[]) data;
+        int count = (int) (length / 8);
+        for (int i = 0; i < count; ) {
+          room(8);
+          int n = Math.min(count - i, buffer.remaining() / 8);
+          buffer.asLongBuffer().put(values, i, n);
+          buffer.position(buffer.position() + n * 8);
+          position += n * 8L;
+          i += n;
+        }
+      } else if (data instanceof float[]) {
+        float[] values = (float[]) data;
+        int count = (int) (length / 4);
+        for (int i = 0; i < count; ) {
+          room(4);
+          int n = Math.min(count - i, buffer.remaining() / 4);
+          buffer.asFloatBuffer().put(values, i, n);
+          buffer.position(buffer.position() + n * 4);
+          position += n * 4L;
+          i += n;
+        }
+      } else if (data instanceof double[]) {
+        double[] values = (double[]) data;
+        int count = (int) (length / 8);
+        for (int i = 0; i < count; ) {
+          room(8);
+          int n = Math.min(count - i, buffer.remaining() / 8);
+          buffer.asDoubleBuffer().put(values, i, n);
+          buffer.position(buffer.position() + n * 8);
+          position += n * 8L;
+          i += n;
+        }
+      } else if (data instanceof byte[][]) {
+        for (byte[] bytes : (byte[][]) data) {
+          if (bytes != null) {
+            put(bytes);
+          }
+        }
+      }
+    }
+
+    void room(int needed) throws IOException {
+      if (buffer.remaining() < needed) {
+        flush();
+      }
+    }
+
+    void put(byte[] bytes) throws IOException {
+      int offset = 0;
+      while (offset < bytes.length) {
+        room(1);
+        int n = Math.min(bytes.length - offset, buffer.remaining());
+        buffer.put(bytes, offset, n);
+        offset += n;
+        position += n;
+      }
+    }
+
+    void putInt(int value) throws IOException {
+      room(4);
+      buffer.putInt(value);
+      position += 4;
+    }
+
+    /** Zeros up to the next multiple of 8. */
+    void pad() throws IOException {
+      while ((position & 7) != 0) {
+        room(1);
+        buffer.put((byte) 0);
+        position++;
+      }
+    }
+
+    void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+  // READING
+
+
+  /**
+   * Read a file in either format, memory-mapping the batches. Uses the
+   * footer of the file format to find them, so numeric columns can be
+   * left mapped when there's only one batch.
+   */
+  static void load(Table table, File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      Reader reader = new Reader(table);
+      if (size >= 22 && hasMagic(read(channel, 0, 6)) && hasMagic(read(channel, size - 6, 6))) {
+        int footerLength = read(channel, size - 10, 4).getInt();
+        Flat footer = Flat.root(channel.map(FileChannel.MapMode.READ_ONLY,
+                                            size - 10 - footerLength, footerLength));
+        reader.schema(footer.table(1));
+        int dictionaries = footer.vector(2);
+        for (int i = 0; dictionaries != 0 && i < footer.length(dictionaries); i++) {
+          reader.message(blockMessage(channel, footer, dictionaries, i), true);
+        }
+        int batches = footer.vector(3);
+        int batchCount = (batches == 0) ? 0 : footer.length(batches);
+        reader.mapped = (batchCount == 1);
+        for (int i = 0; i < batchCount; i++) {
+          reader.message(blockMessage(channel, footer, batches, i), true);
+        }
+      } else {
+        // stream format, or a file without its footer
+        read(table, Channels.newInputStream(channel));
+        return;
+      }
+      reader.finish();
+    }
+  }
+
+
+  static Object[] blockMessage(FileChannel channel, Flat footer, int vector, int index) throws IOException {
+    long offset = footer.structLong(vector, index, 24, 0);
+    int metadataLength = footer.structInt(vector, index, 24, 8);
+    long bodyLength = footer.structLong(vector, index, 24, 16);
+    ByteBuffer metadata = read(channel, offset, metadataLength);
+    int start = (metadata.getInt(0) == CONTINUATION) ? 8 : 4;
+    metadata.position(start);
+    Flat message = Flat.root(metadata.slice());
+    ByteBuffer body = map(channel, offset + metadataLength, bodyLength);
+    return new Object[] { message, body };
+  }
+
+
+  static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Arrow record batches larger than 2 GB can't be read");
+    }
+    // mappings stay valid after the channel has been closed
+    return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+
+  static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (bytes.hasRemaining()) {
+      if (channel.read(bytes, offset + bytes.position()) == -1) {
+        throw new EOFException("Arrow file ended early");
+      }
+    }
+    bytes.flip();
+    return bytes;
+  }
+
+
+  static boolean hasMagic(ByteBuffer bytes) {
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (bytes.get(i) != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Read the stream format, or the file format from the start (ignoring
+   * the footer, since the messages are all there in order).
+   */
+  static void read(Table table, InputStream input) throws IOException {
+    Reader reader = new Reader(table);
+    byte[] four = new byte[4];
+    boolean first = true;
+    while (true) {
+      if (!readFully(input, four, true)) {
+        break;  // ended without the end of stream marker
+      }
+      if (first && four[0] == 'A' && four[1] == 'R' && four[2] == 'R' && four[3] == 'O') {
+        readFully(input, four, false);  // rest of "ARROW1" and padding
+        readFully(input, four, false);
+      }
+      first = false;
+      int length = ByteBuffer.wrap(four).order(ByteOrder.LITTLE_ENDIAN).getInt();
+      if (length == CONTINUATION) {
+        readFully(input, four, false);
+        length = ByteBuffer.wrap(four).order(ByteOrder.LITTLE_ENDIAN).getInt();
+      }  // else the older format, without the continuation marker
+      if (length == 0) {
+        break;  // end of stream
+      }
+      byte[] metadata = new byte[length];
+      readFully(input, metadata, false);
+      Flat message = Flat.root(ByteBuffer.wrap(metadata));
+      long bodyLength = message.getLong(3, 0);
+      if (bodyLength > Integer.MAX_VALUE) {
+        throw new IOException("Arrow record batches larger than 2 GB can't be read");
+      }
+      byte[] body = new byte[(int) bodyLength];
+      readFully(input, body, false);
+      reader.message(new Object[] { message, ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN) }, false);
+    }
+    reader.finish();
+  }
+
+
+  static boolean readFully(InputStream input, byte[] bytes, boolean endOk) throws IOException {
+    int offset = 0;
+    while (offset < bytes.length) {
+      int count = input.read(bytes, offset, bytes.length - offset);
+      if (count == -1) {
+        if (endOk && offset == 0) {
+          return false;
+        }
+        throw new EOFException("Arrow data ended early");
+      }
+      offset += count;
+    }
+    return true;
+  }
+
+
+  /** Turns schema, dictionary, and record batch messages into a Table. */
+  static class Reader {
+    Table table;
+    boolean hasSchema;
+    boolean mapped;  // leave numeric columns mapped when possible
+
+    // for each column
+    byte[] arrowTypes;
+    int[] bitWidths;
+    boolean[] signed;
+    long[] dictionaryIds;
+    boolean[] large;  // LargeUtf8, with 64-bit offsets
+
+    Map<Long, String[]> dictionaries = new HashMap<>();
+
+
+    Reader(Table table) {
+      this.table = table;
+    }
+
+
+    void message(Object[] message, boolean fromFile) {
+      Flat header = (Flat) message[0];
+      ByteBuffer body = (ByteBuffer) message[1];
+      int type = header.getByte(1, (byte) 0);
+      if (type == SCHEMA) {
+        if (!hasSchema) {
+          schema(header.table(2));
+        }
+      } else if (type == DICTIONARY_BATCH) {
+        dictionary(header.table(2), body);
+      } else if (type == RECORD_BATCH) {
+        if (!hasSchema) {
+          throw new IllegalArgumentException("Arrow record batch came before the schema");
+        }
+        recordBatch(header.table(2), body);
+      } else {
+        throw new IllegalArgumentException("Arrow message type " + type + " is not supported");
+      }
+    }
+
+
+    void schema(Flat schema) {
+      hasSchema = true;
+      if (schema.getShort(0, (short) 0) != 0) {
+        throw new IllegalArgumentException("Big-endian Arrow data is not supported");
+      }
+      int fields = schema.vector(1);
+      int columnCount = (fields == 0) ? 0 : schema.length(fields);
+      arrowTypes = new byte[columnCount];
+      bitWidths = new int[columnCount];
+      signed = new boolean[columnCount];
+      dictionaryIds = new long[columnCount];
+      large = new boolean[columnCount];
+
+      String[] titles = new String[columnCount];
+      boolean named = false;
+      int[] types = new int[columnCount];
+      for (int col = 0; col < columnCount; col++) {
+        Flat field = schema.table(fields, col);
+        titles[col] = field.getString(0);
+        if (titles[col] != null && titles[col].length() != 0) {
+          named = true;
+        }
+        byte arrowType = field.getByte(2, (byte) 0);
+        Flat type = field.table(3);
+        Flat dictionary = field.table(4);
+        arrowTypes[col] = arrowType;
+        dictionaryIds[col] = -1;
+
+        if (dictionary != null) {
+          if (arrowType != TYPE_UTF8 && arrowType != TYPE_LARGE_UTF8) {
+            throw new IllegalArgumentException("Dictionary column " + titles[col] + " has to be text");
+          }
+          large[col] = (arrowType == TYPE_LARGE_UTF8);
+          dictionaryIds[col] = dictionary.getLong(0, 0);
+          Flat index = dictionary.table(1);
+          bitWidths[col] = (index == null) ? 32 : index.getInt(0, 32);
+          signed[col] = (index == null) || index.getBool(1, false);
+          types[col] = Table.CATEGORY;
+          continue;
+        }
+
+        switch (arrowType) {
+        case TYPE_INT:
+          bitWidths[col] = type.getInt(0, 32);
+          signed[col] = type.getBool(1, false);
+          boolean fits = bitWidths[col] < 32 || (bitWidths[col] == 32 && signed[col]);
+          types[col] = fits ? Table.INT : Table.LONG;
+          break;
+        case TYPE_FLOAT:
+          short precision = type.getShort(0, (short) 0);
+          if (precision == PRECISION_SINGLE) {
+            types[col] = Table.FLOAT;
+            bitWidths[col] = 32;
+          } else if (precision == PRECISION_DOUBLE) {
+            types[col] = Table.DOUBLE;
+            bitWidths[col] = 64;
+          } else {
+            throw new IllegalArgumentException("Half-precision floats (column " + titles[col] + ") are not supported");
+          }
+          break;
+        case TYPE_UTF8:
+        case TYPE_LARGE_UTF8:
+          types[col] = Table.STRING;
+          large[col] = (arrowType == TYPE_LARGE_UTF8);
+          break;
+        case TYPE_BOOL:
+          types[col] = Table.INT;
+          bitWidths[col] = 1;
+          break;
+        case TYPE_DATE:
+          // days since the epoch, or milliseconds
+          bitWidths[col] = (type.getShort(0, (short) 1) == 0) ? 32 : 64;
+          signed[col] = true;
+          types[col] = (bitWidths[col] == 32) ? Table.INT : Table.LONG;
+          break;
+        case TYPE_TIME:
+          bitWidths[col] = type.getInt(1, 32);
+          signed[col] = true;
+          types[col] = (bitWidths[col] == 32) ? Table.INT : Table.LONG;
+          break;
+        case TYPE_TIMESTAMP:
+        case TYPE_DURATION:
+          bitWidths[col] = 64;
+          signed[col] = true;
+          types[col] = Table.LONG;
+          break;
+        default:
+          throw new IllegalArgumentException("Arrow type " + arrowType + " (column " + titles[col] + ") is not supported");
+        }
+      }
+
+      table.setColumnCount(columnCount);
+      table.setColumnTypes(types);
+      if (named) {
+        table.setColumnTitles(titles);
+      }
+    }
+
+
+    void dictionary(Flat batch, ByteBuffer body) {
+      long id = batch.getLong(0, 0);
+      boolean delta = batch.getBool(2, false);
+      int col = -1;
+      for (int c = 0; c < dictionaryIds.length; c++) {
+        if (dictionaryIds[c] == id) {
+          col = c;
+        }
+      }
+      if (col == -1) {
+        throw new IllegalArgumentException("No column uses Arrow dictionary " + id);
+      }
+      Flat data = batch.table(1);
+      checkCompression(data);
+      int count = count(data.getLong(0, 0));
+      String[] values = new String[count];
+      strings(data, 0, 0, body, large[col], values, 0, count);
+      String[] previous = dictionaries.get(id);
+      if (delta && previous != null) {
+        String[] combined = Arrays.copyOf(previous, previous.length + count);
+        System.arraycopy(values, 0, combined, previous.length, count);
+        values = combined;
+      }
+      dictionaries.put(id, values);
+    }
+
+
+    void recordBatch(Flat batch, ByteBuffer body) {
+      checkCompression(batch);
+      int count = count(batch.getLong(0, 0));
+      int columnCount = arrowTypes.length;
+      int start = table.getRowCount();
+      boolean lazy = mapped && start == 0;
+      if (!lazy) {
+        table.setRowCount(start + count);
+      }
+
+      int buffer = 0;
+      for (int col = 0; col < columnCount; col++) {
+        int type = table.getColumnType(col);
+        boolean text = (type == Table.STRING);
+        if (text) {
+          String[] data = lazy ? new String[count] : (String[]) table.column(col);
+          strings(batch, col, buffer, body, large[col], data, start, count);
+          if (lazy) table.columns[col] = data;
+          buffer += 3;
+          continue;
+        }
+
+        long nulls = batch.structLong(batch.vector(1), col, 16, 8);
+        ByteBuffer values = slice(batch, buffer + 1, body);
+        ByteBuffer validity = (nulls == 0) ? null : slice(batch, buffer, body);
+        buffer += 2;
+
+        if (lazy && validity == null && dictionaryIds[col] == -1 &&
+            (bitWidths[col] == 64 || (bitWidths[col] == 32 && type != Table.LONG))) {
+          // straight from the mapping, only read if it's used
+          table.columns[col] = new TableMapping.Column(type, count, values);
+          continue;
+        }
+        Object data;
+        if (lazy) {
+          switch (type) {
+          case Table.LONG: data = new long[count]; break;
+          case Table.FLOAT: data = new float[count]; break;
+          case Table.DOUBLE: data = new double[count]; break;
+          default: data = new int[count]; break;
+          }
+          table.columns[col] = data;
+        } else {
+          data = table.column(col);
+        }
+        if (dictionaryIds[col] != -1) {
+          categories(col, values, validity, (int[]) data, start, count);
+        } else {
+          numbers(col, type, values, validity, data, start, count);
+        }
+      }
+      if (lazy) {
+        table.rowCount = count;
+      }
+    }
+
+
+    void numbers(int col, int type, ByteBuffer values, ByteBuffer validity,
+                 Object data, int start, int count) {
+      int width = bitWidths[col];
+      switch (type) {
+      case Table.FLOAT:
+        values.asFloatBuffer().get((float[]) data, start, count);
+        break;
+      case Table.DOUBLE:
+        values.asDoubleBuffer().get((double[]) data, start, count);
+        break;
+      case Table.LONG:
+        long[] longs = (long[]) data;
+        if (width == 64) {
+          values.asLongBuffer().get(longs, start, count);
+        } else {
+          for (int i = 0; i < count; i++) {
+            longs[start + i] = integer(values, i, width, signed[col]);
+          }
+        }
+        break;
+      default:
+        int[] ints = (int[]) data;
+        if (width == 32) {
+          values.asIntBuffer().get(ints, start, count);
+        } else {
+          for (int i = 0; i < count; i++) {
+            ints[start + i] = (int) integer(values, i, width, signed[col]);
+          }
+        }
+        break;
+      }
+      if (validity != null) {
+        for (int i = 0; i < count; i++) {
+          if (!bit(validity, i)) {
+            switch (type) {
+            case Table.INT: ((int[]) data)[start + i] = table.missingInt; break;
+            case Table.LONG: ((long[]) data)[start + i] = table.missingLong; break;
+            case Table.FLOAT: ((float[]) data)[start + i] = table.missingFloat; break;
+            case Table.DOUBLE: ((double[]) data)[start + i] = table.missingDouble; break;
+            }
+          }
+        }
+      }
+    }
+
+
+    void categories(int col, ByteBuffer values, ByteBuffer validity,
+                    int[] data, int start, int count) {
+      String[] dictionary = dictionaries.get(dictionaryIds[col]);
+      if (dictionary == null) {
+        throw new IllegalArgumentException("Missing Arrow dictionary " + dictionaryIds[col]);
+      }
+      // where each entry of the dictionary is in the table's categories
+      Table.HashMapBlows categories = table.columnCategories[col];
+      int[] lookup = new int[dictionary.length];
+      for (int i = 0; i < dictionary.length; i++) {
+        lookup[i] = (dictionary[i] == null) ?
+          table.missingCategory : categories.index(dictionary[i]);
+      }
+      for (int i = 0; i < count; i++) {
+        if (validity != null && !bit(validity, i)) {
+          data[start + i] = table.missingCategory;
+        } else {
+          data[start + i] = lookup[(int) integer(values, i, bitWidths[col], signed[col])];
+        }
+      }
+    }
+
+
+    /** Read a column of text, from its validity, offsets, and data buffers. */
+    void strings(Flat batch, int col, int buffer, ByteBuffer body, boolean large,
+                 String[] data, int start, int count) {
+      long nulls = batch.structLong(batch.vector(1), col, 16, 8);
+      ByteBuffer validity = (nulls == 0) ? null : slice(batch, buffer, body);
+      ByteBuffer offsets = slice(batch, buffer + 1, body);
+      ByteBuffer chars = slice(batch, buffer + 2, body);
+      byte[] utf8;
+      int base = 0;
+      if (chars.hasArray()) {
+        utf8 = chars.array();
+        base = chars.arrayOffset() + chars.position();
+      } else {
+        utf8 = new byte[chars.remaining()];
+        chars.get(utf8);
+      }
+      for (int i = 0; i < count; i++) {
+        if (validity != null && !bit(validity, i)) {
+          data[start + i] = null;
+        } else {
+          long from = large ? offsets.getLong(i * 8) : offsets.getInt(i * 4);
+          long to = large ? offsets.getLong(i * 8 + 8) : offsets.getInt(i * 4 + 4);
+          data[start + i] = new String(utf8, base + (int) from, (int) (to - from), StandardCharsets.UTF_8);
+        }
+      }
+    }
+
+
+    /** Buffer number 'index' of a record batch, as a slice of the body. */
+    static ByteBuffer slice(Flat batch, int index, ByteBuffer body) {
+      int buffers = batch.vector(2);
+      long offset = batch.structLong(buffers, index, 16, 0);
+      long length = batch.structLong(buffers, index, 16, 8);
+      ByteBuffer outgoing = body.duplicate();
+      outgoing.position((int) offset);
+      outgoing.limit((int) (offset + length));
+      return outgoing.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+
+    static long integer(ByteBuffer values, int index, int width, boolean signed) {
+      switch (width) {
+      case 1: return bit(values, index) ? 1 : 0;
+      case 8: return signed ? values.get(index) : values.get(index) & 0xFF;
+      case 16: return signed ? values.getShort(index * 2) : values.getShort(index * 2) & 0xFFFF;
+      case 32: return signed ? values.getInt(index * 4) : values.getInt(index * 4) & 0xFFFFFFFFL;
+      case 64: return values.getLong(index * 8);
+      }
+      throw new IllegalArgumentException(width + "-bit integers are not supported");
+    }
+
+
+    static boolean bit(ByteBuffer bits, int index) {
+      return (bits.get(index >> 3) & (1 << (index & 7))) != 0;
+    }
+
+
+    static void checkCompression(Flat batch) {
+      if (batch.table(3) != null) {
+        throw new IllegalArgumentException("Compressed Arrow data is not supported, " +
+                                           "save it with compression=None");
+      }
+    }
+
+
+    static int count(long length) {
+      if (length > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Too many rows in this Arrow batch");
+      }
+      return (int) length;
+    }
+
+
+    void finish() {
+      if (!hasSchema) {
+        throw new IllegalArgumentException("No schema found in this Arrow data");
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Just enough FlatBuffers to read and write Arrow messages. Reading uses
+   * the positions of tables in a little-endian ByteBuffer. Writing builds
+   * a tree of nodes first, then writes each table before its children,
+   * so that every offset points forward, the way FlatBuffers expects.
+   */
+  static class Flat {
+    ByteBuffer bb;
+    int table;
+
+    Flat(ByteBuffer bb, int table) {
+      this.bb = bb;
+      this.table = table;
+    }
+
+    static Flat root(ByteBuffer buffer) {
+      ByteBuffer bb = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+      return new Flat(bb, bb.getInt(0));
+    }
+
+    /** Offset of a field from the start of the table, 0 if not present. */
+    int field(int id) {
+      int vtable = table - bb.getInt(table);
+      int vtableSize = bb.getShort(vtable) & 0xFFFF;
+      int entry = 4 + 2 * id;
+      return (entry < vtableSize) ? (bb.getShort(vtable + entry) & 0xFFFF) : 0;
+    }
+
+    long getLong(int id, long otherwise) {
+      int offset = field(id);
+      return (offset == 0) ? otherwise : bb.getLong(table + offset);
+    }
+
+    int getInt(int id, int otherwise) {
+      int offset = field(id);
+      return (offset == 0) ? otherwise : bb.getInt(table + offset);
+    }
+
+    short getShort(int id, short otherwise) {
+      int offset = field(id);
+      return (offset == 0) ? otherwise : bb.getShort(table + offset);
+    }
+
+    byte getByte(int id, byte otherwise) {
+      int offset = field(id);
+      return (offset == 0) ? otherwise : bb.get(table + offset);
+    }
+
+    boolean getBool(int id, boolean otherwise) {
+      int offset = field(id);
+      return (offset == 0) ? otherwise : bb.get(table + offset) != 0;
+    }
+
+    /** Where an offset field points to, or 0 if not present. */
+    int target(int id) {
+      int offset = field(id);
+      if (offset == 0) {
+        return 0;
+      }
+      int position = table + offset;
+      return position + bb.getInt(position);
+    }
+
+    Flat table(int id) {
+      int position = target(id);
+      return (position == 0) ? null : new Flat(bb, position);
+    }
+
+    String getString(int id) {
+      int position = target(id);
+      if (position == 0) {
+        return null;
+      }
+      byte[] bytes = new byte[bb.getInt(position)];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = bb.get(position + 4 + i);
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Position of a vector, or 0 if not present. */
+    int vector(int id) {
+      return target(id);
+    }
+
+    int length(int vector) {
+      return bb.getInt(vector);
+    }
+
+    Flat table(int vector, int index) {
+      int position = vector + 4 + 4 * index;
+      return new Flat(bb, position + bb.getInt(position));
+    }
+
+    long structLong(int vector, int index, int structSize, int offset) {
+      return bb.getLong(vector + 4 + index * structSize + offset);
+    }
+
+    int structInt(int vector, int index, int structSize, int offset) {
+      return bb.getInt(vector + 4 + index * structSize + offset);
+    }
+
+
+    // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+    static abstract class Node { }
+
+    static class Table extends Node {
+      List<int[]> scalars = new ArrayList<>();  // id, size
+      List<Long> values = new ArrayList<>();
+      List<Integer> childIds = new ArrayList<>();
+      List<Node> children = new ArrayList<>();
+
+      Table add(int id, int size, long value) {
+        scalars.add(new int[] { id, size });
+        values.add(value);
+        return this;
+      }
+
+      Table add(int id, Node child) {
+        childIds.add(id);
+        children.add(child);
+        return this;
+      }
+    }
+
+    static class Str extends Node {
+      byte[] utf8;
+
+      Str(String str) {
+        utf8 = str.getBytes(StandardCharsets.UTF_8);
+      }
+    }
+
+    static class Vector extends Node {
+      Node[] items;
+
+      Vector(Node[] items) {
+        this.items = items;
+      }
+    }
+
+    /** Vector of structs that are already laid out, all 8-byte aligned. */
+    static class Structs extends Node {
+      byte[] bytes;
+      int count;
+
+      Structs(byte[] bytes, int count) {
+        this.bytes = bytes;
+        this.count = count;
+      }
+    }
+
+
+    static byte[] build(Node root) {
+      Builder builder = new Builder();
+      builder.bb.putInt(0);  // offset of the root table, filled in below
+      int position = builder.write(root);
+      builder.bb.putInt(0, position);
+      return Arrays.copyOf(builder.bb.array(), builder.bb.position());
+    }
+
+
+    static class Builder {
+      ByteBuffer bb = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+      int write(Node node) {
+        if (node instanceof Table) {
+          return writeTable((Table) node);
+        } else if (node instanceof Str) {
+          byte[] utf8 = ((Str) node).utf8;
+          align(4, 0);
+          int position = bb.position();
+          room(utf8.length + 5);
+          bb.putInt(utf8.length);
+          bb.put(utf8);
+          bb.put((byte) 0);
+          return position;
+        } else if (node instanceof Vector) {
+          Node[] items = ((Vector) node).items;
+          align(4, 0);
+          int position = bb.position();
+          room(4 + 4 * items.length);
+          bb.putInt(items.length);
+          bb.position(bb.position() + 4 * items.length);
+          for (int i = 0; i < items.length; i++) {
+            int slot = position + 4 + 4 * i;
+            int child = write(items[i]);
+            bb.putInt(slot, child - slot);
+          }
+          return position;
+        } else {
+          Structs structs = (Structs) node;
+          align(8, 4);  // so the structs start on 8 bytes
+          int position = bb.position();
+          room(4 + structs.bytes.length);
+          bb.putInt(structs.count);
+          bb.put(structs.bytes);
+          return position;
+        }
+      }
+
+      int writeTable(Table t) {
+        int fieldCount = 0;
+        for (int[] scalar : t.scalars) {
+          fieldCount = Math.max(fieldCount, scalar[0] + 1);
+        }
+        for (int id : t.childIds) {
+          fieldCount = Math.max(fieldCount, id + 1);
+        }
+        int vtableSize = 4 + 2 * fieldCount;
+        align(2, 0);
+        int vtable = bb.position();
+        room(vtableSize);
+        bb.position(vtable + vtableSize);
+        align(8, 0);
+        int table = bb.position();
+
+        // larger fields first, each aligned to its size
+        int[] scalarPositions = new int[t.scalars.size()];
+        int[] childPositions = new int[t.children.size()];
+        int end = table + 4;
+        for (int size = 8; size >= 1; size /= 2) {
+          for (int i = 0; i < t.scalars.size(); i++) {
+            if (t.scalars.get(i)[1] == size) {
+              end = (end + size - 1) & -size;
+              scalarPositions[i] = end;
+              end += size;
+            }
+          }
+          if (size == 4) {
+            for (int i = 0; i < t.children.size(); i++) {
+              end = (end + 3) & -4;
+              childPositions[i] = end;
+              end += 4;
+            }
+          }
+        }
+        room(end - table);
+        bb.putInt(table, table - vtable);
+        bb.putShort(vtable, (short) vtableSize);
+        bb.putShort(vtable + 2, (short) (end - table));
+        for (int i = 0; i < t.scalars.size(); i++) {
+          int position = scalarPositions[i];
+          long value = t.values.get(i);
+          switch (t.scalars.get(i)[1]) {
+          case 1: bb.put(position, (byte) value); break;
+          case 2: bb.putShort(position, (short) value); break;
+          case 4: bb.putInt(position, (int) value); break;
+          case 8: bb.putLong(position, value); break;
+          }
+          bb.putShort(vtable + 4 + 2 * t.scalars.get(i)[0], (short) (position - table));
+        }
+        for (int i = 0; i < t.children.size(); i++) {
+          bb.putShort(vtable + 4 + 2 * t.childIds.get(i), (short) (childPositions[i] - table));
+        }
+        bb.position(end);
+
+        for (int i = 0; i < t.children.size(); i++) {
+          int child = write(t.children.get(i));
+          bb.putInt(childPositions[i], child - childPositions[i]);
+        }
+        return table;
+      }
+
+      /** Pad with zeros until position % alignment == remainder. */
+      void align(int alignment, int remainder) {
+        room(alignment);
+        while (bb.position() % alignment != remainder) {
+          bb.put((byte) 0);
+        }
+      }
+
+      void room(int needed) {
+        if (bb.remaining() < needed) {
+          ByteBuffer bigger = ByteBuffer.allocate(Math.max(bb.capacity() * 2, bb.position() + needed)).order(ByteOrder.LITTLE_ENDIAN);
+          bb.flip();
+          bigger.put(bb);
+          bb = bigger;
+        }
+      }
+    }
+  }
+}
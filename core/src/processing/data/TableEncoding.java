@@ -0,0 +1,489 @@
+package processing.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Compressed forms for the columns of a Table, used by Table.compress().
+ * An encoded column takes the place of the usual array in Table.columns,
+ * and getInt(), getLong(), and getString() read from it directly, so that
+ * nothing changes for code that uses the table. Anything that needs the
+ * array itself (setting a value, adding rows, sorting, indexing) goes
+ * through Table.column(), which decodes the column back into an array,
+ * the same way it loads a column of a memory-mapped table.
+ * <p/>
+ * INT, LONG, and CATEGORY columns are split into blocks of 128 rows. Each
+ * block stores its values with as few bits as will hold them, either as
+ * the difference from the smallest value in the block, or as the
+ * difference between each value and the one before it (which is what
+ * makes sorted columns like timestamps small), whichever is shorter.
+ * Columns with long runs of the same value are stored as runs instead.
+ * STRING columns keep each different entry once, plus the position of
+ * each row's entry in that list, which is itself compressed. When most
+ * entries are different (ids, names), all of them are kept as UTF-8 in a
+ * single byte array instead (see StringArena).
+ * <p/>
+ * Reading rows in order decodes each block once, instead of once per row.
+ * Advanced users only, not official API.
+ */
+class TableEncoding {
+  static final int BLOCK_SHIFT = 7;
+  static final int BLOCK = 1 << BLOCK_SHIFT;
+
+
+  /**
+   * Compress a column of this type, or return null if none of the
+   * encodings would make it smaller.
+   */
+  static Column encode(int type, Object data, int rowCount) {
+    switch (type) {
+    case Table.INT:
+    case Table.CATEGORY:
+    case Table.LONG: {
+      long[] values = longs(type, data, rowCount);
+      Column best = smaller(new Packed(type, values, rowCount),
+                            Runs.encode(type, values, rowCount));
+      long plain = (long) rowCount * (type == Table.LONG ? 8 : 4);
+      return (best.memory() < plain) ? best : null;
+    }
+    case Table.STRING: {
+      Column dictionary = Dictionary.encode((String[]) data, rowCount);
+      StringArena arena = StringArena.encode((String[]) data, rowCount);
+      Column utf8 = (arena == null) ? null : new Utf8(arena);
+      return (dictionary == null) ? utf8 : smaller(dictionary, utf8);
+    }
+    }
+    return null;
+  }
+
+
+  static private long[] longs(int type, Object data, int rowCount) {
+    long[] values = new long[rowCount];
+    if (type == Table.LONG) {
+      System.arraycopy(data, 0, values, 0, rowCount);
+    } else {
+      int[] ints = (int[]) data;
+      for (int i = 0; i < rowCount; i++) {
+        values[i] = ints[i];
+      }
+    }
+    return values;
+  }
+
+
+  static private Column smaller(Column a, Column b) {
+    if (b == null || a.memory() <= b.memory()) {
+      return a;
+    }
+    return b;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static abstract class Column {
+    int type;
+    int rowCount;
+
+    abstract long getLong(int row);
+
+    int getInt(int row) {
+      return (int) getLong(row);
+    }
+
+    String getString(int row) {
+      return String.valueOf(getLong(row));
+    }
+
+    /** Approximate number of bytes used. */
+    abstract long memory();
+
+    /** Decode into the array that Table would use for this column. */
+    Object load() {
+      if (type == Table.LONG) {
+        long[] outgoing = new long[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+          outgoing[row] = getLong(row);
+        }
+        return outgoing;
+      }
+      int[] outgoing = new int[rowCount];
+      for (int row = 0; row < rowCount; row++) {
+        outgoing[row] = getInt(row);
+      }
+      return outgoing;
+    }
+  }
+
+
+  /**
+   * Blocks of values packed with as few bits as possible. The blocks start
+   * on a new long, so that any value can be found without reading the
+   * ones before it. Blocks that store the difference from the previous
+   * value have to be decoded in full, and the last one decoded is kept.
+   */
+  static class Packed extends Column {
+    long[] bits;
+    int[] offsets;  // where each block starts in 'bits'
+    long[] firsts;  // first value of each block
+    long[] bases;   // smallest value, or smallest difference
+    byte[] widths;  // bits per value, negative for differences
+
+    // last block decoded, replaced as a whole so that threads can share it
+    Decoded decoded;
+
+    static class Decoded {
+      final int block;
+      final long[] values;
+
+      Decoded(int block, long[] values) {
+        this.block = block;
+        this.values = values;
+      }
+    }
+
+
+    Packed(int type, long[] values, int rowCount) {
+      this.type = type;
+      this.rowCount = rowCount;
+      int blockCount = (rowCount + BLOCK - 1) >> BLOCK_SHIFT;
+      offsets = new int[blockCount];
+      firsts = new long[blockCount];
+      bases = new long[blockCount];
+      widths = new byte[blockCount];
+
+      // figure out the size of each block first, then pack them
+      long words = 0;
+      for (int b = 0; b < blockCount; b++) {
+        int start = b << BLOCK_SHIFT;
+        int length = Math.min(BLOCK, rowCount - start);
+        firsts[b] = values[start];
+
+        long min = values[start];
+        long max = min;
+        long minDelta = Long.MAX_VALUE;
+        long maxDelta = Long.MIN_VALUE;
+        for (int i = start + 1; i < start + length; i++) {
+          long v = values[i];
+          if (v < min) min = v;
+          if (v > max) max = v;
+          long delta = v - values[i - 1];
+          if (delta < minDelta) minDelta = delta;
+          if (delta > maxDelta) maxDelta = delta;
+        }
+        int width = bitsNeeded(max - min);
+        if (length > 1) {
+          int deltaWidth = bitsNeeded(maxDelta - minDelta);
+          // a block of differences doesn't store its first value
+          if ((long) deltaWidth * (length - 1) < (long) width * length) {
+            bases[b] = minDelta;
+            widths[b] = (byte) -Math.max(1, deltaWidth);
+          } else {
+            bases[b] = min;
+            widths[b] = (byte) width;
+          }
+        } else {
+          bases[b] = min;
+          widths[b] = (byte) width;
+        }
+        offsets[b] = (int) words;
+        words += ((long) Math.abs(widths[b]) * length + 63) >> 6;
+        if (words > Integer.MAX_VALUE - 1) {
+          throw new IllegalArgumentException("Too many rows to compress this column");
+        }
+      }
+
+      bits = new long[(int) words + 1];  // extra so reads can look ahead
+      for (int b = 0; b < blockCount; b++) {
+        int start = b << BLOCK_SHIFT;
+        int length = Math.min(BLOCK, rowCount - start);
+        int width = widths[b];
+        long position = (long) offsets[b] << 6;
+        if (width < 0) {
+          for (int i = start + 1; i < start + length; i++) {
+            put(position, -width, values[i] - values[i - 1] - bases[b]);
+            position -= width;
+          }
+        } else if (width > 0) {
+          for (int i = start; i < start + length; i++) {
+            put(position, width, values[i] - bases[b]);
+            position += width;
+          }
+        }
+      }
+    }
+
+
+    /** Number of bits needed for this value, treated as unsigned. */
+    static int bitsNeeded(long range) {
+      return 64 - Long.numberOfLeadingZeros(range);
+    }
+
+
+    private void put(long position, int width, long value) {
+      int word = (int) (position >>> 6);
+      int shift = (int) (position & 63);
+      bits[word] |= value << shift;
+      if (shift + width > 64) {
+        bits[word + 1] |= value >>> (64 - shift);
+      }
+    }
+
+
+    private long get(long position, int width) {
+      int word = (int) (position >>> 6);
+      int shift = (int) (position & 63);
+      long value = bits[word] >>> shift;
+      if (shift + width > 64) {
+        value |= bits[word + 1] << (64 - shift);
+      }
+      return (width == 64) ? value : value & ((1L << width) - 1);
+    }
+
+
+    @Override
+    long getLong(int row) {
+      int b = row >> BLOCK_SHIFT;
+      int width = widths[b];
+      if (width >= 0) {
+        if (width == 0) {
+          return bases[b];
+        }
+        long position = ((long) offsets[b] << 6) + (long) (row & (BLOCK - 1)) * width;
+        return bases[b] + get(position, width);
+      }
+      Decoded d = decoded;
+      if (d == null || d.block != b) {
+        d = decode(b);
+        decoded = d;
+      }
+      return d.values[row & (BLOCK - 1)];
+    }
+
+
+    private Decoded decode(int b) {
+      int start = b << BLOCK_SHIFT;
+      int length = Math.min(BLOCK, rowCount - start);
+      int width = -widths[b];
+      long base = bases[b];
+      long[] values = new long[length];
+      long value = firsts[b];
+      values[0] = value;
+      long position = (long) offsets[b] << 6;
+      for (int i = 1; i < length; i++) {
+        value += base + get(position, width);
+        values[i] = value;
+        position += width;
+      }
+      return new Decoded(b, values);
+    }
+
+
+    @Override
+    long memory() {
+      return 8L * bits.length + 21L * widths.length + 64;
+    }
+  }
+
+
+  /**
+   * Runs of the same value, for columns where that's the usual case,
+   * such as a category that's the same for many rows in a row.
+   */
+  static class Runs extends Column {
+    int[] ends;  // row after the end of each run
+    long[] values;
+    int last;  // run of the last row read, checked first
+
+
+    static Runs encode(int type, long[] values, int rowCount) {
+      int count = (rowCount == 0) ? 0 : 1;
+      for (int i = 1; i < rowCount; i++) {
+        if (values[i] != values[i - 1]) {
+          count++;
+        }
+      }
+      // not worth it unless the runs are long
+      if (count > rowCount / 4) {
+        return null;
+      }
+      Runs runs = new Runs();
+      runs.type = type;
+      runs.rowCount = rowCount;
+      runs.ends = new int[count];
+      runs.values = new long[count];
+      int run = 0;
+      for (int i = 1; i <= rowCount; i++) {
+        if (i == rowCount || values[i] != values[i - 1]) {
+          runs.ends[run] = i;
+          runs.values[run] = values[i - 1];
+          run++;
+        }
+      }
+      return runs;
+    }
+
+
+    @Override
+    long getLong(int row) {
+      int run = last;
+      int start = (run == 0) ? 0 : ends[run - 1];
+      if (row < start || row >= ends[run]) {
+        if (row >= ends[run] && run + 1 < ends.length && row < ends[run + 1]) {
+          run++;  // reading in order
+        } else {
+          run = find(row);
+        }
+        last = run;
+      }
+      return values[run];
+    }
+
+
+    private int find(int row) {
+      int low = 0;
+      int high = ends.length - 1;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (ends[mid] <= row) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+
+    @Override
+    long memory() {
+      return 12L * ends.length + 32;
+    }
+  }
+
+
+  /**
+   * Each different String once, and the position of each row's entry in
+   * that list, compressed as an INT column.
+   */
+  static class Dictionary extends Column {
+    String[] entries;
+    Column indices;
+
+
+    static Dictionary encode(String[] data, int rowCount) {
+      HashMap<String, Integer> lookup = new HashMap<>();
+      long[] indices = new long[rowCount];
+      int nulls = -1;
+      for (int row = 0; row < rowCount; row++) {
+        String str = data[row];
+        Integer index;
+        if (str == null) {
+          if (nulls == -1) {
+            nulls = lookup.size();
+            lookup.put(null, nulls);
+          }
+          index = nulls;
+        } else {
+          index = lookup.get(str);
+          if (index == null) {
+            index = lookup.size();
+            lookup.put(str, index);
+            // only worth it if entries are used over and over
+            if (index > rowCount / 2) {
+              return null;
+            }
+          }
+        }
+        indices[row] = index;
+      }
+      Dictionary outgoing = new Dictionary();
+      outgoing.type = Table.STRING;
+      outgoing.rowCount = rowCount;
+      outgoing.entries = new String[lookup.size()];
+      for (Map.Entry<String, Integer> entry : lookup.entrySet()) {
+        outgoing.entries[entry.getValue()] = entry.getKey();
+      }
+      outgoing.indices = smaller(new Packed(Table.INT, indices, rowCount),
+                                 Runs.encode(Table.INT, indices, rowCount));
+      return outgoing;
+    }
+
+
+    @Override
+    long getLong(int row) {
+      return indices.getLong(row);
+    }
+
+
+    @Override
+    String getString(int row) {
+      return entries[indices.getInt(row)];
+    }
+
+
+    @Override
+    Object load() {
+      String[] outgoing = new String[rowCount];
+      for (int row = 0; row < rowCount; row++) {
+        outgoing[row] = getString(row);
+      }
+      return outgoing;
+    }
+
+
+    @Override
+    long memory() {
+      long total = indices.memory() + 4L * entries.length;
+      for (String entry : entries) {
+        if (entry != null) {
+          total += 40 + entry.length();
+        }
+      }
+      return total;
+    }
+  }
+
+
+  /**
+   * Every entry as UTF-8 in one byte array, for STRING columns where
+   * most entries are different. Table.findRowIndex() and getTally()
+   * compare the bytes, without decoding the column.
+   */
+  static class Utf8 extends Column {
+    StringArena arena;
+
+
+    Utf8(StringArena arena) {
+      this.type = Table.STRING;
+      this.rowCount = arena.count;
+      this.arena = arena;
+    }
+
+
+    @Override
+    long getLong(int row) {
+      throw new RuntimeException("Not a numeric column");
+    }
+
+
+    @Override
+    String getString(int row) {
+      return arena.get(row);
+    }
+
+
+    @Override
+    Object load() {
+      return arena.decode();
+    }
+
+
+    @Override
+    long memory() {
+      return arena.memory();
+    }
+  }
+}
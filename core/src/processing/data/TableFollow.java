@@ -0,0 +1,232 @@
+package processing.data;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+import processing.core.PApplet;
+
+
+/**
+ * Keeps a Table up to date with a CSV or TSV file that's being added to,
+ * for the "follow" option. The byte offset where the last complete record
+ * ended is kept, so refresh() only has to look at what was added since,
+ * and the new rows are parsed straight onto the end of the table.
+ * <p/>
+ * The new bytes are read twice: once to find where the last complete
+ * record ends (a line that's still being written is left for next time)
+ * and how many rows there are, so the table only grows once, then again
+ * to parse them. The second read comes from the file cache. Checking a
+ * file that hasn't changed only asks for its size.
+ * Advanced users only, not official API.
+ */
+class TableFollow {
+  Table table;
+  File file;
+  TableParser parser;
+  Charset charset;
+  char delim;
+  boolean csv;
+
+  boolean header;  // titles haven't been read yet
+  boolean hasHeader;
+  long offset;  // where the next record starts
+  boolean skipLF;  // the last record ended with a CR, so skip the LF of a CR/LF
+  int records;  // complete records found by scan()
+
+
+  TableFollow(Table table, File file, String options) {
+    this.table = table;
+    this.file = file;
+
+    String extension = null;
+    String encoding = "UTF-8";
+    int inferRows = 0;
+    for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+      if (opt.equals("tsv") || opt.equals("csv")) {
+        extension = opt;
+      } else if (opt.equals("header")) {
+        hasHeader = true;
+      } else if (opt.equals("infer")) {
+        inferRows = TableInference.DEFAULT_ROWS;
+      } else if (opt.startsWith("infer=")) {
+        inferRows = PApplet.parseInt(opt.substring(6), 0);
+        if (inferRows <= 0) {
+          throw new IllegalArgumentException("Use infer=N to pick column types from the first N rows");
+        }
+      } else if (opt.startsWith("encoding=")) {
+        encoding = opt.substring(9);
+      } else if (!opt.equals("follow")) {
+        throw new IllegalArgumentException("'" + opt + "' can't be used with the 'follow' option");
+      }
+    }
+    if (extension == null) {
+      throw new IllegalArgumentException("The 'follow' option needs a CSV or TSV file");
+    }
+    charset = Charset.forName(encoding);
+    byte[] newline = "\n,\t\"".getBytes(charset);
+    if (newline.length != 4 || newline[0] != '\n') {
+      // the file is scanned one byte at a time
+      throw new IllegalArgumentException("The 'follow' option can't be used with " + encoding);
+    }
+
+    csv = extension.equals("csv");
+    delim = csv ? ',' : '\t';
+    header = hasHeader;
+    parser = new TableParser(table, !csv);
+    if (inferRows != 0) {
+      parser.infer(inferRows, table.getColumnCount());
+      parser.more = true;
+    }
+  }
+
+
+  /**
+   * Add any complete records that were written since the last time to the
+   * end of the table, returns the number of rows that were added. If the
+   * file got shorter, it's been replaced, so the rows are loaded again.
+   */
+  int refresh() throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < offset) {
+        table.setRowCount(0);
+        offset = 0;
+        skipLF = false;
+        header = hasHeader;
+      }
+      if (size == offset) {
+        return 0;
+      }
+
+      long end = scan(channel, size);
+      int count = header ? records - 1 : records;
+      if (records == 0) {
+        return 0;
+      }
+      int first = table.getRowCount();
+      table.expandRows(first + count);
+      InputStream input = new BufferedInputStream(new ChannelInput(channel, offset, end), 1 << 16);
+      parser.start(new InputStreamReader(input, charset));
+      int added = parser.parseRows(first, count, header);
+      header = false;
+      offset = end;
+
+      for (int row = first; row < first + added; row++) {
+        table.indexAdd(row);
+      }
+      return added;
+    }
+  }
+
+
+  /**
+   * Find the end of the last complete record after 'offset', following the
+   * same rules as TableParser for quotes and line endings, and count the
+   * records in between.
+   */
+  protected long scan(FileChannel channel, long size) throws IOException {
+    records = 0;
+    long end = offset;
+    boolean quoted = false;
+    boolean quote = false;  // a quote inside a quoted field, not sure yet if it closes it
+    boolean fieldStart = true;
+    boolean cr = skipLF;
+
+    ByteBuffer bytes = ByteBuffer.allocate(1 << 16);
+    byte[] b = bytes.array();
+    long position = offset;
+    while (position < size) {
+      bytes.clear();
+      int length = channel.read(bytes, position);
+      if (length <= 0) {
+        break;
+      }
+      for (int i = 0; i < length; i++) {
+        byte c = b[i];
+        if (cr) {
+          cr = false;
+          skipLF = false;
+          if (c == '\n') {
+            if (position + i == offset) {
+              offset++;  // rest of a CR/LF from last time
+              end = offset;
+            } else {
+              end = position + i + 1;
+            }
+            continue;
+          }
+        }
+        if (quote) {
+          quote = false;
+          if (c == '\"') {
+            continue;  // escaped quote
+          }
+          if (c == delim || c == '\n' || c == '\r') {
+            quoted = false;  // that was the closing quote
+          }
+        }
+        if (quoted) {
+          if (c == '\"') {
+            quote = true;
+          }
+        } else if (c == '\n' || c == '\r') {
+          records++;
+          end = position + i + 1;
+          fieldStart = true;
+          cr = (c == '\r');
+          skipLF = cr;
+        } else if (c == delim) {
+          fieldStart = true;
+        } else {
+          if (fieldStart && csv && c == '\"') {
+            quoted = true;
+          }
+          fieldStart = false;
+        }
+      }
+      position += length;
+    }
+    return end;
+  }
+
+
+  /** Reads the bytes of a FileChannel from 'start' up to 'stop'. */
+  static class ChannelInput extends InputStream {
+    FileChannel channel;
+    long position;
+    long stop;
+
+    ChannelInput(FileChannel channel, long start, long stop) {
+      this.channel = channel;
+      this.position = start;
+      this.stop = stop;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (position >= stop) {
+        return -1;
+      }
+      int count = (int) Math.min(len, stop - position);
+      int read = channel.read(ByteBuffer.wrap(b, off, count), position);
+      if (read == -1) {
+        return -1;
+      }
+      position += read;
+      return read;
+    }
+  }
+}
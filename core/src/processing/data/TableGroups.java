@@ -0,0 +1,667 @@
+package processing.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+
+
+/**
+ * Rows of a Table grouped by the values in one or more columns, created
+ * by Table.groupBy(). Use agg() to get a new Table with one row for each
+ * group, in the order each group was first seen, made up of the key
+ * columns followed by the aggregates:
+ * <pre>
+ * Table hourly = readings.groupBy("sensor", "hour")
+ *   .agg("count", "mean(temp)", "max(temp)", "percentile(temp, 95)");
+ * </pre>
+ * Available aggregates are count, count(column), sum, mean, min, max,
+ * median, and percentile(column, p). Missing float and double values
+ * (NaN) are left out of everything but count.
+ * <p/>
+ * Works directly on the column arrays (and category indices) so nothing
+ * is boxed along the way, and for large tables the work is split across
+ * all available cores.
+ *
+ * @see Table#groupBy(String...)
+ */
+public class TableGroups {
+  Table table;
+  int[] keyColumns;
+
+  int groupCount;
+  int[] groups;      // group for each row
+  int[] groupSize;   // rows in each group
+  int[] firstRow;    // first row of each group, for the keys
+
+  // rows ordered by group, only created for percentiles
+  int[] groupStart;
+  int[] groupedRows;
+
+  // number of rows before the work is split across threads
+  int parallelRows = 1 << 17;
+  int threadCount = Runtime.getRuntime().availableProcessors();
+
+
+  TableGroups(Table table, int[] keyColumns) {
+    this.table = table;
+    this.keyColumns = keyColumns;
+  }
+
+
+  protected boolean parallel() {
+    return threadCount > 1 && table.getRowCount() >= parallelRows;
+  }
+
+
+  /**
+   * Assign each row to a group. Each key column is first given dense
+   * codes of its own (in parallel, for large tables), then the codes are
+   * combined one column at a time.
+   */
+  protected void group() {
+    final int rowCount = table.getRowCount();
+    final int[][] codes = new int[keyColumns.length][];
+    final int[] cardinality = new int[keyColumns.length];
+    IntStream range = IntStream.range(0, keyColumns.length);
+    (parallel() ? range.parallel() : range).forEach(i -> {
+      codes[i] = new int[rowCount];
+      cardinality[i] = encode(keyColumns[i], codes[i]);
+    });
+
+    groups = codes[0];
+    groupCount = cardinality[0];
+    for (int i = 1; i < keyColumns.length; i++) {
+      int[] next = codes[i];
+      long width = cardinality[i];
+      LongIndex combined = new LongIndex();
+      for (int row = 0; row < rowCount; row++) {
+        groups[row] = combined.index(groups[row] * width + next[row]);
+      }
+      groupCount = combined.size();
+    }
+
+    groupSize = new int[groupCount];
+    firstRow = new int[groupCount];
+    for (int row = rowCount - 1; row >= 0; --row) {
+      int g = groups[row];
+      groupSize[g]++;
+      firstRow[g] = row;
+    }
+  }
+
+
+  /**
+   * Number the distinct values of a column from zero, in order of
+   * appearance, and return how many there were.
+   */
+  protected int encode(int column, int[] codes) {
+    int rowCount = codes.length;
+    Object data = table.column(column);
+    switch (table.getColumnType(column)) {
+      case Table.STRING: {
+        String[] values = (String[]) data;
+        HashMap<String, Integer> seen = new HashMap<>();
+        for (int row = 0; row < rowCount; row++) {
+          Integer code = seen.get(values[row]);
+          if (code == null) {
+            code = seen.size();
+            seen.put(values[row], code);
+          }
+          codes[row] = code;
+        }
+        return seen.size();
+      }
+      default: {
+        LongIndex seen = new LongIndex();
+        for (int row = 0; row < rowCount; row++) {
+          codes[row] = seen.index(bits(data, table.getColumnType(column), row));
+        }
+        return seen.size();
+      }
+    }
+  }
+
+
+  static protected long bits(Object data, int type, int row) {
+    switch (type) {
+      case Table.INT:
+      case Table.CATEGORY:
+        return ((int[]) data)[row];
+      case Table.LONG:
+        return ((long[]) data)[row];
+      case Table.FLOAT:
+        return Float.floatToIntBits(((float[]) data)[row]);
+      default:
+        return Double.doubleToLongBits(((double[]) data)[row]);
+    }
+  }
+
+
+  /**
+   * Returns the number of groups.
+   */
+  public int getGroupCount() {
+    return groupCount;
+  }
+
+
+  /**
+   * Returns the group for each row of the original table, numbered in the
+   * same order as the rows of the Table returned by agg().
+   */
+  public int[] getGroups() {
+    return groups.clone();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static final int COUNT = 0;
+  static final int SUM = 1;
+  static final int MEAN = 2;
+  static final int MIN = 3;
+  static final int MAX = 4;
+  static final int PERCENTILE = 5;
+
+  static final String[] OPERATIONS = {
+    "count", "sum", "mean", "min", "max", "percentile"
+  };
+
+
+  /**
+   * Calculate one or more aggregates for each group. Each is a String
+   * like "sum(price)" or "percentile(latency, 99)", and is also used as
+   * the title of its column in the result.
+   *
+   * @param aggregates count, count(column), sum(column), mean(column),
+   * min(column), max(column), median(column), percentile(column, p)
+   * @return a new Table with the key columns followed by the aggregates
+   */
+  public Table agg(String... aggregates) {
+    Table outgoing = new Table();
+    outgoing.setRowCount(groupCount);
+
+    for (int column : keyColumns) {
+      addKeyColumn(outgoing, column);
+    }
+    for (String aggregate : aggregates) {
+      aggregate = aggregate.trim();
+      int op;
+      int column = -1;
+      double percentile = 0;
+
+      int open = aggregate.indexOf('(');
+      String name = (open == -1) ? aggregate : aggregate.substring(0, open).trim();
+      String args = null;
+      if (open != -1) {
+        int close = aggregate.lastIndexOf(')');
+        if (close < open) {
+          throw new IllegalArgumentException("Missing ) in " + aggregate);
+        }
+        args = aggregate.substring(open + 1, close).trim();
+      }
+
+      if (name.equals("median")) {
+        op = PERCENTILE;
+        percentile = 50;
+      } else {
+        op = -1;
+        for (int i = 0; i < OPERATIONS.length; i++) {
+          if (OPERATIONS[i].equals(name)) {
+            op = i;
+          }
+        }
+        if (op == -1) {
+          throw new IllegalArgumentException("'" + name + "' is not a known aggregate");
+        }
+        if (op == PERCENTILE) {
+          int comma = (args == null) ? -1 : args.lastIndexOf(',');
+          if (comma == -1) {
+            throw new IllegalArgumentException("Use percentile(column, p) for a percentile");
+          }
+          percentile = Double.parseDouble(args.substring(comma + 1).trim());
+          if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+          }
+          args = args.substring(0, comma).trim();
+        }
+      }
+      if (args != null && args.length() != 0) {
+        column = findColumn(args);
+      } else if (op != COUNT) {
+        throw new IllegalArgumentException(name + "() needs a column");
+      }
+
+      if (op == COUNT) {
+        outgoing.addColumn(aggregate, Table.INT);
+        int[] counts = (int[]) outgoing.column(outgoing.getColumnCount() - 1);
+        if (column == -1) {
+          System.arraycopy(groupSize, 0, counts, 0, groupCount);
+        } else {
+          long[] present = reduce(column, COUNT).count;
+          for (int g = 0; g < groupCount; g++) {
+            counts[g] = (int) present[g];
+          }
+        }
+      } else {
+        checkNumeric(column);
+        if (op == PERCENTILE) {
+          addDoubles(outgoing, aggregate, percentiles(column, percentile));
+        } else {
+          addReduced(outgoing, aggregate, column, op, reduce(column, op));
+        }
+      }
+    }
+    return outgoing;
+  }
+
+
+  protected int findColumn(String name) {
+    int column = table.getColumnIndex(name, false);
+    if (column == -1) {
+      try {
+        column = Integer.parseInt(name);
+        table.checkColumn(column);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("This table has no column named '" + name + "'");
+      }
+    }
+    return column;
+  }
+
+
+  protected void checkNumeric(int column) {
+    int type = table.getColumnType(column);
+    if (type == Table.STRING || type == Table.CATEGORY) {
+      throw new IllegalArgumentException("Column " + column + " is not numeric");
+    }
+  }
+
+
+  protected void addKeyColumn(Table outgoing, int column) {
+    int type = table.getColumnType(column);
+    outgoing.addColumn(table.getColumnTitle(column), type);
+    int target = outgoing.getColumnCount() - 1;
+    Object source = table.column(column);
+    Object keys = outgoing.column(target);
+    for (int g = 0; g < groupCount; g++) {
+      System.arraycopy(source, firstRow[g], keys, g, 1);
+    }
+    if (type == Table.CATEGORY) {
+      // same categories, so that the indices stay the same
+      outgoing.columnCategories[target] = table.columnCategories[column].copy();
+      outgoing.missingCategory = table.missingCategory;
+      outgoing.missingString = table.missingString;
+    }
+  }
+
+
+  protected void addDoubles(Table outgoing, String title, double[] values) {
+    outgoing.addColumn(title, Table.DOUBLE);
+    outgoing.columns[outgoing.getColumnCount() - 1] = values;
+  }
+
+
+  protected void addReduced(Table outgoing, String title,
+                            int column, int op, Partial p) {
+    int type = table.getColumnType(column);
+    boolean integer = (type == Table.INT || type == Table.LONG);
+    if (op == MEAN) {
+      double[] means = new double[groupCount];
+      for (int g = 0; g < groupCount; g++) {
+        double total = integer ? p.longs[g] : p.doubles[g];
+        means[g] = (p.count[g] == 0) ? Double.NaN : total / p.count[g];
+      }
+      addDoubles(outgoing, title, means);
+
+    } else if (op == SUM) {
+      if (integer) {
+        outgoing.addColumn(title, Table.LONG);
+        outgoing.columns[outgoing.getColumnCount() - 1] = p.longs;
+      } else {
+        addDoubles(outgoing, title, p.doubles);
+      }
+
+    } else {  // MIN or MAX keep the type of the column
+      outgoing.addColumn(title, type);
+      Object target = outgoing.column(outgoing.getColumnCount() - 1);
+      for (int g = 0; g < groupCount; g++) {
+        switch (type) {
+          case Table.INT: ((int[]) target)[g] = (int) p.longs[g]; break;
+          case Table.LONG: ((long[]) target)[g] = p.longs[g]; break;
+          case Table.FLOAT: ((float[]) target)[g] = (float) p.doubles[g]; break;
+          case Table.DOUBLE: ((double[]) target)[g] = p.doubles[g]; break;
+        }
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Running totals for each group, over part (or all) of the rows. */
+  static class Partial {
+    long[] count;      // values that aren't missing
+    long[] longs;      // INT and LONG columns
+    double[] doubles;  // FLOAT and DOUBLE columns
+
+    Partial(int groupCount, boolean integer) {
+      count = new long[groupCount];
+      if (integer) {
+        longs = new long[groupCount];
+      } else {
+        doubles = new double[groupCount];
+      }
+    }
+  }
+
+
+  protected Partial reduce(int column, int op) {
+    int rowCount = table.getRowCount();
+    if (!parallel()) {
+      return reduce(column, op, 0, rowCount);
+    }
+    List<Partial> parts = new ArrayList<>();
+    IntStream.range(0, threadCount).parallel().mapToObj(i -> {
+      long start = (long) rowCount * i / threadCount;
+      long stop = (long) rowCount * (i + 1) / threadCount;
+      return reduce(column, op, (int) start, (int) stop);
+    }).forEachOrdered(parts::add);
+
+    Partial outgoing = parts.get(0);
+    for (int i = 1; i < parts.size(); i++) {
+      Partial p = parts.get(i);
+      for (int g = 0; g < groupCount; g++) {
+        if (p.count[g] != 0) {
+          if (outgoing.count[g] == 0) {
+            if (outgoing.longs != null) outgoing.longs[g] = p.longs[g];
+            if (outgoing.doubles != null) outgoing.doubles[g] = p.doubles[g];
+          } else if (outgoing.longs != null) {
+            long a = outgoing.longs[g];
+            long b = p.longs[g];
+            outgoing.longs[g] = (op == MIN) ? Math.min(a, b) : (op == MAX) ? Math.max(a, b) : a + b;
+          } else {
+            double a = outgoing.doubles[g];
+            double b = p.doubles[g];
+            outgoing.doubles[g] = (op == MIN) ? Math.min(a, b) : (op == MAX) ? Math.max(a, b) : a + b;
+          }
+          outgoing.count[g] += p.count[g];
+        }
+      }
+    }
+    return outgoing;
+  }
+
+
+  protected Partial reduce(int column, int op, int start, int stop) {
+    int type = table.getColumnType(column);
+    Object data = table.column(column);
+    Partial p = new Partial(groupCount, type == Table.INT || type == Table.LONG);
+
+    switch (type) {
+      case Table.INT:
+      case Table.LONG: {
+        int[] ints = (type == Table.INT) ? (int[]) data : null;
+        long[] longs = (type == Table.LONG) ? (long[]) data : null;
+        for (int row = start; row < stop; row++) {
+          int g = groups[row];
+          long value = (ints != null) ? ints[row] : longs[row];
+          if (p.count[g]++ == 0) {
+            p.longs[g] = value;
+          } else if (op == MIN) {
+            if (value < p.longs[g]) p.longs[g] = value;
+          } else if (op == MAX) {
+            if (value > p.longs[g]) p.longs[g] = value;
+          } else {
+            p.longs[g] += value;
+          }
+        }
+        break;
+      }
+      case Table.FLOAT:
+      case Table.DOUBLE: {
+        float[] floats = (type == Table.FLOAT) ? (float[]) data : null;
+        double[] doubles = (type == Table.DOUBLE) ? (double[]) data : null;
+        for (int row = start; row < stop; row++) {
+          int g = groups[row];
+          double value = (floats != null) ? floats[row] : doubles[row];
+          if (value != value) {  // NaN is missing
+            continue;
+          }
+          if (p.count[g]++ == 0) {
+            p.doubles[g] = value;
+          } else if (op == MIN) {
+            if (value < p.doubles[g]) p.doubles[g] = value;
+          } else if (op == MAX) {
+            if (value > p.doubles[g]) p.doubles[g] = value;
+          } else {
+            p.doubles[g] += value;
+          }
+        }
+        // groups with nothing but missing values
+        if (op != COUNT) {
+          for (int g = 0; g < groupCount; g++) {
+            if (p.count[g] == 0) {
+              p.doubles[g] = (op == SUM) ? 0 : Double.NaN;
+            }
+          }
+        }
+        break;
+      }
+      case Table.STRING: {
+        String[] strings = (String[]) data;
+        for (int row = start; row < stop; row++) {
+          if (strings[row] != null) p.count[groups[row]]++;
+        }
+        break;
+      }
+      case Table.CATEGORY: {
+        int[] indices = (int[]) data;
+        for (int row = start; row < stop; row++) {
+          if (indices[row] != table.missingCategory) p.count[groups[row]]++;
+        }
+        break;
+      }
+    }
+    return p;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Sort the rows by group (a counting sort, so they stay in order). */
+  protected void orderRows() {
+    if (groupedRows == null) {
+      groupStart = new int[groupCount + 1];
+      for (int g = 0; g < groupCount; g++) {
+        groupStart[g + 1] = groupStart[g] + groupSize[g];
+      }
+      int[] next = groupStart.clone();
+      groupedRows = new int[groups.length];
+      for (int row = 0; row < groups.length; row++) {
+        groupedRows[next[groups[row]]++] = row;
+      }
+    }
+  }
+
+
+  /**
+   * Percentile of each group, interpolating between the closest values
+   * (the same as the default for numpy and most spreadsheets). Each group
+   * is handled with a quickselect, so nothing is fully sorted.
+   */
+  protected double[] percentiles(int column, final double percentile) {
+    orderRows();
+    final double[] values = new double[groupedRows.length];
+    final double[] outgoing = new double[groupCount];
+    final int type = table.getColumnType(column);
+    final Object data = table.column(column);
+
+    IntStream range = IntStream.range(0, groupCount);
+    (parallel() ? range.parallel() : range).forEach(g -> {
+      int start = groupStart[g];
+      int stop = start;
+      for (int i = groupStart[g]; i < groupStart[g + 1]; i++) {
+        double value = value(data, type, groupedRows[i]);
+        if (value == value) {  // leave out NaN
+          values[stop++] = value;
+        }
+      }
+      outgoing[g] = percentile(values, start, stop, percentile);
+    });
+    return outgoing;
+  }
+
+
+  static protected double value(Object data, int type, int row) {
+    switch (type) {
+      case Table.INT: return ((int[]) data)[row];
+      case Table.LONG: return ((long[]) data)[row];
+      case Table.FLOAT: return ((float[]) data)[row];
+      default: return ((double[]) data)[row];
+    }
+  }
+
+
+  /**
+   * Percentile (0 to 100) of values[start, stop), which get reordered.
+   * Returns NaN if there are no values.
+   */
+  static double percentile(double[] values, int start, int stop, double percentile) {
+    int count = stop - start;
+    if (count == 0) {
+      return Double.NaN;
+    }
+    double rank = (count - 1) * percentile / 100;
+    int lower = (int) rank;
+    double below = select(values, start, stop - 1, start + lower);
+    if (lower == count - 1) {
+      return below;
+    }
+    // after the select, everything to the right is at least as large
+    double above = values[start + lower + 1];
+    for (int i = start + lower + 2; i < stop; i++) {
+      if (values[i] < above) above = values[i];
+    }
+    return below + (above - below) * (rank - lower);
+  }
+
+
+  /**
+   * Quickselect: reorder values[left, right] so that the entry at k is
+   * where it would be if sorted, and return it.
+   */
+  static double select(double[] values, int left, int right, int k) {
+    while (right > left) {
+      // median of three for the pivot
+      int mid = (left + right) >>> 1;
+      if (values[mid] < values[left]) swap(values, mid, left);
+      if (values[right] < values[left]) swap(values, right, left);
+      if (values[right] < values[mid]) swap(values, right, mid);
+      double pivot = values[mid];
+
+      int i = left;
+      int j = right;
+      while (i <= j) {
+        while (values[i] < pivot) i++;
+        while (values[j] > pivot) j--;
+        if (i <= j) {
+          swap(values, i++, j--);
+        }
+      }
+      if (k <= j) {
+        right = j;
+      } else if (k >= i) {
+        left = i;
+      } else {
+        return values[k];
+      }
+    }
+    return values[k];
+  }
+
+
+  static private void swap(double[] values, int a, int b) {
+    double temp = values[a];
+    values[a] = values[b];
+    values[b] = temp;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Open addressing map of long keys to int indices, numbered in the
+   * order they were first seen. Used to combine the group codes without
+   * boxing every key.
+   */
+  static class LongIndex {
+    long[] keys = new long[16];
+    int[] slots = new int[16];  // index + 1, or 0 when empty
+    int count;
+
+    int index(long key) {
+      int mask = slots.length - 1;
+      int slot = hash(key) & mask;
+      int entry;
+      while ((entry = slots[slot]) != 0) {
+        if (keys[slot] == key) {
+          return entry - 1;
+        }
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = key;
+      slots[slot] = ++count;
+      if (count * 2 > slots.length) {
+        grow();
+      }
+      return count - 1;
+    }
+
+    /** Index of a key that's already been added, or -1 if it hasn't. */
+    int find(long key) {
+      int mask = slots.length - 1;
+      int slot = hash(key) & mask;
+      int entry;
+      while ((entry = slots[slot]) != 0) {
+        if (keys[slot] == key) {
+          return entry - 1;
+        }
+        slot = (slot + 1) & mask;
+      }
+      return -1;
+    }
+
+    int size() {
+      return count;
+    }
+
+    private void grow() {
+      long[] oldKeys = keys;
+      int[] oldSlots = slots;
+      keys = new long[oldKeys.length << 1];
+      slots = new int[oldSlots.length << 1];
+      int mask = slots.length - 1;
+      for (int i = 0; i < oldSlots.length; i++) {
+        if (oldSlots[i] != 0) {
+          int slot = hash(oldKeys[i]) & mask;
+          while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+          }
+          keys[slot] = oldKeys[i];
+          slots[slot] = oldSlots[i];
+        }
+      }
+    }
+
+    static private int hash(long key) {
+      key *= 0x9E3779B97F4A7C15L;
+      return (int) (key ^ (key >>> 32));
+    }
+  }
+}
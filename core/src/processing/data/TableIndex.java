@@ -0,0 +1,489 @@
+package processing.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import processing.core.PApplet;
+
+
+/**
+ * Index of the entries in one column of a Table, created with index() or
+ * sortedIndex() so that findRowIndex(), findRowIndices(), matchRowIndex(),
+ * getRowMap() and friends don't have to check every row on every call.
+ * <p/>
+ * A hash index maps each value to the (ascending) list of rows that have
+ * it. A sorted index keeps every row ordered by its value, which uses far
+ * less memory when most values are unique, and can also find the rows in
+ * a range of numbers. Either way, the Table tells the index about each
+ * entry before and after it changes, and about rows that are added or
+ * removed. Anything that rewrites the whole column (sorting the table,
+ * changing the column type, trim(), replace(), etc) marks the index as
+ * stale, and it's rebuilt the next time it's needed.
+ * Advanced users only, not official API.
+ */
+class TableIndex {
+  Table table;
+  int column;
+  boolean sorted;
+
+  boolean stale = true;
+
+  // for hash indexes; keys are category indices for CATEGORY columns,
+  // and the result of getString() for everything else
+  HashMap<Object, IntList> rowsByValue;
+
+  // for sorted indexes, all rows in order of their values, then by row
+  int[] order;
+  int count;
+
+
+  TableIndex(Table table, int column, boolean sorted) {
+    this.table = table;
+    this.column = column;
+    this.sorted = sorted;
+  }
+
+
+  void invalidate() {
+    stale = true;
+    rowsByValue = null;
+    order = null;
+  }
+
+
+  protected void build() {
+    int rowCount = table.getRowCount();
+    if (sorted) {
+      order = IntList.fromRange(rowCount).values();
+      count = rowCount;
+      new Sort() {
+        @Override
+        public int size() {
+          return count;
+        }
+
+        @Override
+        public int compare(int a, int b) {
+          return compareRows(order[a], order[b]);
+        }
+
+        @Override
+        public void swap(int a, int b) {
+          int temp = order[a];
+          order[a] = order[b];
+          order[b] = temp;
+        }
+      }.run();
+
+    } else {
+      rowsByValue = new HashMap<>();
+      for (int row = 0; row < rowCount; row++) {
+        rowList(key(row)).append(row);
+      }
+    }
+    stale = false;
+  }
+
+
+  protected void check() {
+    if (stale) {
+      build();
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Add a row after its entry has been set, or after it's been added. */
+  void add(int row) {
+    if (!stale) {
+      if (sorted) {
+        if (count == order.length) {
+          order = PApplet.expand(order, Math.max(16, count << 1));
+        }
+        int pos = position(row);
+        System.arraycopy(order, pos, order, pos + 1, count - pos);
+        order[pos] = row;
+        count++;
+
+      } else {
+        IntList rows = rowList(key(row));
+        rows.append(row);
+        // almost always added at the end, otherwise move it into place
+        for (int i = rows.size() - 1; i > 0 && rows.get(i - 1) > row; --i) {
+          rows.set(i, rows.get(i - 1));
+          rows.set(i - 1, row);
+        }
+      }
+    }
+  }
+
+
+  /** Remove a row before its entry changes, or before it's removed. */
+  void remove(int row) {
+    if (!stale) {
+      if (sorted) {
+        int pos = position(row);
+        if (pos < count && order[pos] == row) {
+          System.arraycopy(order, pos + 1, order, pos, count - pos - 1);
+          count--;
+        }
+
+      } else {
+        Object key = key(row);
+        IntList rows = rowsByValue.get(key);
+        if (rows != null) {
+          int pos = search(rows, row);
+          if (pos >= 0) {
+            rows.remove(pos);
+            if (rows.size() == 0) {
+              rowsByValue.remove(key);
+            }
+          }
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Move the row numbers at or after 'first' by 'amount', after rows have
+   * been inserted or removed. Doesn't change the order of anything.
+   */
+  void shift(int first, int amount) {
+    if (!stale) {
+      if (sorted) {
+        for (int i = 0; i < count; i++) {
+          if (order[i] >= first) {
+            order[i] += amount;
+          }
+        }
+      } else {
+        for (IntList rows : rowsByValue.values()) {
+          for (int i = rows.size() - 1; i >= 0 && rows.get(i) >= first; --i) {
+            rows.add(i, amount);
+          }
+        }
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Rows whose entry matches the String, in ascending order.
+   * Returns null if the index can't be used to answer this.
+   */
+  int[] find(String value) {
+    check();
+    int type = table.getColumnType(column);
+
+    if (type == Table.CATEGORY) {
+      IntList outgoing = new IntList();
+      Integer category = table.columnCategories[column].dataToIndex.get(value);
+      if (category != null) {
+        addRows(outgoing, category);
+      }
+      if (value == null ? table.missingString == null : value.equals(table.missingString)) {
+        addRows(outgoing, table.missingCategory);
+      }
+      outgoing.sort();
+      return outgoing.values();
+
+    } else if (!sorted) {
+      IntList rows = rowsByValue.get(value);
+      return (rows == null) ? new int[0] : rows.toArray();
+
+    } else if (type == Table.STRING) {
+      int start = lowerBound(value);
+      int stop = start;
+      while (stop < count && equal(value, table.getString(order[stop], column))) {
+        stop++;
+      }
+      return sortedRows(start, stop);
+
+    } else {
+      // Numbers are found by value, then checked against the original
+      // String, since getString() might not give the same text ("1.50")
+      if (value == null) {
+        return null;
+      }
+      double number;
+      try {
+        number = (type == Table.FLOAT) ?
+          Float.parseFloat(value) : Double.parseDouble(value);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      if (Double.isNaN(number)) {
+        return null;
+      }
+      IntList outgoing = new IntList();
+      for (int i = lowerBound(number); i < count; i++) {
+        int row = order[i];
+        if (number(row) != number) {
+          break;
+        }
+        if (value.equals(table.getString(row, column))) {
+          outgoing.append(row);
+        }
+      }
+      outgoing.sort();
+      return outgoing.values();
+    }
+  }
+
+
+  /** First row whose entry matches the String, -1 if none, -2 if unknown. */
+  int findFirst(String value) {
+    if (!sorted && table.getColumnType(column) != Table.CATEGORY) {
+      check();
+      IntList rows = rowsByValue.get(value);
+      return (rows == null) ? -1 : rows.get(0);
+    }
+    int[] rows = find(value);
+    if (rows == null) {
+      return -2;
+    }
+    return (rows.length == 0) ? -1 : rows[0];
+  }
+
+
+  /**
+   * Rows with numbers from low to high (inclusive), in ascending order.
+   * Returns null for hash indexes, or if the column isn't numeric.
+   */
+  int[] findRange(double low, double high) {
+    int type = table.getColumnType(column);
+    if (!sorted || type == Table.STRING || type == Table.CATEGORY) {
+      return null;
+    }
+    check();
+    int start = lowerBound(low);
+    int stop = start;
+    while (stop < count && number(order[stop]) <= high) {
+      stop++;
+    }
+    return sortedRows(start, stop);
+  }
+
+
+  /**
+   * Rows whose entry matches the regular expression, in ascending order.
+   * The expression is only checked once for each distinct entry.
+   */
+  int[] match(String regexp) {
+    check();
+    IntList outgoing = new IntList();
+    if (sorted) {
+      int i = 0;
+      while (i < count) {
+        int stop = i + 1;
+        while (stop < count && compareValues(order[i], order[stop]) == 0) {
+          stop++;
+        }
+        String str = table.getString(order[i], column);
+        if (str != null && PApplet.match(str, regexp) != null) {
+          for (int j = i; j < stop; j++) {
+            outgoing.append(order[j]);
+          }
+        }
+        i = stop;
+      }
+    } else {
+      for (IntList rows : rowsByValue.values()) {
+        String str = table.getString(rows.get(0), column);
+        if (str != null && PApplet.match(str, regexp) != null) {
+          outgoing.append(rows);
+        }
+      }
+    }
+    outgoing.sort();
+    return outgoing.values();
+  }
+
+
+  /** Same as Table.getRowMap(), where the last of any duplicates wins. */
+  Map<String, TableRow> rowMap() {
+    check();
+    Map<String, TableRow> outgoing = new HashMap<>();
+    if (sorted) {
+      for (int i = 0; i < count; i++) {
+        // rows with the same value are in order, so the last is kept
+        int row = order[i];
+        outgoing.put(table.getString(row, column), new Table.RowPointer(table, row));
+      }
+    } else {
+      for (IntList rows : rowsByValue.values()) {
+        int row = rows.get(rows.size() - 1);
+        outgoing.put(table.getString(row, column), new Table.RowPointer(table, row));
+      }
+    }
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  protected Object key(int row) {
+    if (table.getColumnType(column) == Table.CATEGORY) {
+      return table.getInt(row, column);
+    }
+    return table.getString(row, column);
+  }
+
+
+  protected IntList rowList(Object key) {
+    IntList rows = rowsByValue.get(key);
+    if (rows == null) {
+      rows = new IntList(1);
+      rowsByValue.put(key, rows);
+    }
+    return rows;
+  }
+
+
+  protected void addRows(IntList outgoing, int category) {
+    if (sorted) {
+      int start = lowerBound(category);
+      for (int i = start; i < count && table.getInt(order[i], column) == category; i++) {
+        outgoing.append(order[i]);
+      }
+    } else {
+      IntList rows = rowsByValue.get(category);
+      if (rows != null) {
+        outgoing.append(rows);
+      }
+    }
+  }
+
+
+  protected int[] sortedRows(int start, int stop) {
+    int[] outgoing = new int[stop - start];
+    System.arraycopy(order, start, outgoing, 0, outgoing.length);
+    java.util.Arrays.sort(outgoing);
+    return outgoing;
+  }
+
+
+  static protected int search(IntList rows, int row) {
+    int lo = 0;
+    int hi = rows.size() - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int found = rows.get(mid);
+      if (found < row) {
+        lo = mid + 1;
+      } else if (found > row) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+
+  /** Where this row is (or belongs) in the sorted order. */
+  protected int position(int row) {
+    int lo = 0;
+    int hi = count;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (compareRows(order[mid], row) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+
+  /** First position with a String that's not less than this one. */
+  protected int lowerBound(String value) {
+    int lo = 0;
+    int hi = count;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (compareStrings(table.getString(order[mid], column), value) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+
+  /** First position with a number that's not less than this one. */
+  protected int lowerBound(double value) {
+    int lo = 0;
+    int hi = count;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (Double.compare(number(order[mid]), value) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+
+  protected double number(int row) {
+    switch (table.getColumnType(column)) {
+    case Table.INT:
+    case Table.CATEGORY:
+      return table.getInt(row, column);
+    case Table.LONG:
+      return table.getLong(row, column);
+    case Table.FLOAT:
+      return table.getFloat(row, column);
+    default:
+      return table.getDouble(row, column);
+    }
+  }
+
+
+  protected int compareRows(int a, int b) {
+    int diff = compareValues(a, b);
+    return (diff != 0) ? diff : Integer.compare(a, b);
+  }
+
+
+  protected int compareValues(int a, int b) {
+    switch (table.getColumnType(column)) {
+    case Table.INT:
+    case Table.CATEGORY:
+      return Integer.compare(table.getInt(a, column), table.getInt(b, column));
+    case Table.LONG:
+      return Long.compare(table.getLong(a, column), table.getLong(b, column));
+    case Table.FLOAT:
+      return Float.compare(table.getFloat(a, column), table.getFloat(b, column));
+    case Table.DOUBLE:
+      return Double.compare(table.getDouble(a, column), table.getDouble(b, column));
+    default:
+      return compareStrings(table.getString(a, column), table.getString(b, column));
+    }
+  }
+
+
+  /** Compare Strings with nulls first. */
+  static protected int compareStrings(String a, String b) {
+    if (a == null) {
+      return (b == null) ? 0 : -1;
+    }
+    return (b == null) ? 1 : a.compareTo(b);
+  }
+
+
+  static protected boolean equal(String a, String b) {
+    return (a == null) ? b == null : a.equals(b);
+  }
+}
@@ -0,0 +1,286 @@
+package processing.data;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+
+
+/**
+ * Picks the types of columns for the "infer" option of loadTable(). The
+ * first rows are loaded as Strings, then each entry is classified (empty,
+ * small or large integer, decimal, other number, or text), and the column
+ * gets the smallest type that holds everything that was seen. Text columns
+ * with only a few different values become CATEGORY columns, which keep a
+ * single copy of each String.
+ * <p/>
+ * The classes seen so far are kept as bits, so that when a later entry
+ * doesn't fit (a decimal in an INT column, a word in a FLOAT column, too
+ * many different categories), TableParser can widen the column instead of
+ * losing the entry. Numbers with leading zeros (zip codes, IDs) are text,
+ * since they wouldn't come back the same. Other entries that a number
+ * doesn't give back exactly ("1.50", "+5", "1e3") are kept in a Text, in
+ * case the column has to be widened to STRING later.
+ * Advanced users only, not official API.
+ */
+class TableInference {
+  static final int DEFAULT_ROWS = 1000;
+
+  static final int EMPTY = 1;
+  static final int SMALL = 2;     // integers up to 7 digits, exact as floats
+  static final int INTEGER = 4;   // the rest of the ints
+  static final int LONG = 8;
+  static final int DECIMAL = 16;  // up to 7 digits with a decimal point
+  static final int NUMBER = 32;   // everything else that's a number
+  static final int TEXT = 64;
+
+
+  static int classify(String str, String missing) {
+    if (str == null) {
+      return EMPTY;
+    }
+    return classify(str.toCharArray(), str.length(), missing);
+  }
+
+
+  static int classify(char[] c, int length, String missing) {
+    if (length == 0 || (missing != null && TableParser.matches(missing, c, 0, length))) {
+      return EMPTY;
+    }
+    int i = 0;
+    if (c[0] == '-' || c[0] == '+') {
+      i++;
+    }
+    int start = i;
+    int digits = 0;
+    long value = 0;
+    boolean point = false;
+    boolean exponent = false;
+    int exponentDigits = 0;
+    for (; i < length; i++) {
+      char ch = c[i];
+      if (ch >= '0' && ch <= '9') {
+        if (exponent) {
+          exponentDigits++;
+        } else if (++digits <= 18) {
+          value = value * 10 + (ch - '0');
+        }
+      } else if (ch == '.' && !point && !exponent) {
+        point = true;
+      } else if ((ch == 'e' || ch == 'E') && !exponent && digits > 0) {
+        exponent = true;
+        if (i + 1 < length && (c[i+1] == '-' || c[i+1] == '+')) {
+          i++;
+        }
+      } else {
+        return TEXT;
+      }
+    }
+    if (digits == 0 || (exponent && exponentDigits == 0)) {
+      return TEXT;
+    }
+    if (c[start] == '0' && start + 1 < length && c[start+1] >= '0' && c[start+1] <= '9') {
+      return TEXT;  // leading zeros
+    }
+    if (exponent) {
+      return NUMBER;
+    }
+    if (point) {
+      return (digits <= 7) ? DECIMAL : NUMBER;
+    }
+    if (digits <= 7) {
+      return SMALL;
+    }
+    if (digits <= 10) {
+      if (c[0] == '-') {
+        value = -value;
+      }
+      return (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) ? INTEGER : LONG;
+    }
+    if (digits <= 18) {
+      return LONG;
+    }
+    try {
+      Long.parseLong(new String(c, 0, length));
+      return LONG;
+    } catch (NumberFormatException e) {
+      return NUMBER;
+    }
+  }
+
+
+  /**
+   * Smallest type for everything that was seen. STRING if there was text,
+   * or if there was nothing but empty entries.
+   */
+  static int typeFor(int seen) {
+    if ((seen & TEXT) != 0 || (seen & ~EMPTY) == 0) {
+      return Table.STRING;
+    }
+    if ((seen & (EMPTY | DECIMAL | NUMBER)) == 0) {
+      return ((seen & LONG) != 0) ? Table.LONG : Table.INT;
+    }
+    if ((seen & (INTEGER | LONG | NUMBER)) == 0) {
+      return Table.FLOAT;
+    }
+    return Table.DOUBLE;
+  }
+
+
+  /** Whether a text column is worth storing as CATEGORY. */
+  static boolean fewCategories(int count, int rows) {
+    return count * 2 <= rows;
+  }
+
+
+  /**
+   * Set the type of each STRING column from firstColumn on, based on its
+   * first 'rows' entries. Returns what was seen in each column: the class
+   * bits for numbers (and columns with only empty entries so far), TEXT
+   * for CATEGORY columns, and 0 for STRING columns or ones that were left
+   * alone, which don't need to be checked any further. When the rows are
+   * only 'partial', text columns are always CATEGORY, and the caller
+   * decides once it has seen more rows.
+   */
+  static int[] infer(Table table, int firstColumn, int rows, boolean partial) {
+    if (table.rowCount != rows) {
+      // rows past the end would add a null category
+      table.resizeRows(rows);
+    }
+    int[] seen = new int[table.getColumnCount()];
+    for (int col = firstColumn; col < seen.length; col++) {
+      if (table.getColumnType(col) != Table.STRING) {
+        continue;
+      }
+      String[] data = (String[]) table.column(col);
+      int mask = 0;
+      for (int row = 0; row < rows; row++) {
+        mask |= classify(data[row], table.missingString);
+      }
+      if (mask == 0) {
+        mask = EMPTY;  // no rows at all
+      }
+      if ((mask & TEXT) != 0) {
+        HashSet<String> distinct = new HashSet<>();
+        for (int row = 0; row < rows && !partial; row++) {
+          distinct.add(data[row]);
+        }
+        if (partial || fewCategories(distinct.size(), rows)) {
+          table.setColumnType(col, Table.CATEGORY);
+          seen[col] = TEXT;
+        }
+      } else {
+        // only empty entries are left as STRING, and keep being checked
+        int type = typeFor(mask);
+        if (type != Table.STRING) {
+          table.setColumnType(col, type);
+        }
+        seen[col] = mask;
+      }
+    }
+    return seen;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * The original text of entries in inferred number columns that wouldn't
+   * come back the same from the number that was stored, like "1.50", "+5",
+   * "1e3", or an empty entry that became NaN. When a later entry is text
+   * and the column becomes STRING, these go back in, so the column is the
+   * same as if it had been loaded as STRING from the start. Only entries
+   * like that take any room, and columns that never have one take none.
+   */
+  static class Text {
+    String[][] text = new String[0][];  // by column, then row
+
+
+    String get(int col, int row) {
+      if (col < text.length && text[col] != null && row < text[col].length) {
+        return text[col][row];
+      }
+      return null;
+    }
+
+
+    /** Keep the text of an entry, or forget it if null (for reused rows). */
+    void set(int col, int row, String value) {
+      if (col >= text.length) {
+        if (value == null) return;
+        text = Arrays.copyOf(text, col + 1);
+      }
+      String[] column = text[col];
+      if (column == null || row >= column.length) {
+        if (value == null) return;
+        int length = (column == null) ? 0 : column.length;
+        column = (column == null) ?
+          new String[Math.max(row + 1, 16)] :
+          Arrays.copyOf(column, Math.max(row + 1, length << 1));
+        text[col] = column;
+      }
+      column[row] = value;
+    }
+
+
+    /**
+     * After infer(), keep the entries of the sample ('before' has the
+     * String[] of each column) that the new number columns don't give back.
+     */
+    void sample(Table table, Object[] before, int[] seen, int rows) {
+      for (int col = 0; col < seen.length && col < before.length; col++) {
+        if (seen[col] != 0 && seen[col] != TEXT && before[col] instanceof String[] &&
+            table.columnTypes[col] != Table.STRING) {
+          String[] strings = (String[]) before[col];
+          for (int row = 0; row < rows; row++) {
+            if (!Objects.equals(strings[row], table.getString(row, col))) {
+              set(col, row, strings[row]);
+            }
+          }
+        }
+      }
+    }
+
+
+    /**
+     * Change the type of a column, where the first 'rows' entries have been
+     * loaded. STRING gets back the original text of every entry, a wider
+     * number type keeps the entries that it doesn't give back the same.
+     */
+    void setColumnType(Table table, int col, int type, int rows) {
+      String[] original = new String[rows];
+      for (int row = 0; row < rows; row++) {
+        String kept = get(col, row);
+        original[row] = (kept != null) ? kept : table.getString(row, col);
+      }
+      table.setColumnType(col, type);
+      if (type == Table.STRING) {
+        System.arraycopy(original, 0, (String[]) table.columns[col], 0, rows);
+        if (col < text.length) {
+          text[col] = null;  // nothing more to keep
+        }
+      } else {
+        for (int row = 0; row < rows; row++) {
+          boolean same = Objects.equals(original[row], table.getString(row, col));
+          set(col, row, same ? null : original[row]);
+        }
+      }
+    }
+
+
+    /** Copy what was kept for 'count' rows of another, starting at 'row'. */
+    void append(Text other, int count, int row) {
+      for (int col = 0; col < other.text.length; col++) {
+        if (other.text[col] == null && (col >= text.length || text[col] == null)) {
+          continue;
+        }
+        for (int i = 0; i < count; i++) {
+          String value = other.get(col, i);
+          if (value != null || get(col, row + i) != null) {
+            set(col, row + i, value);
+          }
+        }
+      }
+    }
+  }
+}
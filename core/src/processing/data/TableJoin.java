@@ -0,0 +1,412 @@
+package processing.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+
+/**
+ * Hash join of two Tables, used by Table.join(). The rows of the smaller
+ * table are put into a hash table by their key, then the rows of the
+ * larger table are looked up one at a time, so the work is proportional
+ * to the size of both tables instead of their product.
+ * <p/>
+ * Keys are compared as longs when both columns are INT or LONG, as
+ * doubles when both are numeric and at least one of them is FLOAT or
+ * DOUBLE, and as Strings otherwise (when either is STRING or CATEGORY).
+ * CATEGORY columns are only looked up once for each category, not for
+ * every row. Missing keys (null Strings, NaN, or the missing category)
+ * never match anything.
+ * <p/>
+ * The result has every column of the left table followed by every column
+ * of the right table except its key, each with the same type as where it
+ * came from. Rows are in the order of the left table, with matches for the
+ * same left row in the order of the right table.
+ * Advanced users only, not official API.
+ */
+class TableJoin {
+  static final int STRING_KEYS = 0;
+  static final int LONG_KEYS = 1;
+  static final int DOUBLE_KEYS = 2;
+
+  Table left;
+  Table right;
+  int leftKey;
+  int rightKey;
+  boolean outer;  // keep left rows with no match
+  int keyKind;
+
+  HashMap<String, Integer> stringIndex;
+  TableGroups.LongIndex longIndex;
+
+  // rows of the result, as rows of the left and right tables;
+  // rightRows has -1 for left rows that had no match
+  int count;
+  int[] leftRows;
+  int[] rightRows;
+
+
+  TableJoin(Table left, Table right, int leftKey, int rightKey, boolean outer) {
+    this.left = left;
+    this.right = right;
+    this.leftKey = leftKey;
+    this.rightKey = rightKey;
+    this.outer = outer;
+
+    int leftType = left.getColumnType(leftKey);
+    int rightType = right.getColumnType(rightKey);
+    if (!numeric(leftType) || !numeric(rightType)) {
+      keyKind = STRING_KEYS;
+    } else if (integer(leftType) && integer(rightType)) {
+      keyKind = LONG_KEYS;
+    } else {
+      keyKind = DOUBLE_KEYS;
+    }
+  }
+
+
+  static private boolean numeric(int type) {
+    return type != Table.STRING && type != Table.CATEGORY;
+  }
+
+
+  static private boolean integer(int type) {
+    return type == Table.INT || type == Table.LONG;
+  }
+
+
+  Table join() {
+    stringIndex = new HashMap<>();
+    longIndex = new TableGroups.LongIndex();
+    if (right.getRowCount() <= left.getRowCount()) {
+      matchRight();
+    } else {
+      matchLeft();
+    }
+    return build();
+  }
+
+
+  /** Hash the right table, then go through the left in order. */
+  protected void matchRight() {
+    int rightCount = right.getRowCount();
+    int[] rightCodes = codes(right, rightKey, true);
+    int[] first = new int[keyCount()];
+    int[] next = new int[rightCount];
+    chain(rightCodes, first, next);
+
+    int leftCount = left.getRowCount();
+    int[] leftCodes = codes(left, leftKey, false);
+    leftRows = new int[Math.max(16, leftCount)];
+    rightRows = new int[leftRows.length];
+    for (int row = 0; row < leftCount; row++) {
+      int code = leftCodes[row];
+      int match = (code == -1) ? -1 : first[code];
+      if (match == -1) {
+        if (outer) {
+          add(row, -1);
+        }
+      } else {
+        do {
+          add(row, match);
+          match = next[match];
+        } while (match != -1);
+      }
+    }
+  }
+
+
+  /**
+   * Hash the left table, go through the right, then put the pairs back
+   * in order of the left rows with a counting sort.
+   */
+  protected void matchLeft() {
+    int leftCount = left.getRowCount();
+    int[] leftCodes = codes(left, leftKey, true);
+    int[] first = new int[keyCount()];
+    int[] next = new int[leftCount];
+    chain(leftCodes, first, next);
+
+    int rightCount = right.getRowCount();
+    int[] rightCodes = codes(right, rightKey, false);
+    int[] matches = new int[leftCount];
+    leftRows = new int[Math.max(16, rightCount)];
+    rightRows = new int[leftRows.length];
+    for (int row = 0; row < rightCount; row++) {
+      int code = rightCodes[row];
+      if (code != -1) {
+        for (int match = first[code]; match != -1; match = next[match]) {
+          add(match, row);
+          matches[match]++;
+        }
+      }
+    }
+
+    int total = 0;
+    int[] start = new int[leftCount];
+    for (int row = 0; row < leftCount; row++) {
+      start[row] = total;
+      total += (matches[row] == 0 && outer) ? 1 : matches[row];
+    }
+    int[] sortedLeft = new int[total];
+    int[] sortedRight = new int[total];
+    if (outer) {
+      for (int row = 0; row < leftCount; row++) {
+        if (matches[row] == 0) {
+          sortedLeft[start[row]] = row;
+          sortedRight[start[row]] = -1;
+        }
+      }
+    }
+    // right rows were added in order, so they stay in order
+    for (int i = 0; i < count; i++) {
+      int p = start[leftRows[i]]++;
+      sortedLeft[p] = leftRows[i];
+      sortedRight[p] = rightRows[i];
+    }
+    leftRows = sortedLeft;
+    rightRows = sortedRight;
+    count = total;
+  }
+
+
+  protected void add(int leftRow, int rightRow) {
+    if (count == leftRows.length) {
+      leftRows = Arrays.copyOf(leftRows, count << 1);
+      rightRows = Arrays.copyOf(rightRows, count << 1);
+    }
+    leftRows[count] = leftRow;
+    rightRows[count] = rightRow;
+    count++;
+  }
+
+
+  protected int keyCount() {
+    return (keyKind == STRING_KEYS) ? stringIndex.size() : longIndex.size();
+  }
+
+
+  /** Link the rows with each key, in ascending order. */
+  static protected void chain(int[] codes, int[] first, int[] next) {
+    Arrays.fill(first, -1);
+    for (int row = codes.length - 1; row >= 0; --row) {
+      int code = codes[row];
+      if (code != -1) {
+        next[row] = first[code];
+        first[code] = row;
+      }
+    }
+  }
+
+
+  /**
+   * The hash table entry for each row's key, or -1 for missing keys and
+   * for keys that aren't in the hash table. When 'add' is set, keys that
+   * aren't there yet are added.
+   */
+  protected int[] codes(Table table, int column, boolean add) {
+    int rowCount = table.getRowCount();
+    int[] codes = new int[rowCount];
+    Object data = table.column(column);
+    int type = table.getColumnType(column);
+
+    if (keyKind == STRING_KEYS) {
+      if (type == Table.CATEGORY) {
+        Table.HashMapBlows categories = table.columnCategories[column];
+        int[] found = new int[categories.size()];
+        for (int i = 0; i < found.length; i++) {
+          found[i] = categories.hasCategory(i) ? code(categories.key(i), add) : -1;
+        }
+        int[] indices = (int[]) data;
+        for (int row = 0; row < rowCount; row++) {
+          int index = indices[row];
+          codes[row] = (index >= 0 && index < found.length &&
+                       index != table.missingCategory) ? found[index] : -1;
+        }
+      } else if (type == Table.STRING) {
+        String[] strings = (String[]) data;
+        for (int row = 0; row < rowCount; row++) {
+          codes[row] = code(strings[row], add);
+        }
+      } else {
+        for (int row = 0; row < rowCount; row++) {
+          codes[row] = code(table.getString(row, column), add);
+        }
+      }
+
+    } else {
+      for (int row = 0; row < rowCount; row++) {
+        long key;
+        if (keyKind == LONG_KEYS) {
+          key = (type == Table.INT) ? ((int[]) data)[row] : ((long[]) data)[row];
+        } else {
+          double value;
+          switch (type) {
+            case Table.INT: value = ((int[]) data)[row]; break;
+            case Table.LONG: value = ((long[]) data)[row]; break;
+            case Table.FLOAT: value = ((float[]) data)[row]; break;
+            default: value = ((double[]) data)[row];
+          }
+          if (value != value) {  // NaN is missing
+            codes[row] = -1;
+            continue;
+          }
+          key = Double.doubleToLongBits(value + 0.0);  // so -0.0 matches 0.0
+        }
+        codes[row] = add ? longIndex.index(key) : longIndex.find(key);
+      }
+    }
+    return codes;
+  }
+
+
+  protected int code(String key, boolean add) {
+    if (key == null) {
+      return -1;
+    }
+    Integer code = stringIndex.get(key);
+    if (code == null) {
+      if (!add) {
+        return -1;
+      }
+      code = stringIndex.size();
+      stringIndex.put(key, code);
+    }
+    return code;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  protected Table build() {
+    int leftColumns = left.getColumnCount();
+    int rightColumns = right.getColumnCount();
+    int columnCount = leftColumns + rightColumns - 1;
+
+    Table outgoing = new Table();
+    outgoing.setColumnCount(columnCount);
+    outgoing.missingString = left.missingString;
+    outgoing.missingInt = left.missingInt;
+    outgoing.missingLong = left.missingLong;
+    outgoing.missingFloat = left.missingFloat;
+    outgoing.missingDouble = left.missingDouble;
+    outgoing.missingCategory = left.missingCategory;
+
+    // the table and column for each column of the result
+    final Table[] tables = new Table[columnCount];
+    final int[] sources = new int[columnCount];
+    for (int col = 0; col < leftColumns; col++) {
+      tables[col] = left;
+      sources[col] = col;
+    }
+    int target = leftColumns;
+    for (int col = 0; col < rightColumns; col++) {
+      if (col != rightKey) {
+        tables[target] = right;
+        sources[target++] = col;
+      }
+    }
+
+    if (left.columnTitles != null || right.columnTitles != null) {
+      String[] titles = new String[columnCount];
+      Set<String> taken = new HashSet<>();
+      for (int col = 0; col < columnCount; col++) {
+        String title = tables[col].getColumnTitle(sources[col]);
+        if (title != null) {
+          // columns from the right that have the same title get a number
+          String unique = title;
+          for (int n = 2; !taken.add(unique); n++) {
+            unique = title + "_" + n;
+          }
+          titles[col] = unique;
+        }
+      }
+      outgoing.setColumnTitles(titles);
+    }
+
+    for (int col = 0; col < columnCount; col++) {
+      Table source = tables[col];
+      int type = source.getColumnType(sources[col]);
+      outgoing.setColumnType(col, type);
+      if (type == Table.CATEGORY) {
+        // same categories, so that the indices can be copied directly
+        outgoing.columnCategories[col] = source.columnCategories[sources[col]].copy();
+      }
+    }
+
+    IntStream range = IntStream.range(0, columnCount);
+    if (count >= TableSort.parallelRows) {
+      range = range.parallel();
+    }
+    range.forEach(col -> {
+      // by position, since left and right are the same table in a self-join
+      int[] rows = (col < leftColumns) ? leftRows : rightRows;
+      outgoing.columns[col] = gather(tables[col], sources[col], rows, outgoing);
+    });
+    outgoing.rowCount = count;
+    return outgoing;
+  }
+
+
+  /** Copy the entries of a column for each of the rows, -1 for missing. */
+  protected Object gather(Table source, int column, int[] rows, Table outgoing) {
+    Object data = source.column(column);
+    switch (source.getColumnType(column)) {
+      case Table.STRING: {
+        String[] from = (String[]) data;
+        String[] to = new String[count];
+        for (int i = 0; i < count; i++) {
+          int row = rows[i];
+          to[i] = (row == -1) ? null : from[row];
+        }
+        return to;
+      }
+      case Table.INT:
+      case Table.CATEGORY: {
+        boolean category = source.getColumnType(column) == Table.CATEGORY;
+        int missing = category ? outgoing.missingCategory : outgoing.missingInt;
+        int[] from = (int[]) data;
+        int[] to = new int[count];
+        for (int i = 0; i < count; i++) {
+          int row = rows[i];
+          if (row == -1 || (category && from[row] == source.missingCategory)) {
+            to[i] = missing;
+          } else {
+            to[i] = from[row];
+          }
+        }
+        return to;
+      }
+      case Table.LONG: {
+        long[] from = (long[]) data;
+        long[] to = new long[count];
+        for (int i = 0; i < count; i++) {
+          int row = rows[i];
+          to[i] = (row == -1) ? outgoing.missingLong : from[row];
+        }
+        return to;
+      }
+      case Table.FLOAT: {
+        float[] from = (float[]) data;
+        float[] to = new float[count];
+        for (int i = 0; i < count; i++) {
+          int row = rows[i];
+          to[i] = (row == -1) ? outgoing.missingFloat : from[row];
+        }
+        return to;
+      }
+      default: {
+        double[] from = (double[]) data;
+        double[] to = new double[count];
+        for (int i = 0; i < count; i++) {
+          int row = rows[i];
+          to[i] = (row == -1) ? outgoing.missingDouble : from[row];
+        }
+        return to;
+      }
+    }
+  }
+}
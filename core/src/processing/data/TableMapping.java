@@ -0,0 +1,396 @@
+package processing.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import processing.core.PApplet;
+
+
+/**
+ * Columnar binary format for Table, used by the "mapped" option. Unlike
+ * saveBinary(), which writes the table one row at a time, each column is
+ * stored as a single run of little-endian values that starts on its own
+ * page. When loading, the file is memory-mapped and every column is left
+ * as a Column placeholder in the table until it's first used, so a sketch
+ * that only needs a few columns of a very large file never reads the rest.
+ * <p/>
+ * The layout is a magic number and the header length, followed by the
+ * header (written with DataOutputStream, same fields as saveBinary() plus
+ * the offset and length of every column), followed by the column data.
+ * STRING columns store the end offset of each entry in their UTF-8 data
+ * (inverted for null entries), then the data itself.
+ * Advanced users only, not official API.
+ */
+class TableMapping {
+  static final int MAGIC = 0x9007C011;
+  static final int PAGE_SIZE = 4096;
+
+  // size of the buffer used to write each column
+  static final int WRITE_SIZE = 1 << 20;
+
+
+  static void save(Table table, File file) throws IOException {
+    int rowCount = table.getRowCount();
+    int columnCount = table.getColumnCount();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(bytes);
+    output.writeInt(rowCount);
+    output.writeInt(columnCount);
+    if (table.columnTitles != null) {
+      output.writeBoolean(true);
+      for (String title : table.columnTitles) {
+        output.writeUTF(title == null ? "" : title);
+      }
+    } else {
+      output.writeBoolean(false);
+    }
+    for (int col = 0; col < columnCount; col++) {
+      output.writeInt(table.columnTypes[col]);
+    }
+    for (int col = 0; col < columnCount; col++) {
+      if (table.columnTypes[col] == Table.CATEGORY) {
+        table.columnCategories[col].write(output);
+      }
+    }
+    if (table.missingString == null) {
+      output.writeBoolean(false);
+    } else {
+      output.writeBoolean(true);
+      output.writeUTF(table.missingString);
+    }
+    output.writeInt(table.missingInt);
+    output.writeLong(table.missingLong);
+    output.writeFloat(table.missingFloat);
+    output.writeDouble(table.missingDouble);
+    output.writeInt(table.missingCategory);
+
+    // STRING columns are encoded up front, since their size isn't known
+    byte[][][] strings = new byte[columnCount][][];
+    long[] lengths = new long[columnCount];
+    for (int col = 0; col < columnCount; col++) {
+      int type = table.columnTypes[col];
+      if (type == Table.STRING) {
+        strings[col] = new byte[rowCount][];
+        long length = 4L * rowCount;
+        for (int row = 0; row < rowCount; row++) {
+          String str = table.getString(row, col);
+          if (str != null) {
+            strings[col][row] = str.getBytes(StandardCharsets.UTF_8);
+            length += strings[col][row].length;
+          }
+        }
+        lengths[col] = length;
+      } else {
+        lengths[col] = (long) rowCount * typeSize(type);
+      }
+      if (lengths[col] > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Column " + col + " is too large to be mapped");
+      }
+    }
+
+    long[] offsets = new long[columnCount];
+    long offset = align(8 + output.size() + 16L * columnCount);
+    for (int col = 0; col < columnCount; col++) {
+      offsets[col] = offset;
+      offset = align(offset + lengths[col]);
+      output.writeLong(offsets[col]);
+      output.writeLong(lengths[col]);
+    }
+    output.flush();
+
+    try (FileChannel channel =
+         FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                          StandardOpenOption.WRITE,
+                          StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer header = ByteBuffer.allocate(8 + bytes.size());
+      header.putInt(MAGIC);
+      header.putInt(bytes.size());
+      header.put(bytes.toByteArray());
+      header.flip();
+      writeFully(channel, header, 0);
+
+      ByteBuffer buffer =
+        ByteBuffer.allocateDirect(WRITE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      for (int col = 0; col < columnCount; col++) {
+        long position = offsets[col];
+        buffer.clear();
+        if (table.columnTypes[col] == Table.STRING) {
+          int end = 0;
+          for (int row = 0; row < rowCount; row++) {
+            position = flushIfFull(channel, buffer, position, 4);
+            byte[] b = strings[col][row];
+            if (b == null) {
+              buffer.putInt(~end);
+            } else {
+              end += b.length;
+              buffer.putInt(end);
+            }
+          }
+          for (int row = 0; row < rowCount; row++) {
+            byte[] b = strings[col][row];
+            if (b != null) {
+              int index = 0;
+              while (index < b.length) {
+                position = flushIfFull(channel, buffer, position, 1);
+                int count = Math.min(buffer.remaining(), b.length - index);
+                buffer.put(b, index, count);
+                index += count;
+              }
+            }
+          }
+        } else {
+          int size = typeSize(table.columnTypes[col]);
+          Object column = table.column(col);
+          for (int row = 0; row < rowCount; row++) {
+            position = flushIfFull(channel, buffer, position, size);
+            switch (table.columnTypes[col]) {
+            case Table.INT:
+            case Table.CATEGORY:
+              buffer.putInt(((int[]) column)[row]);
+              break;
+            case Table.LONG:
+              buffer.putLong(((long[]) column)[row]);
+              break;
+            case Table.FLOAT:
+              buffer.putFloat(((float[]) column)[row]);
+              break;
+            case Table.DOUBLE:
+              buffer.putDouble(((double[]) column)[row]);
+              break;
+            }
+          }
+        }
+        buffer.flip();
+        writeFully(channel, buffer, position);
+      }
+      // pad the end of the file so that the last column is a full page
+      if (offset > channel.size()) {
+        writeFully(channel, ByteBuffer.allocate(1), offset - 1);
+      }
+    }
+  }
+
+
+  static private long flushIfFull(FileChannel channel, ByteBuffer buffer,
+                                  long position, int needed) throws IOException {
+    if (buffer.remaining() < needed) {
+      buffer.flip();
+      position = writeFully(channel, buffer, position);
+      buffer.clear();
+    }
+    return position;
+  }
+
+
+  static private long writeFully(FileChannel channel, ByteBuffer buffer,
+                                 long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+    return position;
+  }
+
+
+  static private long align(long offset) {
+    return (offset + PAGE_SIZE - 1) & ~((long) PAGE_SIZE - 1);
+  }
+
+
+  static int typeSize(int type) {
+    switch (type) {
+    case Table.INT:
+    case Table.FLOAT:
+    case Table.CATEGORY:
+      return 4;
+    case Table.LONG:
+    case Table.DOUBLE:
+      return 8;
+    }
+    throw new IllegalArgumentException(type + " is not a valid column type.");
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static void load(Table table, File file) throws IOException {
+    try (FileChannel channel =
+         FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer start = ByteBuffer.allocate(8);
+      while (start.hasRemaining()) {
+        if (channel.read(start, start.position()) == -1) {
+          throw new IOException(file + " is too short to be a mapped table");
+        }
+      }
+      start.flip();
+      int magic = start.getInt();
+      if (magic != MAGIC) {
+        throw new IOException("Not a mapped table (magic was " + PApplet.hex(magic) + ")");
+      }
+      int headerLength = start.getInt();
+      MappedByteBuffer header =
+        channel.map(FileChannel.MapMode.READ_ONLY, 8, headerLength);
+      DataInputStream input = new DataInputStream(new ByteBufferInput(header));
+
+      int rowCount = input.readInt();
+      int columnCount = input.readInt();
+      table.init();
+      table.setColumnCount(columnCount);
+      if (input.readBoolean()) {
+        String[] titles = new String[columnCount];
+        for (int col = 0; col < columnCount; col++) {
+          titles[col] = input.readUTF();
+        }
+        table.setColumnTitles(titles);
+      }
+      int[] types = new int[columnCount];
+      for (int col = 0; col < columnCount; col++) {
+        types[col] = input.readInt();
+        if (types[col] != Table.STRING) {
+          typeSize(types[col]);  // throws if not valid
+        }
+      }
+      table.columnTypes = types;
+      for (int col = 0; col < columnCount; col++) {
+        if (types[col] == Table.CATEGORY) {
+          table.columnCategories[col] = new Table.HashMapBlows(input);
+        }
+      }
+      table.missingString = input.readBoolean() ? input.readUTF() : null;
+      table.missingInt = input.readInt();
+      table.missingLong = input.readLong();
+      table.missingFloat = input.readFloat();
+      table.missingDouble = input.readDouble();
+      table.missingCategory = input.readInt();
+
+      for (int col = 0; col < columnCount; col++) {
+        long offset = input.readLong();
+        long length = input.readLong();
+        // mappings stay valid after the channel has been closed
+        ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        table.columns[col] = new Column(types[col], rowCount, data);
+      }
+      table.rowCount = rowCount;
+    }
+  }
+
+
+  /** Just enough of an InputStream to use DataInputStream on a buffer. */
+  static class ByteBufferInput extends java.io.InputStream {
+    ByteBuffer buffer;
+
+    ByteBufferInput(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int offset, int length) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(b, offset, count);
+      return count;
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Stands in for a column that hasn't been read from the mapping yet.
+   * Table.column() replaces it with the real array on first use, and the
+   * get*Column() methods copy straight out of it instead.
+   */
+  static class Column {
+    int type;
+    int rowCount;
+    ByteBuffer data;
+
+    Column(int type, int rowCount, ByteBuffer data) {
+      this.type = type;
+      this.rowCount = rowCount;
+      this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    Object load() {
+      switch (type) {
+      case Table.INT:
+      case Table.CATEGORY:
+        return ints();
+      case Table.LONG:
+        return longs();
+      case Table.FLOAT:
+        return floats();
+      case Table.DOUBLE:
+        return doubles();
+      default:
+        return strings();
+      }
+    }
+
+    // duplicate() so that threads reading at once don't share a position
+
+    int[] ints() {
+      int[] outgoing = new int[rowCount];
+      data.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(outgoing);
+      return outgoing;
+    }
+
+    long[] longs() {
+      long[] outgoing = new long[rowCount];
+      data.duplicate().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(outgoing);
+      return outgoing;
+    }
+
+    float[] floats() {
+      float[] outgoing = new float[rowCount];
+      data.duplicate().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(outgoing);
+      return outgoing;
+    }
+
+    double[] doubles() {
+      double[] outgoing = new double[rowCount];
+      data.duplicate().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(outgoing);
+      return outgoing;
+    }
+
+    String[] strings() {
+      String[] outgoing = new String[rowCount];
+      ByteBuffer buffer = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      int base = rowCount * 4;
+      int start = 0;
+      byte[] temp = new byte[64];
+      for (int row = 0; row < rowCount; row++) {
+        int end = buffer.getInt(row * 4);
+        if (end >= 0) {
+          int length = end - start;
+          if (length > temp.length) {
+            temp = new byte[Math.max(length, temp.length << 1)];
+          }
+          buffer.position(base + start);
+          buffer.get(temp, 0, length);
+          outgoing[row] = new String(temp, 0, length, StandardCharsets.UTF_8);
+          start = end;
+        }
+      }
+      return outgoing;
+    }
+  }
+}
@@ -0,0 +1,672 @@
+package processing.data;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import processing.core.PApplet;
+
+
+/**
+ * Reads CSV or TSV text directly into the typed column arrays of a Table.
+ * Unlike parseBasic(), no String[] is created for each row: every field is
+ * copied into a reusable char buffer, and numbers (and known categories)
+ * are parsed straight from that buffer. Only STRING columns and newly seen
+ * CATEGORY values allocate a String.
+ * <p/>
+ * The quoting rules are the same as CommaSeparatedLine, and lines end the
+ * same way as BufferedReader.readLine(), so results match parseBasic().
+ * Advanced users only, not official API.
+ */
+class TableParser {
+  static final int BUFFER_SIZE = 1 << 16;
+
+  // what follows the field that was just read
+  static final int FIELD = 0;
+  static final int RECORD = 1;
+
+  Table table;
+  char delim;
+  boolean csv;
+
+  Reader reader;
+  char[] buffer;
+  int pos;
+  int limit;
+
+  char[] field = new char[128];
+  int fieldLength;
+
+  int row;
+
+  // digits after the decimal point, from parseDecimal()
+  int fraction;
+
+  // for the "infer" option: rows to sample before picking column types,
+  // the first column that can be changed, and what TableInference has
+  // seen in each column (null until the types have been picked)
+  int inferRows;
+  int inferColumn;
+  int[] seen;
+  TableInference.Text text = new TableInference.Text();
+  boolean partial;  // only part of the file, see ParallelTableParser
+  boolean more;  // rows will be added later, so wait for the full sample
+
+  // set by the fast number parsers to signal success
+  boolean parsed;
+  int parsedInt;
+  long parsedLong;
+  float parsedFloat;
+  double parsedDouble;
+
+
+  TableParser(Table table, boolean tsv) {
+    this.table = table;
+    csv = !tsv;
+    delim = tsv ? '\t' : ',';
+  }
+
+
+  /**
+   * Load the first 'rows' rows as Strings, then pick a type for each of the
+   * columns from 'firstColumn' on (the ones before it already have types),
+   * and keep checking that later entries fit.
+   */
+  void infer(int rows, int firstColumn) {
+    inferRows = rows;
+    inferColumn = firstColumn;
+    seen = null;
+  }
+
+
+  /**
+   * Use types that were already picked (see TableInference.infer()),
+   * but keep checking that the entries fit.
+   */
+  void inferFrom(int[] seen, int rows) {
+    inferRows = rows;
+    this.seen = seen;
+  }
+
+
+  /**
+   * Parse everything available from a Reader, starting at row 0 of the
+   * table, the same as parseBasic(). A leading Unicode BOM is skipped.
+   */
+  void parse(Reader reader, boolean header) {
+    start(reader);
+    parseRecords(header, 0, Integer.MAX_VALUE);
+  }
+
+
+  /** Begin reading from a Reader, skipping a leading Unicode BOM. */
+  void start(Reader reader) {
+    this.reader = reader;
+    buffer = new char[BUFFER_SIZE];
+    pos = 0;
+    limit = 0;
+    try {
+      if (fill() && buffer[pos] == '\uFEFF') {
+        pos++;
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Error reading table on line 0", e);
+    }
+  }
+
+
+  /**
+   * After start(), parse up to 'count' more records into the rows starting
+   * at 'first', so that a large file can be read a piece at a time, either
+   * reusing the same rows or adding to the end of the table. Returns the
+   * number of rows that were read, which is only less than 'count' at the
+   * end of the input.
+   */
+  int parseRows(int first, int count, boolean header) {
+    if (table.rowCount != first + count) {
+      table.resizeRows(first + count);
+    }
+    parseRecords(header, first, first + count);
+    return row - first;
+  }
+
+
+  /**
+   * Parse a range of chars that's already in memory, for instance a chunk
+   * of a larger file that's been split on record boundaries.
+   */
+  void parse(char[] chars, int start, int stop, boolean header) {
+    reader = null;
+    buffer = chars;
+    pos = start;
+    limit = stop;
+    parseRecords(header, 0, Integer.MAX_VALUE);
+  }
+
+
+  /**
+   * Read only the first record of a range of chars, and use it for the
+   * column titles. Returns the offset where the next record begins.
+   */
+  int parseHeader(char[] chars, int start, int stop) {
+    reader = null;
+    buffer = chars;
+    pos = start;
+    limit = stop;
+    try {
+      if (pos < limit) {
+        readTitles();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Error reading table header", e);
+    }
+    return pos;
+  }
+
+
+  protected void readTitles() throws IOException {
+    StringList titles = new StringList();
+    int end;
+    do {
+      end = nextField();
+      titles.append(new String(field, 0, fieldLength));
+    } while (end == FIELD);
+    table.setColumnTitles(titles.toArray());
+  }
+
+
+  protected void parseRecords(boolean header, int startRow, int stopRow) {
+    row = startRow;
+    if (table.rowCount == 0) {
+      table.resizeRows(10);
+    }
+    try {
+      while ((header || row < stopRow) && (pos < limit || fill())) {
+        if (header) {
+          readTitles();
+          header = false;
+
+        } else {
+          if (row == table.rowCount) {
+            table.resizeRows(row << 1);
+          }
+          int col = 0;
+          int end;
+          do {
+            end = nextField();
+            if (col == table.columns.length) {
+              table.ensureColumn(col);
+            }
+            store(col++);
+          } while (end == FIELD);
+          row++;
+          if (row == inferRows && seen == null) {
+            Object[] sample = table.columns.clone();
+            seen = TableInference.infer(table, inferColumn, row, false);
+            text.sample(table, sample, seen, row);
+          }
+        }
+      }
+    } catch (Exception e) {
+      throw new RuntimeException("Error reading table on line " + row, e);
+    }
+    // shorten or lengthen based on what's left
+    if (row != table.rowCount) {
+      table.resizeRows(row);
+    }
+    if (inferRows != 0 && seen == null && !more) {
+      // fewer rows than the sample
+      Object[] sample = table.columns.clone();
+      seen = TableInference.infer(table, inferColumn, row, partial);
+      text.sample(table, sample, seen, row);
+    }
+  }
+
+
+  /** Read more chars from the Reader, returns false at the end of input. */
+  protected boolean fill() throws IOException {
+    if (reader == null) {
+      return false;
+    }
+    int count;
+    do {
+      count = reader.read(buffer, 0, buffer.length);
+    } while (count == 0);
+    if (count == -1) {
+      return false;
+    }
+    pos = 0;
+    limit = count;
+    return true;
+  }
+
+
+  /** Returns the next char without consuming it, or -1 if nothing left. */
+  protected int peek() throws IOException {
+    if (pos == limit && !fill()) {
+      return -1;
+    }
+    return buffer[pos];
+  }
+
+
+  /** After a CR, step over the LF of a CR/LF pair. */
+  protected void skipLF() throws IOException {
+    if (peek() == '\n') {
+      pos++;
+    }
+  }
+
+
+  protected void append(char c) {
+    if (fieldLength == field.length) {
+      field = PApplet.expand(field);
+    }
+    field[fieldLength++] = c;
+  }
+
+
+  protected void append(char[] c, int start, int length) {
+    if (fieldLength + length > field.length) {
+      field = PApplet.expand(field, Math.max(field.length << 1, fieldLength + length));
+    }
+    System.arraycopy(c, start, field, fieldLength, length);
+    fieldLength += length;
+  }
+
+
+  /**
+   * Read a single field into the field buffer.
+   * @return FIELD if a delimiter followed, or RECORD if the line ended
+   */
+  protected int nextField() throws IOException {
+    fieldLength = 0;
+    if (csv && peek() == '\"') {
+      pos++;
+      return nextQuotedField();
+    }
+    while (true) {
+      int start = pos;
+      int stop = limit;
+      char[] c = buffer;
+      int i = start;
+      while (i < stop) {
+        char ch = c[i];
+        if (ch == delim || ch == '\n' || ch == '\r' || (csv && ch == '\"')) {
+          break;
+        }
+        i++;
+      }
+      append(c, start, i - start);
+      pos = i;
+      if (i == stop) {
+        if (!fill()) {
+          return RECORD;
+        }
+        continue;
+      }
+      char ch = c[pos++];
+      if (ch == delim) {
+        return FIELD;
+      } else if (ch == '\n') {
+        return RECORD;
+      } else if (ch == '\r') {
+        skipLF();
+        return RECORD;
+      } else {  // a quote inside a field that didn't start with one
+        int next = peek();
+        if (next == '\"') {
+          // step over this crummy quote escape
+          pos++;
+          append('\"');
+        } else if (next == -1 || next == '\n' || next == '\r') {
+          throw new RuntimeException("Unterminated quote at end of line");
+        } else {
+          throw new RuntimeException("Unterminated quoted field mid-line");
+        }
+      }
+    }
+  }
+
+
+  protected int nextQuotedField() throws IOException {
+    while (true) {
+      int start = pos;
+      int stop = limit;
+      char[] c = buffer;
+      int i = start;
+      while (i < stop && c[i] != '\"' && c[i] != '\r') {
+        i++;
+      }
+      append(c, start, i - start);
+      pos = i;
+      if (i == stop) {
+        if (!fill()) {
+          throw new IOException("Found a quoted line that wasn't terminated properly.");
+        }
+        continue;
+      }
+      if (c[pos++] == '\r') {
+        // newlines inside quotes are converted to \n, as with parseBasic()
+        skipLF();
+        append('\n');
+        continue;
+      }
+      int next = peek();
+      if (next == -1 || next == '\n') {
+        // closing quote for field; last field on the line
+        if (next != -1) pos++;
+        return RECORD;
+      } else if (next == '\r') {
+        pos++;
+        skipLF();
+        return RECORD;
+      } else if (next == '\"') {
+        // an escaped quote inside a quoted field, step over it
+        pos++;
+        append('\"');
+      } else if (next == ',') {
+        // that was our closing quote, get outta here
+        pos++;
+        return FIELD;
+      } else {
+        // This is a lone-wolf quote, occasionally seen in exports.
+        // It's a single quote in the middle of some other text,
+        // and not escaped properly. Pray for the best!
+        append('\"');
+      }
+    }
+  }
+
+
+  /** Write the contents of the field buffer to a column of the current row. */
+  protected void store(int col) {
+    boolean inferred = seen != null && col < seen.length &&
+      seen[col] != 0 && seen[col] != TableInference.TEXT;
+    if (inferred) {
+      check(col);
+    }
+    Object column = table.columns[col];
+    switch (table.columnTypes[col]) {
+    case Table.STRING:
+      ((String[]) column)[row] =
+        (fieldLength == 0) ? "" : new String(field, 0, fieldLength);
+      break;
+    case Table.INT:
+      parseInt(field, fieldLength);
+      ((int[]) column)[row] = parsed ? parsedInt :
+        PApplet.parseInt(new String(field, 0, fieldLength), table.missingInt);
+      break;
+    case Table.LONG:
+      parseLong(field, fieldLength);
+      if (!parsed) {
+        try {
+          parsedLong = Long.parseLong(new String(field, 0, fieldLength));
+        } catch (NumberFormatException nfe) {
+          parsedLong = table.missingLong;
+        }
+      }
+      ((long[]) column)[row] = parsedLong;
+      break;
+    case Table.FLOAT:
+      parseFloat(field, fieldLength);
+      ((float[]) column)[row] = parsed ? parsedFloat :
+        PApplet.parseFloat(new String(field, 0, fieldLength), table.missingFloat);
+      break;
+    case Table.DOUBLE:
+      parseDouble(field, fieldLength);
+      if (!parsed) {
+        try {
+          parsedDouble = Double.parseDouble(new String(field, 0, fieldLength));
+        } catch (NumberFormatException nfe) {
+          parsedDouble = table.missingDouble;
+        }
+      }
+      ((double[]) column)[row] = parsedDouble;
+      break;
+    case Table.CATEGORY:
+      String missing = table.missingString;
+      if (missing != null && matches(missing, field, 0, fieldLength)) {
+        ((int[]) column)[row] = table.missingCategory;
+      } else {
+        Table.HashMapBlows categories = table.columnCategories[col];
+        int index = categories.index(field, 0, fieldLength);
+        ((int[]) column)[row] = index;
+        if (seen != null && col < seen.length && seen[col] == TableInference.TEXT &&
+            index == categories.size() - 1 && row >= inferRows &&
+            !TableInference.fewCategories(categories.size(), row + 1)) {
+          // an inferred CATEGORY column that turned out to have too many
+          table.setColumnType(col, Table.STRING);
+          seen[col] = 0;
+        }
+      }
+      break;
+    default:
+      throw new IllegalArgumentException("That's not a valid column type.");
+    }
+    if (inferred) {
+      keepText(col, column);
+    }
+  }
+
+
+  /**
+   * Widen the type of an inferred column when the entry in the field
+   * buffer doesn't fit, for instance a decimal in an INT column.
+   */
+  protected void check(int col) {
+    int mask = seen[col] | TableInference.classify(field, fieldLength, table.missingString);
+    if (mask != seen[col]) {
+      int type = TableInference.typeFor(mask);
+      if (type != table.columnTypes[col]) {
+        text.setColumnType(table, col, type, row);
+      }
+      // no need to check text columns any further
+      seen[col] = ((mask & TableInference.TEXT) != 0) ? 0 : mask;
+    }
+  }
+
+
+  /**
+   * Keep the text of the entry just stored in an inferred number column
+   * if the number won't give it back, in case of widening to STRING later.
+   */
+  void keepText(int col, Object column) {
+    boolean same;
+    switch (table.columnTypes[col]) {
+    case Table.INT:
+    case Table.LONG:
+      same = plainInteger(field, fieldLength);
+      break;
+    case Table.FLOAT:
+      same = plainDecimal(field, fieldLength) &&
+        matches(Float.toString(((float[]) column)[row]), field, 0, fieldLength);
+      break;
+    case Table.DOUBLE:
+      same = plainDecimal(field, fieldLength) &&
+        matches(Double.toString(((double[]) column)[row]), field, 0, fieldLength);
+      break;
+    default:
+      return;  // only empty entries so far, stored as they are
+    }
+    text.set(col, row, same ? null : new String(field, 0, fieldLength));
+  }
+
+
+  /** Whether this is how Integer.toString() or Long.toString() writes it. */
+  static boolean plainInteger(char[] c, int length) {
+    int i = (length > 0 && c[0] == '-') ? 1 : 0;
+    if (i == length || (c[i] == '0' && (length > 1))) {
+      return false;  // no digits, leading zeros, or -0
+    }
+    for (; i < length; i++) {
+      if (c[i] < '0' || c[i] > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Quick check for what Float.toString() or Double.toString() might
+   * write: digits, a point, and more digits without a trailing zero
+   * (except for "5.0"). Anything else can't be the same.
+   */
+  static boolean plainDecimal(char[] c, int length) {
+    int i = (length > 0 && c[0] == '-') ? 1 : 0;
+    int start = i;
+    while (i < length && c[i] >= '0' && c[i] <= '9') i++;
+    if (i == start || i == length || c[i] != '.' ||
+        (c[start] == '0' && i - start > 1)) {
+      return false;
+    }
+    int point = i++;
+    while (i < length && c[i] >= '0' && c[i] <= '9') i++;
+    if (i != length || i == point + 1) {
+      return false;
+    }
+    return c[length - 1] != '0' || length - point == 2;
+  }
+
+
+  static boolean matches(String str, char[] c, int offset, int length) {
+    if (str.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (str.charAt(i) != c[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  // The fast paths below only handle plain numbers, and give up (by leaving
+  // 'parsed' false) on anything else, so that the caller can fall back to
+  // the same String-based parsing used by setRowCol().
+
+
+  /**
+   * Same as PApplet.parseInt(String), which ignores anything after a
+   * decimal point.
+   */
+  void parseInt(char[] c, int length) {
+    parsed = false;
+    int i = 0;
+    boolean negative = false;
+    if (length > 0 && (c[0] == '-' || c[0] == '+')) {
+      negative = c[0] == '-';
+      i++;
+    }
+    int digits = i;
+    long value = 0;
+    while (i < length) {
+      char ch = c[i];
+      if (ch >= '0' && ch <= '9') {
+        if (i - digits == 10) return;  // let Integer.parseInt() sort it out
+        value = value * 10 + (ch - '0');
+        i++;
+      } else if (ch == '.') {
+        break;
+      } else {
+        return;
+      }
+    }
+    if (i == digits) return;
+    if (negative) value = -value;
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) return;
+    parsedInt = (int) value;
+    parsed = true;
+  }
+
+
+  void parseLong(char[] c, int length) {
+    parsed = false;
+    int i = 0;
+    boolean negative = false;
+    if (length > 0 && (c[0] == '-' || c[0] == '+')) {
+      negative = c[0] == '-';
+      i++;
+    }
+    if (i == length || length - i > 18) return;
+    long value = 0;
+    while (i < length) {
+      char ch = c[i++];
+      if (ch < '0' || ch > '9') return;
+      value = value * 10 + (ch - '0');
+    }
+    parsedLong = negative ? -value : value;
+    parsed = true;
+  }
+
+
+  static final float[] FLOAT_POWERS = {
+    1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+  };
+
+  static final double[] DOUBLE_POWERS = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+
+  /**
+   * Reads [sign]digits[.digits] into a mantissa and a count of digits
+   * after the decimal point. Returns the mantissa, or -1 if the text isn't
+   * a plain decimal number with at most maxDigits digits.
+   */
+  long parseDecimal(char[] c, int length, int maxDigits) {
+    int i = 0;
+    if (length > 0 && (c[0] == '-' || c[0] == '+')) {
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    fraction = -1;
+    while (i < length) {
+      char ch = c[i++];
+      if (ch >= '0' && ch <= '9') {
+        if (++digits > maxDigits) return -1;
+        mantissa = mantissa * 10 + (ch - '0');
+        if (fraction != -1) fraction++;
+      } else if (ch == '.' && fraction == -1) {
+        fraction = 0;
+      } else {
+        return -1;
+      }
+    }
+    if (digits == 0) return -1;
+    if (fraction == -1) fraction = 0;
+    return mantissa;
+  }
+
+
+  /**
+   * With at most 7 digits, both the mantissa and the power of ten are
+   * exact as floats, so a single division gives the same correctly
+   * rounded result as Float.parseFloat().
+   */
+  void parseFloat(char[] c, int length) {
+    long mantissa = parseDecimal(c, length, 7);
+    parsed = mantissa != -1 && fraction < FLOAT_POWERS.length;
+    if (parsed) {
+      float value = mantissa / FLOAT_POWERS[fraction];
+      parsedFloat = (c[0] == '-') ? -value : value;
+    }
+  }
+
+
+  /** Same idea as parseFloat(), exact with 15 digits and 10^22. */
+  void parseDouble(char[] c, int length) {
+    long mantissa = parseDecimal(c, length, 15);
+    parsed = mantissa != -1 && fraction < DOUBLE_POWERS.length;
+    if (parsed) {
+      double value = mantissa / DOUBLE_POWERS[fraction];
+      parsedDouble = (c[0] == '-') ? -value : value;
+    }
+  }
+}
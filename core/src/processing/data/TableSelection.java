@@ -0,0 +1,429 @@
+package processing.data;
+
+import java.util.stream.IntStream;
+
+
+/**
+ * A set of rows from a Table, stored as one bit per row, created with
+ * Table.where(). Selections of the same table can be combined with and(),
+ * or(), and not(), and view() gives a read-only Table of just the selected
+ * rows that shares the data of the original:
+ * <pre>
+ * Table hot = readings.where("temp", "&gt;", 30)
+ *   .and("humidity", "&lt;", 40)
+ *   .and(readings.where("sensor", "!=", "test"))
+ *   .view();
+ * </pre>
+ * Each where() goes through its column once, straight from the array that
+ * holds it, so the cost is one pass over each column that's used, plus a
+ * bit per row for each selection. Combining selections works on 64 rows
+ * at a time, and nothing is copied out of the table.
+ *
+ * @see Table#where(String, String, double)
+ */
+public class TableSelection {
+  Table table;
+  int rowCount;
+  long[] bits;
+
+  // rows scanned per task when the table is large enough to split up
+  static final int BLOCK_ROWS = 1 << 16;
+
+
+  TableSelection(Table table) {
+    this.table = table;
+    rowCount = table.getRowCount();
+    bits = new long[(rowCount + 63) >> 6];
+  }
+
+
+  protected void clearTail() {
+    int extra = rowCount & 63;
+    if (extra != 0) {
+      bits[bits.length - 1] &= (1L << extra) - 1;
+    }
+  }
+
+
+  /**
+   * Calculates the bits for the rows from 'start' to 'stop', which are all
+   * in the same word. Shifting a long by the row number only uses its low
+   * six bits, so (1L &lt;&lt; row) is already the right bit in the word.
+   */
+  interface Scan {
+    long word(int start, int stop);
+  }
+
+
+  /** Fill in every word of bits, in parallel for large tables. */
+  protected void scan(Scan scan) {
+    IntStream blocks = IntStream.range(0, (rowCount + BLOCK_ROWS - 1) / BLOCK_ROWS);
+    if (rowCount >= TableSort.parallelRows) {
+      blocks = blocks.parallel();
+    }
+    blocks.forEach(block -> {
+      int start = block * BLOCK_ROWS;
+      int stop = Math.min(start + BLOCK_ROWS, rowCount);
+      for (int row = start; row < stop; row += 64) {
+        bits[row >> 6] = scan.word(row, Math.min(row + 64, stop));
+      }
+    });
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static protected int parseOperator(String op) {
+    switch (op.trim()) {
+      case "==": case "=": return 0;
+      case "!=": return 1;
+      case "<": return 2;
+      case "<=": return 3;
+      case ">": return 4;
+      case ">=": return 5;
+    }
+    throw new IllegalArgumentException("'" + op + "' is not one of ==, !=, <, <=, >, >=");
+  }
+
+
+  /** Rows where the entry compares to a number. NaN never matches. */
+  static TableSelection where(Table table, int column, String op, double value) {
+    table.checkColumn(column);
+    TableSelection outgoing = new TableSelection(table);
+    int operator = parseOperator(op);
+    if (operator == 1) {
+      // same as Java: everything that's not equal, including NaN
+      return where(table, column, "==", value).not();
+    }
+    if (Double.isNaN(value)) {
+      return outgoing;
+    }
+
+    // every comparison becomes a range of low to high
+    double low = Double.NEGATIVE_INFINITY;
+    double high = Double.POSITIVE_INFINITY;
+    boolean lowOpen = false;
+    boolean highOpen = false;
+    switch (operator) {
+      case 0: low = value; high = value; break;
+      case 2: high = value; highOpen = true; break;
+      case 3: high = value; break;
+      case 4: low = value; lowOpen = true; break;
+      case 5: low = value; break;
+    }
+    outgoing.range(column, low, lowOpen, high, highOpen);
+    return outgoing;
+  }
+
+
+  protected void range(int column, double low, boolean lowOpen,
+                       double high, boolean highOpen) {
+    int type = table.getColumnType(column);
+    if (type == Table.INT || type == Table.LONG) {
+      // compare as longs, so large values don't lose precision
+      if (low >= 0x1p63 || high < -0x1p63 || (high == -0x1p63 && highOpen)) {
+        return;  // nothing in range
+      }
+      long lo = Long.MIN_VALUE;
+      if (low >= -0x1p63) {
+        long f = (long) Math.floor(low);
+        lo = (lowOpen || f < low) ? f + 1 : f;
+      }
+      long hi = Long.MAX_VALUE;
+      if (high < 0x1p63) {
+        long c = (long) Math.ceil(high);
+        hi = (highOpen || c > high) ? c - 1 : c;
+      }
+      final long min = lo;
+      final long max = hi;
+      if (type == Table.INT) {
+        final int[] data = (int[]) table.column(column);
+        scan((start, stop) -> {
+          long word = 0;
+          for (int row = start; row < stop; row++) {
+            int v = data[row];
+            word |= ((v >= min & v <= max) ? 1L : 0L) << row;
+          }
+          return word;
+        });
+      } else {
+        final long[] data = (long[]) table.column(column);
+        scan((start, stop) -> {
+          long word = 0;
+          for (int row = start; row < stop; row++) {
+            long v = data[row];
+            word |= ((v >= min & v <= max) ? 1L : 0L) << row;
+          }
+          return word;
+        });
+      }
+
+    } else {
+      // closed range of doubles, since floats convert exactly
+      final double min = lowOpen ? Math.nextUp(low) : low;
+      final double max = highOpen ? Math.nextDown(high) : high;
+      if (type == Table.FLOAT) {
+        final float[] data = (float[]) table.column(column);
+        scan((start, stop) -> {
+          long word = 0;
+          for (int row = start; row < stop; row++) {
+            double v = data[row];
+            word |= ((v >= min & v <= max) ? 1L : 0L) << row;
+          }
+          return word;
+        });
+      } else if (type == Table.DOUBLE) {
+        final double[] data = (double[]) table.column(column);
+        scan((start, stop) -> {
+          long word = 0;
+          for (int row = start; row < stop; row++) {
+            double v = data[row];
+            word |= ((v >= min & v <= max) ? 1L : 0L) << row;
+          }
+          return word;
+        });
+      } else if (type == Table.CATEGORY) {
+        // parse each category once
+        Table.HashMapBlows categories = table.columnCategories[column];
+        boolean[] matches = new boolean[categories.size()];
+        for (int i = 0; i < matches.length; i++) {
+          double v = number(categories.key(i));
+          matches[i] = v >= min && v <= max;
+        }
+        double missing = number(table.missingString);
+        categoryScan(column, matches, missing >= min && missing <= max);
+      } else {
+        scan((start, stop) -> {
+          long word = 0;
+          for (int row = start; row < stop; row++) {
+            double v = number(table.getString(row, column));
+            word |= ((v >= min & v <= max) ? 1L : 0L) << row;
+          }
+          return word;
+        });
+      }
+    }
+  }
+
+
+  static protected double number(String str) {
+    if (str == null) {
+      return Double.NaN;
+    }
+    try {
+      return Double.parseDouble(str);
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+
+  /** Rows where the entry compares to a String, with compareTo(). */
+  static TableSelection where(Table table, int column, String op, String value) {
+    table.checkColumn(column);
+    int operator = parseOperator(op);
+    if (operator == 1) {
+      return where(table, column, "==", value).not();
+    }
+    TableSelection outgoing = new TableSelection(table);
+    int type = table.getColumnType(column);
+    if (type == Table.CATEGORY) {
+      Table.HashMapBlows categories = table.columnCategories[column];
+      boolean[] matches = new boolean[categories.size()];
+      for (int i = 0; i < matches.length; i++) {
+        matches[i] = compare(categories.key(i), operator, value);
+      }
+      outgoing.categoryScan(column, matches, compare(table.missingString, operator, value));
+
+    } else if (type == Table.STRING) {
+      final String[] data = (String[]) table.column(column);
+      outgoing.scan((start, stop) -> {
+        long word = 0;
+        for (int row = start; row < stop; row++) {
+          word |= (compare(data[row], operator, value) ? 1L : 0L) << row;
+        }
+        return word;
+      });
+
+    } else {
+      outgoing.scan((start, stop) -> {
+        long word = 0;
+        for (int row = start; row < stop; row++) {
+          word |= (compare(table.getString(row, column), operator, value) ? 1L : 0L) << row;
+        }
+        return word;
+      });
+    }
+    return outgoing;
+  }
+
+
+  /** Compare an entry to a value, where null only equals null. */
+  static protected boolean compare(String entry, int operator, String value) {
+    if (entry == null || value == null) {
+      return operator == 0 && entry == value;
+    }
+    int diff = entry.compareTo(value);
+    switch (operator) {
+      case 0: return diff == 0;
+      case 2: return diff < 0;
+      case 3: return diff <= 0;
+      case 4: return diff > 0;
+      default: return diff >= 0;
+    }
+  }
+
+
+  /** Select rows by whether their category matches. */
+  protected void categoryScan(int column, final boolean[] matches, final boolean missing) {
+    final int[] data = (int[]) table.column(column);
+    final int missingCategory = table.missingCategory;
+    scan((start, stop) -> {
+      long word = 0;
+      for (int row = start; row < stop; row++) {
+        int index = data[row];
+        boolean match = (index == missingCategory) ? missing :
+          (index >= 0 && index < matches.length && matches[index]);
+        word |= (match ? 1L : 0L) << row;
+      }
+      return word;
+    });
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  protected void checkTable(TableSelection other) {
+    if (other.rowCount != rowCount) {
+      throw new IllegalArgumentException("Selections are from tables with " +
+                                         rowCount + " and " + other.rowCount + " rows");
+    }
+  }
+
+
+  /**
+   * Returns a new selection of rows that are in both this one and the other.
+   */
+  public TableSelection and(TableSelection other) {
+    checkTable(other);
+    TableSelection outgoing = new TableSelection(table);
+    for (int i = 0; i < bits.length; i++) {
+      outgoing.bits[i] = bits[i] & other.bits[i];
+    }
+    return outgoing;
+  }
+
+
+  /**
+   * Same as and(table.where(columnName, op, value)).
+   */
+  public TableSelection and(String columnName, String op, double value) {
+    return and(table.where(columnName, op, value));
+  }
+
+
+  /**
+   * Same as and(table.where(columnName, op, value)).
+   */
+  public TableSelection and(String columnName, String op, String value) {
+    return and(table.where(columnName, op, value));
+  }
+
+
+  /**
+   * Returns a new selection of rows that are in either this one or the other.
+   */
+  public TableSelection or(TableSelection other) {
+    checkTable(other);
+    TableSelection outgoing = new TableSelection(table);
+    for (int i = 0; i < bits.length; i++) {
+      outgoing.bits[i] = bits[i] | other.bits[i];
+    }
+    return outgoing;
+  }
+
+
+  /**
+   * Same as or(table.where(columnName, op, value)).
+   */
+  public TableSelection or(String columnName, String op, double value) {
+    return or(table.where(columnName, op, value));
+  }
+
+
+  /**
+   * Same as or(table.where(columnName, op, value)).
+   */
+  public TableSelection or(String columnName, String op, String value) {
+    return or(table.where(columnName, op, value));
+  }
+
+
+  /**
+   * Returns a new selection of every row that's not in this one.
+   */
+  public TableSelection not() {
+    TableSelection outgoing = new TableSelection(table);
+    for (int i = 0; i < bits.length; i++) {
+      outgoing.bits[i] = ~bits[i];
+    }
+    outgoing.clearTail();
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Returns the number of rows that are selected.
+   */
+  public int getRowCount() {
+    int count = 0;
+    for (long word : bits) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+
+  /**
+   * Returns true if this row of the table is selected.
+   */
+  public boolean hasRow(int row) {
+    if (row < 0 || row >= rowCount) {
+      return false;
+    }
+    return (bits[row >> 6] & (1L << row)) != 0;
+  }
+
+
+  /**
+   * Returns the selected rows, in ascending order.
+   */
+  public int[] getRows() {
+    int[] outgoing = new int[getRowCount()];
+    int index = 0;
+    for (int i = 0; i < bits.length; i++) {
+      long word = bits[i];
+      while (word != 0) {
+        outgoing[index++] = (i << 6) + Long.numberOfTrailingZeros(word);
+        word &= word - 1;
+      }
+    }
+    return outgoing;
+  }
+
+
+  /**
+   * Returns a read-only Table with just the selected rows, that uses the
+   * same data as the original. Use copy() on the result to get a Table
+   * that can be modified. The view shouldn't be used after rows have been
+   * added to, removed from, or sorted in the original table.
+   */
+  public Table view() {
+    return new TableView(table, getRows());
+  }
+}
@@ -0,0 +1,196 @@
+package processing.data;
+
+import java.util.Arrays;
+
+
+/**
+ * Sorts the rows of a Table by extracting the key for each row up front,
+ * instead of going through Sort and calling back into the table for each
+ * comparison. Numeric and CATEGORY columns become unsigned integer keys
+ * that sort the same way as the values (NaN last), which are then put in
+ * order with a radix sort, or with Arrays.parallelSort() for large tables
+ * on machines with more than one core. STRING columns use a merge sort
+ * straight on the String array.
+ * <p/>
+ * Every sort here is stable, so that sorting one column at a time, from
+ * the last to the first, gives a sort on several columns at once. The
+ * result is an order for the rows, which Table applies in a single pass.
+ * Advanced users only, not official API.
+ */
+class TableSort {
+  // tables with at least this many rows use parallelSort() if possible
+  static int parallelRows = 1 << 16;
+
+
+  /**
+   * Stable sort of 'order' (a list of rows) by the values in a column.
+   * Returns the new order, which may or may not be the same array.
+   */
+  static int[] sort(Table table, int column, boolean reverse, int[] order) {
+    int count = order.length;
+    Object data = table.column(column);
+    switch (table.getColumnType(column)) {
+      case Table.STRING: {
+        String[] strings = (String[]) data;
+        String[] keys = new String[count];
+        for (int i = 0; i < count; i++) {
+          String s = strings[order[i]];
+          keys[i] = (s == null) ? "" : s;  // avoid NPE when cells are left empty
+        }
+        mergeSort(keys, order, reverse);
+        return order;
+      }
+      case Table.INT:
+      case Table.CATEGORY: {
+        int[] ints = (int[]) data;
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+          keys[i] = (ints[order[i]] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+        }
+        return sortKeys(keys, order, 4, reverse);
+      }
+      case Table.FLOAT: {
+        float[] floats = (float[]) data;
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+          int bits = Float.floatToIntBits(floats[order[i]]);
+          keys[i] = (bits ^ ((bits >> 31) | Integer.MIN_VALUE)) & 0xFFFFFFFFL;
+        }
+        return sortKeys(keys, order, 4, reverse);
+      }
+      case Table.LONG: {
+        long[] longs = (long[]) data;
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+          keys[i] = longs[order[i]] ^ Long.MIN_VALUE;
+        }
+        return sortKeys(keys, order, 8, reverse);
+      }
+      case Table.DOUBLE: {
+        double[] doubles = (double[]) data;
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+          long bits = Double.doubleToLongBits(doubles[order[i]]);
+          keys[i] = bits ^ ((bits >> 63) | Long.MIN_VALUE);
+        }
+        return sortKeys(keys, order, 8, reverse);
+      }
+      default:
+        throw new IllegalArgumentException("Invalid column type: " + table.getColumnType(column));
+    }
+  }
+
+
+  /**
+   * Sort by unsigned keys that are 'bytes' long, where keys[i] belongs
+   * to order[i]. Equal keys keep their order, even when reversed.
+   */
+  static int[] sortKeys(long[] keys, int[] order, int bytes, boolean reverse) {
+    int count = keys.length;
+    if (reverse) {
+      long mask = (bytes == 8) ? -1L : 0xFFFFFFFFL;
+      for (int i = 0; i < count; i++) {
+        keys[i] ^= mask;
+      }
+    }
+    if (bytes == 4 && count >= parallelRows &&
+        Runtime.getRuntime().availableProcessors() > 1) {
+      // the position goes in the low bits, which keeps it stable
+      for (int i = 0; i < count; i++) {
+        keys[i] = (keys[i] << 32) | i;
+      }
+      Arrays.parallelSort(keys);
+      int[] outgoing = new int[count];
+      for (int i = 0; i < count; i++) {
+        outgoing[i] = order[(int) keys[i]];
+      }
+      return outgoing;
+    }
+    return radixSort(keys, order, bytes);
+  }
+
+
+  /** Least significant digit first, a byte at a time. */
+  static int[] radixSort(long[] keys, int[] order, int bytes) {
+    int count = keys.length;
+    int[][] histogram = new int[bytes][256];
+    for (int i = 0; i < count; i++) {
+      long key = keys[i];
+      for (int b = 0; b < bytes; b++) {
+        histogram[b][(int) (key >>> (b << 3)) & 0xFF]++;
+      }
+    }
+
+    long[] keyTemp = null;
+    int[] orderTemp = null;
+    for (int b = 0; b < bytes; b++) {
+      int[] counts = histogram[b];
+      boolean same = false;
+      for (int digit = 0; digit < 256; digit++) {
+        if (counts[digit] == count) {
+          same = true;  // nothing to do when every key has this byte
+          break;
+        }
+      }
+      if (same) {
+        continue;
+      }
+      if (keyTemp == null) {
+        keyTemp = new long[count];
+        orderTemp = new int[count];
+      }
+      int position = 0;
+      for (int digit = 0; digit < 256; digit++) {
+        int c = counts[digit];
+        counts[digit] = position;
+        position += c;
+      }
+      int shift = b << 3;
+      for (int i = 0; i < count; i++) {
+        int p = counts[(int) (keys[i] >>> shift) & 0xFF]++;
+        keyTemp[p] = keys[i];
+        orderTemp[p] = order[i];
+      }
+      long[] k = keys; keys = keyTemp; keyTemp = k;
+      int[] o = order; order = orderTemp; orderTemp = o;
+    }
+    return order;
+  }
+
+
+  /** Stable merge sort of keys (and order with it), ignoring case. */
+  static void mergeSort(String[] keys, int[] order, boolean reverse) {
+    int count = keys.length;
+    String[] keyTemp = new String[count];
+    int[] orderTemp = new int[count];
+    for (int width = 1; width < count; width <<= 1) {
+      for (int left = 0; left < count; left += width << 1) {
+        int mid = Math.min(left + width, count);
+        int right = Math.min(left + (width << 1), count);
+        int i = left;
+        int j = mid;
+        int k = left;
+        while (i < mid && j < right) {
+          int diff = keys[i].compareToIgnoreCase(keys[j]);
+          if (reverse ? diff >= 0 : diff <= 0) {
+            keyTemp[k] = keys[i];
+            orderTemp[k++] = order[i++];
+          } else {
+            keyTemp[k] = keys[j];
+            orderTemp[k++] = order[j++];
+          }
+        }
+        while (i < mid) {
+          keyTemp[k] = keys[i];
+          orderTemp[k++] = order[i++];
+        }
+        while (j < right) {
+          keyTemp[k] = keys[j];
+          orderTemp[k++] = order[j++];
+        }
+      }
+      System.arraycopy(keyTemp, 0, keys, 0, count);
+      System.arraycopy(orderTemp, 0, order, 0, count);
+    }
+  }
+}
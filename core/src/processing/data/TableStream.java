@@ -0,0 +1,234 @@
+package processing.data;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import processing.core.PApplet;
+
+
+/**
+ * Reads the rows of a CSV, TSV, or binary table one at a time, for files
+ * that are too large to load with loadTable(). Only a small batch of rows
+ * is in memory at once: when the rows of a batch have all been used, the
+ * next batch is parsed into the same arrays. Reading only happens when the
+ * next row is asked for, so a slow sketch never has more than one batch
+ * waiting, no matter how large the file.
+ * <pre>
+ * float total = 0;
+ * for (TableRow row : streamTable("huge.csv", "header,infer")) {
+ *   total += row.getFloat("amount");
+ * }
+ * </pre>
+ * The same TableRow object is returned for every row, so values have to
+ * be used (or copied) before moving to the next one. Rows can only be read
+ * once, in order. The file is closed after the last row, or with close()
+ * when stopping early.
+ * <p/>
+ * Options are the same as loadTable(): "header", "csv", "tsv", "bin",
+ * "infer", and "encoding=". With "infer", types are picked from the first
+ * batch, which has at least as many rows as the sample.
+ *
+ * @see Table#stream(File, String)
+ */
+public class TableStream implements Iterable<TableRow>, Iterator<TableRow>, Closeable {
+  static final int BATCH_ROWS = 4096;
+
+  Table batch;
+  Table.RowPointer pointer;
+  int batchRows;
+  int index;  // row of the batch that was returned last
+
+  InputStream input;
+  TableParser parser;  // for CSV or TSV
+  DataInputStream binary;
+  int binaryRemaining;
+
+  boolean header;
+  boolean done;
+
+
+  /**
+   * @param types columns with types already set (from a dictionary),
+   *              or null for none
+   */
+  TableStream(InputStream input, String options, Table types) throws IOException {
+    this.input = input;
+    batch = new Table();
+    if (types != null) {
+      batch.setColumnTypes(types);
+    }
+
+    String extension = null;
+    String encoding = "UTF-8";
+    int inferRows = 0;
+    if (options != null) {
+      for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+        if (opt.equals("tsv") || opt.equals("csv") || opt.equals("bin")) {
+          extension = opt;
+        } else if (opt.equals("header")) {
+          header = true;
+        } else if (opt.equals("infer")) {
+          inferRows = TableInference.DEFAULT_ROWS;
+        } else if (opt.startsWith("infer=")) {
+          inferRows = PApplet.parseInt(opt.substring(6), 0);
+          if (inferRows <= 0) {
+            throw new IllegalArgumentException("Use infer=N to pick column types from the first N rows");
+          }
+        } else if (opt.startsWith("encoding=")) {
+          encoding = opt.substring(9);
+        } else if (opt.startsWith("dictionary=")) {
+          // ignore option, this is only handled by PApplet
+        } else {
+          throw new IllegalArgumentException("'" + opt + "' is not a valid option for streaming a Table");
+        }
+      }
+    }
+    if (extension == null) {
+      throw new IllegalArgumentException("No extension specified for this Table");
+    }
+
+    int inferColumn = batch.getColumnCount();
+    batchRows = Math.max(BATCH_ROWS, inferRows);
+    if (extension.equals("bin")) {
+      binary = new DataInputStream(new BufferedInputStream(input));
+      binaryRemaining = batch.loadBinaryHeader(binary, batchRows);
+    } else {
+      parser = new TableParser(batch, extension.equals("tsv"));
+      if (inferRows != 0) {
+        parser.infer(inferRows, inferColumn);
+      }
+      parser.start(new InputStreamReader(input, encoding));
+    }
+    pointer = new Table.RowPointer(batch, -1);
+    // read the first batch, so that the titles are available right away
+    readBatch();
+  }
+
+
+  /** Replace the rows in memory with the next batch from the file. */
+  protected void readBatch() {
+    if (parser != null) {
+      int count = parser.parseRows(0, batchRows, header);
+      header = false;
+      if (count < batchRows) {
+        finish();
+      }
+    } else {
+      int count = Math.min(binaryRemaining, batchRows);
+      try {
+        if (batch.getRowCount() != count) {
+          batch.setRowCount(count);
+        }
+        batch.loadBinaryRows(binary, count);
+      } catch (IOException e) {
+        finish();
+        throw new RuntimeException("Error reading binary table", e);
+      }
+      binaryRemaining -= count;
+      if (binaryRemaining == 0) {
+        finish();
+      }
+    }
+    index = -1;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Returns this stream, since the rows can only be read once.
+   */
+  public Iterator<TableRow> iterator() {
+    return this;
+  }
+
+
+  public boolean hasNext() {
+    if (index + 1 < batch.getRowCount()) {
+      return true;
+    }
+    while (!done) {
+      readBatch();
+      if (batch.getRowCount() != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Returns the next row. The same TableRow is used for each row, so its
+   * values change once next() is called again.
+   */
+  public TableRow next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    pointer.setRow(++index);
+    return pointer;
+  }
+
+
+  /**
+   * Stop reading and close the file. Only needed when not all of the rows
+   * have been read.
+   */
+  public void close() {
+    finish();
+    index = batch.getRowCount() - 1;
+  }
+
+
+  /** Close the file once everything has been read. */
+  protected void finish() {
+    if (!done) {
+      done = true;
+      try {
+        input.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public int getColumnCount() {
+    return batch.getColumnCount();
+  }
+
+
+  public String getColumnTitle(int column) {
+    return batch.getColumnTitle(column);
+  }
+
+
+  public String[] getColumnTitles() {
+    return batch.getColumnTitles();
+  }
+
+
+  public int getColumnIndex(String columnName) {
+    return batch.getColumnIndex(columnName);
+  }
+
+
+  public int getColumnType(int column) {
+    return batch.getColumnType(column);
+  }
+
+
+  public int[] getColumnTypes() {
+    return batch.getColumnTypes();
+  }
+}
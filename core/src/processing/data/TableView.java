@@ -0,0 +1,379 @@
+package processing.data;
+
+
+/**
+ * Read-only Table made up of some of the rows of another, returned by
+ * TableSelection.view(). Shares the column arrays, titles, types, and
+ * categories of the original table, and only keeps the list of rows, so
+ * nothing is copied until the data is asked for. Anything that would
+ * change the table throws an UnsupportedOperationException; use copy()
+ * to get a Table that can be modified.
+ * <p/>
+ * Rows are looked up in the original table each time, so the view should
+ * not be used after rows of the original have been added, removed, or
+ * sorted. Methods that work on an entire column at once (get*Column(),
+ * groupBy(), join(), etc) get a copy of just the rows in the view.
+ * Advanced users only, not official API.
+ */
+class TableView extends Table {
+  Table parent;
+  int[] rows;
+
+
+  TableView(Table table, int[] rows) {
+    if (table instanceof TableView) {
+      // refer to the original table, instead of going through both
+      TableView view = (TableView) table;
+      int[] parentRows = new int[rows.length];
+      for (int i = 0; i < rows.length; i++) {
+        parentRows[i] = view.rows[rows[i]];
+      }
+      table = view.parent;
+      rows = parentRows;
+    }
+    this.parent = table;
+    this.rows = rows;
+
+    columns = table.columns;
+    columnTypes = table.columnTypes;
+    columnTitles = table.columnTitles;
+    columnCategories = table.columnCategories;
+    missingString = table.missingString;
+    missingInt = table.missingInt;
+    missingLong = table.missingLong;
+    missingFloat = table.missingFloat;
+    missingDouble = table.missingDouble;
+    missingCategory = table.missingCategory;
+    rowCount = rows.length;
+  }
+
+
+  protected UnsupportedOperationException readOnly() {
+    return new UnsupportedOperationException("This Table is a read-only view, use copy() to make changes");
+  }
+
+
+  /** Gather the entries of a column for the rows in this view. */
+  @Override
+  Object column(int col) {
+    Object data = parent.column(col);
+    switch (columnTypes[col]) {
+      case INT:
+      case CATEGORY: {
+        int[] from = (int[]) data;
+        int[] outgoing = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+          outgoing[i] = from[rows[i]];
+        }
+        return outgoing;
+      }
+      case LONG: {
+        long[] from = (long[]) data;
+        long[] outgoing = new long[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+          outgoing[i] = from[rows[i]];
+        }
+        return outgoing;
+      }
+      case FLOAT: {
+        float[] from = (float[]) data;
+        float[] outgoing = new float[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+          outgoing[i] = from[rows[i]];
+        }
+        return outgoing;
+      }
+      case DOUBLE: {
+        double[] from = (double[]) data;
+        double[] outgoing = new double[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+          outgoing[i] = from[rows[i]];
+        }
+        return outgoing;
+      }
+      default: {
+        String[] from = (String[]) data;
+        String[] outgoing = new String[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+          outgoing[i] = from[rows[i]];
+        }
+        return outgoing;
+      }
+    }
+  }
+
+
+  /** The arena has every row of the original, so search column() instead. */
+  @Override
+  StringArena arena(int col) {
+    return null;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  @Override
+  public int getInt(int row, int column) {
+    checkBounds(row, column);
+    return parent.getInt(rows[row], column);
+  }
+
+
+  @Override
+  public long getLong(int row, int column) {
+    checkBounds(row, column);
+    return parent.getLong(rows[row], column);
+  }
+
+
+  @Override
+  public float getFloat(int row, int column) {
+    checkBounds(row, column);
+    return parent.getFloat(rows[row], column);
+  }
+
+
+  @Override
+  public double getDouble(int row, int column) {
+    checkBounds(row, column);
+    return parent.getDouble(rows[row], column);
+  }
+
+
+  @Override
+  public String getString(int row, int column) {
+    checkBounds(row, column);
+    return parent.getString(rows[row], column);
+  }
+
+
+  @Override
+  public int[] getIntColumn(int col) {
+    checkColumn(col);
+    if (columnTypes[col] == INT || columnTypes[col] == CATEGORY) {
+      return (int[]) column(col);
+    }
+    return super.getIntColumn(col);
+  }
+
+
+  @Override
+  public long[] getLongColumn(int col) {
+    checkColumn(col);
+    if (columnTypes[col] == LONG) {
+      return (long[]) column(col);
+    }
+    return super.getLongColumn(col);
+  }
+
+
+  @Override
+  public float[] getFloatColumn(int col) {
+    checkColumn(col);
+    if (columnTypes[col] == FLOAT) {
+      return (float[]) column(col);
+    }
+    return super.getFloatColumn(col);
+  }
+
+
+  @Override
+  public double[] getDoubleColumn(int col) {
+    checkColumn(col);
+    if (columnTypes[col] == DOUBLE) {
+      return (double[]) column(col);
+    }
+    return super.getDoubleColumn(col);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  @Override
+  public void insertColumn(int index, String title, int type) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void removeColumn(int column) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setColumnCount(int newCount) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setColumnType(int column, int newType) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setColumnTitles(String[] titles) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setColumnTitle(int column, String title) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setRowCount(int newCount) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public TableRow setRow(int row, TableRow source) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setRow(int row, Object[] pieces) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void insertRow(int insert, Object[] columnData) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void removeRow(int row) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setMissingInt(int value) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setMissingLong(long value) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setMissingFloat(float value) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setMissingDouble(double value) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setMissingString(String value) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setInt(int row, int column, int value) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setLong(int row, int column, long value) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setFloat(int row, int column, float value) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setDouble(int row, int column, double value) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void setString(int row, int column, String value) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void replace(String orig, String replacement, int col) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void replaceAll(String regex, String replacement, int column) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void removeTokens(String tokens, int column) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void trim() {
+    throw readOnly();
+  }
+
+
+  @Override
+  public void trim(int column) {
+    throw readOnly();
+  }
+
+
+  // the columns are shared with the original table, which has more rows
+  @Override
+  public void compress() {
+    throw readOnly();
+  }
+
+
+  @Override
+  public boolean compress(int column) {
+    throw readOnly();
+  }
+
+
+  @Override
+  public boolean compress(String columnName) {
+    throw readOnly();
+  }
+
+
+  @Override
+  protected void sort(final int column, final boolean reverse) {
+    throw readOnly();
+  }
+
+
+  @Override
+  protected void sort(int[] sortColumns, boolean reverse) {
+    throw readOnly();
+  }
+}
@@ -0,0 +1,890 @@
+package processing.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+import processing.core.PApplet;
+
+
+/**
+ * Writes a CSV, TSV, or binary table one row at a time, so that a sketch
+ * can save results as it goes without keeping them all in a Table, and
+ * so that very large tables are saved quickly. Numbers are formatted
+ * straight into a reusable buffer of bytes (no String is made for each
+ * entry), which is written to the file whenever it fills up.
+ * <pre>
+ * Table columns = new Table();
+ * columns.addColumn("frame", Table.INT);
+ * columns.addColumn("x", Table.FLOAT);
+ * TableWriter out = new TableWriter(saveFile("log.csv"), columns);
+ * // then for each result
+ * out.writeInt(frameCount);
+ * out.writeFloat(mouseX);
+ * out.endRow();
+ * // and when finished
+ * out.close();
+ * </pre>
+ * The titles, types, categories, and missing values of the columns come
+ * from the Table that's passed in, which doesn't need to have any rows.
+ * Entries are written in column order, and a row that ends early is filled
+ * out with blanks (or missing values for binary files).
+ * <p/>
+ * If the file name ends with .gz, the data is compressed on another
+ * thread while the next rows are being formatted. Binary files can't be
+ * compressed this way, since the row count goes at the start and is only
+ * filled in by close().
+ * <p/>
+ * Floats and doubles are written with the fewest digits that read back as
+ * the same value, which is the same as String.valueOf() in nearly all
+ * cases. Lines end with a single newline on all platforms.
+ *
+ * @see Table#save(File, String)
+ */
+public class TableWriter implements Closeable {
+  static final int BUFFER_SIZE = 1 << 17;
+  // room for the longest number, and for a single char as UTF-8
+  static final int NUMBER_SIZE = 32;
+
+  static final double[] POW10 = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  // tens and ones digits of 0 to 99, for two digits at a time
+  static final byte[] TENS = new byte[100];
+  static final byte[] ONES = new byte[100];
+  static {
+    for (int i = 0; i < 100; i++) {
+      TENS[i] = (byte) ('0' + i / 10);
+      ONES[i] = (byte) ('0' + i % 10);
+    }
+  }
+
+  Table columns;
+  int columnCount;
+  int[] types;
+
+  WritableByteChannel channel;
+  Compressor compressor;
+  byte[] buffer;
+  int position;
+  byte[] digits = new byte[24];
+
+  boolean csv;
+  boolean binary;
+  int column;  // next column to be written in the current row
+  int rowCount;
+  int expectedRows;  // -1 if not known until close()
+
+
+  public TableWriter(File file, Table columns) throws IOException {
+    this(file, columns, null);
+  }
+
+
+  /**
+   * @param columns the titles and types of the columns to be written
+   * @param options "csv", "tsv", or "bin", if not the extension of the file
+   */
+  public TableWriter(File file, Table columns, String options) throws IOException {
+    this(file, columns, Table.extensionOptions(false, file.getName(), options), -1);
+  }
+
+
+  TableWriter(File file, Table columns, String options, int rowCount) throws IOException {
+    this(columns, options);
+    boolean gzip = file.getName().toLowerCase().endsWith(".gz");
+    if (gzip && binary && rowCount == -1) {
+      throw new IllegalArgumentException("Binary tables can't be compressed when writing one row at a time");
+    }
+    PApplet.createPath(file);
+    FileChannel fileChannel =
+      FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                       StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    start(fileChannel, gzip, rowCount);
+  }
+
+
+  /**
+   * Write to a stream, used by Table.save(OutputStream). The number of
+   * rows for a binary table has to be known, since the stream can't be
+   * rewound to fill it in.
+   */
+  TableWriter(OutputStream output, Table columns, String options, int rowCount) throws IOException {
+    this(columns, options);
+    start(Channels.newChannel(output), false, rowCount);
+  }
+
+
+  private TableWriter(Table columns, String options) {
+    this.columns = columns;
+    columnCount = columns.getColumnCount();
+    types = columns.getColumnTypes();
+
+    String extension = null;
+    if (options != null) {
+      for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+        if (opt.equals("csv") || opt.equals("tsv") || opt.equals("bin")) {
+          extension = opt;
+        } else {
+          throw new IllegalArgumentException("'" + opt + "' is not a valid option for writing a Table");
+        }
+      }
+    }
+    if (extension == null) {
+      throw new IllegalArgumentException("Use csv, tsv, or bin for the extension when writing a Table");
+    }
+    csv = extension.equals("csv");
+    binary = extension.equals("bin");
+  }
+
+
+  private void start(WritableByteChannel channel, boolean gzip, int rowCount) throws IOException {
+    this.channel = channel;
+    expectedRows = rowCount;
+    if (gzip) {
+      compressor = new Compressor(channel);
+      buffer = compressor.take();
+    } else {
+      buffer = new byte[BUFFER_SIZE];
+    }
+    if (binary) {
+      if (rowCount == -1 && !(channel instanceof FileChannel)) {
+        throw new IllegalArgumentException("The number of rows is needed to write a binary table");
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream output = new DataOutputStream(bytes);
+      // written with zero rows if not known, fixed by close()
+      columns.saveBinaryHeader(output, Math.max(0, rowCount));
+      output.flush();
+      writeBytes(bytes.toByteArray());
+
+    } else if (columns.columnTitles != null) {
+      for (int col = 0; col < columnCount; col++) {
+        writeText(columns.columnTitles[col]);
+      }
+      endRow();
+      this.rowCount = 0;
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Write the next entry of the current row.
+   */
+  public void writeInt(int value) {
+    int type = nextType();
+    if (binary && type != Table.INT) {
+      writeNumber(type, value);
+    } else if (binary) {
+      putInt(value);
+    } else {
+      separator();
+      formatLong(value);
+    }
+    column++;
+  }
+
+
+  public void writeLong(long value) {
+    int type = nextType();
+    if (binary && type != Table.LONG) {
+      writeNumber(type, value);
+    } else if (binary) {
+      putLong(value);
+    } else {
+      separator();
+      formatLong(value);
+    }
+    column++;
+  }
+
+
+  /**
+   * Write the next entry of the current row. NaN is written as a blank
+   * entry, the same as missing values in a FLOAT column of a Table.
+   */
+  public void writeFloat(float value) {
+    int type = nextType();
+    if (binary && type != Table.FLOAT) {
+      writeNumber(type, value);
+    } else if (binary) {
+      putInt(Float.floatToIntBits(value));
+    } else {
+      separator();
+      formatFloat(value);
+    }
+    column++;
+  }
+
+
+  public void writeDouble(double value) {
+    int type = nextType();
+    if (binary && type != Table.DOUBLE) {
+      writeNumber(type, value);
+    } else if (binary) {
+      putLong(Double.doubleToLongBits(value));
+    } else {
+      separator();
+      formatDouble(value);
+    }
+    column++;
+  }
+
+
+  /**
+   * Write the next entry of the current row. For a binary table, text in
+   * a numeric column is parsed, and text in a CATEGORY column has to be
+   * one of the categories of the column.
+   */
+  public void writeString(String value) {
+    int type = nextType();
+    if (binary) {
+      switch (type) {
+      case Table.STRING:
+        if (value == null) {
+          put((byte) 0);
+        } else {
+          put((byte) 1);
+          putUTF(value);
+        }
+        break;
+      case Table.INT:
+        putInt(PApplet.parseInt(value, columns.missingInt));
+        break;
+      case Table.LONG:
+        putLong(parseLong(value, columns.missingLong));
+        break;
+      case Table.FLOAT:
+        putInt(Float.floatToIntBits(PApplet.parseFloat(value, columns.missingFloat)));
+        break;
+      case Table.DOUBLE:
+        putLong(Double.doubleToLongBits(parseDouble(value, columns.missingDouble)));
+        break;
+      case Table.CATEGORY:
+        putInt(categoryIndex(column, value));
+        break;
+      }
+    } else {
+      writeText(value);
+      return;
+    }
+    column++;
+  }
+
+
+  /**
+   * Write all of the entries of a row, from this table or from another
+   * one with the same columns. Finishes the row, so endRow() isn't needed.
+   */
+  public void writeRow(TableRow row) {
+    for (int col = 0; col < columnCount; col++) {
+      switch (types[col]) {
+      case Table.INT: writeInt(row.getInt(col)); break;
+      case Table.LONG: writeLong(row.getLong(col)); break;
+      case Table.FLOAT: writeFloat(row.getFloat(col)); break;
+      case Table.DOUBLE: writeDouble(row.getDouble(col)); break;
+      default: writeString(row.getString(col)); break;
+      }
+    }
+    endRow();
+  }
+
+
+  /**
+   * Write all of the rows of a table with the same columns.
+   */
+  public void writeRows(Table table) {
+    if (table.getColumnCount() != columnCount) {
+      throw new IllegalArgumentException("The table has " + table.getColumnCount() +
+                                         " columns instead of " + columnCount);
+    }
+    int count = table.getRowCount();
+    for (int row = 0; row < count; row++) {
+      for (int col = 0; col < columnCount; col++) {
+        switch (types[col]) {
+        case Table.INT: writeInt(table.getInt(row, col)); break;
+        case Table.LONG: writeLong(table.getLong(row, col)); break;
+        case Table.FLOAT: writeFloat(table.getFloat(row, col)); break;
+        case Table.DOUBLE: writeDouble(table.getDouble(row, col)); break;
+        case Table.CATEGORY:
+          if (binary && table == columns) {
+            // already the index into the categories that were written
+            nextType();
+            putInt(table.getInt(row, col));
+            column++;
+            break;
+          }
+          writeString(table.getString(row, col));
+          break;
+        default: writeString(table.getString(row, col)); break;
+        }
+      }
+      endRow();
+    }
+  }
+
+
+  /**
+   * Finish the current row. Any columns that weren't written are left
+   * blank, or set to the missing value for a binary table.
+   */
+  public void endRow() {
+    while (column < columnCount) {
+      if (binary) {
+        writeMissing();
+      } else {
+        separator();
+      }
+      column++;
+    }
+    if (!binary) {
+      put((byte) '\n');
+    }
+    column = 0;
+    rowCount++;
+  }
+
+
+  /** Number of rows written so far. */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+
+  /**
+   * Write the rows so far to the file. For a .gz file, they're handed
+   * over to be compressed, but may not be in the file yet.
+   */
+  public void flush() throws IOException {
+    if (position != 0) {
+      if (compressor != null) {
+        compressor.put(buffer, position);
+        buffer = compressor.take();
+      } else {
+        ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, position);
+        while (bytes.hasRemaining()) {
+          channel.write(bytes);
+        }
+      }
+      position = 0;
+    }
+  }
+
+
+  /**
+   * Finish the file. Only whole rows are written, so if the last one
+   * wasn't finished with endRow(), it's finished here.
+   */
+  public void close() throws IOException {
+    if (channel == null) {
+      return;
+    }
+    try {
+      if (column != 0) {
+        endRow();
+      }
+      flush();
+      if (compressor != null) {
+        compressor.finish();
+      }
+      if (binary) {
+        if (expectedRows == -1) {
+          ByteBuffer count = ByteBuffer.allocate(4);
+          count.putInt(0, rowCount);
+          // the row count follows the magic number
+          ((FileChannel) channel).write(count, 4);
+        } else if (expectedRows != rowCount) {
+          throw new IOException("Wrote " + rowCount + " rows instead of " + expectedRows);
+        }
+      }
+    } finally {
+      channel.close();
+      channel = null;
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Type of the next column, or an exception if the row is already full. */
+  private int nextType() {
+    if (column == columnCount) {
+      throw new IllegalStateException("This row already has " + columnCount +
+                                      " entries, use endRow() to start the next");
+    }
+    if (channel == null) {
+      throw new IllegalStateException("This TableWriter has already been closed");
+    }
+    return types[column];
+  }
+
+
+  private void separator() {
+    if (column != 0) {
+      put(csv ? (byte) ',' : (byte) '\t');
+    }
+  }
+
+
+  /** A number for a binary column that has a different type. */
+  private void writeNumber(int type, double value) {
+    switch (type) {
+    case Table.INT: putInt((int) value); break;
+    case Table.LONG: putLong((long) value); break;
+    case Table.FLOAT: putInt(Float.floatToIntBits((float) value)); break;
+    case Table.DOUBLE: putLong(Double.doubleToLongBits(value)); break;
+    case Table.STRING:
+      put((byte) 1);
+      putUTF(value == (long) value ? String.valueOf((long) value) : String.valueOf(value));
+      break;
+    case Table.CATEGORY:
+      throw new IllegalArgumentException("Column " + column + " is a category column, use writeString()");
+    }
+  }
+
+
+  private void writeMissing() {
+    switch (types[column]) {
+    case Table.STRING: put((byte) 0); break;
+    case Table.INT: putInt(columns.missingInt); break;
+    case Table.LONG: putLong(columns.missingLong); break;
+    case Table.FLOAT: putInt(Float.floatToIntBits(columns.missingFloat)); break;
+    case Table.DOUBLE: putLong(Double.doubleToLongBits(columns.missingDouble)); break;
+    case Table.CATEGORY: putInt(columns.missingCategory); break;
+    }
+  }
+
+
+  private int categoryIndex(int col, String value) {
+    if (value == null || value.equals(columns.missingString)) {
+      return columns.missingCategory;
+    }
+    Integer index = columns.columnCategories[col].dataToIndex.get(value);
+    if (index == null) {
+      // the categories were already written at the start of the file
+      throw new IllegalArgumentException("'" + value + "' is not one of the categories of column " + col);
+    }
+    return index;
+  }
+
+
+  static private long parseLong(String value, long missing) {
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return missing;
+    }
+  }
+
+
+  static private double parseDouble(String value, double missing) {
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException | NullPointerException e) {
+      return missing;
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * An entry of a CSV or TSV file, quoted the same way as Table.writeCSV().
+   * Null is written as a blank entry.
+   */
+  private void writeText(String entry) {
+    nextType();
+    separator();
+    column++;
+    if (entry == null) {
+      return;
+    }
+    int length = entry.length();
+    if (!csv) {
+      putChars(entry, length, false);
+      return;
+    }
+    boolean quotes = false;
+    boolean special = false;
+    for (int i = 0; i < length; i++) {
+      char c = entry.charAt(i);
+      if (c == '\"') {
+        quotes = true;
+      } else if (c == ',' || c == '\n' || c == '\r') {
+        special = true;
+      }
+    }
+    if (!quotes && !special && length > 0 &&
+        (entry.charAt(0) == ' ' || entry.charAt(length - 1) == ' ')) {
+      special = true;
+    }
+    if (quotes || special) {
+      put((byte) '\"');
+      putChars(entry, length, quotes);
+      put((byte) '\"');
+    } else {
+      putChars(entry, length, false);
+    }
+  }
+
+
+  /** UTF-8 for the chars of a String, with quotes doubled if asked. */
+  private void putChars(String entry, int length, boolean doubleQuotes) {
+    for (int i = 0; i < length; i++) {
+      if (position > buffer.length - NUMBER_SIZE) {
+        flushBuffer();
+      }
+      char c = entry.charAt(i);
+      if (c < 0x80) {
+        buffer[position++] = (byte) c;
+        if (c == '\"' && doubleQuotes) {
+          buffer[position++] = (byte) c;
+        }
+      } else if (c < 0x800) {
+        buffer[position++] = (byte) (0xC0 | (c >> 6));
+        buffer[position++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                 Character.isLowSurrogate(entry.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, entry.charAt(++i));
+        buffer[position++] = (byte) (0xF0 | (cp >> 18));
+        buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+        buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+        buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        buffer[position++] = (byte) '?';  // same as String.getBytes()
+      } else {
+        buffer[position++] = (byte) (0xE0 | (c >> 12));
+        buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buffer[position++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+
+  /** Same as DataOutputStream.writeUTF(), which is what loadBinary() reads. */
+  private void putUTF(String str) {
+    int length = str.length();
+    int utfLength = 0;
+    for (int i = 0; i < length; i++) {
+      char c = str.charAt(i);
+      utfLength += (c >= 0x0001 && c < 0x0080) ? 1 : (c < 0x0800 ? 2 : 3);
+    }
+    if (utfLength > 65535) {
+      throw new RuntimeException(new UTFDataFormatException("String is too long for a binary table: " + utfLength + " bytes"));
+    }
+    put((byte) (utfLength >> 8));
+    put((byte) utfLength);
+    for (int i = 0; i < length; i++) {
+      if (position > buffer.length - NUMBER_SIZE) {
+        flushBuffer();
+      }
+      char c = str.charAt(i);
+      if (c >= 0x0001 && c < 0x0080) {
+        buffer[position++] = (byte) c;
+      } else if (c < 0x0800) {
+        buffer[position++] = (byte) (0xC0 | (c >> 6));
+        buffer[position++] = (byte) (0x80 | (c & 0x3F));
+      } else {
+        buffer[position++] = (byte) (0xE0 | (c >> 12));
+        buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buffer[position++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+
+  private void formatLong(long value) {
+    if (position > buffer.length - NUMBER_SIZE) {
+      flushBuffer();
+    }
+    if (value < 0) {
+      if (value == Long.MIN_VALUE) {
+        putAscii(String.valueOf(value));
+        return;
+      }
+      buffer[position++] = (byte) '-';
+      value = -value;
+    }
+    int count = putDigits(value);
+    while (count > 0) {
+      buffer[position++] = digits[--count];
+    }
+  }
+
+
+  /**
+   * Put the digits of a number that isn't negative into 'digits', last
+   * digit first, and return how many there are. Uses int division once the
+   * number is small enough, since it's quite a bit faster than long.
+   */
+  private int putDigits(long value) {
+    int count = 0;
+    while (value > Integer.MAX_VALUE) {
+      long q = value / 100;
+      int r = (int) (value - q * 100);
+      digits[count++] = ONES[r];
+      digits[count++] = TENS[r];
+      value = q;
+    }
+    int v = (int) value;
+    while (v >= 100) {
+      int q = v / 100;
+      int r = v - q * 100;
+      digits[count++] = ONES[r];
+      digits[count++] = TENS[r];
+      v = q;
+    }
+    if (v >= 10) {
+      digits[count++] = ONES[v];
+      digits[count++] = TENS[v];
+    } else {
+      digits[count++] = (byte) ('0' + v);
+    }
+    return count;
+  }
+
+
+  /**
+   * Write the shortest decimal that's closer to this float than to the
+   * floats on either side of it, which is what Float.parseFloat() needs to
+   * get it back. Numbers that String.valueOf() would write with an
+   * exponent are left to it.
+   */
+  private void formatFloat(float value) {
+    if (value != value) {
+      return;  // NaN is missing, written as blank
+    }
+    float a = Math.abs(value);
+    if (a >= 1e-3f && a < 1e7f) {
+      double d = a;
+      // half the distance to the nearest float, a little less to be safe
+      // from rounding in the doubles below
+      double half = Math.min(Math.ulp(a), Math.ulp(Math.nextDown(a))) * 0.4999999;
+      for (int k = 0; k <= 12; k++) {
+        long m = (long) Math.rint(d * POW10[k]);
+        if (Math.abs(m / POW10[k] - d) < half) {
+          putDecimal(value < 0, m, k);
+          return;
+        }
+      }
+    } else if (a == 0) {
+      putAscii(Float.floatToRawIntBits(value) == 0 ? "0.0" : "-0.0");
+      return;
+    }
+    putAscii(Float.toString(value));
+  }
+
+
+  /**
+   * Write the shortest decimal that's exactly this double once parsed.
+   * Only uses the digits that double arithmetic gets right: a whole number
+   * of at most 2^53 divided by a power of ten that's exact in a double.
+   */
+  private void formatDouble(double value) {
+    if (value != value) {
+      return;  // NaN is missing, written as blank
+    }
+    double a = Math.abs(value);
+    if (a >= 1e-3 && a < 1e7) {
+      for (int k = 0; k <= 22; k++) {
+        double scaled = a * POW10[k];
+        if (scaled > 9007199254740992.0) {
+          break;
+        }
+        long m = (long) Math.rint(scaled);
+        if (m / POW10[k] == a) {
+          putDecimal(value < 0, m, k);
+          return;
+        }
+      }
+    } else if (a == 0) {
+      putAscii(Double.doubleToRawLongBits(value) == 0 ? "0.0" : "-0.0");
+      return;
+    }
+    putAscii(Double.toString(value));
+  }
+
+
+  /** Write m / 10^decimals, with at least one digit after the point. */
+  private void putDecimal(boolean negative, long m, int decimals) {
+    if (position > buffer.length - NUMBER_SIZE) {
+      flushBuffer();
+    }
+    if (negative) {
+      buffer[position++] = (byte) '-';
+    }
+    int count = putDigits(m);
+    while (count < decimals + 1) {
+      digits[count++] = (byte) '0';  // leading zeros, as in 0.005
+    }
+    while (count > decimals) {
+      buffer[position++] = digits[--count];
+    }
+    buffer[position++] = (byte) '.';
+    if (decimals == 0) {
+      buffer[position++] = (byte) '0';
+    }
+    while (count > 0) {
+      buffer[position++] = digits[--count];
+    }
+  }
+
+
+  private void putAscii(String str) {
+    if (position > buffer.length - NUMBER_SIZE) {
+      flushBuffer();
+    }
+    for (int i = 0; i < str.length(); i++) {
+      buffer[position++] = (byte) str.charAt(i);
+    }
+  }
+
+
+  private void putInt(int value) {
+    if (position > buffer.length - NUMBER_SIZE) {
+      flushBuffer();
+    }
+    buffer[position++] = (byte) (value >>> 24);
+    buffer[position++] = (byte) (value >>> 16);
+    buffer[position++] = (byte) (value >>> 8);
+    buffer[position++] = (byte) value;
+  }
+
+
+  private void putLong(long value) {
+    putInt((int) (value >>> 32));
+    putInt((int) value);
+  }
+
+
+  private void put(byte b) {
+    if (position == buffer.length) {
+      flushBuffer();
+    }
+    buffer[position++] = b;
+  }
+
+
+  private void writeBytes(byte[] bytes) {
+    for (byte b : bytes) {
+      put(b);
+    }
+  }
+
+
+  private void flushBuffer() {
+    try {
+      flush();
+    } catch (IOException e) {
+      throw new RuntimeException("Error while writing table", e);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Compresses full buffers on its own thread. Buffers go back and forth
+   * between the two queues, so the rows that haven't been compressed yet
+   * never take up more than a few buffers.
+   */
+  static class Compressor extends Thread {
+    static final int BUFFERS = 3;
+    static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(BUFFERS + 1);
+    BlockingQueue<byte[]> empty = new ArrayBlockingQueue<>(BUFFERS);
+    GZIPOutputStream output;
+    volatile IOException error;
+
+    Compressor(WritableByteChannel channel) throws IOException {
+      super("TableWriter gzip");
+      setDaemon(true);
+      // the channel is closed by TableWriter, after finish()
+      output = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+      for (int i = 0; i < BUFFERS; i++) {
+        empty.add(new byte[BUFFER_SIZE]);
+      }
+      start();
+    }
+
+    @Override
+    public void run() {
+      try {
+        ByteBuffer bytes;
+        while ((bytes = full.take()) != END) {
+          if (error == null) {
+            try {
+              output.write(bytes.array(), 0, bytes.limit());
+            } catch (IOException e) {
+              error = e;  // keep taking buffers so the writer doesn't hang
+            }
+          }
+          empty.put(bytes.array());
+        }
+        if (error == null) {
+          output.finish();
+          output.flush();
+        }
+      } catch (IOException e) {
+        error = e;
+      } catch (InterruptedException e) {
+        // stop
+      }
+    }
+
+    void put(byte[] bytes, int length) throws IOException {
+      check();
+      try {
+        full.put(ByteBuffer.wrap(bytes, 0, length));
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+    }
+
+    byte[] take() throws IOException {
+      try {
+        return empty.take();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+    }
+
+    /** Wait for everything to be compressed and written. */
+    void finish() throws IOException {
+      try {
+        full.put(END);
+        join();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      check();
+    }
+
+    void check() throws IOException {
+      if (error != null) {
+        throw error;
+      }
+    }
+  }
+}
@@ -24,15 +24,14 @@
 package processing.data;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
 
 import javax.xml.parsers.*;
 
 import org.w3c.dom.*;
 import org.xml.sax.*;
 
-import javax.xml.transform.*;
-import javax.xml.transform.dom.*;
-import javax.xml.transform.stream.*;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathFactory;
@@ -69,6 +68,14 @@ public class XML implements Serializable {
   /** Child elements, once loaded. */
   protected XML[] children;
 
+  /**
+   * Children by name, made the first time a child is found by name, and
+   * thrown out whenever a child is added, removed, or renamed.
+   */
+  protected HashMap<String, XML[]> childIndex;
+
+  static final XML[] NO_CHILDREN = new XML[0];
+
   /**
    * @nowebref
    */
@@ -276,6 +283,39 @@ public class XML implements Serializable {
   }
 
 
+  /**
+   * Reads only the elements that match a path like "osm/node", one at a
+   * time, for files that are too large to load all at once. The path
+   * starts at the root element, and "*" matches any name.
+   *
+   * @nowebref
+   * @see XMLStream
+   */
+  static public XMLStream stream(InputStream input, String path) {
+    return new XMLStream(input, path);
+  }
+
+
+  /**
+   * @nowebref
+   */
+  static public XMLStream stream(Reader reader, String path) {
+    return new XMLStream(reader, path);
+  }
+
+
+  /**
+   * @nowebref
+   */
+  static public XMLStream stream(File file, String path) {
+    InputStream input = PApplet.createInput(file);
+    if (input == null) {
+      throw new IllegalArgumentException("Could not read " + file);
+    }
+    return new XMLStream(input, path);
+  }
+
+
 //  protected boolean save(OutputStream output) {
 //    return write(PApplet.createWriter(output));
 //  }
@@ -298,9 +338,13 @@ public class XML implements Serializable {
   // Sends this object and its kids to a Writer with an indent of 2 spaces,
   // including the declaration at the top so that the output will be valid XML.
   public boolean write(PrintWriter output) {
-    output.print(format(2));
+    try {
+      write(output, 2);
+    } catch (IOException e) {
+      throw new RuntimeException(e);  // PrintWriter doesn't throw
+    }
     output.flush();
-    return true;
+    return !output.checkError();
   }
 
 
@@ -343,6 +387,9 @@ public class XML implements Serializable {
   public void setName(String newName) {
     Document document = node.getOwnerDocument();
     node = document.renameNode(node, null, newName);
+    if (parent != null) {
+      parent.childIndex = null;
+    }
 //    name = node.getNodeName();
   }
 
@@ -374,6 +421,36 @@ public class XML implements Serializable {
   }
 
 
+  /**
+   * Children with this name, in order, using the index. The array is
+   * shared, so make a copy before handing it out.
+   */
+  protected XML[] getIndexedChildren(String name) {
+    if (childIndex == null) {
+      checkChildren();
+      HashMap<String, ArrayList<XML>> lists = new HashMap<>();
+      for (XML kid : children) {
+        String kidName = kid.getName();
+        if (kidName != null) {
+          ArrayList<XML> list = lists.get(kidName);
+          if (list == null) {
+            list = new ArrayList<>();
+            lists.put(kidName, list);
+          }
+          list.add(kid);
+        }
+      }
+      HashMap<String, XML[]> index = new HashMap<>();
+      for (String kidName : lists.keySet()) {
+        index.put(kidName, lists.get(kidName).toArray(NO_CHILDREN));
+      }
+      childIndex = index;
+    }
+    XML[] matches = childIndex.get(name);
+    return (matches != null) ? matches : NO_CHILDREN;
+  }
+
+
   /**
    * Returns the number of children.
    *
@@ -476,15 +553,8 @@ public class XML implements Serializable {
     if (name.indexOf('/') != -1) {
       return getChildRecursive(PApplet.split(name, '/'), 0);
     }
-    int childCount = getChildCount();
-    for (int i = 0; i < childCount; i++) {
-      XML kid = getChild(i);
-      String kidName = kid.getName();
-      if (kidName != null && kidName.equals(name)) {
-        return kid;
-      }
-    }
-    return null;
+    XML[] matches = getIndexedChildren(name);
+    return (matches.length > 0) ? matches[0] : null;
   }
 
 
@@ -506,16 +576,12 @@ public class XML implements Serializable {
         return kid.getChildRecursive(items, offset+1);
       }
     }
-    int childCount = getChildCount();
-    for (int i = 0; i < childCount; i++) {
-      XML kid = getChild(i);
-      String kidName = kid.getName();
-      if (kidName != null && kidName.equals(items[offset])) {
-        if (offset == items.length-1) {
-          return kid;
-        } else {
-          return kid.getChildRecursive(items, offset+1);
-        }
+    XML[] matches = getIndexedChildren(items[offset]);
+    if (matches.length > 0) {
+      if (offset == items.length-1) {
+        return matches[0];
+      } else {
+        return matches[0].getChildRecursive(items, offset+1);
       }
     }
     return null;
@@ -542,17 +608,7 @@ public class XML implements Serializable {
     if (Character.isDigit(name.charAt(0))) {
       return new XML[] { getChild(Integer.parseInt(name)) };
     }
-    int childCount = getChildCount();
-    XML[] matches = new XML[childCount];
-    int matchCount = 0;
-    for (int i = 0; i < childCount; i++) {
-      XML kid = getChild(i);
-      String kidName = kid.getName();
-      if (kidName != null && kidName.equals(name)) {
-        matches[matchCount++] = kid;
-      }
-    }
-    return (XML[]) PApplet.subset(matches, 0, matchCount);
+    return getIndexedChildren(name).clone();
   }
 
 
@@ -561,12 +617,13 @@ public class XML implements Serializable {
       return getChildren(items[offset]);
     }
     XML[] matches = getChildren(items[offset]);
-    XML[] outgoing = new XML[0];
+    ArrayList<XML> outgoing = new ArrayList<>();
     for (int i = 0; i < matches.length; i++) {
-      XML[] kidMatches = matches[i].getChildrenRecursive(items, offset+1);
-      outgoing = (XML[]) PApplet.concat(outgoing, kidMatches);
+      for (XML kid : matches[i].getChildrenRecursive(items, offset+1)) {
+        outgoing.add(kid);
+      }
     }
-    return outgoing;
+    return outgoing.toArray(NO_CHILDREN);
   }
 
 
@@ -601,6 +658,7 @@ public class XML implements Serializable {
     if (children != null) {
       children = (XML[]) PApplet.concat(children, new XML[] { newbie });
     }
+    childIndex = null;
     return newbie;
   }
 
@@ -616,6 +674,7 @@ public class XML implements Serializable {
   public void removeChild(XML kid) {
     node.removeChild(kid.node);
     children = null;  // TODO not efficient
+    childIndex = null;
   }
 
   /**
@@ -639,12 +698,25 @@ public class XML implements Serializable {
         Node emptyTextNode = emptyTextNodes.item(i);
         emptyTextNode.getParentNode().removeChild(emptyTextNode);
       }
+      forgetChildren();
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
   }
 
 
+  /** Throw out the children (and theirs) after the DOM has changed. */
+  private void forgetChildren() {
+    if (children != null) {
+      for (XML kid : children) {
+        kid.forgetChildren();
+      }
+    }
+    children = null;
+    childIndex = null;
+  }
+
+
 //  /** Remove whitespace nodes. */
 //  public void trim() {
 //////    public static boolean isWhitespace(XML xml) {
@@ -1068,132 +1140,191 @@ public class XML implements Serializable {
    * @see XML#toString()
    */
   public String format(int indent) {
+    StringWriter writer = new StringWriter();
     try {
-      // entities = doctype.getEntities()
-      boolean useIndentAmount = false;
-      TransformerFactory factory = TransformerFactory.newInstance();
-      if (indent != -1) {
-        try {
-          factory.setAttribute("indent-number", indent);
-        } catch (IllegalArgumentException e) {
-          useIndentAmount = true;
-        }
-      }
-      Transformer transformer = factory.newTransformer();
+      write(writer, indent);
+    } catch (IOException e) {
+      throw new RuntimeException(e);  // not from a StringWriter
+    }
+    return writer.toString();
+  }
 
-      // Add the XML declaration at the top if this node is the root and we're
-      // not writing to a single line (indent = -1 means single line).
-      if (indent == -1 || parent == null) {
-        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-      } else {
-        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
-      }
 
-//      transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, "sample.dtd");
+  /**
+   * Writes this element and everything inside it, with the same layout as
+   * format(indent), straight to the Writer rather than building a String.
+   * Elements that contain other elements have one child per line, while
+   * elements with only text keep it on the same line, as written. Text
+   * that's only whitespace between elements is left out, since it was
+   * only there for the old indents.
+   *
+   * @nowebref
+   * @param indent -1 for a single line (and no declaration), >= 0 for indents and
+   *               newlines
+   */
+  public void write(Writer output, int indent) throws IOException {
+    String sep = System.getProperty("line.separator");
+    if (indent != -1) {
+      output.write(DECLARATION);
+      output.write(sep);
+    }
+    writeNode(output, node, indent, 0, sep);
+    if (indent != -1) {
+      output.write(sep);
+    }
+  }
 
-      transformer.setOutputProperty(OutputKeys.METHOD, "xml");
 
-//      transformer.setOutputProperty(OutputKeys.CDATA_SECTION_ELEMENTS, "yes");  // huh?
+  static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
 
-//      transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC,
-//          "-//W3C//DTD XHTML 1.0 Transitional//EN");
-//      transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM,
-//          "http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd");
 
-      // For Android, because (at least 2.3.3) doesn't like indent-number
-      if (useIndentAmount) {
-        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", String.valueOf(indent));
+  static private void writeNode(Writer output, Node node, int indent, int level, String sep) throws IOException {
+    switch (node.getNodeType()) {
+    case Node.ELEMENT_NODE:
+      String name = node.getNodeName();
+      output.write('<');
+      output.write(name);
+      NamedNodeMap attrs = node.getAttributes();
+      for (int i = 0; i < attrs.getLength(); i++) {
+        Node attr = attrs.item(i);
+        if (declared(node, attr, level)) {
+          continue;
+        }
+        output.write(' ');
+        output.write(attr.getNodeName());
+        output.write("=\"");
+        writeEscaped(output, attr.getNodeValue(), true);
+        output.write('"');
       }
-
-//      transformer.setOutputProperty(OutputKeys.ENCODING,"ISO-8859-1");
-//      transformer.setOutputProperty(OutputKeys.ENCODING,"UTF8");
-      transformer.setOutputProperty(OutputKeys.ENCODING,"UTF-8");
-//      transformer.setOutputProperty(OutputKeys.CDATA_SECTION_ELEMENTS
-
-      // Always indent, otherwise the XML declaration will just be jammed
-      // onto the first line with the XML code as well.
-      transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-
-//      Properties p = transformer.getOutputProperties();
-//      for (Object key : p.keySet()) {
-//        System.out.println(key + " -> " + p.get(key));
-//      }
-
-      // If you smell something, that's because this code stinks. No matter
-      // the settings of the Transformer object, if the XML document already
-      // has whitespace elements, it won't bother re-indenting/re-formatting.
-      // So instead, transform the data once into a single line string.
-      // If indent is -1, then we're done. Otherwise re-run and the settings
-      // of the factory will kick in. If you know a better way to do this,
-      // please contribute. I've wasted too much of my Sunday on it. But at
-      // least the Giants are getting blown out by the Falcons.
-
-      final String decl = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
-      final String sep = System.getProperty("line.separator");
-
-      StringWriter tempWriter = new StringWriter();
-      StreamResult tempResult = new StreamResult(tempWriter);
-      transformer.transform(new DOMSource(node), tempResult);
-      String[] tempLines = PApplet.split(tempWriter.toString(), sep);
-//      PApplet.println(tempLines);
-      if (tempLines[0].startsWith("<?xml")) {
-        // Remove XML declaration from the top before slamming into one line
-        int declEnd = tempLines[0].indexOf("?>") + 2;
-        //if (tempLines[0].length() == decl.length()) {
-        if (tempLines[0].length() == declEnd) {
-          // If it's all the XML declaration, remove it
-//          PApplet.println("removing first line");
-          tempLines = PApplet.subset(tempLines, 1);
-        } else {
-//          PApplet.println("removing part of first line");
-          // If the first node has been moved to this line, be more careful
-          //tempLines[0] = tempLines[0].substring(decl.length());
-          tempLines[0] = tempLines[0].substring(declEnd);
+      Node first = node.getFirstChild();
+      if (first == null) {
+        output.write("/>");
+        return;
+      }
+      output.write('>');
+      boolean block = false;
+      for (Node kid = first; kid != null; kid = kid.getNextSibling()) {
+        short type = kid.getNodeType();
+        if (type != Node.TEXT_NODE && type != Node.CDATA_SECTION_NODE &&
+            type != Node.ENTITY_REFERENCE_NODE) {
+          block = true;
+          break;
+        }
+      }
+      if (block) {
+        for (Node kid = first; kid != null; kid = kid.getNextSibling()) {
+          if (kid.getNodeType() == Node.TEXT_NODE) {
+            String text = kid.getNodeValue().trim();
+            if (text.length() != 0) {
+              newline(output, indent, level + 1, sep);
+              writeEscaped(output, text, false);
+            }
+          } else {
+            newline(output, indent, level + 1, sep);
+            writeNode(output, kid, indent, level + 1, sep);
+          }
+        }
+        newline(output, indent, level, sep);
+      } else {
+        for (Node kid = first; kid != null; kid = kid.getNextSibling()) {
+          writeNode(output, kid, indent, level + 1, sep);
         }
       }
-      String singleLine = PApplet.join(PApplet.trim(tempLines), "");
-      if (indent == -1) {
-        return singleLine;
+      output.write("</");
+      output.write(name);
+      output.write('>');
+      break;
+
+    case Node.TEXT_NODE:
+      writeEscaped(output, node.getNodeValue(), false);
+      break;
+
+    case Node.CDATA_SECTION_NODE:
+      output.write("<![CDATA[");
+      output.write(node.getNodeValue());
+      output.write("]]>");
+      break;
+
+    case Node.COMMENT_NODE:
+      output.write("<!--");
+      output.write(node.getNodeValue());
+      output.write("-->");
+      break;
+
+    case Node.PROCESSING_INSTRUCTION_NODE:
+      output.write("<?");
+      output.write(node.getNodeName());
+      String data = node.getNodeValue();
+      if (data != null && data.length() != 0) {
+        output.write(' ');
+        output.write(data);
       }
+      output.write("?>");
+      break;
+
+    case Node.ENTITY_REFERENCE_NODE:
+      output.write('&');
+      output.write(node.getNodeName());
+      output.write(';');
+      break;
+    }
+  }
+
 
-      // Might just be whitespace, which won't be valid XML for parsing below.
-      // https://github.com/processing/processing/issues/1796
-      // Since indent is not -1, that means they want valid XML,
-      // so we'll give them the single line plus the decl... Lame? sure.
-      if (singleLine.trim().length() == 0) {
-        // You want whitespace? I've got your whitespace right here.
-        return decl + sep + singleLine;
+  /**
+   * True if this is a namespace (xmlns) attribute that an element already
+   * written around this one declares the same way. XML(XML parent, Node)
+   * copies these to each child that's used, but they're only needed once.
+   */
+  static private boolean declared(Node node, Node attr, int level) {
+    String name = attr.getNodeName();
+    if (!name.equals("xmlns") && !name.startsWith("xmlns:")) {
+      return false;
+    }
+    Node ancestor = node.getParentNode();
+    for (int i = 0; i < level && ancestor instanceof Element; i++) {
+      Element element = (Element) ancestor;
+      if (element.hasAttribute(name)) {
+        return element.getAttribute(name).equals(attr.getNodeValue());
       }
+      ancestor = ancestor.getParentNode();
+    }
+    return false;
+  }
 
-      // Since the indent is not -1, bring back the XML declaration
-      //transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
-
-      StringWriter stringWriter = new StringWriter();
-      StreamResult xmlOutput = new StreamResult(stringWriter);
-//      DOMSource source = new DOMSource(node);
-      Source source = new StreamSource(new StringReader(singleLine));
-      transformer.transform(source, xmlOutput);
-      String outgoing = stringWriter.toString();
-
-      // Add the XML declaration to the top if it's not there already
-      if (outgoing.startsWith(decl)) {
-        int declen = decl.length();
-        int seplen = sep.length();
-        if (outgoing.length() > declen + seplen &&
-            !outgoing.substring(declen, declen + seplen).equals(sep)) {
-          // make sure there's a line break between the XML decl and the code
-          return outgoing.substring(0, decl.length()) +
-            sep + outgoing.substring(decl.length());
-        }
-        return outgoing;
-      } else {
-        return decl + sep + outgoing;
+
+  static private void newline(Writer output, int indent, int level, String sep) throws IOException {
+    if (indent != -1) {
+      output.write(sep);
+      for (int i = indent * level; i > 0; i--) {
+        output.write(' ');
       }
+    }
+  }
 
-    } catch (Exception e) {
-      e.printStackTrace();
+
+  static private void writeEscaped(Writer output, String s, boolean attribute) throws IOException {
+    int start = 0;
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      String entity;
+      switch (s.charAt(i)) {
+      case '&': entity = "&amp;"; break;
+      case '<': entity = "&lt;"; break;
+      case '>': entity = "&gt;"; break;
+      case '\r': entity = "&#13;"; break;
+      case '"': entity = attribute ? "&quot;" : null; break;
+      case '\t': entity = attribute ? "&#9;" : null; break;
+      case '\n': entity = attribute ? "&#10;" : null; break;
+      default: entity = null;
+      }
+      if (entity != null) {
+        output.write(s, start, i - start);
+        output.write(entity);
+        start = i + 1;
+      }
     }
-    return null;
+    output.write(s, start, length - start);
   }
 
 
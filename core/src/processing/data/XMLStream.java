@@ -0,0 +1,276 @@
+package processing.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import processing.core.PApplet;
+
+
+/**
+ * Reads the elements of an XML file that match a path, one at a time,
+ * for files that are too large to load with loadXML(). Everything that
+ * doesn't match the path is passed over without building anything, so
+ * a file of any size can be read:
+ * <pre>
+ * for (XML node : streamXML("extract.osm", "osm/node")) {
+ *   float lat = node.getFloat("lat");
+ *   float lon = node.getFloat("lon");
+ *   // ...
+ * }
+ * </pre>
+ * The path starts at the root element, with element names separated by
+ * slashes, and "*" matches an element with any name. Each match comes
+ * back with its attributes, content, and children, so getString(),
+ * getFloat(), getChildren() and the rest all work as usual.
+ * <p/>
+ * The same XML object is reused for every match, so it only holds one
+ * element at a time. To keep an element after moving to the next one,
+ * add it to another XML object with addChild(), which makes a copy.
+ * <p/>
+ * The file is closed after the last match, or use close() to stop early.
+ *
+ * @see XML#stream(InputStream, String)
+ */
+public class XMLStream implements Iterable<XML>, Closeable {
+  XMLStreamReader reader;
+  Closeable source;
+
+  String[] path;
+  int depth;  // how many elements of the path are open
+
+  Document document;
+  XML view = new XML();
+  boolean peeked;  // view holds a match that hasn't been returned yet
+  boolean finished;
+
+
+  public XMLStream(InputStream input, String path) {
+    this.path = parsePath(path);
+    source = input;
+    try {
+      reader = createFactory().createXMLStreamReader(input);
+    } catch (XMLStreamException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  public XMLStream(Reader input, String path) {
+    this.path = parsePath(path);
+    source = input;
+    try {
+      reader = createFactory().createXMLStreamReader(input);
+    } catch (XMLStreamException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  static private String[] parsePath(String path) {
+    if (path.length() == 0) {
+      throw new IllegalArgumentException("The path for stream() cannot be empty");
+    }
+    if (path.charAt(0) == '/') {
+      throw new IllegalArgumentException("stream() should not begin with a slash");
+    }
+    return PApplet.split(path, '/');
+  }
+
+
+  static private XMLInputFactory createFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    return factory;
+  }
+
+
+  /** True if there's another element that matches the path. */
+  public boolean hasNext() {
+    if (!peeked && !finished) {
+      try {
+        Element element = advance();
+        if (element != null) {
+          view.node = element;
+          view.children = null;
+          view.childIndex = null;
+          peeked = true;
+        } else {
+          close();
+        }
+      } catch (XMLStreamException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return peeked;
+  }
+
+
+  /**
+   * The next element that matches the path. This is the same object
+   * every time, holding a different element.
+   */
+  public XML next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    peeked = false;
+    return view;
+  }
+
+
+  @Override
+  public Iterator<XML> iterator() {
+    return new Iterator<XML>() {
+      @Override
+      public boolean hasNext() {
+        return XMLStream.this.hasNext();
+      }
+
+      @Override
+      public XML next() {
+        return XMLStream.this.next();
+      }
+    };
+  }
+
+
+  @Override
+  public void close() {
+    if (!finished) {
+      finished = true;
+      peeked = false;
+      try {
+        reader.close();
+        source.close();
+      } catch (XMLStreamException | IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Read up to the next match, or return null at the end of the file. */
+  private Element advance() throws XMLStreamException {
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        if (depth < path.length && matches(path[depth])) {
+          if (depth == path.length - 1) {
+            return build();
+          }
+          depth++;
+        } else {
+          skip();
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+    return null;
+  }
+
+
+  private boolean matches(String name) {
+    return name.equals("*") || name.equals(qualifiedName());
+  }
+
+
+  /** Pass over the element that just started, and everything inside. */
+  private void skip() throws XMLStreamException {
+    int level = 1;
+    while (level > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        level++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        level--;
+      }
+    }
+  }
+
+
+  /**
+   * Make a DOM element from the element that just started, with its
+   * attributes, text, and children, the same as loadXML() would have.
+   * It's not part of any tree, so it's gone once the next one is read.
+   */
+  private Element build() throws XMLStreamException {
+    if (document == null) {
+      try {
+        document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+      } catch (ParserConfigurationException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    Element element = createElement();
+    Node current = element;
+    int level = 1;
+    while (level > 0) {
+      switch (reader.next()) {
+      case XMLStreamConstants.START_ELEMENT:
+        Element kid = createElement();
+        current.appendChild(kid);
+        current = kid;
+        level++;
+        break;
+      case XMLStreamConstants.END_ELEMENT:
+        current = current.getParentNode();
+        level--;
+        break;
+      case XMLStreamConstants.CHARACTERS:
+      case XMLStreamConstants.CDATA:
+      case XMLStreamConstants.SPACE:
+        current.appendChild(document.createTextNode(reader.getText()));
+        break;
+      }
+    }
+    return element;
+  }
+
+
+  private Element createElement() {
+    Element element = document.createElement(qualifiedName());
+    int namespaceCount = reader.getNamespaceCount();
+    for (int i = 0; i < namespaceCount; i++) {
+      String prefix = reader.getNamespacePrefix(i);
+      String name = (prefix == null || prefix.isEmpty()) ? "xmlns" : "xmlns:" + prefix;
+      element.setAttribute(name, reader.getNamespaceURI(i));
+    }
+    int attributeCount = reader.getAttributeCount();
+    for (int i = 0; i < attributeCount; i++) {
+      String prefix = reader.getAttributePrefix(i);
+      String local = reader.getAttributeLocalName(i);
+      String name = (prefix == null || prefix.isEmpty()) ? local : prefix + ":" + local;
+      element.setAttribute(name, reader.getAttributeValue(i));
+    }
+    return element;
+  }
+
+
+  /** Name of the current element as it appears in the file. */
+  private String qualifiedName() {
+    String prefix = reader.getPrefix();
+    String local = reader.getLocalName();
+    return (prefix == null || prefix.isEmpty()) ? local : prefix + ":" + local;
+  }
+}
@@ -0,0 +1,156 @@
+package processing.data;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Random;
+
+
+/**
+ * Word counts with IntDict, compared with a HashMap&lt;String, Integer&gt;
+ * (what IntDict used internally for its lookups before DictIndex), and
+ * counts by device id with IntIntDict, compared with a
+ * HashMap&lt;Integer, Integer&gt;.
+ * Not a unit test, run it directly:
+ * <pre>
+ * java -cp ... processing.data.DictBenchmark [tokens]
+ * </pre>
+ * Counts every token, then removes half of the distinct words one at a
+ * time. Reports tokens per second for the counting, the time to remove,
+ * and bytes allocated per token.
+ */
+public class DictBenchmark {
+
+  public static void main(String[] args) {
+    int tokenCount = (args.length > 0) ? Integer.parseInt(args[0]) : 5000000;
+    String[] tokens = createTokens(tokenCount, 200000);
+    System.out.println(tokenCount + " tokens");
+
+    for (int round = 0; round < 5; round++) {
+      runDict(tokens);
+      runHashMap(tokens);
+    }
+
+    int[] devices = createDevices(tokenCount, 100000);
+    for (int round = 0; round < 5; round++) {
+      runIntIntDict(devices);
+      runIntegerMap(devices);
+    }
+  }
+
+
+  /** Device ids spread out over the int range, some busier than others. */
+  static int[] createDevices(int count, int deviceCount) {
+    Random random = new Random(0);
+    int[] ids = new int[deviceCount];
+    for (int i = 0; i < deviceCount; i++) {
+      ids[i] = random.nextInt();
+    }
+    int[] updates = new int[count];
+    for (int i = 0; i < count; i++) {
+      updates[i] = ids[(int) Math.pow(deviceCount, random.nextDouble()) - 1];
+    }
+    return updates;
+  }
+
+
+  /** Words with a Zipf-like spread, each token its own String like split() makes. */
+  static String[] createTokens(int count, int vocabulary) {
+    Random random = new Random(0);
+    String[] tokens = new String[count];
+    for (int i = 0; i < count; i++) {
+      int word = (int) Math.pow(vocabulary, random.nextDouble()) - 1;
+      tokens[i] = new String("word" + word);
+    }
+    return tokens;
+  }
+
+
+  static void runDict(String[] tokens) {
+    long bytesBefore = allocatedBytes();
+    long t = System.nanoTime();
+    IntDict dict = new IntDict();
+    for (String token : tokens) {
+      dict.increment(token);
+    }
+    long counted = System.nanoTime();
+    String[] words = dict.keyArray();
+    for (int i = 0; i < words.length; i += 2) {
+      dict.remove(words[i]);
+    }
+    long elapsed = System.nanoTime();
+    report("IntDict", tokens.length, counted - t, elapsed - counted,
+           allocatedBytes() - bytesBefore, bytesBefore, dict.size());
+  }
+
+
+  static void runHashMap(String[] tokens) {
+    long bytesBefore = allocatedBytes();
+    long t = System.nanoTime();
+    HashMap<String, Integer> map = new HashMap<>();
+    for (String token : tokens) {
+      map.merge(token, 1, Integer::sum);
+    }
+    long counted = System.nanoTime();
+    String[] words = map.keySet().toArray(new String[0]);
+    for (int i = 0; i < words.length; i += 2) {
+      map.remove(words[i]);
+    }
+    long elapsed = System.nanoTime();
+    report("HashMap", tokens.length, counted - t, elapsed - counted,
+           allocatedBytes() - bytesBefore, bytesBefore, map.size());
+  }
+
+
+  static void runIntIntDict(int[] updates) {
+    long bytesBefore = allocatedBytes();
+    long t = System.nanoTime();
+    IntIntDict dict = new IntIntDict();
+    for (int id : updates) {
+      dict.increment(id);
+    }
+    long counted = System.nanoTime();
+    int[] ids = dict.keyArray();
+    for (int i = 0; i < ids.length; i += 2) {
+      dict.remove(ids[i]);
+    }
+    long elapsed = System.nanoTime();
+    report("IntIntDict", updates.length, counted - t, elapsed - counted,
+           allocatedBytes() - bytesBefore, bytesBefore, dict.size());
+  }
+
+
+  static void runIntegerMap(int[] updates) {
+    long bytesBefore = allocatedBytes();
+    long t = System.nanoTime();
+    HashMap<Integer, Integer> map = new HashMap<>();
+    for (int id : updates) {
+      map.merge(id, 1, Integer::sum);
+    }
+    long counted = System.nanoTime();
+    Integer[] ids = map.keySet().toArray(new Integer[0]);
+    for (int i = 0; i < ids.length; i += 2) {
+      map.remove(ids[i]);
+    }
+    long elapsed = System.nanoTime();
+    report("HashMap   ", updates.length, counted - t, elapsed - counted,
+           allocatedBytes() - bytesBefore, bytesBefore, map.size());
+  }
+
+
+  static void report(String name, int tokens, long countNanos, long removeNanos,
+                     long bytes, long bytesBefore, int remaining) {
+    String perToken = (bytesBefore < 0) ? "n/a" : String.valueOf(bytes / tokens);
+    System.out.format("%s  %,12d tokens/sec  remove %6.1f ms  %4s bytes/token  (%d left)%n",
+                      name, (long) (tokens / (countNanos / 1e9)),
+                      removeNanos / 1e6, perToken, remaining);
+  }
+
+
+  static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+    }
+    return -1;
+  }
+}
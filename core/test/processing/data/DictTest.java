@@ -0,0 +1,312 @@
+package processing.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DictTest {
+
+    @Test
+    public void removeKeepsOrder() {
+        IntDict dict = new IntDict();
+        for (int i = 0; i < 100; i++) {
+            dict.set("k" + i, i);
+        }
+        for (int i = 0; i < 100; i += 3) {
+            Assert.assertEquals(i, dict.remove("k" + i));
+        }
+        Assert.assertEquals(66, dict.size());
+        Assert.assertFalse(dict.hasKey("k0"));
+        dict.increment("k1");
+        Assert.assertEquals(2, dict.get("k1"));
+
+        Iterator<String> it = dict.keyIterator();
+        while (it.hasNext()) {
+            if (it.next().endsWith("5")) {
+                it.remove();
+            }
+        }
+        int previous = -1;
+        for (int i = 0; i < dict.size(); i++) {
+            int number = Integer.parseInt(dict.key(i).substring(1));
+            Assert.assertTrue(number > previous);
+            Assert.assertTrue(number % 3 != 0 && number % 10 != 5);
+            Assert.assertEquals(i, dict.index(dict.key(i)));
+            previous = number;
+        }
+
+        dict.set("new", -1);
+        Assert.assertEquals("new", dict.key(dict.size() - 1));
+        dict.sortValues();
+        Assert.assertEquals("new", dict.key(0));
+        Assert.assertEquals(0, dict.index("new"));
+        dict.swap(0, 1);
+        Assert.assertEquals(1, dict.index("new"));
+        Assert.assertEquals(-1, dict.get("new"));
+    }
+
+    @Test
+    public void stringDictRemove() {
+        StringDict dict = new StringDict(new String[][] {
+            { "a", "1" }, { "b", null }, { "c", "3" }
+        });
+        Assert.assertNull(dict.remove("b"));
+        Assert.assertEquals(2, dict.size());
+        Assert.assertEquals("c", dict.key(1));
+        Assert.assertEquals("{ \"a\": \"1\", \"c\": \"3\" }", dict.toJSON());
+    }
+
+    @Test
+    public void tallyNulls() {
+        StringList list = new StringList("a", null, "a");
+        IntDict tally = list.getTally();
+        Assert.assertEquals(2, tally.size());
+        Assert.assertEquals(2, tally.get("a"));
+        Assert.assertEquals(1, tally.get(null));
+
+        list.compress();
+        Assert.assertEquals(tally.toJSON(), list.getTally().toJSON());
+
+        // a null key can be removed, without confusing it with a gap
+        tally.increment("b");
+        Assert.assertEquals(1, tally.remove(null));
+        Assert.assertFalse(tally.hasKey(null));
+        Assert.assertEquals("b", tally.key(1));
+        tally.increment((String) null);
+        Assert.assertEquals(2, tally.index(null));
+
+        Table table = new Table();
+        table.addColumn("name", Table.STRING);
+        table.addRow().setString(0, "x");
+        table.addRow();
+        Assert.assertArrayEquals(new String[] { "x", null }, table.getUnique(0));
+        table.compress();
+        Assert.assertArrayEquals(new String[] { "x", null }, table.getUnique(0));
+    }
+
+    @Test
+    public void intIntDict() {
+        IntIntDict dict = new IntIntDict();
+        for (int i = 0; i < 1000; i++) {
+            dict.increment(i % 100 * 7919);
+        }
+        Assert.assertEquals(100, dict.size());
+        Assert.assertEquals(10, dict.get(7919));
+        Assert.assertEquals(-1, dict.get(1, -1));
+        for (int i = 0; i < 100; i += 2) {
+            Assert.assertEquals(10, dict.remove(i * 7919));
+        }
+        dict.add(7919, 5);
+        Assert.assertEquals(50, dict.size());
+        Assert.assertEquals(505, dict.sum());
+        Assert.assertEquals(7919, dict.maxKey());
+
+        dict.sortValuesReverse();
+        Assert.assertEquals(7919, dict.key(0));
+        dict.sortKeysReverse();
+        Assert.assertEquals(99 * 7919, dict.key(0));
+        Assert.assertEquals(0, dict.index(99 * 7919));
+        Assert.assertEquals(7919, dict.keyArray()[49]);
+
+        Iterator<Integer> it = dict.keyIterator();
+        while (it.hasNext()) {
+            if (it.next() % 3 == 0) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(33, dict.size());
+        Assert.assertFalse(dict.hasKey(99 * 7919));
+        Assert.assertEquals(97 * 7919, dict.key(0));
+        Assert.assertEquals(1, dict.index(95 * 7919));
+        dict.swap(0, 1);
+        Assert.assertEquals(0, dict.index(95 * 7919));
+        dict.setIndex(1, -1, 2);
+        Assert.assertFalse(dict.hasKey(97 * 7919));
+        Assert.assertEquals(2, dict.get(-1));
+        Assert.assertEquals(1, dict.index(-1));
+
+        LongDoubleDict percent = new LongIntDict(new Object[][] {
+            { 1L << 40, 1 }, { 2L << 40, 3 }
+        }).getPercent();
+        Assert.assertEquals(0.75, percent.get(2L << 40), 0);
+    }
+
+    @Test
+    public void intFloatDict() {
+        IntFloatDict dict = new IntFloatDict();
+        for (int i = 0; i < 10; i++) {
+            dict.set(i * 100, i % 3);
+        }
+        dict.set(-5, Float.NaN);
+        Assert.assertEquals(2, dict.remove(500), 0);
+        Assert.assertEquals(0, dict.remove(900), 0);
+        Assert.assertEquals(9, dict.size());
+        Assert.assertEquals(6, dict.index(700));  // after the gap is closed
+
+        // ties go by key (reversed along with the values), NaN is always last
+        dict.sortValues();
+        Assert.assertArrayEquals(new int[] { 0, 300, 600, 100, 400, 700, 200, 800, -5 },
+                                 dict.keyArray());
+        dict.sortValuesReverse();
+        Assert.assertArrayEquals(new int[] { 800, 200, 700, 400, 100, 600, 300, 0, -5 },
+                                 dict.keyArray());
+        Assert.assertEquals(800, dict.maxKey());
+        Assert.assertEquals(600, dict.minKey());
+        Assert.assertEquals(8, dict.index(-5));
+
+        Iterator<IntFloatDict.Entry> it = dict.entryIterator();
+        while (it.hasNext()) {
+            if (it.next().value == 1) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(6, dict.size());
+        Assert.assertEquals(3, dict.index(300));
+        dict.swap(0, 5);
+        Assert.assertEquals(800, dict.key(5));
+        Assert.assertEquals(2, dict.get(800), 0);
+        dict.setIndex(0, 1000, 4);
+        Assert.assertFalse(dict.hasKey(-5));
+        Assert.assertEquals(1000, dict.maxKey());
+        dict.sortKeys();
+        Assert.assertArrayEquals(new int[] { 0, 200, 300, 600, 800, 1000 }, dict.keyArray());
+
+        for (int key : dict.keyArray()) {
+            dict.remove(key);
+        }
+        Assert.assertEquals(0, dict.size());
+        try {
+            dict.minKey();
+            Assert.fail("minKey() on an empty IntFloatDict");
+        } catch (RuntimeException expected) { }
+        dict.set(1, Float.NaN);
+        try {
+            dict.maxKey();
+            Assert.fail("maxKey() with only NaN values");
+        } catch (RuntimeException expected) { }
+        Assert.assertTrue(Float.isNaN(dict.maxValue()));
+    }
+
+    @Test
+    public void longIntDict() {
+        LongIntDict dict = new LongIntDict();
+        for (int i = 0; i < 10; i++) {
+            dict.set((long) i << 40, i % 3);
+        }
+        Assert.assertEquals(2, dict.remove(5L << 40));
+        Assert.assertEquals(0, dict.remove(9L << 40));
+        Assert.assertEquals(8, dict.size());
+        Assert.assertEquals(6, dict.index(7L << 40));
+        Assert.assertEquals(7L << 40, dict.key(6));
+
+        dict.sortValues();
+        Assert.assertArrayEquals(new long[] { 0, 3L << 40, 6L << 40, 1L << 40,
+                                              4L << 40, 7L << 40, 2L << 40, 8L << 40 },
+                                 dict.keyArray());
+        dict.sortValuesReverse();
+        Assert.assertEquals(8L << 40, dict.key(0));
+        Assert.assertEquals(0, dict.key(7));
+        Assert.assertEquals(8L << 40, dict.maxKey());
+        Assert.assertEquals(6L << 40, dict.minKey());
+
+        Iterator<Long> it = dict.keyIterator();
+        while (it.hasNext()) {
+            if (it.next() >> 40 < 3) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(5, dict.size());
+        Assert.assertEquals(0, dict.index(8L << 40));
+        dict.swap(0, 4);
+        Assert.assertEquals(4, dict.index(8L << 40));
+        dict.setIndex(4, -1, 7);
+        Assert.assertFalse(dict.hasKey(8L << 40));
+        Assert.assertEquals(-1, dict.maxKey());
+        dict.sortKeysReverse();
+        Assert.assertEquals(-1, dict.key(4));
+        Assert.assertEquals(4, dict.index(-1));
+
+        for (long key : dict.keyArray()) {
+            dict.remove(key);
+        }
+        try {
+            dict.maxKey();
+            Assert.fail("maxKey() on an empty LongIntDict");
+        } catch (RuntimeException expected) { }
+    }
+
+    @Test
+    public void longDoubleDict() {
+        LongDoubleDict dict = new LongDoubleDict();
+        for (int i = 0; i < 10; i++) {
+            dict.set(i, i % 3 * 0.5);
+        }
+        dict.set(-1, Double.NaN);
+        Assert.assertEquals(0.5, dict.remove(4), 0);
+        Assert.assertTrue(Double.isNaN(dict.remove(-1)));
+        Assert.assertEquals(9, dict.size());
+        Assert.assertEquals(4, dict.index(5));
+        dict.set(-1, Double.NaN);
+        Assert.assertEquals(9, dict.index(-1));
+
+        dict.sortValues();
+        Assert.assertArrayEquals(new long[] { 0, 3, 6, 9, 1, 7, 2, 5, 8, -1 },
+                                 dict.keyArray());
+        dict.sortValuesReverse();
+        Assert.assertArrayEquals(new long[] { 8, 5, 2, 7, 1, 9, 6, 3, 0, -1 },
+                                 dict.keyArray());
+        Assert.assertEquals(8, dict.maxKey());
+        Assert.assertEquals(9, dict.minKey());
+
+        Iterator<LongDoubleDict.Entry> it = dict.entryIterator();
+        while (it.hasNext()) {
+            LongDoubleDict.Entry entry = it.next();
+            if (entry.value != entry.value || entry.key % 2 == 0) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(5, dict.size());
+        Assert.assertEquals(5, dict.key(0));
+        Assert.assertEquals(3, dict.index(9));
+        dict.swap(0, 4);
+        Assert.assertEquals(3, dict.key(0));
+        dict.setIndex(0, 10, 2.5);
+        Assert.assertFalse(dict.hasKey(3));
+        Assert.assertEquals(10, dict.maxKey());
+        dict.sortKeys();
+        Assert.assertArrayEquals(new long[] { 1, 5, 7, 9, 10 }, dict.keyArray());
+
+        while (dict.size() > 0) {
+            dict.removeIndex(0);
+        }
+        try {
+            dict.minKey();
+            Assert.fail("minKey() on an empty LongDoubleDict");
+        } catch (RuntimeException expected) { }
+    }
+
+    @Test
+    public void binaryRoundTrip() throws IOException {
+        File file = File.createTempFile("dict", ".bin");
+        file.deleteOnExit();
+
+        IntDict dict = new IntDict();
+        for (int i = 0; i < 10; i++) {
+            dict.set("k" + i, i * i);
+        }
+        dict.remove("k3");
+        dict.saveBinary(file);
+        IntDict loaded = IntDict.loadBinary(file);
+        Assert.assertEquals(dict.toJSON(), loaded.toJSON());
+        Assert.assertEquals(81, loaded.get("k9"));
+
+        LongIntDict counts = new LongIntDict();
+        counts.increment(1L << 40);
+        counts.increment(1L << 40);
+        counts.saveBinary(file);
+        Assert.assertEquals(2, LongIntDict.loadBinary(file).get(1L << 40));
+    }
+}
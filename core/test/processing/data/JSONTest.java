@@ -0,0 +1,231 @@
+package processing.data;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JSONTest {
+
+    @Test
+    public void readerTokens() {
+        String json = "{\"type\": \"FeatureCollection\", \"meta\": {\"skip\": [1, {\"a\": \"b\\\"]\"}]},\n" +
+            " \"features\": [\n" +
+            "  {\"id\": 1, \"name\": \"caf\\u00e9\", \"x\": -1.5e2, \"big\": 12345678901},\n" +
+            "  \"not an object\",\n" +
+            "  {\"id\": 2, \"name\": null, \"ok\": true, \"list\": [1, 2.5]}\n" +
+            " ],\n" +
+            " \"count\": 2}";
+        JSONReader reader = new JSONReader(new StringReader(json));
+        reader.beginObject();
+        Assert.assertEquals("type", reader.nextName());
+        Assert.assertEquals("FeatureCollection", reader.nextString());
+        Assert.assertEquals(JSONReader.NAME, reader.peek());
+        reader.skipValue();  // "meta" and everything in it
+
+        Assert.assertEquals("features", reader.nextName());
+        int count = 0;
+        for (JSONObject feature : reader) {
+            count++;
+            Assert.assertEquals(count, feature.getInt("id"));
+            if (count == 1) {
+                Assert.assertEquals("café", feature.getString("name"));
+                Assert.assertEquals(-150, feature.getDouble("x"), 0);
+                Assert.assertEquals(12345678901L, feature.getLong("big"));
+            } else {
+                Assert.assertTrue(feature.isNull("name"));
+                Assert.assertTrue(feature.getBoolean("ok"));
+                Assert.assertEquals(2.5, feature.getJSONArray("list").getDouble(1), 0);
+            }
+        }
+        Assert.assertEquals(2, count);
+        Assert.assertEquals("count", reader.nextName());
+        Assert.assertEquals(JSONReader.NUMBER, reader.nextToken());
+        Assert.assertEquals(2, reader.getInt());
+        reader.endObject();
+        Assert.assertEquals(JSONReader.END_DOCUMENT, reader.peek());
+
+        // one object per line
+        reader = new JSONReader(new StringReader("{\"v\": 1}\n{\"v\": 2}\n\n{\"v\": 3}\n"));
+        int total = 0;
+        for (JSONObject record : reader) {
+            total += record.getInt("v");
+        }
+        Assert.assertEquals(6, total);
+
+        try {
+            new JSONReader(new StringReader("[1,\n2,\n}")).nextArray();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().endsWith("line 3"));
+        }
+
+        // a repeated key is an error, whether streamed or parsed
+        String twice = "{\"a\": 1,\n \"a\": null}";
+        try {
+            new JSONReader(new StringReader(twice)).nextObject();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertEquals("Duplicate key \"a\" on line 2", e.getMessage());
+        }
+        try {
+            JSONObject.parse(twice);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Duplicate key \"a\""));
+        }
+    }
+
+    @Test
+    public void writerRoundTrip() {
+        JSONObject inner = new JSONObject().setString("s", "q\"uote\n").setInt("i", 7);
+        for (String options : new String[] { null, "compact", "indent=4" }) {
+            StringWriter output = new StringWriter();
+            JSONWriter writer = new JSONWriter(output, options);
+            writer.beginObject();
+            writer.name("name").value("näme");
+            writer.name("f").value(0.1f);
+            writer.name("d").value(2.0);
+            writer.name("l").value(1L << 40);
+            writer.name("b").value(false);
+            writer.name("none").nullValue();
+            writer.name("empty").beginArray().endArray();
+            writer.name("items").beginArray();
+            for (int i = 0; i < 3; i++) {
+                writer.value(i);
+            }
+            writer.value(inner);
+            writer.endArray();
+            writer.endObject();
+            writer.close();
+
+            JSONObject json = new JSONReader(new StringReader(output.toString())).nextObject();
+            Assert.assertEquals("näme", json.getString("name"));
+            Assert.assertEquals(0.1f, json.getFloat("f"), 0);
+            Assert.assertEquals(2, json.getInt("d"));
+            Assert.assertEquals(1L << 40, json.getLong("l"));
+            Assert.assertFalse(json.getBoolean("b"));
+            Assert.assertTrue(json.isNull("none"));
+            Assert.assertEquals(0, json.getJSONArray("empty").size());
+            Assert.assertEquals(2, json.getJSONArray("items").getInt(2));
+            Assert.assertEquals("q\"uote\n", json.getJSONArray("items").getJSONObject(3).getString("s"));
+
+            // same layout as format()
+            output = new StringWriter();
+            writer = new JSONWriter(output, options);
+            writer.beginArray().value(1).value("two").value(inner);
+            writer.beginArray().value(3.5).value(4).endArray();
+            writer.endArray().close();
+            JSONArray array = new JSONReader(new StringReader(output.toString())).nextArray();
+            int indent = (options == null) ? 2 : (options.equals("compact") ? -1 : 4);
+            Assert.assertEquals(array.format(indent), output.toString().trim());
+        }
+    }
+
+    @Test
+    public void numberArrays() {
+        for (boolean streamed : new boolean[] { false, true }) {
+            String source = "{\"ints\": [1, 2, -3], \"longs\": [1, 12345678901], " +
+                "\"mixed\": [1, 2.5, 1e3], \"exact\": [9007199254740993, 0.5], " +
+                "\"types\": [1, 2.5, 3, 12345678901, 1.0], " +
+                "\"nested\": [[1, 2], [3]], \"empty\": []}";
+            JSONObject json = streamed ?
+                new JSONReader(new StringReader(source)).nextObject() :
+                JSONObject.parse(source);
+
+            JSONArray ints = json.getJSONArray("ints");
+            Assert.assertArrayEquals(new int[] { 1, 2, -3 }, ints.toIntArray());
+            Assert.assertEquals(Integer.valueOf(2), ints.get(1));
+            ints.append("four");
+            ints.setInt(0, 10);
+            Assert.assertEquals(4, ints.size());
+            Assert.assertEquals("four", ints.getString(3));
+            Assert.assertEquals(Integer.valueOf(-3), ints.get(2));
+            Assert.assertEquals(10, ints.getInt(0));
+
+            JSONArray longs = json.getJSONArray("longs");
+            Assert.assertEquals(Integer.valueOf(1), longs.get(0));
+            Assert.assertEquals(Long.valueOf(12345678901L), longs.get(1));
+            Assert.assertEquals(12345678901L, longs.getLong(1));
+
+            JSONArray mixed = json.getJSONArray("mixed");
+            Assert.assertEquals(2.5f, mixed.getFloat(1), 0);
+            Assert.assertEquals(1000, mixed.getInt(2));
+            Assert.assertEquals("[1,2.5,1000]", mixed.format(-1));
+
+            // get() returns the same types as when everything was boxed
+            JSONArray types = json.getJSONArray("types");
+            Class<?>[] classes = { Integer.class, Double.class, Integer.class, Long.class, Double.class };
+            for (int i = 0; i < classes.length; i++) {
+                Assert.assertEquals(classes[i], types.get(i).getClass());
+            }
+            Assert.assertEquals(Integer.valueOf(3), types.get(2));
+
+            // too large to be a double without losing something
+            Assert.assertEquals(9007199254740993L, json.getJSONArray("exact").getLong(0));
+            Assert.assertEquals(0.5, json.getJSONArray("exact").getDouble(1), 0);
+
+            Assert.assertArrayEquals(new int[] { 3 }, json.getJSONArray("nested").getJSONArray(1).toIntArray());
+            JSONArray empty = json.getJSONArray("empty");
+            Assert.assertEquals(0, empty.size());
+            empty.append(true);
+            Assert.assertTrue(empty.getBoolean(0));
+            Assert.assertEquals(Boolean.TRUE, empty.remove(0));
+            Assert.assertEquals(0, empty.size());
+        }
+    }
+
+    @Test
+    public void objectKeys() throws InterruptedException {
+        // keys stay in the order they were added
+        JSONObject json = new JSONObject();
+        for (int i = 0; i < 20; i++) {
+            json.setInt("k" + (19 - i), i);
+        }
+        json.remove("k10");
+        json.setInt("k3", -1);
+        Assert.assertEquals(19, json.size());
+        Assert.assertFalse(json.hasKey("k10"));
+        Assert.assertEquals(-1, json.getInt("k3"));
+        Assert.assertEquals(0, json.getInt("k19"));
+        String compact = json.format(-1);
+        Assert.assertTrue(compact.startsWith("{\"k19\":0,\"k18\":1,"));
+        Assert.assertTrue(compact.endsWith("\"k1\":18,\"k0\":19}"));
+        Assert.assertFalse(compact.contains("k10"));
+
+        java.util.Iterator<?> keys = json.keys().iterator();
+        while (keys.hasNext()) {
+            if (((String) keys.next()).length() == 2) {
+                keys.remove();
+            }
+        }
+        Assert.assertEquals(9, json.size());
+        Assert.assertEquals(8, json.getInt("k11"));
+        Assert.assertFalse(json.hasKey("k9"));
+
+        // objects parsed on several threads at once share their keys
+        final String source = "[{\"alpha\": 1, \"beta\": 2}, {\"alpha\": 3, \"beta\": 4}]";
+        final JSONArray[] results = new JSONArray[4];
+        Thread[] threads = new Thread[results.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int index = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    results[index] = (i % 2 == 0) ? JSONArray.parse(source) :
+                        new JSONReader(new StringReader(source)).nextArray();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (JSONArray result : results) {
+            Assert.assertEquals(4, result.getJSONObject(1).getInt("beta"));
+            Object first = result.getJSONObject(0).keys().iterator().next();
+            Object second = result.getJSONObject(1).keys().iterator().next();
+            Assert.assertSame(first, second);
+        }
+    }
+}
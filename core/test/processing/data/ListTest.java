@@ -0,0 +1,179 @@
+package processing.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ListTest {
+    int parallelCount;
+    int threadCount;
+
+    // split even short lists into chunks, so the parallel code gets used
+    @Before
+    public void splitLists() {
+        parallelCount = ListChunks.parallelCount;
+        threadCount = ListChunks.threadCount;
+        ListChunks.parallelCount = 1;
+        ListChunks.threadCount = 3;
+    }
+
+    @After
+    public void restore() {
+        ListChunks.parallelCount = parallelCount;
+        ListChunks.threadCount = threadCount;
+    }
+
+    @Test
+    public void intBulk() {
+        Random random = new Random(0);
+        int[] values = new int[1001];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(100);
+        }
+        values[700] = -5;
+        values[900] = -5;
+        long sum = 0;
+        for (int v : values) {
+            sum += v;
+        }
+        IntList list = new IntList(values);
+
+        Assert.assertEquals(sum, list.sumLong());
+        Assert.assertEquals(-5, list.min());
+        Assert.assertEquals(700, list.minIndex());
+
+        IntList histogram = list.histogram(4, 0, 99);
+        Assert.assertEquals(1001 - 2, histogram.sumLong());
+
+        IntList running = list.copy();
+        running.cumulativeSum();
+        long check = 0;
+        for (int i = 0; i < values.length; i++) {
+            check += values[i];
+            Assert.assertEquals(check, running.get(i));
+        }
+
+        list.map(v -> v * 2);
+        Assert.assertEquals(sum * 2, list.sumLong());
+
+        IntList median = new IntList(new int[] { 5, 1, 4, 2, 3, 6 });
+        Assert.assertEquals(3.5, median.percentile(50), 0);
+        Assert.assertEquals(6, median.percentile(100), 0);
+        Assert.assertEquals(5, median.get(0));  // not reordered
+
+        median.sortReverse();
+        Assert.assertArrayEquals(new int[] { 6, 5, 4, 3, 2, 1 }, median.values());
+    }
+
+    @Test
+    public void floatBulk() {
+        FloatList list = new FloatList(new float[] {
+            Float.NaN, 3, -1, Float.NaN, 8, 2, 8
+        });
+        Assert.assertEquals(2, list.minIndex());
+        Assert.assertEquals(4, list.maxIndex());
+        Assert.assertEquals(3, list.percentile(50), 0);
+
+        IntList histogram = list.histogram(3);
+        Assert.assertArrayEquals(new int[] { 1, 2, 2 }, histogram.values());
+
+        list.sortReverse();
+        Assert.assertEquals(8, list.get(0), 0);
+        Assert.assertEquals(-1, list.get(4), 0);
+        Assert.assertTrue(Float.isNaN(list.get(6)));
+
+        // the same sums as one pass in order, however many chunks
+        Random random = new Random(0);
+        float[] values = new float[1001];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextFloat() * 1000;
+        }
+        FloatList sums = new FloatList(values);
+        sums.cumulativeSum();
+        double check = 0;
+        for (int i = 0; i < values.length; i++) {
+            check += values[i];
+            Assert.assertEquals((float) check, sums.get(i), 0);
+        }
+
+        DoubleList running = new DoubleList(new double[] { 1, 2, 3, 4, 5 });
+        running.cumulativeSum();
+        Assert.assertEquals(15, running.get(4), 0);
+        Assert.assertEquals(6, running.get(2), 0);
+    }
+
+    @Test
+    public void binaryRoundTrip() throws IOException {
+        File file = File.createTempFile("list", ".bin");
+        file.deleteOnExit();
+
+        FloatList floats = new FloatList(new float[] { 1.5f, Float.NaN, -3 });
+        floats.saveBinary(file);
+        Assert.assertArrayEquals(floats.values(), FloatList.loadBinary(file).values(), 0);
+
+        StringList strings = new StringList("one", null, "", "caf\u00e9");
+        strings.saveBinary(file);
+        StringList loaded = StringList.loadBinary(file);
+        Assert.assertEquals(4, loaded.size());
+        Assert.assertNull(loaded.get(1));
+        Assert.assertEquals("", loaded.get(2));
+        Assert.assertEquals("caf\u00e9", loaded.get(3));
+
+        try {
+            IntList.loadBinary(file);
+            Assert.fail("loaded a StringList file as an IntList");
+        } catch (IOException expected) { }
+    }
+
+    @Test
+    public void compressStrings() {
+        StringList list = new StringList("id-1", "caf\u00e9", null, "id-1", "", "id-2");
+        Assert.assertTrue(list.compress());
+        Assert.assertTrue(list.isCompressed());
+        Assert.assertEquals(6, list.size());
+        Assert.assertEquals("caf\u00e9", list.get(1));
+        Assert.assertNull(list.get(2));
+        Assert.assertEquals("", list.get(4));
+        Assert.assertEquals(3, list.index(null) + 1);
+        Assert.assertEquals(5, list.index("id-2"));
+        Assert.assertTrue(list.hasValue("caf\u00e9"));
+        Assert.assertFalse(list.hasValue("id-3"));
+        Assert.assertEquals("id-1,caf\u00e9,null,id-1,,id-2", list.join(","));
+        Assert.assertTrue(list.isCompressed());
+
+        list.remove(2);
+        IntDict tally = list.getTally();
+        Assert.assertEquals(2, tally.get("id-1"));
+        Assert.assertEquals(1, tally.get(""));
+
+        list.compress();
+        Assert.assertEquals(tally.toJSON(), list.getTally().toJSON());
+        StringList copy = list.copy();
+        list.append("id-3");
+        Assert.assertFalse(list.isCompressed());
+        Assert.assertTrue(copy.isCompressed());
+        Assert.assertEquals(5, copy.size());
+        Assert.assertEquals("id-3", list.get(5));
+
+        list.append(list);
+        Assert.assertEquals(12, list.size());
+        copy.append(copy);
+        Assert.assertEquals(10, copy.size());
+        Assert.assertEquals(copy.get(0), copy.get(5));
+
+        // half of a surrogate pair would come back as '?'
+        StringList broken = new StringList("x\uD800y", "x?y");
+        Assert.assertFalse(broken.compress());
+        Assert.assertEquals("x\uD800y", broken.get(0));
+        StringList paired = new StringList("x?y", "\uD83D\uDE00");
+        Assert.assertTrue(paired.compress());
+        Assert.assertEquals("\uD83D\uDE00", paired.get(1));
+        Assert.assertFalse(paired.hasValue("x\uD800y"));
+        Assert.assertTrue(paired.hasValue("x?y"));
+    }
+}
@@ -0,0 +1,102 @@
+package processing.data;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+
+/**
+ * Compares parseBasic() with the TableParser path used by loadTable(),
+ * and with the ParallelTableParser used for the "parallel" option.
+ * Not a unit test, run it directly:
+ * <pre>
+ * java -cp ... processing.data.TableParseBenchmark [rows]
+ * </pre>
+ * Reports rows per second, and bytes allocated per row when the JVM
+ * supports per-thread allocation counters (only the calling thread is
+ * counted, so the parallel figure leaves out the worker threads).
+ */
+public class TableParseBenchmark {
+  static final String[] CATEGORIES = { "idle", "active", "fault", "offline" };
+
+  public static void main(String[] args) throws IOException {
+    int rows = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+    byte[] data = createData(rows);
+    System.out.println(rows + " rows, " + data.length + " bytes");
+
+    for (int round = 0; round < 5; round++) {
+      run("parseBasic ", data, rows, "basic");
+      run("TableParser", data, rows, "serial");
+      run("parallel   ", data, rows, "parallel");
+    }
+  }
+
+
+  static byte[] createData(int rows) {
+    Random random = new Random(0);
+    StringBuilder sb = new StringBuilder("id,time,temp,pressure,state,label\n");
+    for (int i = 0; i < rows; i++) {
+      sb.append(i).append(',');
+      sb.append(1600000000000L + i * 1000L).append(',');
+      sb.append(Math.round(random.nextGaussian() * 1000) / 100f).append(',');
+      sb.append(1000 + random.nextInt(100000) / 1000.0).append(',');
+      sb.append(CATEGORIES[random.nextInt(CATEGORIES.length)]).append(',');
+      sb.append("\"sensor ").append(i % 100).append("\"\n");
+    }
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+
+  static Table createDictionary() {
+    Table dictionary = new Table();
+    dictionary.addColumn("title");
+    dictionary.addColumn("type");
+    dictionary.addRow(new String[] { "id", "int" });
+    dictionary.addRow(new String[] { "time", "long" });
+    dictionary.addRow(new String[] { "temp", "float" });
+    dictionary.addRow(new String[] { "pressure", "double" });
+    dictionary.addRow(new String[] { "state", "category" });
+    dictionary.addRow(new String[] { "label", "string" });
+    return dictionary;
+  }
+
+
+  static void run(String name, byte[] data, int rows, String mode) throws IOException {
+    Table table = new Table();
+    table.setColumnTypes(createDictionary());
+    InputStreamReader reader =
+      new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8);
+
+    long bytesBefore = allocatedBytes();
+    long t = System.nanoTime();
+    if (mode.equals("basic")) {
+      table.parseBasic(new BufferedReader(reader), true, false);
+    } else if (mode.equals("parallel")) {
+      new ParallelTableParser(table, false).parse(reader, true);
+    } else {
+      new TableParser(table, false).parse(reader, true);
+    }
+    long elapsed = System.nanoTime() - t;
+    long bytes = allocatedBytes() - bytesBefore;
+
+    if (table.getRowCount() != rows) {
+      throw new IllegalStateException(name + " read " + table.getRowCount() + " rows");
+    }
+    String perRow = (bytesBefore < 0) ? "n/a" : String.valueOf(bytes / rows);
+    System.out.format("%s  %,12d rows/sec  %6s bytes/row%n",
+                      name, (long) (rows / (elapsed / 1e9)), perRow);
+  }
+
+
+  static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+    }
+    return -1;
+  }
+}
@@ -1,5 +1,21 @@
 package processing.data;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -36,4 +52,1116 @@ public class TableTest {
         Assert.assertEquals(people[0].name, "Person1");
         Assert.assertEquals(people[0].age, 30);
     }
+
+
+    static Table load(String text, String options) throws IOException {
+        return new Table(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), options);
+    }
+
+    static Table loadBasic(String text, boolean header, boolean tsv) throws IOException {
+        Table table = new Table();
+        table.parseBasic(new BufferedReader(new StringReader(text)), header, tsv);
+        return table;
+    }
+
+    static void assertSameStrings(Table expected, Table actual) {
+        Assert.assertEquals(expected.getRowCount(), actual.getRowCount());
+        Assert.assertEquals(expected.getColumnCount(), actual.getColumnCount());
+        Assert.assertArrayEquals(expected.getColumnTitles(), actual.getColumnTitles());
+        for (int row = 0; row < expected.getRowCount(); row++) {
+            Assert.assertArrayEquals("row " + row, expected.getStringRow(row), actual.getStringRow(row));
+        }
+    }
+
+    @Test
+    public void parseMatchesBasicCSV() throws IOException {
+        String csv =
+            "name,value,note\r\n" +
+            "plain,12,\"quoted, with comma\"\r\n" +
+            "\"escaped \"\"quotes\"\"\",-3\n" +
+            "multi,-4,\"multi\nline\"\n" +
+            "\n" +
+            "trailing,,\n" +
+            "lone,4,\"a \"wolf\" quote\"\n" +
+            "extra,5,six,seven\n" +
+            "unquoted \"\"escape\"\",6";
+        assertSameStrings(loadBasic(csv, true, false), load(csv, "csv,header"));
+    }
+
+    @Test
+    public void parseQuotesBeforeNewline() throws IOException {
+        // parseBasic() mangles this one, because the escaped quotes are removed
+        // in place before the line is re-read to pick up the embedded newline
+        Table table = load("\"say \"\"hi\"\"\",\"two\nlines\"\n", "csv");
+        Assert.assertEquals(1, table.getRowCount());
+        Assert.assertEquals("say \"hi\"", table.getString(0, 0));
+        Assert.assertEquals("two\nlines", table.getString(0, 1));
+    }
+
+    @Test
+    public void parseMatchesBasicTSV() throws IOException {
+        String tsv = "a\tb\n1\t\"2\"\n\n3\t4\t5\r\n6\r7";
+        assertSameStrings(loadBasic(tsv, false, true), load(tsv, "tsv"));
+    }
+
+    @Test
+    public void parseBOM() throws IOException {
+        Table table = load("\uFEFFx,y\n1,2\n", "csv,header");
+        Assert.assertEquals("x", table.getColumnTitle(0));
+        Assert.assertEquals("2", table.getString(0, "y"));
+    }
+
+    @Test
+    public void parseTyped() throws IOException {
+        Table dictionary = new Table();
+        dictionary.addColumn("title");
+        dictionary.addColumn("type");
+        dictionary.addRow(new String[] { "i", "int" });
+        dictionary.addRow(new String[] { "l", "long" });
+        dictionary.addRow(new String[] { "f", "float" });
+        dictionary.addRow(new String[] { "d", "double" });
+        dictionary.addRow(new String[] { "c", "category" });
+
+        String csv =
+            "i,l,f,d,c\n" +
+            "12,9000000000,0.1,0.1,red\n" +
+            "-7.9,-4,1e3,123456789.123456789,blue\n" +
+            "oops,x,,NaN,red\n" +
+            "99999999999,12345678901234567890,3.4028235E38,-0.0,\"blue\"\n";
+        Table table = dictionary.typedParse(
+            new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), "csv,header");
+
+        Assert.assertEquals(4, table.getRowCount());
+        Assert.assertArrayEquals(new int[] { 12, -7, 0, 0 }, table.getIntColumn("i"));
+        Assert.assertArrayEquals(new long[] { 9000000000L, -4, 0, 0 }, table.getLongColumn("l"));
+        Assert.assertEquals(Float.parseFloat("0.1"), table.getFloat(0, "f"), 0);
+        Assert.assertEquals(1000f, table.getFloat(1, "f"), 0);
+        Assert.assertTrue(Float.isNaN(table.getFloat(2, "f")));
+        Assert.assertEquals(Float.MAX_VALUE, table.getFloat(3, "f"), 0);
+        Assert.assertEquals(0.1, table.getDouble(0, "d"), 0);
+        Assert.assertEquals(Double.parseDouble("123456789.123456789"), table.getDouble(1, "d"), 0);
+        Assert.assertTrue(Double.isNaN(table.getDouble(2, "d")));
+        Assert.assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(table.getDouble(3, "d")));
+        Assert.assertArrayEquals(new int[] { 0, 1, 0, 1 }, table.getIntColumn("c"));
+        Assert.assertEquals("blue", table.getString(3, "c"));
+    }
+
+    @Test
+    public void fastNumbersMatchJava() {
+        TableParser parser = new TableParser(new Table(), false);
+        String[] samples = {
+            "0", "1", "-1", "0.5", ".5", "5.", "3.14159", "-2.7182818", "1234567",
+            "0.0000001", "9999999.9", "123456789012345", "0.1234567890123456"
+        };
+        for (String s : samples) {
+            char[] c = s.toCharArray();
+            parser.parseFloat(c, c.length);
+            if (parser.parsed) {
+                Assert.assertEquals(s, Float.parseFloat(s), parser.parsedFloat, 0);
+            }
+            parser.parseDouble(c, c.length);
+            if (parser.parsed) {
+                Assert.assertEquals(s, Double.parseDouble(s), parser.parsedDouble, 0);
+            }
+        }
+    }
+
+    static Table loadParallel(String text, boolean header, boolean tsv,
+                              int blockSize, int minChunk) throws IOException {
+        Table table = new Table();
+        ParallelTableParser parser = new ParallelTableParser(table, tsv);
+        parser.blockSize = blockSize;
+        parser.minChunk = minChunk;
+        parser.chunkCount = 4;
+        parser.parse(new StringReader(text), header);
+        return table;
+    }
+
+    @Test
+    public void parseParallelMatchesSerial() throws IOException {
+        StringBuilder sb = new StringBuilder("id,name,note\r\n");
+        for (int i = 0; i < 500; i++) {
+            sb.append(i).append(",name ").append(i % 7).append(',');
+            switch (i % 4) {
+                case 0: sb.append("\"quoted\nnewline, ").append(i).append('"'); break;
+                case 1: sb.append("\"escaped \"\"x\"\"\""); break;
+                case 2: sb.append("plain"); break;
+                default: sb.append("\"cr\r\nlf\""); break;
+            }
+            sb.append((i % 3 == 0) ? "\r\n" : "\n");
+        }
+        String csv = sb.toString();
+        Table serial = load(csv, "csv,header");
+        for (int blockSize : new int[] { 16, 97, 1000, 1 << 16 }) {
+            assertSameStrings(serial, loadParallel(csv, true, false, blockSize, 8));
+        }
+    }
+
+    @Test
+    public void parseParallelTypedCategories() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        String[] states = { "on", "off", "fault", "" };
+        for (int i = 0; i < 300; i++) {
+            sb.append(i).append('\t').append(i * 0.5f).append('\t');
+            sb.append(states[(i * 7) % states.length]).append('\n');
+        }
+        String tsv = sb.toString();
+
+        Table serial = new Table();
+        serial.setColumnCount(3);
+        serial.setColumnType(0, Table.INT);
+        serial.setColumnType(1, Table.FLOAT);
+        serial.setColumnType(2, Table.CATEGORY);
+        Table parallel = serial.emptyCopy();
+        new TableParser(serial, true).parse(new StringReader(tsv), false);
+
+        ParallelTableParser parser = new ParallelTableParser(parallel, true);
+        parser.blockSize = 200;
+        parser.minChunk = 16;
+        parser.chunkCount = 3;
+        parser.parse(new StringReader(tsv), false);
+
+        assertSameStrings(serial, parallel);
+        Assert.assertArrayEquals(serial.getIntColumn(0), parallel.getIntColumn(0));
+        Assert.assertArrayEquals(serial.getFloatColumn(1), parallel.getFloatColumn(1), 0);
+    }
+
+    @Test
+    public void mappedRoundTrip() throws IOException {
+        Table table = new Table();
+        table.addColumn("i", Table.INT);
+        table.addColumn("l", Table.LONG);
+        table.addColumn("f", Table.FLOAT);
+        table.addColumn("d", Table.DOUBLE);
+        table.addColumn("s", Table.STRING);
+        table.addColumn("c", Table.STRING);
+        for (int row = 0; row < 1000; row++) {
+            TableRow tr = table.addRow();
+            tr.setInt("i", row * 3);
+            tr.setLong("l", row * 10000000000L);
+            tr.setFloat("f", row / 4f);
+            tr.setDouble("d", row / 3.0);
+            tr.setString("s", (row % 5 == 0) ? null : "caf\u00e9 " + row);
+            tr.setString("c", (row % 2 == 0) ? "even" : "odd");
+        }
+        table.setColumnType("c", Table.CATEGORY);
+        File file = File.createTempFile("mapped", ".bin");
+        file.deleteOnExit();
+        Assert.assertTrue(table.save(file, "mapped"));
+        Assert.assertEquals(0, file.length() % TableMapping.PAGE_SIZE);
+
+        Table mapped = new Table(file, "mapped");
+        Assert.assertEquals(1000, mapped.getRowCount());
+        Assert.assertArrayEquals(table.getColumnTitles(), mapped.getColumnTitles());
+        for (int col = 0; col < mapped.getColumnCount(); col++) {
+            Assert.assertTrue(mapped.columns[col] instanceof TableMapping.Column);
+        }
+
+        // reading a whole column comes straight from the mapping
+        Assert.assertArrayEquals(table.getIntColumn("i"), mapped.getIntColumn("i"));
+        Assert.assertArrayEquals(table.getFloatColumn("f"), mapped.getFloatColumn("f"), 0);
+        Assert.assertTrue(mapped.columns[0] instanceof TableMapping.Column);
+
+        assertSameStrings(table, mapped);
+        Assert.assertNull(mapped.getString(5, "s"));
+        Assert.assertEquals(table.getLong(999, "l"), mapped.getLong(999, "l"));
+        Assert.assertEquals("odd", mapped.getString(3, "c"));
+
+        // still editable once loaded
+        mapped.setInt(0, "i", -1);
+        Assert.assertEquals(-1, mapped.getIntColumn("i")[0]);
+        mapped.addRow().setInt("c", 1);
+        Assert.assertEquals(1001, mapped.getRowCount());
+        Assert.assertEquals("odd", mapped.getString(1000, "c"));
+    }
+
+    static Table indexTestTable() {
+        Table table = new Table();
+        table.addColumn("name", Table.STRING);
+        table.addColumn("count", Table.INT);
+        table.addColumn("weight", Table.FLOAT);
+        table.addColumn("state", Table.STRING);
+        String[] states = { "on", "off", "fault" };
+        for (int row = 0; row < 200; row++) {
+            table.addRow(new Object[] {
+                (row % 9 == 0) ? null : "n" + (row % 37), row % 13, (row % 17) / 2f, states[row % 3]
+            });
+        }
+        table.setColumnType("state", Table.CATEGORY);
+        return table;
+    }
+
+    static void assertSameLookups(Table expected, Table actual) {
+        for (int col = 0; col < expected.getColumnCount(); col++) {
+            for (String value : new String[] { null, "n3", "n36", "nope", "4", "12", "1.5", "2.0", "7", "off", "fault" }) {
+                Assert.assertEquals(value, expected.findRowIndex(value, col), actual.findRowIndex(value, col));
+                Assert.assertArrayEquals(value, expected.findRowIndices(value, col), actual.findRowIndices(value, col));
+            }
+            for (String regexp : new String[] { "^n1", "3$", "f", "xyz" }) {
+                Assert.assertEquals(regexp, expected.matchRowIndex(regexp, col), actual.matchRowIndex(regexp, col));
+                Assert.assertArrayEquals(regexp, expected.matchRowIndices(regexp, col), actual.matchRowIndices(regexp, col));
+            }
+            Map<String, TableRow> expectedMap = expected.getRowMap(col);
+            Map<String, TableRow> actualMap = actual.getRowMap(col);
+            Assert.assertEquals(expectedMap.keySet(), actualMap.keySet());
+            for (String key : expectedMap.keySet()) {
+                Assert.assertEquals(expectedMap.get(key).getString(col), actualMap.get(key).getString(col));
+            }
+        }
+        Assert.assertArrayEquals(expected.findRowIndices(2, 5, "count"), actual.findRowIndices(2, 5, "count"));
+        Assert.assertArrayEquals(expected.findRowIndices(1.5, 3, "weight"), actual.findRowIndices(1.5, 3, "weight"));
+    }
+
+    static void indexEdits(Table table) {
+        table.setString(3, "name", "n36");
+        table.setInt(4, "count", 12);
+        table.setFloat(5, "weight", 1.5f);
+        table.setInt(6, "state", 1);
+        table.removeRow(0);
+        table.removeRow(50);
+        table.insertRow(10, new Object[] { "n3", 7, 2f, "fault" });
+        table.addRow(new Object[] { "n1", 4, 3f, "on" });
+        TableRow row = table.addRow();
+        row.setString("name", "n10");
+        row.setInt("count", 3);
+        table.setRow(20, new Object[] { null, 12, 2.5f, "off" });
+        table.setString(250, "name", "far away");
+    }
+
+    @Test
+    public void indexMatchesScan() {
+        Table plain = indexTestTable();
+        Table hashed = indexTestTable();
+        Table sorted = indexTestTable();
+        for (int col = 0; col < 4; col++) {
+            hashed.index(col);
+            sorted.sortedIndex(col);
+        }
+        assertSameLookups(plain, hashed);
+        assertSameLookups(plain, sorted);
+
+        indexEdits(plain);
+        indexEdits(hashed);
+        indexEdits(sorted);
+        assertSameLookups(plain, hashed);
+        assertSameLookups(plain, sorted);
+
+        plain.sort("weight");
+        hashed.sort("weight");
+        sorted.sort("weight");
+        plain.removeColumn("name");
+        hashed.removeColumn("name");
+        sorted.removeColumn("name");
+        plain.insertColumn(0, "extra");
+        hashed.insertColumn(0, "extra");
+        sorted.insertColumn(0, "extra");
+        Assert.assertNull(hashed.getIndex(0));
+        Assert.assertEquals(1, hashed.getIndex(1).column);
+        assertSameLookups(plain, hashed);
+        assertSameLookups(plain, sorted);
+    }
+
+    @Test
+    public void groupByAggregates() {
+        Table table = new Table();
+        table.addColumn("sensor", Table.STRING);
+        table.addColumn("hour", Table.INT);
+        table.addColumn("temp", Table.FLOAT);
+        table.addRow(new Object[] { "a", 1, 10f });
+        table.addRow(new Object[] { "b", 1, 20f });
+        table.addRow(new Object[] { "a", 1, 30f });
+        table.addRow(new Object[] { "a", 2, Float.NaN });
+        table.addRow(new Object[] { "b", 1, 25f });
+        table.addRow(new Object[] { "a", 1, 20f });
+        table.setColumnType("sensor", Table.CATEGORY);
+
+        Table result = table.groupBy("sensor", "hour")
+            .agg("count", "count(temp)", "sum(temp)", "mean(temp)", "min(temp)",
+                 "max(temp)", "median(temp)", "percentile(temp, 25)", "sum(hour)");
+        Assert.assertEquals(3, result.getRowCount());
+        Assert.assertArrayEquals(new String[] { "sensor", "hour", "count", "count(temp)", "sum(temp)",
+                                                "mean(temp)", "min(temp)", "max(temp)", "median(temp)",
+                                                "percentile(temp, 25)", "sum(hour)" },
+                                 result.getColumnTitles());
+        Assert.assertArrayEquals(new String[] { "a", "b", "a" }, result.getStringColumn("sensor"));
+        Assert.assertEquals(Table.CATEGORY, result.getColumnType("sensor"));
+        Assert.assertArrayEquals(new int[] { 1, 1, 2 }, result.getIntColumn("hour"));
+        Assert.assertArrayEquals(new int[] { 3, 2, 1 }, result.getIntColumn("count"));
+        Assert.assertArrayEquals(new int[] { 3, 2, 0 }, result.getIntColumn("count(temp)"));
+        Assert.assertArrayEquals(new double[] { 60, 45, 0 }, result.getDoubleColumn("sum(temp)"), 0);
+        Assert.assertArrayEquals(new double[] { 20, 22.5, Double.NaN }, result.getDoubleColumn("mean(temp)"), 0);
+        Assert.assertArrayEquals(new float[] { 10, 20, Float.NaN }, result.getFloatColumn("min(temp)"), 0);
+        Assert.assertArrayEquals(new float[] { 30, 25, Float.NaN }, result.getFloatColumn("max(temp)"), 0);
+        Assert.assertArrayEquals(new double[] { 20, 22.5, Double.NaN }, result.getDoubleColumn("median(temp)"), 0);
+        Assert.assertArrayEquals(new double[] { 15, 21.25, Double.NaN }, result.getDoubleColumn("percentile(temp, 25)"), 0);
+        Assert.assertArrayEquals(new long[] { 3, 2, 2 }, result.getLongColumn("sum(hour)"));
+    }
+
+    @Test
+    public void groupByParallelMatchesSerial() {
+        java.util.Random random = new java.util.Random(1);
+        Table table = new Table();
+        table.addColumn("key", Table.LONG);
+        table.addColumn("name", Table.STRING);
+        table.addColumn("value", Table.DOUBLE);
+        table.addColumn("count", Table.INT);
+        table.setRowCount(5000);
+        for (int row = 0; row < 5000; row++) {
+            table.setLong(row, 0, random.nextInt(20) * 10000000000L);
+            table.setString(row, 1, "n" + random.nextInt(7));
+            table.setDouble(row, 2, (random.nextInt(50) == 0) ? Double.NaN : random.nextGaussian());
+            table.setInt(row, 3, random.nextInt(1000) - 500);
+        }
+        String[] aggregates = { "count", "sum(value)", "mean(count)", "min(count)", "max(value)", "percentile(value, 90)" };
+
+        TableGroups serial = table.groupBy("key", "name");
+        serial.parallelRows = Integer.MAX_VALUE;
+        TableGroups parallel = table.groupBy("key", "name");
+        parallel.parallelRows = 1;
+        parallel.threadCount = 4;
+        Table expected = serial.agg(aggregates);
+        Table actual = parallel.agg(aggregates);
+        Assert.assertEquals(140, expected.getRowCount());
+        Assert.assertArrayEquals(expected.getLongColumn(0), actual.getLongColumn(0));
+        Assert.assertArrayEquals(expected.getStringColumn(1), actual.getStringColumn(1));
+        for (int col = 2; col < expected.getColumnCount(); col++) {
+            Assert.assertArrayEquals(expected.getDoubleColumn(col), actual.getDoubleColumn(col), 1e-9);
+        }
+
+        // percentile against a sorted copy of the group
+        int[] groups = serial.getGroups();
+        DoubleList values = new DoubleList();
+        for (int row = 0; row < table.getRowCount(); row++) {
+            if (groups[row] == 0 && !Double.isNaN(table.getDouble(row, 2))) {
+                values.append(table.getDouble(row, 2));
+            }
+        }
+        values.sort();
+        double rank = (values.size() - 1) * 0.9;
+        int lower = (int) rank;
+        double p90 = values.get(lower) + (values.get(lower + 1) - values.get(lower)) * (rank - lower);
+        Assert.assertEquals(p90, expected.getDouble(0, "percentile(value, 90)"), 1e-12);
+    }
+
+    static Table sortTestTable() {
+        java.util.Random random = new java.util.Random(2);
+        Table table = new Table();
+        table.addColumn("id", Table.INT);
+        table.addColumn("i", Table.INT);
+        table.addColumn("l", Table.LONG);
+        table.addColumn("f", Table.FLOAT);
+        table.addColumn("d", Table.DOUBLE);
+        table.addColumn("s", Table.STRING);
+        table.addColumn("c", Table.STRING);
+        String[] names = { "b", "A", "a", null, "c" };
+        table.setRowCount(3000);
+        for (int row = 0; row < 3000; row++) {
+            table.setInt(row, 0, row);
+            table.setInt(row, 1, random.nextInt(100) - 50 + ((row % 500 == 0) ? Integer.MIN_VALUE / 2 : 0));
+            table.setLong(row, 2, (random.nextInt(20) - 10) * 1000000000000L);
+            table.setFloat(row, 3, (row % 97 == 0) ? Float.NaN : random.nextInt(40) / 4f - 5);
+            table.setDouble(row, 4, (row % 89 == 0) ? Double.NaN : random.nextGaussian());
+            table.setString(row, 5, names[random.nextInt(names.length)]);
+            table.setString(row, 6, names[random.nextInt(names.length - 1)]);
+        }
+        table.setColumnType("c", Table.CATEGORY);
+        return table;
+    }
+
+    static int compareEntries(Table table, int a, int b, int col) {
+        switch (table.getColumnType(col)) {
+            case Table.INT:
+            case Table.CATEGORY:
+                return Integer.compare(table.getInt(a, col), table.getInt(b, col));
+            case Table.LONG:
+                return Long.compare(table.getLong(a, col), table.getLong(b, col));
+            case Table.FLOAT:
+                return Float.compare(table.getFloat(a, col), table.getFloat(b, col));
+            case Table.DOUBLE:
+                return Double.compare(table.getDouble(a, col), table.getDouble(b, col));
+            default:
+                String sa = table.getString(a, col);
+                String sb = table.getString(b, col);
+                return (sa == null ? "" : sa).compareToIgnoreCase(sb == null ? "" : sb);
+        }
+    }
+
+    static void assertSorted(Table original, Table sorted, boolean reverse, int... cols) {
+        Integer[] expected = new Integer[original.getRowCount()];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i;
+        }
+        java.util.Arrays.sort(expected, (a, b) -> {
+            for (int col : cols) {
+                int diff = compareEntries(original, a, b, col);
+                if (diff != 0) {
+                    return reverse ? -diff : diff;
+                }
+            }
+            return 0;
+        });
+        int[] ids = sorted.getIntColumn("id");
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals("row " + i, (int) expected[i], ids[i]);
+        }
+    }
+
+    @Test
+    public void sortStable() {
+        int parallelRows = TableSort.parallelRows;
+        try {
+            for (int threshold : new int[] { Integer.MAX_VALUE, 1 }) {
+                TableSort.parallelRows = threshold;
+                Table original = sortTestTable();
+                for (int col = 1; col < original.getColumnCount(); col++) {
+                    for (boolean reverse : new boolean[] { false, true }) {
+                        Table table = sortTestTable();
+                        if (reverse) {
+                            table.sortReverse(col);
+                        } else {
+                            table.sort(col);
+                        }
+                        assertSorted(original, table, reverse, col);
+                    }
+                }
+                Table table = sortTestTable();
+                table.sort("c", "l", "f");
+                assertSorted(original, table, false, 6, 2, 3);
+                table = sortTestTable();
+                table.sortReverse("s", "d");
+                assertSorted(original, table, true, 5, 4);
+                Assert.assertEquals(original.getString(table.getInt(0, "id"), "s"), table.getString(0, "s"));
+            }
+        } finally {
+            TableSort.parallelRows = parallelRows;
+        }
+    }
+
+    @Test
+    public void joinInnerAndLeft() {
+        Table readings = new Table();
+        readings.addColumn("device", Table.STRING);
+        readings.addColumn("value", Table.FLOAT);
+        readings.addRow(new Object[] { "b", 1f });
+        readings.addRow(new Object[] { "a", 2f });
+        readings.addRow(new Object[] { "c", 3f });
+        readings.addRow(new Object[] { null, 4f });
+        readings.addRow(new Object[] { "b", 5f });
+        readings.setColumnType("device", Table.CATEGORY);
+
+        // extra devices to make this the larger table, and use the other side for the hash
+        for (int extra : new int[] { 0, 10 }) {
+            Table devices = new Table();
+            devices.addColumn("id", Table.STRING);
+            devices.addColumn("value", Table.INT);
+            devices.addRow(new Object[] { "a", 100 });
+            devices.addRow(new Object[] { "b", 200 });
+            devices.addRow(new Object[] { "b", 201 });
+            for (int i = 0; i < extra; i++) {
+                devices.addRow(new Object[] { "x" + i, i });
+            }
+
+            Table inner = readings.join(devices, "device", "id", Table.JoinType.INNER);
+            Assert.assertArrayEquals(new String[] { "device", "value", "value_2" }, inner.getColumnTitles());
+            Assert.assertArrayEquals(new int[] { Table.CATEGORY, Table.FLOAT, Table.INT }, inner.getColumnTypes());
+            Assert.assertArrayEquals(new String[] { "b", "b", "a", "b", "b" }, inner.getStringColumn("device"));
+            Assert.assertArrayEquals(new float[] { 1, 1, 2, 5, 5 }, inner.getFloatColumn("value"), 0);
+            Assert.assertArrayEquals(new int[] { 200, 201, 100, 200, 201 }, inner.getIntColumn("value_2"));
+
+            Table left = readings.join(devices, "device", "id", Table.JoinType.LEFT);
+            Assert.assertEquals(7, left.getRowCount());
+            Assert.assertArrayEquals(new String[] { "b", "b", "a", "c", null, "b", "b" }, left.getStringColumn("device"));
+            Assert.assertArrayEquals(new float[] { 1, 1, 2, 3, 4, 5, 5 }, left.getFloatColumn("value"), 0);
+            Assert.assertArrayEquals(new int[] { 200, 201, 100, 0, 0, 200, 201 }, left.getIntColumn("value_2"));
+        }
+
+        // numbers are matched by value, even when the types differ
+        Table ints = new Table();
+        ints.addColumn("k", Table.INT);
+        for (int i = 0; i < 4; i++) {
+            ints.addRow(new Object[] { i });
+        }
+        Table doubles = new Table();
+        doubles.addColumn("k", Table.DOUBLE);
+        doubles.addColumn("name", Table.STRING);
+        doubles.addRow(new Object[] { 2.0, "two" });
+        doubles.addRow(new Object[] { 2.5, "half" });
+        doubles.addRow(new Object[] { Double.NaN, "nan" });
+        doubles.addRow(new Object[] { -0.0, "zero" });
+        Table numbers = ints.join(doubles, 0, 0, Table.JoinType.LEFT);
+        Assert.assertArrayEquals(new String[] { "k", "name" }, numbers.getColumnTitles());
+        Assert.assertArrayEquals(new String[] { "zero", null, "two", null }, numbers.getStringColumn("name"));
+
+        // a table joined to itself, each row next to its parent
+        Table tree = new Table();
+        tree.addColumn("id", Table.INT);
+        tree.addColumn("parent", Table.INT);
+        tree.addColumn("name", Table.STRING);
+        tree.addRow(new Object[] { 0, -1, "root" });
+        tree.addRow(new Object[] { 1, 0, "kid" });
+        tree.addRow(new Object[] { 2, 1, "grandkid" });
+        Table parents = tree.join(tree, "parent", "id", Table.JoinType.INNER);
+        Assert.assertArrayEquals(new String[] { "id", "parent", "name", "parent_2", "name_2" },
+                                 parents.getColumnTitles());
+        Assert.assertArrayEquals(new int[] { 1, 2 }, parents.getIntColumn("id"));
+        Assert.assertArrayEquals(new int[] { -1, 0 }, parents.getIntColumn("parent_2"));
+        Assert.assertArrayEquals(new String[] { "root", "kid" }, parents.getStringColumn("name_2"));
+        parents = tree.join(tree, "parent", "id", Table.JoinType.LEFT);
+        Assert.assertArrayEquals(new int[] { 0, 1, 2 }, parents.getIntColumn("id"));
+        Assert.assertArrayEquals(new int[] { 0, -1, 0 }, parents.getIntColumn("parent_2"));
+        Assert.assertArrayEquals(new String[] { null, "root", "kid" }, parents.getStringColumn("name_2"));
+    }
+
+    static boolean compareNumber(double entry, String op, double value) {
+        switch (op) {
+            case "==": return entry == value;
+            case "!=": return entry != value;
+            case "<": return entry < value;
+            case "<=": return entry <= value;
+            case ">": return entry > value;
+            default: return entry >= value;
+        }
+    }
+
+    @Test
+    public void whereMatchesScan() {
+        int parallelRows = TableSort.parallelRows;
+        try {
+            for (int threshold : new int[] { Integer.MAX_VALUE, 1 }) {
+                TableSort.parallelRows = threshold;
+                Table table = sortTestTable();
+                String[] ops = { "==", "!=", "<", "<=", ">", ">=" };
+                double[] values = { 0, -3.5, 2, 1e13, -5e12, Double.NaN };
+                for (int col = 1; col <= 4; col++) {
+                    for (String op : ops) {
+                        for (double value : values) {
+                            TableSelection selection = table.where(col, op, value);
+                            for (int row = 0; row < table.getRowCount(); row++) {
+                                double entry = (col <= 2) ? table.getLong(row, col) : table.getDouble(row, col);
+                                Assert.assertEquals(col + " " + op + " " + value + " at " + row,
+                                                    compareNumber(entry, op, value), selection.hasRow(row));
+                            }
+                        }
+                    }
+                }
+                for (String col : new String[] { "s", "c" }) {
+                    for (String value : new String[] { "a", "B", null }) {
+                        TableSelection equal = table.where(col, "==", value);
+                        TableSelection less = table.where(col, "<", value);
+                        for (int row = 0; row < table.getRowCount(); row++) {
+                            String entry = table.getString(row, col);
+                            Assert.assertEquals(entry == null ? value == null : entry.equals(value), equal.hasRow(row));
+                            Assert.assertEquals(entry != null && value != null && entry.compareTo(value) < 0, less.hasRow(row));
+                        }
+                    }
+                }
+
+                TableSelection a = table.where("i", ">", 0);
+                TableSelection b = table.where("c", "==", "a");
+                TableSelection both = a.and(b);
+                TableSelection either = a.or("c", "==", "a");
+                TableSelection neither = either.not();
+                int count = 0;
+                for (int row = 0; row < table.getRowCount(); row++) {
+                    boolean inA = table.getInt(row, "i") > 0;
+                    boolean inB = "a".equals(table.getString(row, "c"));
+                    Assert.assertEquals(inA && inB, both.hasRow(row));
+                    Assert.assertEquals(inA || inB, either.hasRow(row));
+                    Assert.assertEquals(!inA && !inB, neither.hasRow(row));
+                    if (inA && inB) count++;
+                }
+                Assert.assertEquals(count, both.getRowCount());
+                Assert.assertEquals(table.getRowCount(), either.getRowCount() + neither.getRowCount());
+
+                int[] rows = both.getRows();
+                Table view = both.view();
+                Assert.assertEquals(rows.length, view.getRowCount());
+                Assert.assertArrayEquals(table.getColumnTitles(), view.getColumnTitles());
+                int[] ids = view.getIntColumn("id");
+                Assert.assertArrayEquals(rows, ids);
+                for (int i = 0; i < rows.length; i++) {
+                    Assert.assertEquals(table.getDouble(rows[i], "d"), view.getDouble(i, "d"), 0);
+                    Assert.assertEquals(table.getString(rows[i], "c"), view.getRow(i).getString("c"));
+                }
+                Assert.assertArrayEquals(rows, view.copy().getIntColumn("id"));
+
+                // selections of a view refer back to the original rows
+                Table narrower = view.where("f", "<", 0).view();
+                for (int i = 0; i < narrower.getRowCount(); i++) {
+                    int id = narrower.getInt(i, "id");
+                    Assert.assertTrue(table.getFloat(id, "f") < 0);
+                    Assert.assertEquals(table.getLong(id, "l"), narrower.getLong(i, "l"));
+                }
+
+                try {
+                    view.setInt(0, "i", 5);
+                    Assert.fail("Views should be read-only");
+                } catch (UnsupportedOperationException expected) { }
+                try {
+                    view.sort("i");
+                    Assert.fail("Views should be read-only");
+                } catch (UnsupportedOperationException expected) { }
+                try {
+                    view.compress("c");
+                    Assert.fail("Views should not compress the shared columns");
+                } catch (UnsupportedOperationException expected) { }
+                Assert.assertFalse(table.isCompressed("c"));
+                Assert.assertEquals(table.getRowCount(), table.getStringColumn("c").length);
+            }
+        } finally {
+            TableSort.parallelRows = parallelRows;
+        }
+    }
+
+    static String inferTestCSV() {
+        StringBuilder sb = new StringBuilder("id,big,price,ratio,state,name,zip,count,late,rare,tag\n");
+        String[] states = { "on", "off", "fault" };
+        for (int i = 0; i < 200; i++) {
+            sb.append(i).append(',');
+            sb.append(3000000000L + i).append(',');
+            sb.append(i * 0.25f).append(',');
+            sb.append(i / 7.0).append(',');
+            sb.append(states[i % 3]).append(',');
+            sb.append("name ").append(i).append(',');
+            sb.append('0').append(2100 + i).append(',');
+            sb.append((i % 5 == 0) ? "" : String.valueOf(i)).append(',');
+            sb.append((i == 150) ? "1.5" : String.valueOf(i)).append(',');
+            sb.append((i == 180) ? "n/a" : String.valueOf(i)).append(',');
+            sb.append((i < 100) ? "t" + (i % 2) : "u" + i).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void parseInfer() throws IOException {
+        String csv = inferTestCSV();
+        Table table = load(csv, "csv,header,infer=100");
+        Assert.assertEquals(200, table.getRowCount());
+        Assert.assertArrayEquals(new int[] {
+            Table.INT, Table.LONG, Table.FLOAT, Table.DOUBLE, Table.CATEGORY, Table.STRING,
+            Table.STRING, Table.FLOAT, Table.FLOAT, Table.STRING, Table.STRING
+        }, table.getColumnTypes());
+
+        // only the three states, nothing for the rows that were still empty
+        Assert.assertEquals(3, table.columnCategories[4].size());
+
+        Table strings = load(csv, "csv,header");
+        for (int row = 0; row < 200; row++) {
+            Assert.assertEquals(row, table.getInt(row, "id"));
+            Assert.assertEquals(3000000000L + row, table.getLong(row, "big"));
+            Assert.assertEquals(row * 0.25f, table.getFloat(row, "price"), 0);
+            Assert.assertEquals(row / 7.0, table.getDouble(row, "ratio"), 0);
+            Assert.assertEquals(row == 150 ? 1.5f : row, table.getFloat(row, "late"), 0);
+            Assert.assertEquals(row % 5 == 0 ? Float.NaN : row, table.getFloat(row, "count"), 0);
+            for (String col : new String[] { "state", "name", "zip", "rare", "tag" }) {
+                Assert.assertEquals(strings.getString(row, col), table.getString(row, col));
+            }
+        }
+
+        // everything is used when there are fewer rows than the sample
+        Table small = load("a,b\n1,x\n2,x\n", "csv,header,infer");
+        Assert.assertArrayEquals(new int[] { Table.INT, Table.CATEGORY }, small.getColumnTypes());
+
+        // columns from a dictionary keep their types
+        Table typed = new Table();
+        typed.setColumnTitles(new String[] { "id" });
+        typed.setColumnType(0, Table.STRING);
+        typed.parse(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), "csv,header,infer");
+        Assert.assertEquals(Table.STRING, typed.getColumnType("id"));
+        Assert.assertEquals(Table.LONG, typed.getColumnType("big"));
+
+        for (int blockSize : new int[] { 97, 1000, 1 << 16 }) {
+            Table parallel = new Table();
+            ParallelTableParser parser = new ParallelTableParser(parallel, false);
+            parser.blockSize = blockSize;
+            parser.minChunk = 16;
+            parser.chunkCount = 4;
+            parser.infer(100, 0);
+            parser.parse(new StringReader(csv), true);
+            Assert.assertArrayEquals(table.getColumnTypes(), parallel.getColumnTypes());
+            assertSameStrings(table, parallel);
+        }
+
+        // numbers that turn out to be text come back as they were written
+        String[] written = { "1.50", "+5", "1e3", "", "7", "-0", "2.5" };
+        StringBuilder sb = new StringBuilder("a,b\n");
+        for (int i = 0; i < 300; i++) {
+            sb.append(written[i % written.length]).append(',');
+            sb.append(i < 150 ? String.valueOf(i) : "0.10").append('\n');
+        }
+        sb.append("text,text\n");
+        Table expected = load(sb.toString(), "csv,header");
+        Table widened = load(sb.toString(), "csv,header,infer=100");
+        Assert.assertArrayEquals(new int[] { Table.STRING, Table.STRING }, widened.getColumnTypes());
+        assertSameStrings(expected, widened);
+        Table parallel = new Table();
+        ParallelTableParser parser = new ParallelTableParser(parallel, false);
+        parser.blockSize = 500;
+        parser.minChunk = 16;
+        parser.chunkCount = 4;
+        parser.infer(100, 0);
+        parser.parse(new StringReader(sb.toString()), true);
+        assertSameStrings(expected, parallel);
+    }
+
+    @Test
+    public void streamRows() throws IOException {
+        StringBuilder sb = new StringBuilder("id,value,name\n");
+        for (int i = 0; i < 10000; i++) {
+            sb.append(i).append(',').append(i * 0.5f).append(",name ").append(i % 7).append('\n');
+        }
+        byte[] csv = sb.toString().getBytes(StandardCharsets.UTF_8);
+        Table table = new Table(new ByteArrayInputStream(csv), "csv,header,infer");
+
+        TableStream stream = Table.stream(new ByteArrayInputStream(csv), "csv,header,infer");
+        Assert.assertArrayEquals(table.getColumnTitles(), stream.getColumnTitles());
+        Assert.assertArrayEquals(table.getColumnTypes(), stream.getColumnTypes());
+        int row = 0;
+        for (TableRow tr : stream) {
+            Assert.assertEquals(table.getInt(row, "id"), tr.getInt("id"));
+            Assert.assertEquals(table.getFloat(row, "value"), tr.getFloat("value"), 0);
+            Assert.assertEquals(table.getString(row, "name"), tr.getString("name"));
+            row++;
+        }
+        Assert.assertEquals(10000, row);
+        Assert.assertFalse(stream.hasNext());
+
+        File file = File.createTempFile("stream", ".bin");
+        file.deleteOnExit();
+        Assert.assertTrue(table.save(file, "bin"));
+        row = 0;
+        for (TableRow tr : Table.stream(file, null)) {
+            for (int col = 0; col < table.getColumnCount(); col++) {
+                Assert.assertEquals(table.getString(row, col), tr.getString(col));
+            }
+            row++;
+        }
+        Assert.assertEquals(10000, row);
+
+        // stopping early
+        TableStream partial = Table.stream(new ByteArrayInputStream(csv), "csv,header");
+        Assert.assertEquals("0", partial.next().getString("id"));
+        Assert.assertEquals("1", partial.next().getString("id"));
+        partial.close();
+        Assert.assertFalse(partial.hasNext());
+    }
+
+    static void appendText(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    @Test
+    public void followRefresh() throws IOException {
+        File file = File.createTempFile("follow", ".csv");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "id,name\n1,one\n2,two\n3,three\n4,fo".getBytes(StandardCharsets.UTF_8));
+
+        Table table = new Table(file, "header,follow");
+        Assert.assertEquals(3, table.getRowCount());
+        table.index("name");
+        Assert.assertEquals(0, table.refresh());
+
+        // the line that was still being written, ending with a CR
+        appendText(file, "ur\r");
+        Assert.assertEquals(1, table.refresh());
+        Assert.assertEquals("four", table.getString(3, "name"));
+
+        // LF of the CR/LF, a quoted newline, and another partial line
+        appendText(file, "\n5,\"multi\nline\"\n6,\"a,b\"\n7");
+        Assert.assertEquals(2, table.refresh());
+        Assert.assertEquals("multi\nline", table.getString(4, "name"));
+        Assert.assertEquals(5, table.findRowIndex("a,b", "name"));
+        appendText(file, ",seven\n");
+        Assert.assertEquals(1, table.refresh());
+        assertSameStrings(new Table(file, "header"), table);
+
+        // a shorter file has been replaced, so start over
+        Files.write(file.toPath(), "id,name\n9,nine\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(1, table.refresh());
+        Assert.assertEquals(1, table.getRowCount());
+        Assert.assertEquals("nine", table.getString(0, "name"));
+
+        // types are picked once enough rows have arrived
+        Files.write(file.toPath(), "id,value\n1,x\n".getBytes(StandardCharsets.UTF_8));
+        Table typed = new Table(file, "header,follow,infer=4");
+        Assert.assertEquals(Table.STRING, typed.getColumnType("id"));
+        appendText(file, "2,y\n3,x\n4,y\n");
+        Assert.assertEquals(3, typed.refresh());
+        Assert.assertEquals(Table.INT, typed.getColumnType("id"));
+        Assert.assertEquals(Table.CATEGORY, typed.getColumnType("value"));
+        appendText(file, "5.5,x\n");
+        typed.refresh();
+        Assert.assertEquals(Table.FLOAT, typed.getColumnType("id"));
+        Assert.assertEquals(5.5f, typed.getFloat(4, "id"), 0);
+        Assert.assertEquals(4f, typed.getFloat(3, "id"), 0);
+
+        try {
+            new Table().refresh();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // only tables loaded with "follow"
+        }
+    }
+
+    static byte[] odsFile(String sheets) throws IOException {
+        String content =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+            "<office:document-content" +
+            " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\"" +
+            " xmlns:table=\"urn:oasis:names:tc:opendocument:xmlns:table:1.0\"" +
+            " xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\">" +
+            "<office:body><office:spreadsheet>" + sheets +
+            "</office:spreadsheet></office:body></office:document-content>";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("content.xml"));
+            zip.write(content.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void parseOds() throws IOException {
+        byte[] ods = odsFile(
+            "<table:table table:name=\"Other\"><table:table-row><table:table-cell>" +
+            "<text:p>x</text:p></table:table-cell></table:table-row></table:table>" +
+            "<table:table table:name=\"Data\">" +
+            "<table:table-column table:number-columns-repeated=\"3\"/>" +
+            "<table:table-row>" +
+            "<table:table-cell><text:p>name</text:p></table:table-cell>" +
+            "<table:table-cell><text:p>count</text:p></table:table-cell>" +
+            "</table:table-row>" +
+            "<table:table-row>" +
+            "<table:table-cell><text:p>a <text:span>b</text:span><text:s/>c</text:p></table:table-cell>" +
+            "<table:table-cell office:value-type=\"float\" office:value=\"3\"><text:p>3.00</text:p></table:table-cell>" +
+            "</table:table-row>" +
+            "<table:table-row table:number-rows-repeated=\"2\">" +
+            "<table:table-cell><text:p>same</text:p></table:table-cell>" +
+            "<table:table-cell office:value=\"7\"/>" +
+            "</table:table-row>" +
+            "<table:table-row table:number-rows-repeated=\"3\">" +
+            "<table:table-cell table:number-columns-repeated=\"1024\"/>" +
+            "</table:table-row>" +
+            "<table:table-row>" +
+            "<table:table-cell table:number-columns-repeated=\"2\"/>" +
+            "<table:table-cell><text:p>far</text:p></table:table-cell>" +
+            "</table:table-row>" +
+            // what spreadsheets write after the last row
+            "<table:table-row table:number-rows-repeated=\"1048000\">" +
+            "<table:table-cell table:number-columns-repeated=\"16384\"/>" +
+            "</table:table-row>" +
+            "</table:table>");
+
+        Table table = new Table(new ByteArrayInputStream(ods), "ods,header,worksheet=Data");
+        Assert.assertArrayEquals(new String[] { "name", "count", null }, table.getColumnTitles());
+        Assert.assertEquals(7, table.getRowCount());
+        Assert.assertEquals("a bc", table.getString(0, 0));
+        Assert.assertEquals("3", table.getString(0, 1));
+        Assert.assertEquals("same", table.getString(2, 0));
+        Assert.assertEquals("7", table.getString(2, 1));
+        Assert.assertNull(table.getString(4, 0));
+        Assert.assertEquals("far", table.getString(6, 2));
+
+        Table first = new Table(new ByteArrayInputStream(ods), "ods");
+        Assert.assertEquals(1, first.getRowCount());
+        Assert.assertEquals("x", first.getString(0, 0));
+
+        Table typed = new Table(new ByteArrayInputStream(ods), "ods,header,worksheet=Data,infer");
+        Assert.assertEquals(Table.FLOAT, typed.getColumnType("count"));
+    }
+
+    @Test
+    public void writerRows() throws IOException {
+        Table columns = new Table();
+        columns.addColumn("id", Table.INT);
+        columns.addColumn("x", Table.FLOAT);
+        columns.addColumn("name", Table.STRING);
+        columns.addColumn("kind", Table.STRING);
+        // categories have to be known up front for a binary file
+        columns.setRowCount(2);
+        columns.setString(0, "kind", "a");
+        columns.setString(1, "kind", "b");
+        columns.setColumnType("kind", Table.CATEGORY);
+        columns.setRowCount(0);
+
+        for (String extension : new String[] { "csv", "tsv", "bin", "csv.gz" }) {
+            File file = File.createTempFile("writer", "." + extension);
+            file.deleteOnExit();
+            TableWriter writer = new TableWriter(file, columns);
+            for (int i = 0; i < 1000; i++) {
+                writer.writeInt(i - 500);
+                writer.writeFloat(i == 7 ? Float.NaN : i / 8f);
+                writer.writeString(i % 3 == 0 ? null : "n\u00e4me, \"" + i + "\"");
+                writer.writeString(i % 2 == 0 ? "a" : "b");
+                writer.endRow();
+            }
+            // the rest of a short row is left blank
+            writer.writeInt(1 << 31);
+            writer.close();
+            Assert.assertEquals(1001, writer.getRowCount());
+
+            boolean binary = extension.equals("bin");
+            Table table = new Table(file, binary ? null : "header");
+            // CSV and TSV can't tell null from an empty string
+            String blank = binary ? null : "";
+            Assert.assertEquals(1001, table.getRowCount());
+            Assert.assertArrayEquals(columns.getColumnTitles(), table.getColumnTitles());
+            Assert.assertEquals("-500", table.getString(0, "id"));
+            Assert.assertEquals("0.125", table.getString(1, "x"));
+            Assert.assertEquals(blank, table.getString(0, "name"));
+            Assert.assertEquals("n\u00e4me, \"2\"", table.getString(2, "name"));
+            Assert.assertEquals("b", table.getString(999, "kind"));
+            Assert.assertEquals(String.valueOf(1 << 31), table.getString(1000, "id"));
+            Assert.assertEquals(blank, table.getString(1000, "name"));
+            Assert.assertEquals(blank, table.getString(7, "x"));
+        }
+
+        // save() goes through TableWriter, and should match writeCSV()
+        Table table = load("a,b,c\n1.5,\" lead\",x\n-0.001,\"q\"\"uote\",\n", "csv,header,infer");
+        StringWriter expected = new StringWriter();
+        table.writeCSV(new PrintWriter(expected));
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        Assert.assertTrue(table.save(actual, "csv"));
+        Assert.assertEquals(expected.toString().replace(System.lineSeparator(), "\n"),
+                            actual.toString("UTF-8"));
+    }
+
+    @Test
+    public void compressColumns() {
+        int rows = 10000;
+        Table table = new Table();
+        table.addColumn("time", Table.LONG);
+        table.addColumn("status", Table.STRING);
+        table.addColumn("count", Table.INT);
+        table.addColumn("noise", Table.LONG);
+        table.setRowCount(rows);
+        Random random = new Random(7);
+        long time = 1500000000000L;
+        for (int row = 0; row < rows; row++) {
+            time += 1000 + random.nextInt(10);
+            table.setLong(row, "time", time);
+            table.setString(row, "status", (row / 100) % 3 == 0 ? "ok" : ((row / 100) % 3 == 1 ? null : "error"));
+            table.setInt(row, "count", (row % 7 == 0) ? -1 : row % 5);
+            table.setLong(row, "noise", random.nextLong());
+        }
+        Table expected = table.copy();
+
+        table.compress();
+        Assert.assertTrue(table.isCompressed("time"));
+        Assert.assertTrue(table.isCompressed("status"));
+        Assert.assertTrue(table.isCompressed("count"));
+        Assert.assertFalse(table.isCompressed("noise"));
+        // sorted timestamps only need a few bits for each row
+        long memory = ((TableEncoding.Column) table.columns[0]).memory();
+        Assert.assertTrue(memory + " bytes", memory < rows * 8 / 4);
+
+        assertSameStrings(expected, table);
+        for (int i = 0; i < 1000; i++) {
+            int row = random.nextInt(rows);
+            Assert.assertEquals(expected.getLong(row, 0), table.getLong(row, 0));
+            Assert.assertEquals(expected.getInt(row, 2), table.getInt(row, 2));
+            Assert.assertEquals(expected.getString(row, 1), table.getString(row, 1));
+        }
+        Assert.assertArrayEquals(expected.getLongColumn("time"), table.getLongColumn("time"));
+
+        // changing a value puts the column back to normal
+        table.setInt(3, "count", 42);
+        Assert.assertFalse(table.isCompressed("count"));
+        Assert.assertEquals(42, table.getInt(3, "count"));
+        Assert.assertEquals(expected.getInt(4, "count"), table.getInt(4, "count"));
+        table.sort("status");
+        Assert.assertFalse(table.isCompressed("status"));
+        Assert.assertEquals(expected.getRowCount(), table.getRowCount());
+    }
+
+    @Test
+    public void compressIds() {
+        Table table = new Table();
+        table.addColumn("id", Table.STRING);
+        table.setRowCount(1000);
+        for (int row = 0; row < 1000; row++) {
+            table.setString(row, 0, (row == 500) ? null : "device-" + (row % 900));
+        }
+        Table view = table.where("id", "==", "device-7").view();
+        Assert.assertTrue(table.compress(0));
+        // a view only searches its own rows of the compressed column
+        Assert.assertEquals(0, view.findRowIndex("device-7", 0));
+        Assert.assertEquals(-1, view.findRowIndex("device-8", 0));
+        Assert.assertArrayEquals(new int[] { 0, 1 }, view.findRowIndices("device-7", 0));
+        Assert.assertEquals(1, view.getTally(0).size());
+        Assert.assertTrue(table.compress(0));
+        Assert.assertEquals("device-12", table.getString(12, 0));
+        Assert.assertNull(table.getString(500, 0));
+        Assert.assertEquals(899, table.findRowIndex("device-899", 0));
+        Assert.assertEquals(500, table.findRowIndex(null, 0));
+        Assert.assertArrayEquals(new int[] { 7, 907 }, table.findRowIndices("device-7", 0));
+        Assert.assertEquals(-1, table.findRowIndex("device-900", 0));
+        Assert.assertTrue(table.isCompressed(0));
+
+        table.setString(500, 0, "device-0");
+        Assert.assertFalse(table.isCompressed(0));
+        Assert.assertTrue(table.compress(0));
+        Assert.assertEquals(3, table.getTally(0).get("device-0"));
+        Assert.assertEquals(899, table.getUnique(0).length);  // no more device-500
+    }
+
+    @Test
+    public void arrowRoundTrip() throws IOException {
+        Table table = new Table();
+        table.addColumn("id", Table.INT);
+        table.addColumn("time", Table.LONG);
+        table.addColumn("x", Table.FLOAT);
+        table.addColumn("y", Table.DOUBLE);
+        table.addColumn("name", Table.STRING);
+        table.addColumn("kind", Table.STRING);
+        int rows = 1000;
+        table.setRowCount(rows);
+        for (int row = 0; row < rows; row++) {
+            table.setInt(row, "id", row - 500);
+            table.setLong(row, "time", 1500000000000L + row);
+            table.setFloat(row, "x", row == 3 ? Float.NaN : row / 8f);
+            table.setDouble(row, "y", row * 0.1);
+            table.setString(row, "name", row % 3 == 0 ? null : "n\u00e4me " + row);
+            table.setString(row, "kind", row % 5 == 0 ? null : (row % 2 == 0 ? "even" : "odd"));
+        }
+        table.setColumnType("kind", Table.CATEGORY);
+
+        for (String extension : new String[] { "arrow", "arrows" }) {
+            File file = File.createTempFile("table", "." + extension);
+            file.deleteOnExit();
+            Assert.assertTrue(table.save(file, null));
+
+            // mapped from the File, and read from a stream
+            Table mapped = new Table(file);
+            Table streamed = new Table(Files.newInputStream(file.toPath()), extension);
+            for (Table loaded : new Table[] { mapped, streamed }) {
+                Assert.assertEquals(rows, loaded.getRowCount());
+                Assert.assertArrayEquals(table.getColumnTitles(), loaded.getColumnTitles());
+                Assert.assertArrayEquals(table.getColumnTypes(), loaded.getColumnTypes());
+                for (int row = 0; row < rows; row++) {
+                    for (int col = 0; col < table.getColumnCount(); col++) {
+                        Assert.assertEquals(table.getString(row, col), loaded.getString(row, col));
+                    }
+                }
+                Assert.assertTrue(Float.isNaN(loaded.getFloat(3, "x")));
+                Assert.assertEquals(1500000000999L, loaded.getLong(999, "time"));
+            }
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            String start = new String(bytes, 0, 6, StandardCharsets.US_ASCII);
+            String end = new String(bytes, bytes.length - 6, 6, StandardCharsets.US_ASCII);
+            Assert.assertEquals(extension.equals("arrow"), start.equals("ARROW1"));
+            Assert.assertEquals(extension.equals("arrow"), end.equals("ARROW1"));
+        }
+
+        // an empty table still has its schema
+        Table empty = new Table();
+        empty.addColumn("a", Table.DOUBLE);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Assert.assertTrue(empty.save(output, "arrows"));
+        Table loaded = new Table(new ByteArrayInputStream(output.toByteArray()), "arrows");
+        Assert.assertEquals(0, loaded.getRowCount());
+        Assert.assertEquals("a", loaded.getColumnTitle(0));
+        Assert.assertEquals(Table.DOUBLE, loaded.getColumnType(0));
+    }
 }
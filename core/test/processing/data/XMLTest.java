@@ -0,0 +1,100 @@
+package processing.data;
+
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class XMLTest {
+
+    static final String OSM =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        "<osm version=\"0.6\">\n" +
+        " <bounds minlat=\"51.5\" maxlat=\"51.6\"/>\n" +
+        " <node id=\"1\" lat=\"51.51\" lon=\"-0.12\">\n" +
+        "  <tag k=\"name\" v=\"Caf&#233; &amp; Bar\"/>\n" +
+        "  <tag k=\"amenity\" v=\"cafe\"/>\n" +
+        " </node>\n" +
+        " <way id=\"7\"><nd ref=\"1\"/><node id=\"99\"/></way>\n" +
+        " <node id=\"2\" lat=\"51.52\" lon=\"-0.13\"><![CDATA[<raw>]]></node>\n" +
+        "</osm>\n";
+
+    @Test
+    public void streamPath() {
+        XMLStream stream = XML.stream(new StringReader(OSM), "osm/node");
+        int count = 0;
+        for (XML node : stream) {
+            count++;
+            Assert.assertEquals("node", node.getName());
+            Assert.assertEquals(count, node.getInt("id"));
+            if (count == 1) {
+                Assert.assertEquals(51.51f, node.getFloat("lat"), 0);
+                XML[] tags = node.getChildren("tag");
+                Assert.assertEquals(2, tags.length);
+                Assert.assertEquals("Café & Bar", tags[0].getString("v"));
+                Assert.assertEquals("cafe", tags[1].getString("v"));
+            } else {
+                Assert.assertEquals("<raw>", node.getContent());
+            }
+        }
+        Assert.assertEquals(2, count);  // not the node inside the way
+        Assert.assertFalse(stream.hasNext());
+
+        count = 0;
+        for (XML kid : XML.stream(new StringReader(OSM), "osm/*/tag")) {
+            Assert.assertNotNull(kid.getString("k"));
+            count++;
+        }
+        Assert.assertEquals(2, count);
+    }
+
+    @Test
+    public void childIndex() throws Exception {
+        XML root = XML.parse("<a>\n  <b id=\"1\"/>\n  <c><d>x</d></c>\n  <b id=\"2\"/>\n</a>");
+        Assert.assertEquals(2, root.getChildren("b").length);
+        Assert.assertEquals("x", root.getChild("c/d").getContent());
+
+        XML added = root.addChild("b");
+        Assert.assertEquals(3, root.getChildren("b").length);
+        root.removeChild(root.getChild("b"));
+        Assert.assertEquals(2, root.getChildren("b").length);
+        Assert.assertNull(root.getChild("e"));
+        added.setName("e");
+        Assert.assertSame(root.getChild("e").getNative(), added.getNative());
+        Assert.assertEquals(1, root.getChildren("b").length);
+    }
+
+    @Test
+    public void format() throws Exception {
+        XML root = XML.parse("<a x=\"1&amp;&quot;\">\n  <b>text &amp; more</b>\n  <c/>\n" +
+                             "  <d><e>deep</e></d>\n</a>");
+        Assert.assertEquals("<a x=\"1&amp;&quot;\"><b>text &amp; more</b><c/><d><e>deep</e></d></a>",
+                            root.format(-1));
+        String sep = System.getProperty("line.separator");
+        Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + sep +
+                            "<a x=\"1&amp;&quot;\">" + sep +
+                            "  <b>text &amp; more</b>" + sep +
+                            "  <c/>" + sep +
+                            "  <d>" + sep +
+                            "    <e>deep</e>" + sep +
+                            "  </d>" + sep +
+                            "</a>" + sep, root.format(2));
+        Assert.assertEquals(root.format(-1), XML.parse(root.format(2)).format(-1));
+    }
+
+    @Test
+    public void formatNamespaces() throws Exception {
+        String svg = "<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">" +
+            "<g id=\"a\"><use xlink:href=\"#b\"/></g></svg>";
+        XML root = XML.parse(svg);
+        XML g = root.getChild("g");
+        g.getChild("use");
+        XML path = g.addChild("path");
+        path.setString("d", "M0 0");
+        // the copies made for each child aren't written again
+        Assert.assertEquals(svg.replace("</g>", "<path d=\"M0 0\"/></g>"), root.format(-1));
+        Assert.assertEquals(root.format(-1), XML.parse(root.format(2)).format(-1));
+        // but a child on its own still needs them
+        Assert.assertTrue(g.format(-1).startsWith("<g id=\"a\" xmlns=\"http://www.w3.org/2000/svg\""));
+    }
+}